@@ -0,0 +1,116 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * JMH states shared by the statistics benchmarks.
+ *
+ * @author syam
+ *
+ */
+public class BenchmarkStates {
+
+	/**
+	 * StatisticsService as it is wired by Spring, for every window mode.
+	 */
+	@State(Scope.Benchmark)
+	public static class ServiceState {
+
+		@Param({ "locked", "striped", "pipelined" })
+		public String windowMode;
+
+		public StatisticsService statisticsService;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			statisticsService = new StatisticsService(windowMode, 0, new ObjectMapper(), StatisticsMetrics.DISABLED);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			statisticsService.shutdown();
+		}
+	}
+
+	/**
+	 * Pregenerated transaction amounts and ages for one benchmark thread.
+	 *
+	 * distribution :
+	 * uniform - amounts uniformly distributed between 0 and 1000
+	 * skewed - Pareto distributed amounts, most of them small and a few very large
+	 * increasing / decreasing - every amount is a new max / min, which is the worst
+	 * case of the min/max tracking
+	 *
+	 * timestamps :
+	 * recent - time stamps in the last second
+	 * spread - time stamps uniformly spread over the whole window
+	 * edge - time stamps close to the acceptance limit, transactions expire as
+	 * soon as they are registered
+	 */
+	@State(Scope.Thread)
+	public static class TransactionData {
+
+		private static final int SIZE = 1 << 16;
+
+		@Param({ "uniform", "skewed", "increasing", "decreasing" })
+		public String distribution;
+
+		@Param({ "recent", "spread", "edge" })
+		public String timestamps;
+
+		private final double[] amounts = new double[SIZE];
+		private final long[] ages = new long[SIZE];
+		private int index;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			Random random = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < SIZE; i++) {
+				amounts[i] = amount(random, i);
+				ages[i] = age(random);
+			}
+		}
+
+		public TransactionRequest next() {
+			int i = index++ & (SIZE - 1);
+			return new TransactionRequest(amounts[i], System.currentTimeMillis() - ages[i], Boolean.FALSE);
+		}
+
+		private double amount(Random random, int i) {
+			switch (distribution) {
+			case "skewed":
+				return Math.min(1_000_000d, 1d / Math.pow(1d - random.nextDouble(), 1d / 1.16d));
+			case "increasing":
+				return i;
+			case "decreasing":
+				return SIZE - i;
+			default:
+				return random.nextDouble() * 1000d;
+			}
+		}
+
+		private long age(Random random) {
+			switch (timestamps) {
+			case "spread":
+				return random.nextInt(Constants.TRANSACTION_ACCEPTANCE_DURATION - 1000);
+			case "edge":
+				return Constants.TRANSACTION_ACCEPTANCE_DURATION - 50 - random.nextInt(50);
+			default:
+				return random.nextInt(1000);
+			}
+		}
+	}
+}
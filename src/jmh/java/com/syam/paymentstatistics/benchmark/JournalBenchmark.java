@@ -0,0 +1,99 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.TransactionData;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.journal.TransactionJournal;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+
+/**
+ * Overhead of the transaction journal on StatisticsService.registerTransaction(),
+ * with the journal disabled and enabled, in a temporary directory flushed every
+ * 10 milliseconds. The overhead is a few nanoseconds per transaction, so the
+ * benchmark runs more forks and iterations than the others to keep the error
+ * well below it. Run with
+ * -Djmh.args="JournalBenchmark -p distribution=uniform -p timestamps=recent" to
+ * skip the other transaction distributions.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(5)
+public class JournalBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class JournalState {
+
+		@Param({ "false", "true" })
+		public boolean journal;
+
+		@Param({ "locked" })
+		public String windowMode;
+
+		public StatisticsService statisticsService;
+
+		private TransactionJournal transactionJournal;
+
+		private Path directory;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			statisticsService = new StatisticsService(windowMode, 0, new ObjectMapper(), StatisticsMetrics.DISABLED);
+			if (journal) {
+				directory = Files.createTempDirectory("statistics-journal");
+				transactionJournal = new TransactionJournal(directory, 16 * 1024 * 1024, 10, Clock.systemUTC());
+				statisticsService.setTransactionJournal(transactionJournal);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			statisticsService.shutdown();
+			if (transactionJournal != null) {
+				transactionJournal.close();
+				try (Stream<Path> files = Files.walk(directory)) {
+					files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void register01Thread(JournalState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void register04Threads(JournalState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+}
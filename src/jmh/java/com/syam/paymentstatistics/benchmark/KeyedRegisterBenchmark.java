@@ -0,0 +1,119 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.time.Clock;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.DimensionStatisticsService;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+
+/**
+ * Throughput of StatisticsService.registerTransaction() with the per dimension
+ * statistics, for transactions having a merchant, a currency and a channel.
+ * Without keys (none) the dimensions are not used, which is the cost of the
+ * statistics window alone. With keys, all the writers of a dimension share the
+ * locks of its KeyedWindowStore and HeavyHittersWindow, which is what to measure
+ * on several cores before splitting them.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyedRegisterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class KeyedServiceState {
+
+		@Param({ "striped" })
+		public String windowMode;
+
+		@Param({ "none", "keyed" })
+		public String dimensions;
+
+		public StatisticsService statisticsService;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			statisticsService = new StatisticsService(windowMode, 0, new ObjectMapper(), StatisticsMetrics.DISABLED);
+			if ("keyed".equals(dimensions)) {
+				statisticsService.setDimensionStatisticsService(
+						new DimensionStatisticsService(10_000, 0.001, StatisticsMetrics.DISABLED, Clock.systemUTC()));
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			statisticsService.shutdown();
+		}
+	}
+
+	/**
+	 * Pregenerated keyed transactions over 1000 merchants, 20 currencies and 4
+	 * channels, for one benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class KeyedTransactionData {
+
+		private static final int SIZE = 1 << 16;
+
+		private final TransactionRequest[] requests = new TransactionRequest[SIZE];
+		private int index;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			Random random = new Random(Thread.currentThread().getId());
+			for (int i = 0; i < SIZE; i++) {
+				requests[i] = new TransactionRequest(random.nextDouble() * 1000d, 0, Boolean.FALSE);
+				requests[i].setMerchant("merchant-" + random.nextInt(1000));
+				requests[i].setCurrency("currency-" + random.nextInt(20));
+				requests[i].setChannel("channel-" + random.nextInt(4));
+			}
+		}
+
+		public TransactionRequest next() {
+			TransactionRequest request = requests[index++ & (SIZE - 1)];
+			request.setTimestamp(System.currentTimeMillis());
+			return request;
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void register01Thread(KeyedServiceState service, KeyedTransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void register04Threads(KeyedServiceState service, KeyedTransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void register16Threads(KeyedServiceState service, KeyedTransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+}
@@ -0,0 +1,97 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.TransactionData;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Cost of the metrics on the ingestion and read paths, with the metrics
+ * disabled, enabled with the default sample rate (1024) and enabled timing every
+ * operation (sample rate 1). Run with
+ * -Djmh.args="MetricsOverhead -p distribution=uniform -p timestamps=recent" to
+ * skip the other transaction distributions.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class MeteredServiceState {
+
+		@Param({ "locked", "striped" })
+		public String windowMode;
+
+		@Param({ "disabled", "sampled", "all" })
+		public String metrics;
+
+		public StatisticsService statisticsService;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			StatisticsMetrics statisticsMetrics;
+			switch (metrics) {
+			case "sampled":
+				statisticsMetrics = new StatisticsMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT),
+						StatisticsMetrics.DEFAULT_SAMPLE_RATE);
+				break;
+			case "all":
+				statisticsMetrics = new StatisticsMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), 1);
+				break;
+			default:
+				statisticsMetrics = StatisticsMetrics.DISABLED;
+			}
+			statisticsService = new StatisticsService(windowMode, 0, new ObjectMapper(), statisticsMetrics);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			statisticsService.shutdown();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void register01Thread(MeteredServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void register04Threads(MeteredServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public StatisticsDataResponse read01Thread(MeteredServiceState service) {
+		return service.statisticsService.getStatistics();
+	}
+}
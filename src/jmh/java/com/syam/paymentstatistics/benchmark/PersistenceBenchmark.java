@@ -0,0 +1,98 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.syam.paymentstatistics.persistence.TransactionPersister;
+
+/**
+ * Rows per millisecond written by TransactionPersister into an in-memory H2
+ * transactionamount table, for several JDBC batch sizes. Every operation is one
+ * row : a chunk of rows is offered and the benchmark waits until the writer
+ * thread has written them, so the score is the end to end persistence rate.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+	private static final int CHUNK_SIZE = 10_000;
+
+	@State(Scope.Benchmark)
+	public static class PersisterState {
+
+		@Param({ "100", "1000", "10000" })
+		public int batchSize;
+
+		public TransactionPersister persister;
+
+		public final long[] amounts = new long[CHUNK_SIZE];
+		public final long[] timestamps = new long[CHUNK_SIZE];
+
+		@Setup(Level.Trial)
+		public void setUp() throws SQLException {
+			JdbcDataSource database = new JdbcDataSource();
+			database.setURL("jdbc:h2:mem:persistence-benchmark;DB_CLOSE_DELAY=-1");
+			try (Connection connection = database.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE IF NOT EXISTS transactionamount (id INTEGER AUTO_INCREMENT PRIMARY KEY,"
+						+ " created BIGINT, amount DOUBLE PRECISION, time_stamp BIGINT)");
+			}
+			persister = new TransactionPersister(database, CHUNK_SIZE, batchSize, 1);
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < CHUNK_SIZE; i++) {
+				amounts[i] = i * 10L;
+				timestamps[i] = now - i % 60_000;
+			}
+		}
+
+		@TearDown(Level.Iteration)
+		public void truncate() throws SQLException {
+			JdbcDataSource database = new JdbcDataSource();
+			database.setURL("jdbc:h2:mem:persistence-benchmark");
+			try (Connection connection = database.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.execute("TRUNCATE TABLE transactionamount");
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			persister.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNK_SIZE)
+	public long writeRows(PersisterState state) {
+		long target = state.persister.getWritten() + state.persister.getFailed() + CHUNK_SIZE;
+		state.persister.offerAll(state.amounts, state.timestamps, CHUNK_SIZE);
+		while (state.persister.getWritten() + state.persister.getFailed() < target) {
+			Thread.yield();
+		}
+		return target;
+	}
+}
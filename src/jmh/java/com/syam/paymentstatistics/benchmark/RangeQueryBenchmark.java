@@ -0,0 +1,131 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.syam.paymentstatistics.persistence.TransactionHistory;
+import com.syam.paymentstatistics.persistence.TransactionPersister;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Latency of the range statistics over a day of transactions (10 per second)
+ * persisted in an in-memory H2 database (without its query result cache) behind
+ * a connection pool, from the rollups with TransactionHistory and by scanning
+ * the raw rows.
+ *
+ * range :
+ * 5m - a five minute range, not aligned on the second
+ * day - the whole day less a few milliseconds at both ends
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeQueryBenchmark {
+
+	private static final long START = 1_530_000_000_000L;
+
+	private static final long DAY = 24 * 3_600_000L;
+
+	@State(Scope.Benchmark)
+	public static class HistoryState {
+
+		@Param({ "5m", "day" })
+		public String range;
+
+		public HikariDataSource pool;
+
+		public TransactionHistory history;
+
+		public long from;
+
+		public long to;
+
+		@Setup(Level.Trial)
+		public void setUp() throws SQLException {
+			JdbcDataSource database = new JdbcDataSource();
+			database.setURL("jdbc:h2:mem:range-benchmark;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE");
+			try (Connection connection = database.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE transactionamount (id INTEGER AUTO_INCREMENT PRIMARY KEY,"
+						+ " created BIGINT, amount DOUBLE PRECISION, time_stamp BIGINT)");
+				statement.execute("CREATE INDEX transactionamount_time_stamp_idx ON transactionamount (time_stamp)");
+				statement.execute("CREATE TABLE transactionamount_rollup (resolution BIGINT NOT NULL,"
+						+ " bucket_start BIGINT NOT NULL, amount_sum BIGINT NOT NULL, amount_count BIGINT NOT NULL,"
+						+ " amount_min BIGINT NOT NULL, amount_max BIGINT NOT NULL,"
+						+ " PRIMARY KEY (resolution, bucket_start))");
+			}
+
+			Random random = new Random(1);
+			TransactionPersister persister = new TransactionPersister(database, 1_000_000, 10_000, 10);
+			for (long timestamp = START; timestamp < START + DAY; timestamp += 100) {
+				while (!persister.offer(random.nextInt(1_000_000), timestamp)) {
+					Thread.yield();
+				}
+			}
+			persister.close();
+			HikariConfig config = new HikariConfig();
+			config.setDataSource(database);
+			pool = new HikariDataSource(config);
+			history = new TransactionHistory(pool);
+
+			if (range.equals("day")) {
+				from = START + 3;
+				to = START + DAY - 7;
+			} else {
+				from = START + 12 * 3_600_000L + 1234;
+				to = from + 5 * 60_000L;
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			pool.close();
+		}
+	}
+
+	@Benchmark
+	public StatisticsData rollups(HistoryState state) {
+		return state.history.getStatistics(state.from, state.to);
+	}
+
+	@Benchmark
+	public long rawScan(HistoryState state) throws SQLException {
+		try (Connection connection = state.pool.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT SUM(amount), COUNT(*), MIN(amount),"
+						+ " MAX(amount) FROM transactionamount WHERE time_stamp >= ? AND time_stamp < ?")) {
+			statement.setLong(1, state.from);
+			statement.setLong(2, state.to);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(2);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.ServiceState;
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.TransactionData;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
+
+/**
+ * GET /statistics under concurrent writes, with read heavy, balanced and write
+ * heavy mixes of reader and writer threads. JMH reports the throughput of the
+ * readers and of the writers of each group separately.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(7)
+	public StatisticsDataResponse readHeavyRead(ServiceState service) {
+		return service.statisticsService.getStatistics();
+	}
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(1)
+	public void readHeavyWrite(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Group("balanced")
+	@GroupThreads(4)
+	public StatisticsDataResponse balancedRead(ServiceState service) {
+		return service.statisticsService.getStatistics();
+	}
+
+	@Benchmark
+	@Group("balanced")
+	@GroupThreads(4)
+	public void balancedWrite(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(1)
+	public StatisticsDataResponse writeHeavyRead(ServiceState service) {
+		return service.statisticsService.getStatistics();
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(7)
+	public void writeHeavyWrite(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	/**
+	 * Read path of the controller, the snapshot and its JSON bytes.
+	 */
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(4)
+	public byte[] snapshotRead(ServiceState service) {
+		StatisticsSnapshot snapshot = service.statisticsService.getStatisticsSnapshot();
+		return snapshot.getJson();
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(4)
+	public void snapshotWrite(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+}
@@ -0,0 +1,55 @@
+package com.syam.paymentstatistics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.ServiceState;
+import com.syam.paymentstatistics.benchmark.BenchmarkStates.TransactionData;
+
+/**
+ * Throughput of StatisticsService.registerTransaction() with 1, 4, 16 and 64
+ * writer threads, for every window mode, amount distribution and time stamp
+ * spread.
+ *
+ * @author syam
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterTransactionBenchmark {
+
+	@Benchmark
+	@Threads(1)
+	public void register01Thread(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void register04Threads(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void register16Threads(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+
+	@Benchmark
+	@Threads(64)
+	public void register64Threads(ServiceState service, TransactionData data) {
+		service.statisticsService.registerTransaction(data.next());
+	}
+}
@@ -1,15 +1,34 @@
 package com.syam.paymentstatistics;
 
+import java.util.Arrays;
+
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
 @SpringBootApplication
 @EnableAutoConfiguration(exclude = { DataSourceAutoConfiguration.class })
 public class PaymentstatisticsApplication {
 
+	public static final String REACTIVE_PROFILE = "reactive";
+
 	public static void main(String[] args) {
-		SpringApplication.run(PaymentstatisticsApplication.class, args);
+		SpringApplication application = new SpringApplication(PaymentstatisticsApplication.class);
+		// The web environment is created before the profile properties are read, so
+		// the reactive deployment has to be selected before the application starts.
+		if (isProfileActive(REACTIVE_PROFILE, args)) {
+			application.setWebApplicationType(WebApplicationType.REACTIVE);
+		}
+		application.run(args);
+	}
+
+	private static boolean isProfileActive(String profile, String[] args) {
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+		return Arrays.asList(environment.getActiveProfiles()).contains(profile);
 	}
 }
@@ -0,0 +1,202 @@
+package com.syam.paymentstatistics.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.WindowBuckets;
+
+/**
+ * The other nodes of the cluster, and the latest window buckets received from
+ * each of them.
+ *
+ * refresh() requests the buckets of all the peers in parallel, from their GET
+ * /cluster/buckets endpoint, and waits at most peerTimeout for the answers. A
+ * slow peer doesn't hold the others : its request goes on in the background
+ * and the peer is skipped by the next refreshes until it is over, so there is
+ * never more than one request per peer. A peer which is down or too slow keeps
+ * its last buckets, which get older until the caller stops using them.
+ *
+ * @author syam
+ *
+ */
+public class ClusterPeers implements Closeable {
+
+	public static final String BUCKETS_PATH = "/cluster/buckets";
+
+	private final Peer[] peers;
+
+	private final int peerTimeout;
+
+	private final ExecutorService executor;
+
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * @param peerUrls
+	 *            base urls of the other nodes, like http://host:8080
+	 * @param peerTimeout
+	 *            connect and read timeout of the requests, in milliseconds
+	 */
+	public ClusterPeers(List<String> peerUrls, int peerTimeout) {
+		super();
+		if (peerUrls.isEmpty()) {
+			throw new IllegalArgumentException("No cluster peer");
+		}
+		if (peerTimeout <= 0) {
+			throw new IllegalArgumentException("Invalid peer timeout " + peerTimeout);
+		}
+		this.peers = new Peer[peerUrls.size()];
+		for (int i = 0; i < peers.length; i++) {
+			peers[i] = new Peer(peerUrls.get(i));
+		}
+		this.peerTimeout = peerTimeout;
+		this.executor = Executors.newFixedThreadPool(peers.length, runnable -> {
+			Thread thread = new Thread(runnable, "statistics-cluster-peer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Requests the buckets of every peer which has no request in progress, and
+	 * returns once all of them answered or peerTimeout elapsed.
+	 */
+	public void refresh() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(peerTimeout);
+		List<Future<?>> requests = new ArrayList<>(peers.length);
+		for (Peer peer : peers) {
+			if (peer.inFlight.compareAndSet(false, true)) {
+				requests.add(executor.submit(() -> request(peer)));
+			}
+		}
+		for (Future<?> request : requests) {
+			try {
+				request.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				// Still in progress, the peer is skipped until it is over
+			} catch (ExecutionException e) {
+				Logger.error("Cluster peer request failed : {}", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Latest buckets received from every peer, null for the peers which never
+	 * answered.
+	 *
+	 * @return
+	 */
+	public PeerBuckets[] getLatest() {
+		PeerBuckets[] latest = new PeerBuckets[peers.length];
+		for (int i = 0; i < peers.length; i++) {
+			latest[i] = peers[i].latest;
+		}
+		return latest;
+	}
+
+	public int getPeerCount() {
+		return peers.length;
+	}
+
+	public int getPeerTimeout() {
+		return peerTimeout;
+	}
+
+	/**
+	 * Number of requests to the peers which failed or timed out.
+	 *
+	 * @return
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	private void request(Peer peer) {
+		long requestedAt = System.currentTimeMillis();
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(peer.url + BUCKETS_PATH).openConnection();
+			connection.setConnectTimeout(peerTimeout);
+			connection.setReadTimeout(peerTimeout);
+			// Reading the whole body lets the connection be reused by the next request
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()))) {
+				peer.latest = new PeerBuckets(peer.url, WindowBuckets.readFrom(in), requestedAt);
+			}
+			if (!peer.reachable) {
+				Logger.info("Cluster peer {} is reachable", peer.url);
+				peer.reachable = true;
+			}
+		} catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			if (peer.reachable) {
+				Logger.warn("Cluster peer {} is unreachable : {}", peer.url, e.toString());
+				peer.reachable = false;
+			}
+		} finally {
+			peer.inFlight.set(false);
+		}
+	}
+
+	/**
+	 * Window buckets of a peer, with the time the request was sent. The buckets
+	 * were copied by the peer after that time, so the age computed from it is an
+	 * upper bound whatever the clock of the peer is.
+	 */
+	public static final class PeerBuckets {
+		private final String url;
+		private final WindowBuckets buckets;
+		private final long requestedAt;
+
+		private PeerBuckets(String url, WindowBuckets buckets, long requestedAt) {
+			this.url = url;
+			this.buckets = buckets;
+			this.requestedAt = requestedAt;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public WindowBuckets getBuckets() {
+			return buckets;
+		}
+
+		public long getRequestedAt() {
+			return requestedAt;
+		}
+	}
+
+	private static final class Peer {
+		private final String url;
+		private final AtomicBoolean inFlight = new AtomicBoolean();
+		// Written by the request of the peer only, one at a time
+		private volatile PeerBuckets latest;
+		private volatile boolean reachable = true;
+
+		private Peer(String url) {
+			this.url = url;
+		}
+	}
+}
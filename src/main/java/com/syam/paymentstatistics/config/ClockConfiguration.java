@@ -0,0 +1,25 @@
+package com.syam.paymentstatistics.config;
+
+import java.time.Clock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Time source of the statistics : the system clock, unless
+ * statistics.replay.enabled is true, ReplayConfiguration then provides a
+ * VirtualClock driven by the recorded traffic.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.replay.enabled", havingValue = "false", matchIfMissing = true)
+public class ClockConfiguration {
+
+	@Bean
+	public Clock clock() {
+		return Clock.systemUTC();
+	}
+}
@@ -0,0 +1,39 @@
+package com.syam.paymentstatistics.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.cluster.ClusterPeers;
+
+/**
+ * Creates the ClusterPeers of the statistics.cluster.* properties, only when
+ * statistics.cluster.enabled is true.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.cluster.enabled", havingValue = "true")
+public class ClusterConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public ClusterPeers clusterPeers(@Value("${statistics.cluster.peers}") String peers,
+			@Value("${statistics.cluster.peer-timeout:250}") int peerTimeout) {
+		List<String> peerUrls = new ArrayList<>();
+		for (String peer : peers.split(",")) {
+			String url = peer.trim();
+			while (url.endsWith("/")) {
+				url = url.substring(0, url.length() - 1);
+			}
+			if (!url.isEmpty()) {
+				peerUrls.add(url);
+			}
+		}
+		return new ClusterPeers(peerUrls, peerTimeout);
+	}
+}
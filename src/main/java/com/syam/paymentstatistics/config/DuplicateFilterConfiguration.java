@@ -0,0 +1,39 @@
+package com.syam.paymentstatistics.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.ingest.BloomDuplicateFilter;
+import com.syam.paymentstatistics.ingest.DuplicateFilter;
+import com.syam.paymentstatistics.ingest.ExactDuplicateFilter;
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * Creates the DuplicateFilter of the statistics.dedup.* properties, only when
+ * statistics.dedup.enabled is true.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.dedup.enabled", havingValue = "true")
+public class DuplicateFilterConfiguration {
+
+	@Bean
+	public DuplicateFilter duplicateFilter(@Value("${statistics.dedup.mode:exact}") String mode,
+			@Value("${statistics.dedup.capacity:600000}") int capacity,
+			@Value("${statistics.dedup.false-positive-rate:0.01}") double falsePositiveRate) {
+		switch (mode) {
+		case "exact":
+			return new ExactDuplicateFilter(Constants.DUPLICATE_PARTITION_DURATION, Constants.STATISTICS_TIME_WINDOW,
+					capacity);
+		case "bloom":
+			return new BloomDuplicateFilter(Constants.DUPLICATE_PARTITION_DURATION, Constants.STATISTICS_TIME_WINDOW,
+					capacity, falsePositiveRate);
+		default:
+			throw new IllegalArgumentException("Unknown duplicate filter mode " + mode);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.syam.paymentstatistics.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.ingest.EventTimeBuffer;
+
+/**
+ * Creates the EventTimeBuffer of the statistics.event-time.* properties, only
+ * when statistics.event-time.enabled is true.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.event-time.enabled", havingValue = "true")
+public class EventTimeConfiguration {
+
+	@Bean
+	public EventTimeBuffer eventTimeBuffer(@Value("${statistics.event-time.max-future-skew:5000}") long maxFutureSkew,
+			@Value("${statistics.event-time.buffer-capacity:65536}") int capacity) {
+		return new EventTimeBuffer(maxFutureSkew, capacity);
+	}
+}
@@ -0,0 +1,31 @@
+package com.syam.paymentstatistics.config;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.journal.TransactionJournal;
+
+/**
+ * Creates the TransactionJournal of the statistics.journal.* properties, only
+ * when statistics.journal.enabled is true.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.journal.enabled", havingValue = "true")
+public class JournalConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public TransactionJournal transactionJournal(@Value("${statistics.journal.directory:journal}") String directory,
+			@Value("${statistics.journal.segment-size:16777216}") long segmentSize,
+			@Value("${statistics.journal.flush-interval:10}") long flushInterval, Clock clock) throws IOException {
+		return new TransactionJournal(Paths.get(directory), segmentSize, flushInterval, clock);
+	}
+}
@@ -0,0 +1,69 @@
+package com.syam.paymentstatistics.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.loadtest.DirectLoadTarget;
+import com.syam.paymentstatistics.loadtest.HttpLoadTarget;
+import com.syam.paymentstatistics.loadtest.LoadGenerator;
+import com.syam.paymentstatistics.loadtest.LoadProfile;
+import com.syam.paymentstatistics.loadtest.LoadTarget;
+import com.syam.paymentstatistics.loadtest.LoadTestRunner;
+
+/**
+ * Runs a load test of the statistics.loadtest.* properties once the
+ * application is ready, only when statistics.loadtest.enabled is true. The
+ * target is either direct, the StatisticsService of this instance, or the
+ * base url of an instance, this one or another.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.loadtest.enabled", havingValue = "true")
+public class LoadTestConfiguration {
+
+	@Bean
+	public LoadTestRunner loadTestRunner(@Value("${statistics.loadtest.target:http://127.0.0.1:8080}") String target,
+			@Value("${statistics.loadtest.timeout:10000}") int timeout,
+			@Value("${statistics.loadtest.exit:true}") boolean exit,
+			@Value("${statistics.loadtest.rate:1000}") double rate,
+			@Value("${statistics.loadtest.warmup:5000}") long warmup,
+			@Value("${statistics.loadtest.duration:30000}") long duration,
+			@Value("${statistics.loadtest.connections:16}") int connections,
+			@Value("${statistics.loadtest.arrival:uniform}") String arrival,
+			@Value("${statistics.loadtest.read-ratio:0.1}") double readRatio,
+			@Value("${statistics.loadtest.batch-size:1}") int batchSize,
+			@Value("${statistics.loadtest.amount-distribution:lognormal}") String amountDistribution,
+			@Value("${statistics.loadtest.amount-scale:100}") double amountScale,
+			@Value("${statistics.loadtest.max-age:70000}") long maxAge,
+			@Value("${statistics.loadtest.future-ratio:0}") double futureRatio,
+			@Value("${statistics.loadtest.max-future:0}") long maxFuture,
+			@Value("${statistics.loadtest.settle:2000}") long settle,
+			@Value("${statistics.loadtest.seed:42}") long seed, StatisticsService statisticsService,
+			ObjectMapper objectMapper) {
+		LoadProfile profile = new LoadProfile();
+		profile.setRate(rate);
+		profile.setWarmup(warmup);
+		profile.setDuration(duration);
+		profile.setConnections(connections);
+		profile.setArrival(LoadProfile.Arrival.valueOf(arrival.toUpperCase()));
+		profile.setReadRatio(readRatio);
+		profile.setBatchSize(batchSize);
+		profile.setAmountDistribution(LoadProfile.AmountDistribution.valueOf(amountDistribution.toUpperCase()));
+		profile.setAmountScale(amountScale);
+		profile.setMaxAge(maxAge);
+		profile.setFutureRatio(futureRatio);
+		profile.setMaxFuture(maxFuture);
+		profile.setSettle(settle);
+		profile.setSeed(seed);
+
+		LoadTarget loadTarget = "direct".equals(target) ? new DirectLoadTarget(statisticsService, objectMapper)
+				: new HttpLoadTarget(target, timeout, objectMapper);
+		return new LoadTestRunner(new LoadGenerator(profile, loadTarget), exit);
+	}
+}
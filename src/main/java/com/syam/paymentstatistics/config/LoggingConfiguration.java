@@ -0,0 +1,29 @@
+package com.syam.paymentstatistics.config;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Applies the statistics.log.* properties to the static Logger.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+public class LoggingConfiguration {
+
+	@Value("${statistics.log.level:info}")
+	private String level;
+
+	@Value("${statistics.log.debug-sample-rate:100}")
+	private int debugSampleRate;
+
+	@PostConstruct
+	public void configureLogger() {
+		Logger.configure(Logger.Level.valueOf(level.trim().toUpperCase()), debugSampleRate);
+	}
+}
@@ -0,0 +1,26 @@
+package com.syam.paymentstatistics.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Creates the StatisticsMetrics of the statistics.metrics.* properties.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+public class MetricsConfiguration {
+
+	@Bean
+	public StatisticsMetrics statisticsMetrics(MeterRegistry meterRegistry,
+			@Value("${statistics.metrics.enabled:true}") boolean enabled,
+			@Value("${statistics.metrics.sample-rate:1024}") int sampleRate) {
+		return enabled ? new StatisticsMetrics(meterRegistry, sampleRate) : StatisticsMetrics.DISABLED;
+	}
+}
@@ -0,0 +1,77 @@
+package com.syam.paymentstatistics.config;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.persistence.TransactionHistory;
+import com.syam.paymentstatistics.persistence.TransactionPersister;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Creates the TransactionPersister and the TransactionHistory of the
+ * statistics.persistence.* properties, only when statistics.persistence.enabled
+ * is true.
+ *
+ * The connection pool is not exposed as a DataSource bean, which would start
+ * the JPA auto-configuration (DataSourceAutoConfiguration is excluded by
+ * PaymentstatisticsApplication), it is only shared by these two.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.persistence.enabled", havingValue = "true")
+public class PersistenceConfiguration {
+
+	private final HikariDataSource dataSource;
+
+	public PersistenceConfiguration(@Value("${statistics.persistence.url}") String url,
+			@Value("${statistics.persistence.username:}") String username,
+			@Value("${statistics.persistence.password:}") String password,
+			@Value("${statistics.persistence.pool-size:4}") int poolSize) {
+		super();
+		HikariConfig config = new HikariConfig();
+		config.setPoolName("statistics-persistence");
+		config.setJdbcUrl(url);
+		config.setUsername(username);
+		config.setPassword(password);
+		// One connection for the writer thread, the others for the range queries
+		config.setMaximumPoolSize(poolSize);
+		// Don't fail the startup when the database is down, the rows are counted as
+		// failed until it is back
+		config.setInitializationFailTimeout(-1);
+		// The writer thread waits that long for a connection when the database is
+		// down, which also bounds the final flush on shutdown
+		config.setConnectionTimeout(5000);
+		this.dataSource = new HikariDataSource(config);
+	}
+
+	@Bean(destroyMethod = "close")
+	public TransactionPersister transactionPersister(
+			@Value("${statistics.persistence.buffer-capacity:65536}") int capacity,
+			@Value("${statistics.persistence.batch-size:1000}") int batchSize,
+			@Value("${statistics.persistence.flush-interval:100}") long flushInterval,
+			StatisticsMetrics statisticsMetrics) {
+		TransactionPersister transactionPersister = new TransactionPersister(dataSource, capacity, batchSize,
+				flushInterval);
+		statisticsMetrics.bindPersistence(transactionPersister);
+		return transactionPersister;
+	}
+
+	@Bean
+	public TransactionHistory transactionHistory() {
+		return new TransactionHistory(dataSource);
+	}
+
+	@PreDestroy
+	public void closeDataSource() {
+		// The persister is closed first, it depends on this configuration
+		dataSource.close();
+	}
+}
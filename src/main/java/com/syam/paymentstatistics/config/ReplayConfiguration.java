@@ -0,0 +1,41 @@
+package com.syam.paymentstatistics.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.replay.ReplayRunner;
+import com.syam.paymentstatistics.replay.TransactionReplayer;
+import com.syam.paymentstatistics.replay.VirtualClock;
+
+/**
+ * Replays the recording of statistics.replay.file on a VirtualClock once the
+ * application is ready, only when statistics.replay.enabled is true. The
+ * VirtualClock replaces the system clock of ClockConfiguration.
+ *
+ * @author syam
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "statistics.replay.enabled", havingValue = "true")
+public class ReplayConfiguration {
+
+	@Bean
+	public VirtualClock clock() {
+		// Stays at 0 until the first transaction of the recording
+		return new VirtualClock(0);
+	}
+
+	@Bean
+	public ReplayRunner replayRunner(@Value("${statistics.replay.file}") String file,
+			@Value("${statistics.replay.report-interval:10000}") long reportInterval,
+			@Value("${statistics.replay.tail:70000}") long tail,
+			@Value("${statistics.replay.exit:true}") boolean exit, StatisticsService statisticsService,
+			VirtualClock clock, ObjectMapper objectMapper) {
+		return new ReplayRunner(new TransactionReplayer(statisticsService, clock, objectMapper, reportInterval, tail),
+				file, exit);
+	}
+}
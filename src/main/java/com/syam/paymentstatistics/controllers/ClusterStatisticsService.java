@@ -0,0 +1,229 @@
+package com.syam.paymentstatistics.controllers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.cluster.ClusterPeers;
+import com.syam.paymentstatistics.cluster.ClusterPeers.PeerBuckets;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
+import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.WindowBuckets;
+import com.syam.paymentstatistics.window.WindowSize;
+
+/**
+ * Statistics of all the nodes of the cluster, when statistics.cluster.enabled
+ * is true. Every node keeps its own window, and serves a copy of its buckets on
+ * GET /cluster/buckets.
+ *
+ * Every refresh-interval, the buckets of the peers are requested in parallel by
+ * ClusterPeers, and merged with the buckets of this node into the snapshot of
+ * every WindowSize, which GET /statistics serves without waiting for any peer.
+ * The served statistics are never older than max-staleness : the buckets of a
+ * peer are left out once they are too old to stay under it until the next
+ * refresh, and the snapshot tells how many nodes it includes. A peer which is
+ * down or slow only leaves its share of the transactions out.
+ *
+ * @author syam
+ *
+ */
+@Service
+public class ClusterStatisticsService {
+
+	@Autowired
+	private StatisticsService statisticsService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private StatisticsMetrics statisticsMetrics;
+
+	@Value("${statistics.cluster.refresh-interval:250}")
+	private long refreshInterval;
+
+	@Value("${statistics.cluster.max-staleness:2000}")
+	private long maxStaleness;
+
+	// Null unless statistics.cluster.enabled is true
+	private ClusterPeers clusterPeers;
+
+	private ScheduledExecutorService clusterScheduler;
+
+	// Latest cluster statistics, never modified once published
+	private volatile ClusterSnapshot clusterSnapshot;
+
+	/**
+	 * Enables the cluster mode. The buckets of a peer are used as long as they are
+	 * younger than max-staleness - refresh-interval - peer timeout, the longest a
+	 * snapshot may then be served, so a peer which answers within the timeout is
+	 * always included.
+	 *
+	 * @param clusterPeers
+	 */
+	@Autowired(required = false)
+	public void setClusterPeers(ClusterPeers clusterPeers) {
+		if (refreshInterval <= 0 || maxStaleness <= refreshInterval + 2L * clusterPeers.getPeerTimeout()) {
+			throw new IllegalArgumentException("Cluster max staleness " + maxStaleness
+					+ " must be longer than the refresh interval " + refreshInterval + " plus twice the peer timeout "
+					+ clusterPeers.getPeerTimeout());
+		}
+		this.clusterPeers = clusterPeers;
+		this.clusterScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "statistics-cluster");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.clusterScheduler.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+		statisticsMetrics.gauge("statistics.cluster.nodes", "Nodes included in the served cluster statistics", this,
+				service -> service.clusterSnapshot != null ? service.clusterSnapshot.getNodes() : 0);
+		statisticsMetrics.gauge("statistics.cluster.peer.failures", "Requests to the cluster peers which failed",
+				clusterPeers, ClusterPeers::getFailureCount);
+		Logger.info("Cluster mode peers : {} refresh interval : {}", clusterPeers.getPeerCount(), refreshInterval);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (clusterScheduler != null) {
+			clusterScheduler.shutdownNow();
+		}
+	}
+
+	public boolean isEnabled() {
+		return clusterPeers != null;
+	}
+
+	/**
+	 * Upper bound of the age of the cluster statistics, in milliseconds.
+	 *
+	 * @return
+	 */
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * Latest statistics of the cluster. The percentiles are not available, the
+	 * buckets exchanged by the nodes don't keep the distribution of the amounts.
+	 *
+	 * @param percentiles
+	 * @return
+	 * @throws ServiceUnavailableException
+	 *             before the first refresh
+	 */
+	public ClusterSnapshot getClusterSnapshot(boolean percentiles) {
+		if (percentiles) {
+			throw new BadRequestException("Percentiles are not available in cluster mode.");
+		}
+		ClusterSnapshot snapshot = clusterSnapshot;
+		if (snapshot == null) {
+			throw new ServiceUnavailableException("Cluster statistics are not ready yet.");
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Buckets of the window of this node only, encoded by WindowBuckets.writeTo(),
+	 * for the other nodes.
+	 *
+	 * @return
+	 */
+	public byte[] getLocalBuckets() {
+		WindowBuckets buckets = statisticsService.getWindowBuckets();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 + buckets.getBucketCount() * 40);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			buckets.writeTo(out);
+		} catch (IOException e) {
+			// Not thrown by a ByteArrayOutputStream
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void refresh() {
+		try {
+			clusterPeers.refresh();
+			long now = System.currentTimeMillis();
+			List<WindowBuckets> nodes = new ArrayList<>(clusterPeers.getPeerCount() + 1);
+			nodes.add(statisticsService.getWindowBuckets());
+			long oldest = now;
+			for (PeerBuckets peer : clusterPeers.getLatest()) {
+				if (peer != null && now - peer.getRequestedAt() <= maxStaleness - refreshInterval
+						- clusterPeers.getPeerTimeout()) {
+					nodes.add(peer.getBuckets());
+					oldest = Math.min(oldest, peer.getRequestedAt());
+				}
+			}
+
+			StatisticsSnapshot[] snapshots = new StatisticsSnapshot[WindowSize.values().length];
+			for (WindowSize windowSize : WindowSize.values()) {
+				StatisticsData statisticsData = new StatisticsData();
+				for (WindowBuckets buckets : nodes) {
+					buckets.collect(now, windowSize.getDuration(), statisticsData);
+				}
+				StatisticsDataResponse response = new StatisticsDataResponse(statisticsData);
+				snapshots[windowSize.ordinal()] = new StatisticsSnapshot(statisticsData, response,
+						objectMapper.writeValueAsBytes(response), oldest);
+			}
+			clusterSnapshot = new ClusterSnapshot(snapshots, nodes.size(), clusterPeers.getPeerCount() + 1);
+		} catch (JsonProcessingException e) {
+			Logger.error("Cluster statistics serialization failed : {}", e.getMessage());
+		} catch (RuntimeException e) {
+			// An exception would cancel the periodic refresh
+			Logger.error("Cluster statistics refresh failed : {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Statistics of every WindowSize merged over the nodes which answered in
+	 * time. The computedAt of the snapshots is the time the oldest buckets
+	 * included were requested.
+	 */
+	public static final class ClusterSnapshot {
+		private final StatisticsSnapshot[] snapshots;
+		private final int nodes;
+		private final int clusterSize;
+
+		private ClusterSnapshot(StatisticsSnapshot[] snapshots, int nodes, int clusterSize) {
+			this.snapshots = snapshots;
+			this.nodes = nodes;
+			this.clusterSize = clusterSize;
+		}
+
+		public StatisticsSnapshot getSnapshot(WindowSize windowSize) {
+			return snapshots[windowSize.ordinal()];
+		}
+
+		/**
+		 * Number of nodes included, this one and the peers which answered in time.
+		 *
+		 * @return
+		 */
+		public int getNodes() {
+			return nodes;
+		}
+
+		public int getClusterSize() {
+			return clusterSize;
+		}
+	}
+}
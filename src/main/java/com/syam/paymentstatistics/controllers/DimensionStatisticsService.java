@@ -0,0 +1,174 @@
+package com.syam.paymentstatistics.controllers;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.Dimension;
+import com.syam.paymentstatistics.pojo.HeavyHitter;
+import com.syam.paymentstatistics.pojo.HeavyHittersResponse;
+import com.syam.paymentstatistics.pojo.KeyedStatisticsResponse;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.HeavyHittersWindow;
+import com.syam.paymentstatistics.window.KeyedWindowStore;
+
+/**
+ * Statistics broken down by merchant, currency and channel. Every dimension has
+ * its own KeyedWindowStore of at most statistics.dimensions.max-keys keys, so
+ * the memory stays bounded whatever the number of distinct keys is. The
+ * statistics of a key cover Constants.STATISTICS_TIME_WINDOW with the
+ * precision of Constants.DIMENSION_BUCKET_DURATION.
+ *
+ * Every dimension also has a HeavyHittersWindow, which answers the top keys by
+ * volume with a fixed cost whatever the number of distinct keys is, even the
+ * keys evicted from the KeyedWindowStore. Its volumes are within
+ * statistics.heavy-hitters.error times the window volume of the exact ones.
+ *
+ * @author syam
+ *
+ */
+@Service
+public class DimensionStatisticsService {
+
+	private final Map<Dimension, KeyedWindowStore> stores = new EnumMap<>(Dimension.class);
+
+	private final Map<Dimension, HeavyHittersWindow> heavyHitters = new EnumMap<>(Dimension.class);
+
+	// Relative error of the heavy hitters, 1 / their capacity
+	private final double heavyHittersError;
+
+	private final Clock clock;
+
+	@Autowired
+	public DimensionStatisticsService(@Value("${statistics.dimensions.max-keys:10000}") int maxKeys,
+			@Value("${statistics.heavy-hitters.error:0.001}") double heavyHittersError,
+			StatisticsMetrics statisticsMetrics, Clock clock) {
+		super();
+		this.clock = clock;
+		if (heavyHittersError <= 0 || heavyHittersError >= 1) {
+			throw new IllegalArgumentException("Invalid heavy hitters error " + heavyHittersError);
+		}
+		int capacity = (int) Math.ceil(1 / heavyHittersError);
+		this.heavyHittersError = 1d / capacity;
+		for (Dimension dimension : Dimension.values()) {
+			stores.put(dimension, new KeyedWindowStore(Constants.DIMENSION_BUCKET_DURATION,
+					Constants.STATISTICS_TIME_WINDOW, maxKeys));
+			heavyHitters.put(dimension, new HeavyHittersWindow(Constants.DIMENSION_BUCKET_DURATION,
+					Constants.STATISTICS_TIME_WINDOW, capacity));
+			statisticsMetrics.bindDimension(dimension.getName(), stores.get(dimension), heavyHitters.get(dimension));
+		}
+		Logger.info("Dimension statistics max keys : {} heavy hitters capacity : {}", maxKeys, capacity);
+	}
+
+	/**
+	 * Adds an accepted transaction to the statistics of each of its keys.
+	 * 
+	 * @param transactionRequest
+	 * @param now
+	 */
+	public void register(TransactionRequest transactionRequest, long now) {
+		for (Dimension dimension : Dimension.values()) {
+			register(dimension, dimension.getKey(transactionRequest), transactionRequest.getAmountUnits(),
+					transactionRequest.getTimestamp(), now);
+		}
+	}
+
+	/**
+	 * @param dimension
+	 * @param key
+	 *            null when the transaction has no key for the dimension
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	public void register(Dimension dimension, String key, long amount, long timestamp, long now) {
+		if (key != null) {
+			stores.get(dimension).add(key, amount, timestamp, now);
+			heavyHitters.get(dimension).add(key, amount, timestamp, now);
+		}
+	}
+
+	/**
+	 * Statistics of one key, in O(1). Unknown keys have empty statistics.
+	 * 
+	 * @param dimension
+	 * @param key
+	 * @return
+	 */
+	public StatisticsDataResponse getStatistics(Dimension dimension, String key) {
+		StatisticsData statisticsData = new StatisticsData();
+		stores.get(dimension).collect(key, clock.millis(), statisticsData);
+		return new StatisticsDataResponse(statisticsData);
+	}
+
+	/**
+	 * The n keys of the dimension with the highest sum, by decreasing sum.
+	 * 
+	 * @param dimension
+	 * @param n
+	 * @return
+	 */
+	public List<KeyedStatisticsResponse> getTopStatistics(Dimension dimension, int n) {
+		if (n < 1 || n > Constants.DIMENSION_TOP_MAX) {
+			throw new BadRequestException("top must be between 1 and " + Constants.DIMENSION_TOP_MAX + ".");
+		}
+		List<KeyedStatisticsResponse> top = new ArrayList<>(n);
+		stores.get(dimension).top(n, clock.millis())
+				.forEach((key, statisticsData) -> top.add(new KeyedStatisticsResponse(key, statisticsData)));
+		return top;
+	}
+
+	/**
+	 * The k keys of the dimension with the highest volume, with their error
+	 * bounds and the memory of the sketch.
+	 * 
+	 * @param dimension
+	 * @param k
+	 * @return
+	 */
+	public HeavyHittersResponse getHeavyHitters(Dimension dimension, int k) {
+		HeavyHittersWindow window = heavyHitters.get(dimension);
+		if (k < 1 || k > window.getCapacity()) {
+			throw new BadRequestException("k must be between 1 and " + window.getCapacity() + ".");
+		}
+		long now = clock.millis();
+		long volume = window.getVolume(now);
+		List<HeavyHitter> top = new ArrayList<>(k);
+		for (HeavyHittersWindow.Estimate estimate : window.top(k, now)) {
+			top.add(new HeavyHitter(estimate.getKey(), CommonUtils.fromUnits(estimate.getVolume()),
+					CommonUtils.fromUnits(estimate.getError())));
+		}
+
+		HeavyHittersResponse response = new HeavyHittersResponse();
+		response.setDimension(dimension.getName());
+		response.setK(k);
+		response.setCapacity(window.getCapacity());
+		response.setRelativeError(heavyHittersError);
+		response.setErrorBound(CommonUtils.fromUnits(volume / window.getCapacity()));
+		response.setWindowVolume(CommonUtils.fromUnits(volume));
+		response.setMemoryBytes(window.getMemoryBytes());
+		response.setHeavyHitters(top);
+		return response;
+	}
+
+	public Dimension resolveDimension(String dimension) {
+		try {
+			return Dimension.parse(dimension);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage() + ". Supported dimensions : merchant, currency, channel.");
+		}
+	}
+}
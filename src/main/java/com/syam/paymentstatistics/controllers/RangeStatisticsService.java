@@ -0,0 +1,59 @@
+package com.syam.paymentstatistics.controllers;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.persistence.TransactionHistory;
+import com.syam.paymentstatistics.pojo.RangeStatisticsResponse;
+
+/**
+ * Statistics of arbitrary past time ranges, read from the rollups of the
+ * persisted transactions. Only available when statistics.persistence.enabled is
+ * true.
+ *
+ * @author syam
+ *
+ */
+@Service
+public class RangeStatisticsService {
+
+	@Autowired(required = false)
+	private TransactionHistory transactionHistory;
+
+	/**
+	 * Statistics of the transactions with a time stamp in [from, to). Both are
+	 * epoch milliseconds or ISO-8601 instants like 2018-07-01T14:00:00Z.
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public RangeStatisticsResponse getStatistics(String from, String to) {
+		if (transactionHistory == null) {
+			throw new ServiceUnavailableException("Range statistics need statistics.persistence.enabled=true.");
+		}
+		long fromTime = parseTime("from", from);
+		long toTime = parseTime("to", to);
+		if (fromTime >= toTime) {
+			throw new BadRequestException("The range start (from) must be before its end (to).");
+		}
+		return new RangeStatisticsResponse(fromTime, toTime, transactionHistory.getStatistics(fromTime, toTime));
+	}
+
+	private static long parseTime(String name, String value) {
+		try {
+			if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+				return Long.parseLong(value);
+			}
+			return Instant.parse(value).toEpochMilli();
+		} catch (NumberFormatException | DateTimeParseException e) {
+			throw new BadRequestException("Invalid " + name + " time " + value
+					+ ". Expected epoch milliseconds or an ISO-8601 instant.");
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.syam.paymentstatistics.controllers;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.syam.paymentstatistics.cluster.ClusterPeers;
+import com.syam.paymentstatistics.controllers.ClusterStatisticsService.ClusterSnapshot;
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.ingest.IngestionQueue;
+import com.syam.paymentstatistics.pojo.BasicResponse;
+import com.syam.paymentstatistics.pojo.HeavyHittersResponse;
+import com.syam.paymentstatistics.pojo.KeyedStatisticsResponse;
+import com.syam.paymentstatistics.pojo.RangeStatisticsResponse;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.pojo.TransactionStatus;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.window.WindowSize;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking (WebFlux / Netty) deployment of the /transactions and
+ * /statistics endpoints, active when the application runs with the reactive
+ * profile (spring.main.web-application-type=reactive). StatisticsController serves the
+ * same endpoints on the servlet stack otherwise.
+ *
+ * Transactions are validated on the event loop and handed off to the
+ * IngestionQueue, the response doesn't wait for the transaction to be applied.
+ * A full queue is answered with 503 (Service Unavailable).
+ *
+ * @author syam
+ *
+ */
+@RestController
+@RequestMapping("/")
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveStatisticsController {
+
+	@Autowired
+	private StatisticsService statisticsService;
+
+	@Autowired
+	private IngestionQueue ingestionQueue;
+
+	@Autowired
+	private DimensionStatisticsService dimensionStatisticsService;
+
+	@Autowired
+	private RangeStatisticsService rangeStatisticsService;
+
+	@Autowired
+	private ClusterStatisticsService clusterStatisticsService;
+
+	@Autowired
+	private StatisticsPublisher statisticsPublisher;
+
+	@RequestMapping(value = "/transactions", method = RequestMethod.POST)
+	public Mono<BasicResponse> createTransaction(@RequestBody Mono<TransactionRequest> transactionRequest) {
+		return transactionRequest.map(request -> {
+			statisticsService.validateTransaction(request);
+			if (!statisticsService.deferFutureTransaction(request, statisticsService.getClock().millis())
+					&& !ingestionQueue.offer(request)) {
+				statisticsService.countTransaction(TransactionStatus.REJECTED);
+				throw new ServiceUnavailableException("Ingestion queue is full.");
+			}
+			statisticsService.countTransaction(TransactionStatus.ACCEPTED);
+			return new BasicResponse();
+		});
+	}
+
+	@RequestMapping(value = "/statistics", method = RequestMethod.GET)
+	public Mono<ResponseEntity<byte[]>> getStatistics(
+			@RequestParam(value = "window", required = false) String window,
+			@RequestParam(value = "percentiles", defaultValue = "false") boolean percentiles) {
+		return Mono.fromSupplier(() -> {
+			WindowSize windowSize = statisticsService.resolveWindowSize(window);
+			if (clusterStatisticsService.isEnabled()) {
+				ClusterSnapshot clusterSnapshot = clusterStatisticsService.getClusterSnapshot(percentiles);
+				StatisticsSnapshot snapshot = clusterSnapshot.getSnapshot(windowSize);
+				return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+						.header(Constants.STATISTICS_AGE_HEADER,
+								String.valueOf(Math.max(0, System.currentTimeMillis() - snapshot.getComputedAt())))
+						.header(Constants.STATISTICS_MAX_STALENESS_HEADER,
+								String.valueOf(clusterStatisticsService.getMaxStaleness()))
+						.header(Constants.STATISTICS_NODES_HEADER,
+								clusterSnapshot.getNodes() + "/" + clusterSnapshot.getClusterSize())
+						.body(snapshot.getJson());
+			}
+			StatisticsSnapshot snapshot = statisticsService.getStatisticsSnapshot(windowSize, percentiles);
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+					.header(Constants.STATISTICS_AGE_HEADER,
+							String.valueOf(
+									Math.max(0, statisticsService.getClock().millis() - snapshot.getComputedAt())))
+					.header(Constants.STATISTICS_MAX_STALENESS_HEADER,
+							String.valueOf(statisticsService.getSnapshotRefreshInterval()))
+					.body(snapshot.getJson());
+		});
+	}
+
+	/**
+	 * The events are written to the response as they are published, each one
+	 * flushed. The shared bytes of an event are wrapped, not copied.
+	 * 
+	 * @param window
+	 * @param interval
+	 * @param response
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/stream", method = RequestMethod.GET)
+	public Mono<Void> streamStatistics(@RequestParam(value = "window", required = false) String window,
+			@RequestParam(value = "interval", required = false) Long interval, ServerHttpResponse response) {
+		WindowSize windowSize = statisticsService.resolveWindowSize(window);
+		Flux<byte[]> events = statisticsPublisher.subscribeFlux(windowSize, interval);
+		response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+		response.getHeaders().setCacheControl(CacheControl.noCache());
+		return response.writeAndFlushWith(events.map(event -> Mono.just(response.bufferFactory().wrap(event))));
+	}
+
+	/**
+	 * Copying the buckets waits for the aggregator in the pipelined window mode,
+	 * it runs on the elastic scheduler instead of the event loop.
+	 * 
+	 * @return
+	 */
+	@RequestMapping(value = ClusterPeers.BUCKETS_PATH, method = RequestMethod.GET)
+	public Mono<ResponseEntity<byte[]>> getClusterBuckets() {
+		return Mono.fromCallable(() -> ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+				.body(clusterStatisticsService.getLocalBuckets())).subscribeOn(Schedulers.elastic());
+	}
+
+	@RequestMapping(value = "/statistics/heavy-hitters", method = RequestMethod.GET)
+	public Mono<HeavyHittersResponse> getHeavyHitters(
+			@RequestParam(value = "dimension", defaultValue = "merchant") String dimension,
+			@RequestParam(value = "k", defaultValue = "20") int k) {
+		return Mono.fromSupplier(() -> dimensionStatisticsService
+				.getHeavyHitters(dimensionStatisticsService.resolveDimension(dimension), k));
+	}
+
+	/**
+	 * The range query blocks on JDBC, it runs on the elastic scheduler instead of
+	 * the event loop.
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/range", method = RequestMethod.GET)
+	public Mono<RangeStatisticsResponse> getRangeStatistics(@RequestParam("from") String from,
+			@RequestParam("to") String to) {
+		return Mono.fromCallable(() -> rangeStatisticsService.getStatistics(from, to))
+				.subscribeOn(Schedulers.elastic());
+	}
+
+	@RequestMapping(value = "/statistics/{dimension}/{key:.+}", method = RequestMethod.GET)
+	public Mono<StatisticsDataResponse> getDimensionStatistics(@PathVariable("dimension") String dimension,
+			@PathVariable("key") String key) {
+		return Mono.fromSupplier(() -> dimensionStatisticsService
+				.getStatistics(dimensionStatisticsService.resolveDimension(dimension), key));
+	}
+
+	@RequestMapping(value = "/statistics/{dimension}", method = RequestMethod.GET)
+	public Mono<List<KeyedStatisticsResponse>> getTopDimensionStatistics(@PathVariable("dimension") String dimension,
+			@RequestParam(value = "top", defaultValue = "10") int top) {
+		return Mono.fromSupplier(() -> dimensionStatisticsService
+				.getTopStatistics(dimensionStatisticsService.resolveDimension(dimension), top));
+	}
+
+	/**
+	 * The reactive error handling of Spring Boot 2.0 ignores @ResponseStatus on
+	 * exceptions, so the status of our exceptions is resolved here.
+	 * 
+	 * @param exception
+	 * @return
+	 */
+	@ExceptionHandler(GenericException.class)
+	public ResponseEntity<BasicResponse> handleException(GenericException exception) {
+		ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(exception.getClass(),
+				ResponseStatus.class);
+		BasicResponse response = new BasicResponse();
+		response.setSuccess(false);
+		return ResponseEntity.status(responseStatus.value()).body(response);
+	}
+
+}
@@ -1,50 +1,230 @@
 package com.syam.paymentstatistics.controllers;
 
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.cluster.ClusterPeers;
+import com.syam.paymentstatistics.controllers.ClusterStatisticsService.ClusterSnapshot;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.ingest.TransactionStreamReader;
 import com.syam.paymentstatistics.pojo.BasicResponse;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.HeavyHittersResponse;
+import com.syam.paymentstatistics.pojo.KeyedStatisticsResponse;
+import com.syam.paymentstatistics.pojo.RangeStatisticsResponse;
 import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
 import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.utils.Constants;
 import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.WindowSize;
 
 @RestController
 @RequestMapping("/")
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class StatisticsController {
 
 	@Autowired
 	private StatisticsService statisticsService;
 
 	@Autowired
-	private TestService testService;
+	private DimensionStatisticsService dimensionStatisticsService;
+
+	@Autowired
+	private RangeStatisticsService rangeStatisticsService;
+
+	@Autowired
+	private ClusterStatisticsService clusterStatisticsService;
+
+	@Autowired
+	private StatisticsPublisher statisticsPublisher;
+
+	@Autowired
+	private ObjectMapper objectMapper;
 
 	@RequestMapping(value = "/transactions", method = RequestMethod.POST)
 	public BasicResponse createNewVideo(@RequestBody TransactionRequest transactionRequest) {
-		System.out
-				.println("Request : " + transactionRequest.toString() + " received at : " + System.currentTimeMillis());
+		Logger.debug("Request received : {}", transactionRequest);
 		BasicResponse response = new BasicResponse();
 		statisticsService.registerTransaction(transactionRequest);
-		Logger.log("Response for transaction : " + transactionRequest.toString() + " done at : "
-				+ System.currentTimeMillis());
+		Logger.debug("Response for transaction : {} done", transactionRequest);
 		return response;
 	}
 
+	/**
+	 * Registers a batch of transactions, either as a JSON array or as
+	 * newline-delimited JSON (one transaction per line). The body is streamed and
+	 * never bound to TransactionRequest objects.
+	 * 
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/transactions/batch", method = RequestMethod.POST, consumes = {
+			MediaType.APPLICATION_JSON_VALUE, Constants.APPLICATION_NDJSON_VALUE })
+	public BatchResponse createTransactions(HttpServletRequest request) throws IOException {
+		try (TransactionStreamReader reader = new TransactionStreamReader(objectMapper.getFactory(),
+				request.getInputStream())) {
+			return statisticsService.registerTransactions(reader);
+		} catch (JsonProcessingException e) {
+			throw new BadRequestException("Invalid transaction in batch : " + e.getOriginalMessage());
+		}
+	}
+
+	/**
+	 * Serves the pre-serialized statistics snapshot. X-Statistics-Age is the age
+	 * of the snapshot and X-Statistics-Max-Staleness its upper bound (0 when the
+	 * statistics are computed for every request), both in milliseconds.
+	 * 
+	 * The window parameter selects the window size (1s, 10s, 60s, 5m or 1h), 60s
+	 * when missing. With percentiles=true the response also has the p50, p95 and
+	 * p99 of the amounts, each within percentiles.relativeError (1/64) of the
+	 * exact value. They are only available from the 10s window up to the 60s
+	 * one, and the window then starts at a whole second, up to one second early.
+	 * 
+	 * In cluster mode the statistics are those of all the nodes, without
+	 * percentiles, and X-Statistics-Nodes tells how many nodes answered in time
+	 * out of the cluster size, like 2/3.
+	 * 
+	 * @param window
+	 * @param percentiles
+	 * @return
+	 */
 	@RequestMapping(value = "/statistics", method = RequestMethod.GET)
-	public StatisticsDataResponse getStatistics() {
-		Logger.log("Request for statistics received at : " + System.currentTimeMillis());
-		StatisticsDataResponse response = statisticsService.getStatistics();
-		Logger.log("Response for statistics completed at : " + System.currentTimeMillis() + " response : "
-				+ response.toString());
-		return response;
+	public ResponseEntity<byte[]> getStatistics(@RequestParam(value = "window", required = false) String window,
+			@RequestParam(value = "percentiles", defaultValue = "false") boolean percentiles) {
+		WindowSize windowSize = statisticsService.resolveWindowSize(window);
+		if (clusterStatisticsService.isEnabled()) {
+			ClusterSnapshot clusterSnapshot = clusterStatisticsService.getClusterSnapshot(percentiles);
+			StatisticsSnapshot snapshot = clusterSnapshot.getSnapshot(windowSize);
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+					.header(Constants.STATISTICS_AGE_HEADER,
+							String.valueOf(Math.max(0, System.currentTimeMillis() - snapshot.getComputedAt())))
+					.header(Constants.STATISTICS_MAX_STALENESS_HEADER,
+							String.valueOf(clusterStatisticsService.getMaxStaleness()))
+					.header(Constants.STATISTICS_NODES_HEADER,
+							clusterSnapshot.getNodes() + "/" + clusterSnapshot.getClusterSize())
+					.body(snapshot.getJson());
+		}
+		StatisticsSnapshot snapshot = statisticsService.getStatisticsSnapshot(windowSize, percentiles);
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+				.header(Constants.STATISTICS_AGE_HEADER,
+						String.valueOf(
+								Math.max(0, statisticsService.getClock().millis() - snapshot.getComputedAt())))
+				.header(Constants.STATISTICS_MAX_STALENESS_HEADER,
+						String.valueOf(statisticsService.getSnapshotRefreshInterval()))
+				.body(snapshot.getJson());
+	}
+
+	/**
+	 * Server-Sent Events stream of the statistics of the window (like GET
+	 * /statistics, without percentiles), an event every interval milliseconds
+	 * (statistics.push.default-interval when missing). A client slower than its
+	 * interval skips the events it can't take, it always gets the latest
+	 * statistics.
+	 * 
+	 * @param window
+	 * @param interval
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/stream", method = RequestMethod.GET)
+	public ResponseEntity<ResponseBodyEmitter> streamStatistics(
+			@RequestParam(value = "window", required = false) String window,
+			@RequestParam(value = "interval", required = false) Long interval) {
+		WindowSize windowSize = statisticsService.resolveWindowSize(window);
+		return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).cacheControl(CacheControl.noCache())
+				.body(statisticsPublisher.subscribeEmitter(windowSize, interval));
+	}
+
+	/**
+	 * Buckets of the statistics window of this node, encoded by
+	 * WindowBuckets.writeTo(), for the other nodes of the cluster.
+	 * 
+	 * @return
+	 */
+	@RequestMapping(value = ClusterPeers.BUCKETS_PATH, method = RequestMethod.GET)
+	public ResponseEntity<byte[]> getClusterBuckets() {
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+				.body(clusterStatisticsService.getLocalBuckets());
+	}
+
+	/**
+	 * Approximate top k keys of the dimension by volume over the last 60 seconds,
+	 * from a sketch whose cost doesn't depend on the number of keys. Every volume
+	 * is within errorBound of the exact one.
+	 * 
+	 * @param dimension
+	 * @param k
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/heavy-hitters", method = RequestMethod.GET)
+	public HeavyHittersResponse getHeavyHitters(
+			@RequestParam(value = "dimension", defaultValue = "merchant") String dimension,
+			@RequestParam(value = "k", defaultValue = "20") int k) {
+		return dimensionStatisticsService.getHeavyHitters(dimensionStatisticsService.resolveDimension(dimension), k);
+	}
+
+	/**
+	 * Statistics of the persisted transactions with a time stamp in [from, to),
+	 * given as epoch milliseconds or ISO-8601 instants. The range is answered from
+	 * the per hour, minute and second rollups, refined with the raw rows at its
+	 * sub-second edges.
+	 * 
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/range", method = RequestMethod.GET)
+	public RangeStatisticsResponse getRangeStatistics(@RequestParam("from") String from,
+			@RequestParam("to") String to) {
+		return rangeStatisticsService.getStatistics(from, to);
+	}
+
+	/**
+	 * Statistics of one merchant, currency or channel over the last 60 seconds,
+	 * with a precision of Constants.DIMENSION_BUCKET_DURATION. The key pattern
+	 * keeps the dots of keys like "shop.example.com".
+	 * 
+	 * @param dimension
+	 * @param key
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/{dimension}/{key:.+}", method = RequestMethod.GET)
+	public StatisticsDataResponse getDimensionStatistics(@PathVariable("dimension") String dimension,
+			@PathVariable("key") String key) {
+		return dimensionStatisticsService.getStatistics(dimensionStatisticsService.resolveDimension(dimension), key);
 	}
 
-	@RequestMapping(value = "/test", method = RequestMethod.GET)
-	public BasicResponse testStatistics() throws InterruptedException {
-		testService.testRandomStatistics();
-		return new BasicResponse();
+	/**
+	 * The top keys of the dimension by sum over the last 60 seconds.
+	 * 
+	 * @param dimension
+	 * @param top
+	 * @return
+	 */
+	@RequestMapping(value = "/statistics/{dimension}", method = RequestMethod.GET)
+	public List<KeyedStatisticsResponse> getTopDimensionStatistics(@PathVariable("dimension") String dimension,
+			@RequestParam(value = "top", defaultValue = "10") int top) {
+		return dimensionStatisticsService.getTopStatistics(dimensionStatisticsService.resolveDimension(dimension),
+				top);
 	}
 
 }
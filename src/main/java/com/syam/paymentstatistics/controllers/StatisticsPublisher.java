@@ -0,0 +1,269 @@
+package com.syam.paymentstatistics.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
+import com.syam.paymentstatistics.push.EmitterSubscriber;
+import com.syam.paymentstatistics.push.SinkSubscriber;
+import com.syam.paymentstatistics.push.StatisticsSubscriber;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.WindowSize;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Pushes the statistics to the subscribers of GET /statistics/stream as
+ * Server-Sent Events, instead of having them poll GET /statistics.
+ *
+ * A single publisher thread wakes up every statistics.push.tick milliseconds.
+ * The statistics of a window size are read at most once per tick, only if a
+ * subscriber of that window is due, and the same event bytes are handed to
+ * every due subscriber. Without the snapshot refresher
+ * (statistics.snapshot.refresh-interval 0) the read collects the window under
+ * its lock, once per tick whatever the number of subscribers, otherwise it is
+ * only a volatile read of the latest snapshot. The statistics are only
+ * serialized again once they changed. Every subscriber has its own interval, a
+ * multiple of the tick, and a subscriber still busy with its previous event is
+ * skipped, so the slow ones only ever get the latest statistics. In cluster
+ * mode the events carry the statistics of the cluster, like GET /statistics.
+ *
+ * @author syam
+ *
+ */
+@Service
+public class StatisticsPublisher {
+
+	private static final byte[] EVENT_PREFIX = "event: statistics\ndata: ".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final StatisticsService statisticsService;
+
+	private final ClusterStatisticsService clusterStatisticsService;
+
+	private final long tick;
+
+	private final long defaultInterval;
+
+	private final int maxSubscribers;
+
+	private final Set<StatisticsSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	private final ScheduledExecutorService publisherScheduler;
+
+	// Threads writing the events of the servlet subscribers, whose writes block
+	private final ExecutorService sender;
+
+	// Latest snapshot and event of every WindowSize (indexed by ordinal). Only
+	// used by the publisher thread.
+	private final StatisticsSnapshot[] snapshots = new StatisticsSnapshot[WindowSize.values().length];
+
+	private final byte[][] events = new byte[WindowSize.values().length][];
+
+	// Written by the publisher thread only
+	private volatile long eventCount;
+
+	private volatile long droppedCount;
+
+	private volatile long serializationCount;
+
+	@Autowired
+	public StatisticsPublisher(@Value("${statistics.push.tick:100}") long tick,
+			@Value("${statistics.push.default-interval:1000}") long defaultInterval,
+			@Value("${statistics.push.max-subscribers:10000}") int maxSubscribers,
+			@Value("${statistics.push.senders:4}") int senders, StatisticsService statisticsService,
+			ClusterStatisticsService clusterStatisticsService, StatisticsMetrics statisticsMetrics) {
+		super();
+		if (tick <= 0 || defaultInterval < tick || maxSubscribers <= 0 || senders <= 0) {
+			throw new IllegalArgumentException("Invalid push tick " + tick + " default interval " + defaultInterval
+					+ " max subscribers " + maxSubscribers + " or senders " + senders);
+		}
+		this.tick = tick;
+		this.defaultInterval = defaultInterval;
+		this.maxSubscribers = maxSubscribers;
+		this.statisticsService = statisticsService;
+		this.clusterStatisticsService = clusterStatisticsService;
+		this.publisherScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "statistics-publisher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger senderCount = new AtomicInteger();
+		this.sender = Executors.newFixedThreadPool(senders, runnable -> {
+			Thread thread = new Thread(runnable, "statistics-push-sender-" + senderCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		statisticsMetrics.gauge("statistics.push.subscribers", "Subscribers of the pushed statistics",
+				subscriberCount, AtomicInteger::get);
+		statisticsMetrics.gauge("statistics.push.events", "Statistics events sent to the subscribers", this,
+				publisher -> publisher.eventCount);
+		statisticsMetrics.gauge("statistics.push.dropped",
+				"Statistics events not sent because the subscriber was still busy with the previous one", this,
+				publisher -> publisher.droppedCount);
+		statisticsMetrics.gauge("statistics.push.serializations", "Statistics serialized into an event", this,
+				publisher -> publisher.serializationCount);
+	}
+
+	@PostConstruct
+	public void start() {
+		publisherScheduler.scheduleAtFixedRate(this::run, tick, tick, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		publisherScheduler.shutdownNow();
+		sender.shutdownNow();
+	}
+
+	/**
+	 * Subscribes a servlet client, which is sent the events of the window size
+	 * every interval milliseconds.
+	 * 
+	 * @param windowSize
+	 * @param interval
+	 *            null for statistics.push.default-interval
+	 * @return
+	 */
+	public ResponseBodyEmitter subscribeEmitter(WindowSize windowSize, Long interval) {
+		long resolvedInterval = resolveInterval(interval);
+		// The subscription lasts until the client disconnects
+		ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+		subscribe(new EmitterSubscriber(windowSize, resolvedInterval, emitter, sender));
+		return emitter;
+	}
+
+	/**
+	 * Subscribes a reactive client, the events of the window size are emitted
+	 * every interval milliseconds as long as the flux is subscribed.
+	 * 
+	 * @param windowSize
+	 * @param interval
+	 *            null for statistics.push.default-interval
+	 * @return
+	 */
+	public Flux<byte[]> subscribeFlux(WindowSize windowSize, Long interval) {
+		long resolvedInterval = resolveInterval(interval);
+		reserve();
+		return Flux.create(sink -> add(new SinkSubscriber(windowSize, resolvedInterval, sink)),
+				FluxSink.OverflowStrategy.LATEST);
+	}
+
+	void subscribe(StatisticsSubscriber subscriber) {
+		reserve();
+		add(subscriber);
+	}
+
+	private void reserve() {
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			throw new ServiceUnavailableException("Too many statistics subscribers.");
+		}
+	}
+
+	private void add(StatisticsSubscriber subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	private long resolveInterval(Long interval) {
+		if (interval == null) {
+			return defaultInterval;
+		}
+		if (interval < tick || interval > Constants.STATISTICS_TIME_WINDOW) {
+			throw new BadRequestException(
+					"The interval must be between " + tick + " and " + Constants.STATISTICS_TIME_WINDOW + " ms.");
+		}
+		return interval;
+	}
+
+	public int getSubscriberCount() {
+		return subscriberCount.get();
+	}
+
+	private void run() {
+		try {
+			publish(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+		} catch (GenericException e) {
+			// The cluster statistics are not ready yet
+			Logger.debug("Statistics not published : {}", e.getMessage());
+		} catch (RuntimeException e) {
+			// An exception would cancel the periodic publication
+			Logger.error("Statistics publication failed : {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * One tick of the publisher : the due subscribers are offered the event of
+	 * their window size, read and serialized at most once, and the closed ones
+	 * are dropped.
+	 * 
+	 * @param now
+	 *            in milliseconds of System.nanoTime()
+	 */
+	void publish(long now) {
+		boolean[] read = new boolean[WindowSize.values().length];
+		for (StatisticsSubscriber subscriber : subscribers) {
+			if (subscriber.isClosed()) {
+				if (subscribers.remove(subscriber)) {
+					subscriberCount.decrementAndGet();
+				}
+				continue;
+			}
+			if (!subscriber.isDue(now)) {
+				continue;
+			}
+			int index = subscriber.getWindowSize().ordinal();
+			if (!read[index]) {
+				refreshEvent(subscriber.getWindowSize());
+				read[index] = true;
+			}
+			if (subscriber.offer(events[index], now)) {
+				eventCount++;
+			} else {
+				droppedCount++;
+			}
+		}
+	}
+
+	private void refreshEvent(WindowSize windowSize) {
+		int index = windowSize.ordinal();
+		StatisticsSnapshot previous = snapshots[index];
+		StatisticsSnapshot snapshot = clusterStatisticsService.isEnabled()
+				? clusterStatisticsService.getClusterSnapshot(false).getSnapshot(windowSize)
+				: statisticsService.getStatisticsSnapshot(windowSize, previous);
+		snapshots[index] = snapshot;
+		if (previous != null && previous.hasSameStatistics(snapshot.getStatisticsData())) {
+			return;
+		}
+		byte[] json = snapshot.getJson();
+		byte[] event = new byte[EVENT_PREFIX.length + json.length + EVENT_SUFFIX.length];
+		System.arraycopy(EVENT_PREFIX, 0, event, 0, EVENT_PREFIX.length);
+		System.arraycopy(json, 0, event, EVENT_PREFIX.length, json.length);
+		System.arraycopy(EVENT_SUFFIX, 0, event, EVENT_PREFIX.length + json.length, EVENT_SUFFIX.length);
+		events[index] = event;
+		serializationCount++;
+	}
+}
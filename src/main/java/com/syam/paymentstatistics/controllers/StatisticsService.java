@@ -1,24 +1,45 @@
 package com.syam.paymentstatistics.controllers;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.time.Clock;
 import java.util.List;
-import java.util.TreeMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.google.common.util.concurrent.AtomicDouble;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.exceptions.NoContentResponse;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.ingest.DuplicateFilter;
+import com.syam.paymentstatistics.ingest.EventTimeBuffer;
+import com.syam.paymentstatistics.ingest.TransactionStreamReader;
+import com.syam.paymentstatistics.journal.TransactionJournal;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.persistence.TransactionPersister;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.Dimension;
 import com.syam.paymentstatistics.pojo.StatisticsData;
 import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
 import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.pojo.TransactionStatus;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
 import com.syam.paymentstatistics.utils.Logger;
+import com.syam.paymentstatistics.window.PipelinedStatisticsWindow;
+import com.syam.paymentstatistics.window.StatisticsWindow;
+import com.syam.paymentstatistics.window.WindowBuckets;
+import com.syam.paymentstatistics.window.WindowMode;
+import com.syam.paymentstatistics.window.WindowSize;
 
 /**
  * @author syam
@@ -27,342 +48,725 @@ import com.syam.paymentstatistics.utils.Logger;
 @Service
 public class StatisticsService {
 
-	private static final ScheduledExecutorService SCHEDULED_POOL = Executors.newScheduledThreadPool(10);
+	// Sliding window of per bucket aggregates covering
+	// Constants.STATISTICS_TIME_WINDOW, rolled up in coarser buckets up to
+	// Constants.STATISTICS_MAX_TIME_WINDOW, so that every WindowSize is served by
+	// the same window. The implementation is selected with the
+	// statistics.window.mode property (locked, striped or pipelined). Expired
+	// buckets are reset lazily when their slot is reused, so there is no
+	// background task removing transactions from the window.
+	private final StatisticsWindow statisticsWindow;
+
+	private final ObjectMapper objectMapper;
+
+	// Time source of the window, the validation and the snapshots. The system
+	// clock, or a VirtualClock when recorded traffic is replayed.
+	private final Clock clock;
+
+	// Counters, latency histograms and lock timings. StatisticsMetrics.DISABLED
+	// when statistics.metrics.enabled is false.
+	private final StatisticsMetrics statisticsMetrics;
+
+	// Interval at which statisticsSnapshot is recomputed. 0 disables the
+	// snapshot, every read computes the statistics.
+	private final long snapshotRefreshInterval;
+
+	private final ScheduledExecutorService snapshotScheduler;
+
+	// Latest statistics of every WindowSize (indexed by ordinal), with their JSON
+	// serialization. Readers only do a volatile read, they are never blocked by
+	// the writers. The array is never modified once published.
+	private volatile StatisticsSnapshot[] statisticsSnapshots;
+
+	// Per merchant, currency and channel statistics. Not set when the service is
+	// built outside of Spring, the transactions are then only added to the
+	// statistics window.
+	private DimensionStatisticsService dimensionStatisticsService;
+
+	// Write-ahead log of the accepted transactions, null unless
+	// statistics.journal.enabled is true.
+	private TransactionJournal transactionJournal;
+
+	// Asynchronous writer of the accepted transactions to the transactionamount
+	// table, set only when statistics.persistence.enabled is true.
+	@Autowired(required = false)
+	private TransactionPersister transactionPersister;
+
+	// Event-time mode, null unless statistics.event-time.enabled is true. Future
+	// dated transactions wait in the buffer until their time stamp is reached,
+	// instead of being counted in the current bucket.
+	private EventTimeBuffer eventTimeBuffer;
+
+	private ScheduledExecutorService eventTimeScheduler;
+
+	// Ids of the transactions applied over the window, null unless
+	// statistics.dedup.enabled is true. A transaction with an id already seen is
+	// acknowledged but not counted again.
+	private DuplicateFilter duplicateFilter;
+
+	// Service on the system clock, for the benchmarks and tests
+	public StatisticsService(String windowMode, long snapshotRefreshInterval, ObjectMapper objectMapper,
+			StatisticsMetrics statisticsMetrics) {
+		this(windowMode, snapshotRefreshInterval, objectMapper, statisticsMetrics, Clock.systemUTC());
+	}
+
+	@Autowired
+	public StatisticsService(@Value("${statistics.window.mode:locked}") String windowMode,
+			@Value("${statistics.snapshot.refresh-interval:0}") long snapshotRefreshInterval,
+			ObjectMapper objectMapper, StatisticsMetrics statisticsMetrics, Clock clock) {
+		super();
+		this.clock = clock;
+		this.statisticsWindow = WindowMode.fromProperty(windowMode).create(statisticsMetrics, clock);
+		this.objectMapper = objectMapper;
+		this.statisticsMetrics = statisticsMetrics;
+		this.snapshotRefreshInterval = snapshotRefreshInterval;
+		this.statisticsSnapshots = computeSnapshots(clock.millis(), null);
+		if (snapshotRefreshInterval > 0) {
+			this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "statistics-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.snapshotScheduler.scheduleAtFixedRate(this::refreshSnapshot, snapshotRefreshInterval,
+					snapshotRefreshInterval, TimeUnit.MILLISECONDS);
+		} else {
+			this.snapshotScheduler = null;
+		}
 
-	// STATISTICS_DATA_LOCK ensures the thread safety for read/write for this
-	// object.
-	private static final StatisticsData STATISTICS_DATA = new StatisticsData();
+		statisticsMetrics.bindWindow(statisticsWindow, clock);
+		if (statisticsWindow instanceof PipelinedStatisticsWindow) {
+			statisticsMetrics.bindQueue("pipeline", (PipelinedStatisticsWindow) statisticsWindow,
+					PipelinedStatisticsWindow::getQueueDepth);
+		}
+		if (snapshotRefreshInterval > 0) {
+			statisticsMetrics.gauge("statistics.snapshot.age", "Age of the served statistics, in milliseconds", this,
+					service -> service.clock.millis()
+							- service.statisticsSnapshots[WindowSize.DEFAULT.ordinal()].getComputedAt());
+		}
+		Logger.info("Statistics window mode : {} snapshot refresh interval : {}", windowMode,
+				snapshotRefreshInterval);
+	}
+
+	/**
+	 * Replays the transactions journaled by the previous runs which are still in
+	 * the window, then journals the new ones. Only the statistics window is
+	 * restored, the journal doesn't keep the dimension keys.
+	 * 
+	 * @param transactionJournal
+	 */
+	@Autowired(required = false)
+	public void setTransactionJournal(TransactionJournal transactionJournal) {
+		long start = System.currentTimeMillis();
+		int segments = transactionJournal.replay(clock.millis(),
+				(amounts, timestamps, length) -> statisticsWindow.addAll(amounts, timestamps, length,
+						clock.millis()));
+		Logger.info("Replayed {} journal segments in {} ms", segments, System.currentTimeMillis() - start);
+		this.transactionJournal = transactionJournal;
+	}
 
-	// SCHEDULED_TASK_FUTURE holds the reference to the next scheduled task
-	private static volatile ScheduledFuture<?> SCHEDULED_TASK_FUTURE;
+	/**
+	 * Whether the statistics only change on the calling threads, at the time they
+	 * read from the clock. The pipelined window and the snapshot refresher update
+	 * them on their own threads, at whatever time these threads run, so the same
+	 * calls on a virtual clock don't always give the same statistics.
+	 * 
+	 * @return
+	 */
+	public boolean isDeterministic() {
+		return !(statisticsWindow instanceof PipelinedStatisticsWindow) && snapshotRefreshInterval <= 0;
+	}
 
-	// Although tree map is not thread-safe, we are using external locks to ensure
-	// no two threads read/write to this object. REMAINING_REQUESTS_LOCK variable
-	// handles the locks for this map
-	private static TreeMap<Long, List<TransactionRequest>> REMAINING_REQUESTS = new TreeMap<Long, List<TransactionRequest>>();
+	/**
+	 * Adds the accepted transactions to the per dimension statistics as well.
+	 * 
+	 * @param dimensionStatisticsService
+	 */
+	@Autowired(required = false)
+	public void setDimensionStatisticsService(DimensionStatisticsService dimensionStatisticsService) {
+		this.dimensionStatisticsService = dimensionStatisticsService;
+	}
 
-	// Although tree map is not thread-safe, we are using external locks to ensure
-	// no two threads read/write to this object.
-	private static TreeMap<Double, List<Long>> ELIGIBLE_MIN_MAX_MAP = new TreeMap<Double, List<Long>>();
+	/**
+	 * Enables the event-time mode : the future dated transactions are released
+	 * from the buffer every Constants.STATISTICS_BUCKET_DURATION, once the current
+	 * time reached their time stamp.
+	 * 
+	 * @param eventTimeBuffer
+	 */
+	@Autowired(required = false)
+	public void setEventTimeBuffer(EventTimeBuffer eventTimeBuffer) {
+		this.eventTimeBuffer = eventTimeBuffer;
+		this.eventTimeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "statistics-event-time");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.eventTimeScheduler.scheduleWithFixedDelay(this::releaseDueTransactions,
+				Constants.STATISTICS_BUCKET_DURATION, Constants.STATISTICS_BUCKET_DURATION, TimeUnit.MILLISECONDS);
+		statisticsMetrics.bindQueue("event-time", eventTimeBuffer, EventTimeBuffer::size);
+		statisticsMetrics.gauge("statistics.event-time.overflows",
+				"Future dated transactions rejected because the event-time buffer was full", eventTimeBuffer,
+				EventTimeBuffer::getOverflowCount);
+		Logger.info("Event-time mode max future skew : {} buffer capacity : {}", eventTimeBuffer.getMaxFutureSkew(),
+				eventTimeBuffer.getCapacity());
+	}
 
-	// 1. If we read the STATISTICS_DATA when a write operation is going on, the
-	// values in the object may be corrupted with only sum field getting updated but
-	// not the subsequent fields. So it is important not to read when there is a
-	// write operation.
-	// 2. Having multiple writes simultaneously can result in data loss as the
-	// latest write can override the values instead of adding to it. So it is
-	// important to maintain mutual exclusive lock on writes.
-	// 3. Multiple reads can happen simultaneously when there is write happening as
-	// it wont be modifying the object.
-	// Hence ReentrantReadWriteLock is the right lock for this use case.
-	private static final ReadWriteLock STATISTICS_DATA_LOCK = new ReentrantReadWriteLock();
+	/**
+	 * Enables the duplicate filter : a transaction with an id is only applied if
+	 * the id was not applied over the window yet.
+	 * 
+	 * @param duplicateFilter
+	 */
+	@Autowired(required = false)
+	public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+		this.duplicateFilter = duplicateFilter;
+		statisticsMetrics.gauge("statistics.dedup.ids", "Transaction ids remembered by the duplicate filter",
+				duplicateFilter, filter -> filter.size(clock.millis()));
+		statisticsMetrics.gauge("statistics.dedup.duplicates", "Transactions dropped as duplicates", duplicateFilter,
+				DuplicateFilter::getDuplicateCount);
+		statisticsMetrics.gauge("statistics.dedup.overflows",
+				"Transaction ids not remembered because the duplicate filter was full", duplicateFilter,
+				DuplicateFilter::getOverflowCount);
+		statisticsMetrics.gauge("statistics.dedup.false-positive-rate",
+				"Estimated probability for a new transaction to be dropped as a duplicate", duplicateFilter,
+				DuplicateFilter::getFalsePositiveRate);
+		statisticsMetrics.gauge("statistics.dedup.memory", "Memory of the duplicate filter, in bytes", duplicateFilter,
+				DuplicateFilter::getMemoryBytes);
+		Logger.info("Duplicate filter mode : {} memory : {} bytes", duplicateFilter.getMode(),
+				duplicateFilter.getMemoryBytes());
+	}
 
-	// This lock is used to ensure thread safety for REMAINING_REQUESTS map. We are
-	// only using the Write lock every where for now.
-	private static final ReadWriteLock REMAINING_REQUESTS_LOCK = new ReentrantReadWriteLock();
+	@PreDestroy
+	public void shutdown() {
+		if (snapshotScheduler != null) {
+			snapshotScheduler.shutdownNow();
+		}
+		if (eventTimeScheduler != null) {
+			eventTimeScheduler.shutdownNow();
+		}
+		statisticsWindow.close();
+	}
 
 	/**
 	 * This is invoked directly by the POST /transaction API. We validate the
-	 * request at TransactionRequest.validate() where we discard requests older than
+	 * request at TransactionRequest.validate(now) where we discard requests older than
 	 * 60 seconds. This interval is configurable at
-	 * Constants.TRANSACTION_ACCEPTANCE_DURATION. Post validation, we update
-	 * STATISTICS_DATA object.
+	 * Constants.TRANSACTION_ACCEPTANCE_DURATION. Post validation, we add the
+	 * transaction to the bucket of its time stamp in the statistics window.
 	 * 
 	 * @param transactionRequest
 	 */
 	public void registerTransaction(TransactionRequest transactionRequest) {
-		Logger.log("Registering request : " + transactionRequest.toString());
+		Logger.debug("Registering request : {}", transactionRequest);
+		long start = statisticsMetrics.startTimer();
 
 		// Validate request
-		transactionRequest.validate();
+		validateTransaction(transactionRequest);
 
-		// Apply the transaction amount on the statistics data object
+		// Apply the transaction amount on the statistics window
 		applyTransaction(transactionRequest);
-		Logger.log("Registering done for request : " + transactionRequest.toString() + " object : "
-				+ STATISTICS_DATA.toString());
+		statisticsMetrics.countTransactions(TransactionStatus.ACCEPTED, 1);
+		statisticsMetrics.recordIngestion(start);
+		Logger.debug("Registering done for request : {}", transactionRequest);
 	}
 
 	/**
-	 * This is invoked directly by the GET statistics API. STATISTICS_DATA_LOCK
-	 * ensures that no one is updating the data while reading. This method is
-	 * guaranteed to be O(1) as there is absolutely no other operation performed in
-	 * this method. The only overhead is obtaining the STATISTICS_DATA_LOCK datalock
-	 * for reading.
+	 * Validates the request with TransactionRequest.validate(now) and counts the
+	 * refusals in the metrics. In event-time mode, a time stamp more than the
+	 * allowed skew ahead of the current time is refused as well. A valid
+	 * transaction may still be rejected for lack of room, the caller counts it
+	 * as accepted with countTransaction() once it was handed off.
 	 * 
-	 * @return
+	 * @param transactionRequest
 	 */
-	public StatisticsDataResponse getStatistics() {
-		STATISTICS_DATA_LOCK.readLock().lock();
-		StatisticsDataResponse statisticsData = new StatisticsDataResponse(STATISTICS_DATA);
-		STATISTICS_DATA_LOCK.readLock().unlock();
-		return statisticsData;
+	public void validateTransaction(TransactionRequest transactionRequest) {
+		try {
+			transactionRequest.validate(clock.millis());
+		} catch (BadRequestException e) {
+			statisticsMetrics.countTransactions(TransactionStatus.INVALID, 1);
+			throw e;
+		} catch (NoContentResponse e) {
+			statisticsMetrics.countTransactions(TransactionStatus.TOO_OLD, 1);
+			throw e;
+		}
+		if (eventTimeBuffer != null
+				&& eventTimeBuffer.isTooFuture(transactionRequest.getTimestamp(), clock.millis())) {
+			statisticsMetrics.countTransactions(TransactionStatus.TOO_FUTURE, 1);
+			throw new BadRequestException(
+					"Transaction is more than " + eventTimeBuffer.getMaxFutureSkew() + " ms in the future.");
+		}
 	}
 
 	/**
-	 * For every new transaction, this method obtains the STATISTICS_DATA_LOCK lock,
-	 * updates the STATISTICS_DATA object accordingly, add the future transaction
-	 * removal request to the REMAINING_REQUESTS and schedules a task if not present
-	 * already.
+	 * Counts the outcome of a transaction validated with validateTransaction(),
+	 * for the callers which apply it on their own.
 	 * 
-	 * @param transactionRequest
+	 * @param status
 	 */
-	private static void applyTransaction(TransactionRequest transactionRequest) {
-		Logger.log("Applying transaction : " + transactionRequest.getAmount());
-		// Update statistics object with the transaction values
-		STATISTICS_DATA_LOCK.writeLock().lock();
-		// Update sum and avg
-		STATISTICS_DATA.addTranscation(transactionRequest.getAmount());
-
-		// Update min and max
-		if (STATISTICS_DATA.getMin() == null) {
-			STATISTICS_DATA.setMin(new AtomicDouble(transactionRequest.getAmount()));
-			addTrancationEntryToMinMaxMap(transactionRequest);
-		} else {
-			double existingMin = STATISTICS_DATA.getMin().doubleValue();
-			if (transactionRequest.getAmount() < existingMin) {
-				STATISTICS_DATA.setMin(new AtomicDouble(transactionRequest.getAmount()));
-				addTrancationEntryToMinMaxMap(transactionRequest);
-			} else {
-				// Check if it is required to store the key. We don't need to store this entry
-				// if there is already a minimum (than the transaction amount) element existing
-				// after the transaction time stamp
-				Iterator<Double> minIterator = ELIGIBLE_MIN_MAX_MAP.navigableKeySet().iterator();
-				boolean addTranscationForMin = true;
-				while (minIterator.hasNext()) {
-					Double value = minIterator.next();
-					if (value > transactionRequest.getAmount()) {
-						break;
-					}
-
-					if (ELIGIBLE_MIN_MAX_MAP.get(value).stream()
-							.anyMatch(a -> a.longValue() > transactionRequest.getTimestamp())) {
-						addTranscationForMin = false;
-						break;
-					}
-				}
+	public void countTransaction(TransactionStatus status) {
+		statisticsMetrics.countTransactions(status, 1);
+	}
 
-				if (addTranscationForMin) {
-					addTrancationEntryToMinMaxMap(transactionRequest);
-				}
-			}
+	/**
+	 * In event-time mode, holds a validated transaction whose time stamp is ahead
+	 * of now in the event-time buffer until the time stamp is reached.
+	 * 
+	 * @param transactionRequest
+	 * @param now
+	 * @return false if the transaction is not deferred and has to be applied now
+	 * @throws ServiceUnavailableException
+	 *             when the event-time buffer is full, the transaction is then
+	 *             counted as rejected
+	 */
+	public boolean deferFutureTransaction(TransactionRequest transactionRequest, long now) {
+		if (eventTimeBuffer == null || transactionRequest.getTimestamp() <= now) {
+			return false;
+		}
+		if (!eventTimeBuffer.offer(transactionRequest)) {
+			statisticsMetrics.countTransactions(TransactionStatus.REJECTED, 1);
+			throw new ServiceUnavailableException("Event-time buffer is full.");
 		}
+		return true;
+	}
 
-		if (STATISTICS_DATA.getMax() == null) {
-			STATISTICS_DATA.setMax(new AtomicDouble(transactionRequest.getAmount()));
-			addTrancationEntryToMinMaxMap(transactionRequest);
-		} else {
-			double existingMax = STATISTICS_DATA.getMax().doubleValue();
-			if (transactionRequest.getAmount() > existingMax) {
-				STATISTICS_DATA.setMax(new AtomicDouble(transactionRequest.getAmount()));
-				addTrancationEntryToMinMaxMap(transactionRequest);
-			} else {
-				// Check if it is required to store the key. We dont need to store this entry if
-				// there is already a
-				Iterator<Double> maxIterator = ELIGIBLE_MIN_MAX_MAP.descendingKeySet().iterator();
-				boolean addTranscationForMax = true;
-				while (maxIterator.hasNext()) {
-					Double value = maxIterator.next();
-					if (value < transactionRequest.getAmount()) {
-						break;
-					}
-
-					if (ELIGIBLE_MIN_MAX_MAP.get(value).stream()
-							.anyMatch(a -> a.longValue() > transactionRequest.getTimestamp())) {
-						addTranscationForMax = false;
-						break;
-					}
-				}
+	/**
+	 * Records the id of a transaction about to be applied in the duplicate filter.
+	 * Transactions without id, or without duplicate filter, are never duplicates.
+	 * 
+	 * @param id
+	 * @param now
+	 * @return true if a transaction with the same id was already applied over the
+	 *         window, and this one must be dropped
+	 */
+	public boolean isDuplicate(String id, long now) {
+		return duplicateFilter != null && id != null && !duplicateFilter.add(id, now);
+	}
 
-				if (addTranscationForMax) {
-					addTrancationEntryToMinMaxMap(transactionRequest);
+	/**
+	 * This is invoked directly by the POST /transactions/batch API. The
+	 * transactions are pulled one by one from the stream reader as primitives and
+	 * validated with the same rules as TransactionRequest.validate(now), but invalid
+	 * and too old transactions are only counted instead of failing the whole batch.
+	 * The dimension keys of the accepted transactions are added to the per
+	 * dimension statistics as they are read. In event-time mode, the future dated
+	 * transactions go to the event-time buffer instead, or are counted as
+	 * tooFuture when they are too far ahead, and as rejected when the buffer is
+	 * full, like the 400 and 503 of a single transaction. Accepted
+	 * transactions whose id was already applied are dropped, and counted as
+	 * duplicates on top of accepted.
+	 * The accepted transactions are applied to the statistics window in chunks of
+	 * Constants.BATCH_CHUNK_SIZE, each chunk in a single step, so memory use stays
+	 * constant whatever the size of the batch.
+	 * 
+	 * If the stream turns out to be malformed, the chunks applied before the error
+	 * stay in the statistics.
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public BatchResponse registerTransactions(TransactionStreamReader reader) throws IOException {
+		BatchResponse response = new BatchResponse();
+		long[] amounts = new long[Constants.BATCH_CHUNK_SIZE];
+		long[] timestamps = new long[Constants.BATCH_CHUNK_SIZE];
+		int accepted = 0;
+		long now = clock.millis();
+		while (reader.next()) {
+			TransactionStatus status = reader.hasAmount()
+					? TransactionRequest.validationStatus(reader.getAmount(), reader.getTimestamp(), now)
+					: TransactionStatus.INVALID;
+			if (status == TransactionStatus.ACCEPTED
+					&& (!TransactionRequest.isValidId(reader.getId()) || !hasValidKeys(reader))) {
+				status = TransactionStatus.INVALID;
+			}
+			boolean future = status == TransactionStatus.ACCEPTED && eventTimeBuffer != null
+					&& reader.getTimestamp() > now;
+			if (future && eventTimeBuffer.isTooFuture(reader.getTimestamp(), now)) {
+				status = TransactionStatus.TOO_FUTURE;
+			} else if (future && !deferTransaction(reader)) {
+				status = TransactionStatus.REJECTED;
+			}
+			response.count(status);
+			if (status == TransactionStatus.ACCEPTED && !future && isDuplicate(reader.getId(), now)) {
+				response.countDuplicate();
+			} else if (status == TransactionStatus.ACCEPTED && !future) {
+				registerKeys(reader, now);
+				amounts[accepted] = CommonUtils.toUnits(reader.getAmount());
+				timestamps[accepted] = reader.getTimestamp();
+				accepted++;
+				if (accepted == Constants.BATCH_CHUNK_SIZE) {
+					now = clock.millis();
+					recordTransactions(amounts, timestamps, accepted, now);
+					statisticsWindow.addAll(amounts, timestamps, accepted, now);
+					accepted = 0;
 				}
 			}
 		}
 
-		STATISTICS_DATA_LOCK.writeLock().unlock();
+		now = clock.millis();
+		recordTransactions(amounts, timestamps, accepted, now);
+		statisticsWindow.addAll(amounts, timestamps, accepted, now);
+		statisticsMetrics.countTransactions(TransactionStatus.ACCEPTED, response.getAccepted());
+		statisticsMetrics.countTransactions(TransactionStatus.TOO_OLD, response.getTooOld());
+		statisticsMetrics.countTransactions(TransactionStatus.INVALID, response.getInvalid());
+		statisticsMetrics.countTransactions(TransactionStatus.TOO_FUTURE, response.getTooFuture());
+		statisticsMetrics.countTransactions(TransactionStatus.REJECTED, response.getRejected());
+		Logger.debug("Registering batch done : {}", response);
+		return response;
+	}
 
-		// Schedule a task in future (60s after the time stamp field) for deducting the
-		// amount from STATISTICS_DATA object
-		addNewRequestsToRemoveTranscation(transactionRequest);
-		scheduleTaskToRemoveTranscationIfRequired();
-		Logger.log("Applying transaction done : " + transactionRequest.getAmount());
+	/**
+	 * Applies transactions which were already validated by the caller, in a single
+	 * step. This is used by the asynchronous ingestion where the validation happens
+	 * on the request thread and the transactions are applied later.
+	 * 
+	 * @param amounts
+	 * @param timestamps
+	 * @param length
+	 */
+	public void registerValidatedTransactions(long[] amounts, long[] timestamps, int length) {
+		long now = clock.millis();
+		recordTransactions(amounts, timestamps, length, now);
+		statisticsWindow.addAll(amounts, timestamps, length, now);
 	}
 
 	/**
-	 * Adds the transaction request to the ELIGIBLE_MIN_MAX_MAP.
+	 * Adds a transaction which was already validated, and applied with
+	 * registerValidatedTransactions(), to the per dimension statistics.
 	 * 
 	 * @param transactionRequest
+	 * @param now
 	 */
-	private static void addTrancationEntryToMinMaxMap(TransactionRequest transactionRequest) {
-		List<Long> timestamps = new ArrayList<>();
-		if (ELIGIBLE_MIN_MAX_MAP.get(transactionRequest.getAmount()) != null
-				&& !ELIGIBLE_MIN_MAX_MAP.get(transactionRequest.getAmount()).isEmpty()) {
-			timestamps = ELIGIBLE_MIN_MAX_MAP.get(transactionRequest.getAmount());
+	public void registerValidatedKeys(TransactionRequest transactionRequest, long now) {
+		if (dimensionStatisticsService != null) {
+			dimensionStatisticsService.register(transactionRequest, now);
 		}
-		timestamps.add(Long.valueOf(transactionRequest.getTimestamp()));
-		ELIGIBLE_MIN_MAX_MAP.put(transactionRequest.getAmount(), timestamps);
+	}
+
+	public StatisticsDataResponse getStatistics() {
+		return getStatistics(WindowSize.DEFAULT);
 	}
 
 	/**
-	 * Removes the transaction request from the ELIGIBLE_MIN_MAX_MAP
+	 * Statistics of the given window size. The statistics window ensures that no
+	 * one is updating a bucket while it is read. This method is O(1) as it merges
+	 * a bounded number of buckets (at most Constants.STATISTICS_TIME_WINDOW /
+	 * Constants.STATISTICS_BUCKET_DURATION plus Constants.STATISTICS_MAX_TIME_WINDOW
+	 * / Constants.STATISTICS_ROLLUP_BUCKET_DURATION) whatever the number of
+	 * transactions in the window is.
 	 * 
-	 * @param transactionRequest
+	 * @param windowSize
+	 * @return
 	 */
-	private static void removeTrancationEntryFromMinMaxMap(TransactionRequest transactionRequest) {
-		List<Long> timestamps = ELIGIBLE_MIN_MAX_MAP.get(transactionRequest.getAmount());
-
-		// Remove the request from min max map
-		if (timestamps != null && !timestamps.isEmpty()
-				&& timestamps.contains(Long.valueOf(transactionRequest.getTimestamp()))) {
-			timestamps.removeIf(a -> a.equals(transactionRequest.getTimestamp()));
-			if (timestamps.isEmpty()) {
-				ELIGIBLE_MIN_MAX_MAP.remove(transactionRequest.getAmount());
-			} else {
-				ELIGIBLE_MIN_MAX_MAP.put(transactionRequest.getAmount(), timestamps);
-			}
+	public StatisticsDataResponse getStatistics(WindowSize windowSize) {
+		return getStatistics(windowSize, false);
+	}
+
+	/**
+	 * Statistics of the given window size, with the p50, p95 and p99 of the
+	 * amounts when percentiles is true. Each percentile is within
+	 * AmountHistogram.RELATIVE_ERROR of the exact one, and merging the histogram
+	 * costs AmountHistogram.BUCKET_COUNT additions per quantile bucket visited.
+	 * With percentiles, the window is rounded up to whole quantile buckets, for
+	 * the aggregates as well, so that the percentiles are those of the count.
+	 * 
+	 * @param windowSize
+	 * @param percentiles
+	 * @return
+	 */
+	public StatisticsDataResponse getStatistics(WindowSize windowSize, boolean percentiles) {
+		long start = statisticsMetrics.startTimer();
+		StatisticsData statisticsData = newStatisticsData(windowSize, percentiles);
+		statisticsWindow.collect(clock.millis(), windowSize.getDuration(), statisticsData);
+		statisticsMetrics.recordRead(start);
+		return new StatisticsDataResponse(statisticsData);
+	}
+
+	/**
+	 * Copy of the per bucket aggregates of the statistics window, which other
+	 * nodes merge with their own window in cluster mode. The cost is bound by the
+	 * number of buckets, like a read.
+	 * 
+	 * @return
+	 */
+	public WindowBuckets getWindowBuckets() {
+		WindowBuckets buckets = new WindowBuckets();
+		statisticsWindow.collectBuckets(clock.millis(), buckets);
+		return buckets;
+	}
+
+	/**
+	 * Window size of the window request parameter ("10s", "5m", ...),
+	 * WindowSize.DEFAULT when there is none.
+	 * 
+	 * @param window
+	 * @return
+	 */
+	public WindowSize resolveWindowSize(String window) {
+		if (window == null || window.isEmpty()) {
+			return WindowSize.DEFAULT;
+		}
+		try {
+			return WindowSize.parse(window);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage() + ". Supported windows : 1s, 10s, 60s, 5m, 1h.");
 		}
+	}
 
-		// Check if minimum has to be updated
-		if (STATISTICS_DATA.getMin().doubleValue() >= transactionRequest.getAmount()) {
-			// If time stamp is not empty then there could be same value at a different time
-			if (timestamps != null && timestamps.isEmpty()) {
-				STATISTICS_DATA.setMin(new AtomicDouble(ELIGIBLE_MIN_MAX_MAP.firstKey()));
-			}
+	public StatisticsSnapshot getStatisticsSnapshot() {
+		return getStatisticsSnapshot(WindowSize.DEFAULT);
+	}
+
+	/**
+	 * This is invoked directly by the GET statistics API. When the snapshot is
+	 * enabled (statistics.snapshot.refresh-interval greater than 0) this is only a
+	 * volatile read of the latest snapshot of the window size, which is at most
+	 * one refresh interval old. Otherwise the snapshot is computed on every call.
+	 * 
+	 * @param windowSize
+	 * @return
+	 */
+	public StatisticsSnapshot getStatisticsSnapshot(WindowSize windowSize) {
+		return getStatisticsSnapshot(windowSize, false);
+	}
+
+	/**
+	 * Same as getStatisticsSnapshot(windowSize), with the percentiles of the
+	 * amounts when percentiles is true. The snapshots with percentiles are not
+	 * refreshed in the background, they are computed on every call.
+	 * 
+	 * @param windowSize
+	 * @param percentiles
+	 * @return
+	 */
+	public StatisticsSnapshot getStatisticsSnapshot(WindowSize windowSize, boolean percentiles) {
+		if (snapshotRefreshInterval > 0 && !percentiles) {
+			return statisticsSnapshots[windowSize.ordinal()];
 		}
+		return computeSnapshot(clock.millis(), windowSize, null, percentiles);
+	}
 
-		// Check if maximum has to be updated
-		if (STATISTICS_DATA.getMax().doubleValue() <= transactionRequest.getAmount()) {
-			// If time stamp is not empty then there could be same value at a different time
-			if (timestamps != null && timestamps.isEmpty()) {
-				STATISTICS_DATA.setMax(new AtomicDouble(ELIGIBLE_MIN_MAX_MAP.lastKey()));
-			}
+	/**
+	 * Same as getStatisticsSnapshot(windowSize), for a caller which keeps the
+	 * snapshot it got last time. When the snapshot is computed for the call and
+	 * the statistics didn't change since previous, the serialization of previous
+	 * is reused instead of serializing the statistics again.
+	 * 
+	 * @param windowSize
+	 * @param previous
+	 *            snapshot of the same window size returned by an earlier call, or
+	 *            null
+	 * @return
+	 */
+	public StatisticsSnapshot getStatisticsSnapshot(WindowSize windowSize, StatisticsSnapshot previous) {
+		if (snapshotRefreshInterval > 0) {
+			return statisticsSnapshots[windowSize.ordinal()];
+		}
+		return computeSnapshot(clock.millis(), windowSize, previous, false);
+	}
+
+	/**
+	 * Upper bound of the age of the snapshots returned by getStatisticsSnapshot(),
+	 * in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getSnapshotRefreshInterval() {
+		return snapshotRefreshInterval;
+	}
+
+	/**
+	 * Time source of the statistics, for the callers which compute ages or
+	 * validate transactions on their own.
+	 * 
+	 * @return
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	private void refreshSnapshot() {
+		try {
+			statisticsSnapshots = computeSnapshots(clock.millis(), statisticsSnapshots);
+		} catch (RuntimeException e) {
+			// An exception would cancel the periodic refresh
+			Logger.error("Statistics snapshot refresh failed : {}", e.getMessage());
+		}
+	}
+
+	private StatisticsSnapshot[] computeSnapshots(long now, StatisticsSnapshot[] previous) {
+		StatisticsSnapshot[] snapshots = new StatisticsSnapshot[WindowSize.values().length];
+		for (WindowSize windowSize : WindowSize.values()) {
+			snapshots[windowSize.ordinal()] = computeSnapshot(now, windowSize,
+					previous != null ? previous[windowSize.ordinal()] : null, false);
 		}
+		return snapshots;
+	}
 
-		if (ELIGIBLE_MIN_MAX_MAP.isEmpty()) {
-			STATISTICS_DATA.resetValues();
+	/**
+	 * Computes the statistics of the window size. The JSON serialization of the
+	 * previous snapshot is reused when the statistics didn't change.
+	 * 
+	 * @param now
+	 * @param windowSize
+	 * @param previous
+	 * @param percentiles
+	 * @return
+	 */
+	private StatisticsSnapshot computeSnapshot(long now, WindowSize windowSize, StatisticsSnapshot previous,
+			boolean percentiles) {
+		long start = statisticsMetrics.startTimer();
+		StatisticsData statisticsData = newStatisticsData(windowSize, percentiles);
+		statisticsWindow.collect(now, windowSize.getDuration(), statisticsData);
+		statisticsMetrics.recordRead(start);
+		if (previous != null && previous.hasSameStatistics(statisticsData)) {
+			return previous.refreshedAt(now);
+		}
+
+		StatisticsDataResponse response = new StatisticsDataResponse(statisticsData);
+		try {
+			return new StatisticsSnapshot(statisticsData, response, objectMapper.writeValueAsBytes(response), now);
+		} catch (JsonProcessingException e) {
+			throw new GenericException("Statistics serialization failed : " + e.getMessage());
 		}
 	}
 
 	/**
-	 * This method removes a set of Transaction requests which are expired from the
-	 * STATISTICS_DATA object post which it will update the MinMax Map.
+	 * Statistics data collecting the distribution of the amounts when the
+	 * percentiles are requested. They are only kept over the shorter windows, and
+	 * refused below Constants.STATISTICS_MIN_QUANTILE_WINDOW, where rounding the
+	 * window up to whole quantile buckets would change it too much.
 	 * 
-	 * @param requests
+	 * @param windowSize
+	 * @param percentiles
+	 * @return
 	 */
-	private static void removeTransaction(List<TransactionRequest> requests) {
-		// Update statistics object with the transaction values
-		STATISTICS_DATA_LOCK.writeLock().lock();
-		requests.forEach(a -> {
-			STATISTICS_DATA.removeTranscation(a);
-			removeTrancationEntryFromMinMaxMap(a);
-		});
-		STATISTICS_DATA_LOCK.writeLock().unlock();
+	private StatisticsData newStatisticsData(WindowSize windowSize, boolean percentiles) {
+		if (!percentiles) {
+			return new StatisticsData();
+		}
+		if (windowSize.getDuration() > statisticsWindow.getMaxQuantileDuration()
+				|| windowSize.getDuration() < Constants.STATISTICS_MIN_QUANTILE_WINDOW) {
+			throw new BadRequestException("Percentiles are only available for windows from "
+					+ Constants.STATISTICS_MIN_QUANTILE_WINDOW / 1000 + "s up to "
+					+ statisticsWindow.getMaxQuantileDuration() / 1000 + "s.");
+		}
+		return StatisticsData.withHistogram();
 	}
 
 	/**
-	 * Any access to REMAINING_REQUESTS object, REMAINING_REQUESTS_LOCK needs to be
-	 * obtained.
+	 * For every new transaction, this method adds the amount to the bucket of the
+	 * transaction time stamp. The transaction drops out of the statistics once its
+	 * bucket leaves the window.
 	 * 
-	 * @param request
+	 * @param transactionRequest
 	 */
-	private static void addNewRequestsToRemoveTranscation(TransactionRequest request) {
-		// Add new requests
-		REMAINING_REQUESTS_LOCK.writeLock().lock();
-		List<TransactionRequest> existingRequests = new ArrayList<>();
-		if (REMAINING_REQUESTS.containsKey(Long.valueOf(request.getExpiryTime()))) {
-			existingRequests = REMAINING_REQUESTS.get(Long.valueOf(request.getExpiryTime()));
-		}
-		existingRequests.add(request);
-		REMAINING_REQUESTS.put(Long.valueOf(request.getExpiryTime()), existingRequests);
-		REMAINING_REQUESTS_LOCK.writeLock().unlock();
-	}
-
-	private static synchronized void scheduleTaskToRemoveTranscationIfRequired() {
-		if (SCHEDULED_TASK_FUTURE == null) {
-			// SCHEDULED_TASK_FUTURE will be null when there are no tasks scheduled. So
-			// schedule a new task for the new time.
-			REMAINING_REQUESTS_LOCK.writeLock().lock();
-			try {
-				SCHEDULED_TASK_FUTURE = SCHEDULED_POOL.schedule(new WorkerThread(),
-						REMAINING_REQUESTS.firstEntry().getKey() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
-			} catch (RejectedExecutionException e) {
-				removeTransaction(REMAINING_REQUESTS.firstEntry().getValue());
-
-				// Schedule for remaining entries
-				if (!REMAINING_REQUESTS.isEmpty()) {
-					REMAINING_REQUESTS_LOCK.writeLock().unlock();
-					scheduleTaskToRemoveTranscationIfRequired();
-					return;
+	private void applyTransaction(TransactionRequest transactionRequest) {
+		long now = clock.millis();
+		if (deferFutureTransaction(transactionRequest, now) || isDuplicate(transactionRequest.getId(), now)) {
+			return;
+		}
+		if (transactionPersister != null) {
+			transactionPersister.offer(transactionRequest.getAmountUnits(), transactionRequest.getTimestamp());
+		}
+		if (transactionJournal != null) {
+			transactionJournal.append(transactionRequest.getAmountUnits(),
+					Math.min(transactionRequest.getTimestamp(), now));
+		}
+		statisticsWindow.add(transactionRequest.getAmountUnits(), transactionRequest.getTimestamp(), now);
+		registerValidatedKeys(transactionRequest, now);
+	}
+
+	/**
+	 * Hands the transactions to the persistence and appends them to the journal,
+	 * when enabled, before they are applied to the statistics window. For the
+	 * journal, time stamps ahead of now are clamped in place, the window adds them
+	 * to the current bucket anyway, so that a replay adds them to the same bucket.
+	 * 
+	 * @param amounts
+	 * @param timestamps
+	 * @param length
+	 * @param now
+	 */
+	private void recordTransactions(long[] amounts, long[] timestamps, int length, long now) {
+		if (transactionPersister != null) {
+			transactionPersister.offerAll(amounts, timestamps, length);
+		}
+		if (transactionJournal == null) {
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			timestamps[i] = Math.min(timestamps[i], now);
+		}
+		transactionJournal.appendAll(amounts, timestamps, length);
+	}
+
+	/**
+	 * Holds a future dated transaction of a batch in the event-time buffer.
+	 * 
+	 * @param reader
+	 * @return false if the buffer is full
+	 */
+	private boolean deferTransaction(TransactionStreamReader reader) {
+		TransactionRequest transactionRequest = new TransactionRequest(reader.getAmount(), reader.getTimestamp(),
+				Boolean.FALSE);
+		transactionRequest.setId(reader.getId());
+		for (Dimension dimension : Dimension.values()) {
+			dimension.setKey(transactionRequest, reader.getKey(dimension));
+		}
+		return eventTimeBuffer.offer(transactionRequest);
+	}
+
+	/**
+	 * Applies the transactions of the event-time buffer whose time stamp has been
+	 * reached, in chunks of Constants.BATCH_CHUNK_SIZE. Duplicates are dropped at
+	 * that time. This runs every Constants.STATISTICS_BUCKET_DURATION on the
+	 * event-time scheduler, and is also called by the replay as its virtual clock
+	 * crosses the buckets. Nothing to do outside of the event-time mode.
+	 */
+	public void releaseDueTransactions() {
+		if (eventTimeBuffer == null) {
+			return;
+		}
+		try {
+			long now = clock.millis();
+			List<TransactionRequest> released = eventTimeBuffer.release(now);
+			released.removeIf(transactionRequest -> isDuplicate(transactionRequest.getId(), now));
+			long[] amounts = new long[Math.min(released.size(), Constants.BATCH_CHUNK_SIZE)];
+			long[] timestamps = new long[amounts.length];
+			for (int start = 0; start < released.size(); start += amounts.length) {
+				int length = Math.min(amounts.length, released.size() - start);
+				for (int i = 0; i < length; i++) {
+					amounts[i] = released.get(start + i).getAmountUnits();
+					timestamps[i] = released.get(start + i).getTimestamp();
 				}
+				registerValidatedTransactions(amounts, timestamps, length);
 			}
-			REMAINING_REQUESTS_LOCK.writeLock().unlock();
-		} else {
-			// If there is a task already scheduled in future, the new request may need to
-			// be expired earlier than the time at which the task is scheduled. Hence we
-			// need to check if it is required to schedule the task.
-			REMAINING_REQUESTS_LOCK.writeLock().lock();
-			if (!REMAINING_REQUESTS.isEmpty()) {
-				// Check if the task need to be rescheduled to an earlier time
-				long firstRequestDelay = REMAINING_REQUESTS.firstEntry().getKey() - System.currentTimeMillis();
-				long remaing_delay = SCHEDULED_TASK_FUTURE.getDelay(TimeUnit.MILLISECONDS);
-
-				if (firstRequestDelay < remaing_delay) {
-					// Reschedule only when the remaining delay is more than 2ms (This number needs
-					// to be finetuned based on testing).
-					if (SCHEDULED_TASK_FUTURE.cancel(false)) {
-						SCHEDULED_TASK_FUTURE = null;
-						REMAINING_REQUESTS_LOCK.writeLock().unlock();
-						scheduleTaskToRemoveTranscationIfRequired();
-						return;
-					} else {
-						// Schedule cancellation fails if task already started execution. In that case,
-						// there is no need to reschedule.
-					}
-				}
+			for (TransactionRequest transactionRequest : released) {
+				registerValidatedKeys(transactionRequest, now);
 			}
-			REMAINING_REQUESTS_LOCK.writeLock().unlock();
-		}
-	}
-
-	public static class WorkerThread implements Runnable {
-
-		public WorkerThread() {
-			super();
-		}
-
-		@Override
-		public void run() {
-			REMAINING_REQUESTS_LOCK.writeLock().lock();
-			if (!REMAINING_REQUESTS.isEmpty()) {
-				List<TransactionRequest> requests = REMAINING_REQUESTS.pollFirstEntry().getValue();
-				Logger.log("Removing transaction : " + requests.size() + " exipiry time:"
-						+ requests.get(0).getExpiryTime() + " requests:" + requests.toString());
-				removeTransaction(requests);
-
-				// Schedule next if present
-				if (!REMAINING_REQUESTS.isEmpty()) {
-					try {
-						WorkerThread newRunnable = new WorkerThread();
-						SCHEDULED_TASK_FUTURE = SCHEDULED_POOL.schedule(newRunnable,
-								REMAINING_REQUESTS.firstKey() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
-					} catch (RejectedExecutionException e) {
-						// Rejection happens if the scheduled time is in the past.
-						// TODO : Check if there any other cases when the scheduling fails apart from
-						// the above case
-						Logger.log("Task rejected as it is in the past");
-						REMAINING_REQUESTS_LOCK.writeLock().unlock();
-						run();
-						return;
-					}
-				} else {
-					Logger.log("No next request found");
-				}
+		} catch (RuntimeException e) {
+			// An exception would cancel the periodic release
+			Logger.error("Event-time release failed : {}", e.getMessage());
+		}
+	}
+
+	private static boolean hasValidKeys(TransactionStreamReader reader) {
+		for (Dimension dimension : Dimension.values()) {
+			if (!TransactionRequest.isValidKey(reader.getKey(dimension))) {
+				return false;
 			}
+		}
+		return true;
+	}
 
-			if (REMAINING_REQUESTS.isEmpty()) {
-				SCHEDULED_TASK_FUTURE = null;
+	private void registerKeys(TransactionStreamReader reader, long now) {
+		if (dimensionStatisticsService != null) {
+			long amount = CommonUtils.toUnits(reader.getAmount());
+			for (Dimension dimension : Dimension.values()) {
+				dimensionStatisticsService.register(dimension, reader.getKey(dimension), amount,
+						reader.getTimestamp(), now);
 			}
-			REMAINING_REQUESTS_LOCK.writeLock().unlock();
 		}
 	}
 
@@ -0,0 +1,14 @@
+package com.syam.paymentstatistics.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends GenericException {
+
+	private static final long serialVersionUID = -2405736254329713214L;
+
+	public ServiceUnavailableException(String errorMessage) {
+		super(errorMessage);
+	}
+}
@@ -0,0 +1,115 @@
+package com.syam.paymentstatistics.ingest;
+
+import java.util.Arrays;
+
+/**
+ * DuplicateFilter keeping one Bloom filter per partition. It takes a fixed
+ * number of bits per id whatever the length of the ids, about 14 for a false
+ * positive rate of 1% over a 60 second window, but a new id is taken for a
+ * duplicate, and dropped, with the false positive rate. Each partition is sized
+ * for capacity / partitions ids with a rate of falsePositiveRate / partitions,
+ * since a new id is looked up in all of them. A partition receiving more ids
+ * still records them, with a false positive rate growing past the target,
+ * which getFalsePositiveRate() reports.
+ *
+ * The k bit positions of an id are derived from its 64 bit hash by double
+ * hashing, which keeps the rate of a filter with k independent hashes.
+ *
+ * @author syam
+ *
+ */
+public class BloomDuplicateFilter extends DuplicateFilter {
+
+	private final double falsePositiveRate;
+
+	// Bits per partition, a multiple of 64
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private final long[][] bits;
+
+	/**
+	 * @param partitionDuration
+	 * @param windowDuration
+	 * @param capacity
+	 *            ids over the window for which the false positive rate holds
+	 * @param falsePositiveRate
+	 *            probability for a new id to be taken for a duplicate
+	 */
+	public BloomDuplicateFilter(long partitionDuration, long windowDuration, int capacity,
+			double falsePositiveRate) {
+		super(partitionDuration, windowDuration);
+		if (capacity <= 0 || !(falsePositiveRate > 0d && falsePositiveRate < 1d)) {
+			throw new IllegalArgumentException(
+					"Invalid duplicate filter capacity " + capacity + " or false positive rate " + falsePositiveRate);
+		}
+		this.falsePositiveRate = falsePositiveRate;
+		int partitionCapacity = Math.max(1, capacity / (getPartitionCount() - 1));
+		double partitionRate = falsePositiveRate / getPartitionCount();
+		long optimalBits = (long) Math.ceil(-partitionCapacity * Math.log(partitionRate) / (Math.log(2) * Math.log(2)));
+		this.bitCount = (optimalBits + 63) / 64 * 64;
+		if (bitCount / 64 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Duplicate filter capacity " + capacity + " is too large");
+		}
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / partitionCapacity * Math.log(2)));
+		this.bits = new long[getPartitionCount()][(int) (bitCount / 64)];
+	}
+
+	@Override
+	public String getMode() {
+		return "bloom";
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return bits.length * bitCount / 8;
+	}
+
+	/**
+	 * Target false positive rate, when the partitions hold at most their capacity.
+	 * 
+	 * @return
+	 */
+	public double getTargetFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	@Override
+	protected boolean mightContain(int slot, long hash) {
+		long[] partition = bits[slot];
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+			if ((partition[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean insert(int slot, long hash, int size) {
+		long[] partition = bits[slot];
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+			partition[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		return true;
+	}
+
+	@Override
+	protected void clear(int slot) {
+		Arrays.fill(bits[slot], 0);
+	}
+
+	@Override
+	protected double getFalsePositiveRate(int slot, int size) {
+		return Math.pow(1d - Math.exp(-(double) hashCount * size / bitCount), hashCount);
+	}
+
+	private long bitIndex(long hash, int i) {
+		// Odd second hash, so that the k positions never collapse into one
+		long combined = hash + i * ((hash >>> 32) | 1L);
+		return Math.floorMod(combined, bitCount);
+	}
+}
@@ -0,0 +1,188 @@
+package com.syam.paymentstatistics.ingest;
+
+import com.syam.paymentstatistics.window.LongIntTable;
+
+/**
+ * Remembers the ids of the transactions applied over the statistics window, so
+ * that a retried transaction is only counted once.
+ *
+ * Ids are recorded in time partitions of partitionDuration, by the time they
+ * are seen. A new id is looked up in every partition of the window, which is a
+ * constant number of O(1) lookups, and added to the current one. Like the
+ * buckets of the statistics window, a partition is cleared lazily when its slot
+ * is reused, with one extra partition so that an id is remembered for at least
+ * the window duration, at most one partition longer. A retry coming later than
+ * that is out of the window anyway, unless its time stamp is in the future.
+ *
+ * The memory is allocated up front for capacity ids per window, capacity /
+ * partitions per partition, and never grows. What happens beyond that depends
+ * on the implementation : ExactDuplicateFilter stops recording new ids (they
+ * are counted as overflows), BloomDuplicateFilter keeps recording them at the
+ * cost of a higher false positive rate.
+ *
+ * All the methods are thread-safe.
+ *
+ * @author syam
+ *
+ */
+public abstract class DuplicateFilter {
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private final long partitionDuration;
+
+	// One extra slot, as in BucketedWindow
+	private final int slotCount;
+
+	private final long[] epochs;
+
+	// Ids recorded in every partition, guarded by this
+	private final int[] sizes;
+
+	// Latest epoch seen, it never moves backwards
+	private long currentEpoch = EMPTY_EPOCH;
+
+	// Ids seen again, and new ids which couldn't be recorded, guarded by this
+	private long duplicates;
+	private long overflows;
+
+	protected DuplicateFilter(long partitionDuration, long windowDuration) {
+		super();
+		if (partitionDuration <= 0 || windowDuration % partitionDuration != 0) {
+			throw new IllegalArgumentException("Window duration " + windowDuration
+					+ " is not a multiple of partition duration " + partitionDuration);
+		}
+		this.partitionDuration = partitionDuration;
+		this.slotCount = (int) (windowDuration / partitionDuration) + 1;
+		this.epochs = new long[slotCount];
+		this.sizes = new int[slotCount];
+		for (int slot = 0; slot < slotCount; slot++) {
+			epochs[slot] = EMPTY_EPOCH;
+		}
+	}
+
+	/**
+	 * Records the id, unless it was already recorded in the window.
+	 *
+	 * @param id
+	 * @param now
+	 * @return false if the id is a duplicate
+	 */
+	public synchronized boolean add(String id, long now) {
+		long hash = LongIntTable.hash(id);
+		currentEpoch = Math.max(currentEpoch, now / partitionDuration);
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (epochs[slot] > currentEpoch - slotCount && mightContain(slot, hash)) {
+				duplicates++;
+				return false;
+			}
+		}
+
+		int slot = (int) Math.floorMod(currentEpoch, (long) slotCount);
+		if (epochs[slot] != currentEpoch) {
+			epochs[slot] = currentEpoch;
+			sizes[slot] = 0;
+			clear(slot);
+		}
+		if (insert(slot, hash, sizes[slot])) {
+			sizes[slot]++;
+		} else {
+			overflows++;
+		}
+		return true;
+	}
+
+	/**
+	 * Number of ids recorded in the partitions of the window at the given time.
+	 *
+	 * @param now
+	 * @return
+	 */
+	public synchronized long size(long now) {
+		long readEpoch = Math.max(currentEpoch, now / partitionDuration);
+		long size = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (epochs[slot] > readEpoch - slotCount) {
+				size += sizes[slot];
+			}
+		}
+		return size;
+	}
+
+	public synchronized long getDuplicateCount() {
+		return duplicates;
+	}
+
+	/**
+	 * Number of new ids which were not recorded because their partition was full.
+	 * Their retries are counted again.
+	 *
+	 * @return
+	 */
+	public synchronized long getOverflowCount() {
+		return overflows;
+	}
+
+	/**
+	 * Probability for a new id to be taken for a duplicate with the partitions
+	 * filled as they are now.
+	 *
+	 * @return
+	 */
+	public synchronized double getFalsePositiveRate() {
+		double negative = 1d;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (epochs[slot] > currentEpoch - slotCount) {
+				negative *= 1d - getFalsePositiveRate(slot, sizes[slot]);
+			}
+		}
+		return 1d - negative;
+	}
+
+	/**
+	 * exact or bloom.
+	 *
+	 * @return
+	 */
+	public abstract String getMode();
+
+	/**
+	 * Memory allocated for the ids of all the partitions, in bytes.
+	 *
+	 * @return
+	 */
+	public abstract long getMemoryBytes();
+
+	protected int getPartitionCount() {
+		return slotCount;
+	}
+
+	/**
+	 * @param slot
+	 * @param hash
+	 * @return false if the hash was never inserted in the partition since it was
+	 *         cleared
+	 */
+	protected abstract boolean mightContain(int slot, long hash);
+
+	/**
+	 * Adds a hash which is not in the partition yet.
+	 *
+	 * @param slot
+	 * @param hash
+	 * @param size
+	 *            hashes already in the partition
+	 * @return false if the partition is full and the hash was not added
+	 */
+	protected abstract boolean insert(int slot, long hash, int size);
+
+	protected abstract void clear(int slot);
+
+	/**
+	 * @param slot
+	 * @param size
+	 *            hashes in the partition
+	 * @return probability of mightContain() to be true for a hash never inserted
+	 */
+	protected abstract double getFalsePositiveRate(int slot, int size);
+}
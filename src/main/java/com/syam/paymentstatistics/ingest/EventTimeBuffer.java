@@ -0,0 +1,116 @@
+package com.syam.paymentstatistics.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+
+/**
+ * Holds the transactions with a time stamp ahead of the current time, sent by
+ * clients whose clock is skewed, until the watermark (the current time of the
+ * server) reaches their time stamp. They are then applied to the bucket of
+ * their own time stamp instead of being counted right away in the current
+ * bucket.
+ *
+ * The transactions are kept in a priority queue by time stamp, so releasing
+ * the due ones only looks at the head. The buffer is bounded twice: a time
+ * stamp more than maxFutureSkew ahead is rejected, and at most capacity
+ * transactions wait. Only the future-dated transactions go through the
+ * buffer, the in-order ones never take its lock.
+ *
+ * All the methods are thread-safe.
+ *
+ * @author syam
+ *
+ */
+public class EventTimeBuffer {
+
+	private final long maxFutureSkew;
+
+	private final int capacity;
+
+	private final PriorityQueue<TransactionRequest> pending;
+
+	// Transactions rejected because the buffer was full, guarded by this
+	private long overflows;
+
+	/**
+	 * @param maxFutureSkew
+	 *            how far ahead of the current time a time stamp may be, in
+	 *            milliseconds
+	 * @param capacity
+	 *            most transactions waiting
+	 */
+	public EventTimeBuffer(long maxFutureSkew, int capacity) {
+		super();
+		if (maxFutureSkew <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException(
+					"Invalid event-time skew " + maxFutureSkew + " or buffer capacity " + capacity);
+		}
+		this.maxFutureSkew = maxFutureSkew;
+		this.capacity = capacity;
+		this.pending = new PriorityQueue<>(Math.min(capacity, 1024),
+				(a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+	}
+
+	/**
+	 * @param timestamp
+	 * @param now
+	 * @return true if the time stamp is further ahead than maxFutureSkew
+	 */
+	public boolean isTooFuture(long timestamp, long now) {
+		return timestamp > now + maxFutureSkew;
+	}
+
+	/**
+	 * Holds a validated transaction whose time stamp is ahead of now, and at most
+	 * maxFutureSkew ahead.
+	 *
+	 * @param transactionRequest
+	 * @return false if the buffer is full
+	 */
+	public synchronized boolean offer(TransactionRequest transactionRequest) {
+		if (pending.size() == capacity) {
+			overflows++;
+			return false;
+		}
+		pending.add(transactionRequest);
+		return true;
+	}
+
+	/**
+	 * Removes the transactions whose time stamp is at or before the watermark.
+	 *
+	 * @param watermark
+	 * @return the released transactions, by time stamp
+	 */
+	public synchronized List<TransactionRequest> release(long watermark) {
+		List<TransactionRequest> released = new ArrayList<>();
+		while (!pending.isEmpty() && pending.peek().getTimestamp() <= watermark) {
+			released.add(pending.poll());
+		}
+		return released;
+	}
+
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Transactions rejected because the buffer was full.
+	 *
+	 * @return
+	 */
+	public synchronized long getOverflowCount() {
+		return overflows;
+	}
+
+	public long getMaxFutureSkew() {
+		return maxFutureSkew;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
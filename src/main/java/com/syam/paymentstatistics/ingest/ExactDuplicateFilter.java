@@ -0,0 +1,77 @@
+package com.syam.paymentstatistics.ingest;
+
+import com.syam.paymentstatistics.window.LongIntTable;
+
+/**
+ * DuplicateFilter keeping the 64 bit hash of every id in a LongIntTable per
+ * partition. It never drops a transaction which is not a duplicate, unless two
+ * ids have the same 64 bit hash, a probability of about ids / 2^64 per new id.
+ * A partition holds at most capacity / partitions ids, the next ones are not
+ * recorded (and counted as overflows) until the partition is reused, so their
+ * retries are counted again. About 24 to 48 bytes per id.
+ *
+ * @author syam
+ *
+ */
+public class ExactDuplicateFilter extends DuplicateFilter {
+
+	private final int partitionCapacity;
+
+	private final LongIntTable[] tables;
+
+	/**
+	 * @param partitionDuration
+	 * @param windowDuration
+	 * @param capacity
+	 *            most ids recorded over the window
+	 */
+	public ExactDuplicateFilter(long partitionDuration, long windowDuration, int capacity) {
+		super(partitionDuration, windowDuration);
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid duplicate filter capacity " + capacity);
+		}
+		this.partitionCapacity = Math.max(1, capacity / (getPartitionCount() - 1));
+		this.tables = new LongIntTable[getPartitionCount()];
+		for (int slot = 0; slot < tables.length; slot++) {
+			tables[slot] = new LongIntTable(partitionCapacity);
+		}
+	}
+
+	@Override
+	public String getMode() {
+		return "exact";
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		long bytes = 0;
+		for (LongIntTable table : tables) {
+			bytes += table.getMemoryBytes();
+		}
+		return bytes;
+	}
+
+	@Override
+	protected boolean mightContain(int slot, long hash) {
+		return tables[slot].get(hash) != LongIntTable.NO_VALUE;
+	}
+
+	@Override
+	protected boolean insert(int slot, long hash, int size) {
+		if (size >= partitionCapacity) {
+			return false;
+		}
+		tables[slot].put(hash, size);
+		return true;
+	}
+
+	@Override
+	protected void clear(int slot) {
+		tables[slot].clear();
+	}
+
+	@Override
+	protected double getFalsePositiveRate(int slot, int size) {
+		return size / 0x1p64;
+	}
+}
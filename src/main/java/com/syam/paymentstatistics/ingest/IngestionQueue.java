@@ -0,0 +1,157 @@
+package com.syam.paymentstatistics.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Component;
+
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Bounded hand-off between the non-blocking request handlers and the
+ * statistics window, used by the reactive deployment. Request threads only
+ * offer the already validated transaction and return, a single writer thread
+ * drains the queue and applies the transactions to StatisticsService in
+ * batches. When the queue is full, offer() fails right away so that the caller
+ * can push back instead of blocking an event loop thread.
+ *
+ * Every queued transaction has already been answered, so stop() lets the
+ * writer apply what is left in the queue before it exits, and offer() fails
+ * once the queue is stopped.
+ *
+ * @author syam
+ *
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class IngestionQueue {
+
+	// How long the writer waits for a transaction before checking whether the
+	// queue was stopped
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+
+	@Autowired
+	private StatisticsService statisticsService;
+
+	private final BlockingQueue<TransactionRequest> queue;
+
+	private final Thread writerThread;
+
+	private volatile boolean running = true;
+
+	@Autowired
+	public IngestionQueue(@Value("${statistics.ingestion.queue-capacity:65536}") int capacity,
+			StatisticsMetrics statisticsMetrics) {
+		super();
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		statisticsMetrics.bindQueue("ingestion", queue, BlockingQueue::size);
+		this.writerThread = new Thread(this::drain, "statistics-ingestion-writer");
+		this.writerThread.setDaemon(true);
+	}
+
+	@PostConstruct
+	public void start() {
+		writerThread.start();
+	}
+
+	/**
+	 * Stops the writer thread once the queued transactions are applied.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		writerThread.join();
+	}
+
+	/**
+	 * Queues a validated transaction.
+	 * 
+	 * @param transactionRequest
+	 * @return false if the queue is full or stopped
+	 */
+	public boolean offer(TransactionRequest transactionRequest) {
+		if (!running || !queue.offer(transactionRequest)) {
+			return false;
+		}
+		// Stopped in between, the writer may have applied the rest of the queue
+		// already. Take the transaction back unless it was drained.
+		return running || !queue.remove(transactionRequest);
+	}
+
+	public int size() {
+		return queue.size();
+	}
+
+	public int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	private void drain() {
+		List<TransactionRequest> drained = new ArrayList<>(Constants.BATCH_CHUNK_SIZE);
+		long[] amounts = new long[Constants.BATCH_CHUNK_SIZE];
+		long[] timestamps = new long[Constants.BATCH_CHUNK_SIZE];
+		while (running) {
+			TransactionRequest first;
+			try {
+				first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (first != null) {
+				drained.add(first);
+				queue.drainTo(drained, Constants.BATCH_CHUNK_SIZE - 1);
+				apply(drained, amounts, timestamps);
+			}
+		}
+		// Final drain, offer() doesn't queue anything once stopped
+		while (queue.drainTo(drained, Constants.BATCH_CHUNK_SIZE) > 0) {
+			apply(drained, amounts, timestamps);
+		}
+	}
+
+	/**
+	 * Applies the drained transactions to the statistics and clears the list.
+	 * 
+	 * @param drained
+	 *            at most Constants.BATCH_CHUNK_SIZE transactions
+	 * @param amounts
+	 * @param timestamps
+	 */
+	private void apply(List<TransactionRequest> drained, long[] amounts, long[] timestamps) {
+		// Duplicates are dropped when applied, a transaction refused by a full
+		// queue leaves no id behind and can be retried
+		long applyTime = statisticsService.getClock().millis();
+		drained.removeIf(transactionRequest -> statisticsService.isDuplicate(transactionRequest.getId(), applyTime));
+
+		for (int i = 0; i < drained.size(); i++) {
+			amounts[i] = drained.get(i).getAmountUnits();
+			timestamps[i] = drained.get(i).getTimestamp();
+		}
+		try {
+			statisticsService.registerValidatedTransactions(amounts, timestamps, drained.size());
+			long now = statisticsService.getClock().millis();
+			for (int i = 0; i < drained.size(); i++) {
+				statisticsService.registerValidatedKeys(drained.get(i), now);
+			}
+		} catch (RuntimeException e) {
+			Logger.error("Failed to apply {} queued transactions : {}", drained.size(), e.getMessage());
+		}
+		drained.clear();
+	}
+}
@@ -0,0 +1,195 @@
+package com.syam.paymentstatistics.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.syam.paymentstatistics.pojo.Dimension;
+
+/**
+ * Pull reader over a stream of transactions, either a JSON array or
+ * newline-delimited JSON objects. It walks the JsonParser token stream and
+ * exposes the amount and time stamp of the current transaction as primitives,
+ * so no TransactionRequest (nor boxed Double / Boolean) is allocated per
+ * transaction and memory use doesn't depend on the size of the body.
+ *
+ * Unknown fields are skipped. A missing or null amount is reported by
+ * hasAmount(), a missing time stamp is read as 0, the same way the Jackson
+ * binding of TransactionRequest behaves. The optional id and dimension keys
+ * (merchant, currency, channel) are the only values read as strings, and only
+ * when present.
+ *
+ * @author syam
+ *
+ */
+public class TransactionStreamReader implements Closeable {
+
+	private static final String AMOUNT_FIELD = "amount";
+	private static final String TIMESTAMP_FIELD = "timestamp";
+	private static final String ID_FIELD = "id";
+
+	private final JsonParser parser;
+
+	private boolean started;
+	private boolean inArray;
+
+	private boolean amountPresent;
+	private double amount;
+	private long timestamp;
+	private String id;
+
+	// Key of every Dimension, by ordinal, null when missing
+	private final String[] keys = new String[Dimension.values().length];
+
+	public TransactionStreamReader(JsonFactory jsonFactory, InputStream inputStream) throws IOException {
+		super();
+		this.parser = jsonFactory.createParser(inputStream);
+	}
+
+	/**
+	 * Moves to the next transaction of the stream.
+	 * 
+	 * @return false when the stream is over
+	 * @throws IOException
+	 *             if the stream is not a valid JSON array or sequence of objects
+	 */
+	public boolean next() throws IOException {
+		JsonToken token = parser.nextToken();
+		if (!started) {
+			started = true;
+			if (token == JsonToken.START_ARRAY) {
+				inArray = true;
+				token = parser.nextToken();
+			}
+		}
+
+		if (token == null || (inArray && token == JsonToken.END_ARRAY)) {
+			return false;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Expected a transaction object but found " + token);
+		}
+
+		amountPresent = false;
+		amount = 0d;
+		timestamp = 0;
+		id = null;
+		Arrays.fill(keys, null);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			// Field names are canonicalized by the parser, reading them doesn't allocate
+			String field = parser.getCurrentName();
+			token = parser.nextToken();
+			if (AMOUNT_FIELD.equals(field)) {
+				readAmount(token);
+			} else if (TIMESTAMP_FIELD.equals(field)) {
+				readTimestamp(token);
+			} else if (ID_FIELD.equals(field)) {
+				id = readString(field, token);
+			} else {
+				readKey(field, token);
+			}
+		}
+		return true;
+	}
+
+	public boolean hasAmount() {
+		return amountPresent;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the id of the current transaction, null when missing
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @param dimension
+	 * @return the key of the current transaction for the dimension, null when
+	 *         missing
+	 */
+	public String getKey(Dimension dimension) {
+		return keys[dimension.ordinal()];
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+	private void readAmount(JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			amount = parser.getDoubleValue();
+			amountPresent = true;
+			break;
+		case VALUE_STRING:
+			try {
+				amount = Double.parseDouble(parser.getText());
+				amountPresent = true;
+			} catch (NumberFormatException e) {
+				amountPresent = false;
+			}
+			break;
+		default:
+			// null, boolean, object or array. Reported as a missing amount.
+			parser.skipChildren();
+			amountPresent = false;
+			break;
+		}
+	}
+
+	/**
+	 * Reads the field if it is a dimension key, skips it otherwise.
+	 */
+	private void readKey(String field, JsonToken token) throws IOException {
+		for (Dimension dimension : Dimension.values()) {
+			if (dimension.getName().equals(field)) {
+				keys[dimension.ordinal()] = readString(field, token);
+				return;
+			}
+		}
+		parser.skipChildren();
+	}
+
+	private String readString(String field, JsonToken token) throws IOException {
+		if (token.isScalarValue()) {
+			return token == JsonToken.VALUE_NULL ? null : parser.getText();
+		}
+		throw new JsonParseException(parser, "Invalid " + field + " " + token);
+	}
+
+	private void readTimestamp(JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			timestamp = parser.getLongValue();
+			break;
+		case VALUE_STRING:
+			try {
+				timestamp = Long.parseLong(parser.getText().trim());
+			} catch (NumberFormatException e) {
+				throw new JsonParseException(parser, "Invalid timestamp " + parser.getText());
+			}
+			break;
+		default:
+			parser.skipChildren();
+			timestamp = 0;
+			break;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.syam.paymentstatistics.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One memory-mapped file of the journal, holding a fixed number of 16 byte
+ * records (amount then time stamp, both longs). The file is created at its full
+ * size, so an unwritten record is all zeros, and a record whose time stamp is
+ * still 0 is skipped on replay. Writers claim their record with an atomic
+ * increment and write it with absolute puts, so appends never lock.
+ *
+ * A record written to the mapping survives a crash of the process, force()
+ * makes it survive a crash of the machine.
+ *
+ * @author syam
+ *
+ */
+final class JournalSegment {
+
+	static final int RECORD_SIZE = 2 * Long.BYTES;
+
+	private final Path path;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	// Index of the next record to claim, beyond capacity once the segment is full
+	private final AtomicInteger next;
+
+	// Time after which all the records are out of the window, Long.MAX_VALUE for
+	// the segment being written
+	private volatile long expiresAt = Long.MAX_VALUE;
+
+	private boolean forcedAfterClose;
+
+	private JournalSegment(Path path, MappedByteBuffer buffer, int next) {
+		this.path = path;
+		this.buffer = buffer;
+		this.capacity = buffer.capacity() / RECORD_SIZE;
+		this.next = new AtomicInteger(next);
+	}
+
+	/**
+	 * Creates the file at its full size and maps it for writing.
+	 */
+	static JournalSegment create(Path path, int capacity) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			// The mapping stays valid once the channel is closed
+			return new JournalSegment(path, channel.map(MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE), 0);
+		}
+	}
+
+	/**
+	 * Maps an existing file for replay. Nothing can be appended to it.
+	 */
+	static JournalSegment open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size() / RECORD_SIZE * RECORD_SIZE;
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			JournalSegment segment = new JournalSegment(path, buffer, buffer.capacity() / RECORD_SIZE);
+			// Written and forced by a previous run
+			segment.forcedAfterClose = true;
+			return segment;
+		}
+	}
+
+	/**
+	 * @param amount
+	 * @param timestamp
+	 * @return false if the segment is full
+	 */
+	boolean append(long amount, long timestamp) {
+		int index = next.getAndIncrement();
+		if (index >= capacity) {
+			return false;
+		}
+		// The time stamp is written last, a record torn by a crash is skipped
+		buffer.putLong(index * RECORD_SIZE, amount);
+		buffer.putLong(index * RECORD_SIZE + Long.BYTES, timestamp);
+		return true;
+	}
+
+	/**
+	 * Passes the records with a time stamp from the given one to the sink, in
+	 * chunks of the given arrays.
+	 *
+	 * @return the most recent time stamp of the segment, 0 if it is empty
+	 */
+	long replay(long fromTimestamp, long[] amounts, long[] timestamps, TransactionSink sink) {
+		int length = 0;
+		long newest = 0;
+		for (int index = 0; index < Math.min(next.get(), capacity); index++) {
+			long timestamp = buffer.getLong(index * RECORD_SIZE + Long.BYTES);
+			newest = Math.max(newest, timestamp);
+			if (timestamp == 0 || timestamp < fromTimestamp) {
+				continue;
+			}
+			amounts[length] = buffer.getLong(index * RECORD_SIZE);
+			timestamps[length] = timestamp;
+			if (++length == amounts.length) {
+				sink.addAll(amounts, timestamps, length);
+				length = 0;
+			}
+		}
+		sink.addAll(amounts, timestamps, length);
+		return newest;
+	}
+
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Forces the segment once after it stopped receiving records.
+	 */
+	void forceAfterClose() {
+		if (!forcedAfterClose) {
+			buffer.force();
+			forcedAfterClose = true;
+		}
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	long getExpiresAt() {
+		return expiresAt;
+	}
+
+	void setExpiresAt(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+}
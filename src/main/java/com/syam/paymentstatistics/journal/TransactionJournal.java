@@ -0,0 +1,222 @@
+package com.syam.paymentstatistics.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Append-only journal of the accepted transactions, so that a restart doesn't
+ * lose the statistics window. Transactions are appended as fixed-size binary
+ * records to memory-mapped JournalSegment files, which costs two memory writes
+ * and an atomic increment on the request thread. A new segment is started when
+ * the current one is full.
+ *
+ * Durability uses group commit: a background thread forces the current segment
+ * every flushInterval milliseconds, so one disk flush covers all the
+ * transactions appended in between and no request waits for the disk. A record
+ * is in the page cache as soon as it is appended, so a crash of the process
+ * loses none of the appended records, and a crash of the machine loses at most
+ * the last flush interval.
+ *
+ * The servlet deployment appends a transaction before answering the request,
+ * so an acknowledged transaction survives a crash of the process. The reactive
+ * deployment answers once the transaction is in the IngestionQueue, and the
+ * transaction is only appended when the writer thread drains the queue : a
+ * crash of the process loses the acknowledged transactions still in the queue.
+ * They can't be journaled earlier, the duplicates are only dropped when the
+ * queue is drained.
+ *
+ * The retention is measured on the clock of the service, the one of the
+ * journaled time stamps. The segment names use the wall time instead, so that
+ * they sort by creation whatever the clock of each run.
+ *
+ * On startup, replay() applies the records of the previous runs which are still
+ * inside the retention (Constants.STATISTICS_TIME_WINDOW) and the segments are
+ * deleted once all their records are out of it.
+ *
+ * @author syam
+ *
+ */
+public class TransactionJournal implements Closeable {
+
+	private static final String SEGMENT_PREFIX = "transactions-";
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private final Path directory;
+
+	private final int segmentCapacity;
+
+	private final long retention;
+
+	private final Clock clock;
+
+	// Segments of the previous runs, until replay()
+	private final List<JournalSegment> previousSegments = new ArrayList<>();
+
+	// Segments which are not written anymore, oldest first. Guarded by this.
+	private final Deque<JournalSegment> closedSegments = new ArrayDeque<>();
+
+	private volatile JournalSegment current;
+
+	private long segmentSequence;
+
+	private final ScheduledExecutorService flusher;
+
+	/**
+	 * @param directory
+	 *            created if needed
+	 * @param segmentSize
+	 *            size of each segment file, in bytes
+	 * @param flushInterval
+	 *            interval of the group commit, in milliseconds
+	 * @param clock
+	 *            clock of the statistics service
+	 * @throws IOException
+	 */
+	public TransactionJournal(Path directory, long segmentSize, long flushInterval, Clock clock)
+			throws IOException {
+		this(directory, segmentSize, flushInterval, Constants.STATISTICS_TIME_WINDOW, clock);
+	}
+
+	TransactionJournal(Path directory, long segmentSize, long flushInterval, long retention, Clock clock)
+			throws IOException {
+		super();
+		if (segmentSize < JournalSegment.RECORD_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid journal segment size " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentCapacity = (int) (segmentSize / JournalSegment.RECORD_SIZE);
+		this.retention = retention;
+		this.clock = clock;
+
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				previousSegments.add(JournalSegment.open(file));
+			}
+		}
+		// The names start with the creation time, they sort chronologically
+		previousSegments.sort((a, b) -> a.getPath().getFileName().compareTo(b.getPath().getFileName()));
+		this.current = createSegment();
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "statistics-journal-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Applies the transactions of the previous runs still inside the retention at
+	 * the given time, oldest segment first. The replayed segments are kept until
+	 * their records are out of the retention, in case of another restart.
+	 *
+	 * @param now
+	 * @param sink
+	 * @return number of segments replayed
+	 */
+	public synchronized int replay(long now, TransactionSink sink) {
+		long[] amounts = new long[Constants.BATCH_CHUNK_SIZE];
+		long[] timestamps = new long[Constants.BATCH_CHUNK_SIZE];
+		for (JournalSegment segment : previousSegments) {
+			long newest = segment.replay(now - retention, amounts, timestamps, sink);
+			segment.setExpiresAt(Math.min(newest, now) + retention);
+			closedSegments.add(segment);
+		}
+		int replayed = previousSegments.size();
+		previousSegments.clear();
+		return replayed;
+	}
+
+	/**
+	 * Appends an accepted transaction.
+	 *
+	 * @param amount
+	 *            fixed-point amount, scaled by Constants.AMOUNT_SCALE
+	 * @param timestamp
+	 *            time stamp, already clamped to the current time by the caller
+	 */
+	public void append(long amount, long timestamp) {
+		JournalSegment segment = current;
+		while (!segment.append(amount, timestamp)) {
+			segment = rotate(segment);
+		}
+	}
+
+	public void appendAll(long[] amounts, long[] timestamps, int length) {
+		for (int i = 0; i < length; i++) {
+			append(amounts[i], timestamps[i]);
+		}
+	}
+
+	@Override
+	public void close() {
+		flusher.shutdownNow();
+		flush();
+	}
+
+	/**
+	 * Starts a new segment if the full one is still the current one. Only the
+	 * writer which filled the segment, and the ones racing with it, get here.
+	 */
+	private synchronized JournalSegment rotate(JournalSegment full) {
+		if (current == full) {
+			full.setExpiresAt(clock.millis() + retention);
+			closedSegments.add(full);
+			current = createSegment();
+		}
+		return current;
+	}
+
+	private JournalSegment createSegment() {
+		Path path = directory.resolve(String.format("%s%020d-%06d%s", SEGMENT_PREFIX, System.currentTimeMillis(),
+				segmentSequence++ % 1_000_000, SEGMENT_SUFFIX));
+		try {
+			return JournalSegment.create(path, segmentCapacity);
+		} catch (IOException e) {
+			throw new GenericException("Journal segment " + path + " could not be created : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Group commit of the current segment, final flush of the segments closed
+	 * since the last run, and deletion of the expired ones.
+	 */
+	private void flush() {
+		try {
+			current.force();
+			List<JournalSegment> expired = new ArrayList<>();
+			synchronized (this) {
+				long now = clock.millis();
+				for (JournalSegment segment : closedSegments) {
+					segment.forceAfterClose();
+				}
+				while (!closedSegments.isEmpty() && closedSegments.peekFirst().getExpiresAt() < now) {
+					expired.add(closedSegments.pollFirst());
+				}
+			}
+			for (JournalSegment segment : expired) {
+				segment.delete();
+			}
+		} catch (IOException | RuntimeException e) {
+			// An exception would cancel the periodic flush
+			Logger.error("Journal flush failed : {}", e.getMessage());
+		}
+	}
+}
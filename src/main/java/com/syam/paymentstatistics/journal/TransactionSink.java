@@ -0,0 +1,20 @@
+package com.syam.paymentstatistics.journal;
+
+/**
+ * Receives the transactions replayed from the journal, in chunks.
+ *
+ * @author syam
+ *
+ */
+@FunctionalInterface
+public interface TransactionSink {
+
+	/**
+	 * @param amounts
+	 *            fixed-point amounts, scaled by Constants.AMOUNT_SCALE
+	 * @param timestamps
+	 * @param length
+	 *            number of transactions of the arrays to apply
+	 */
+	void addAll(long[] amounts, long[] timestamps, int length);
+}
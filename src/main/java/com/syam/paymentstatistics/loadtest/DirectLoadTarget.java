@@ -0,0 +1,72 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.ingest.TransactionStreamReader;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.StatisticsSnapshot;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.utils.CommonUtils;
+
+/**
+ * Calls the StatisticsService of this instance the way the servlet controller
+ * does, without the HTTP stack, to measure the statistics engine alone.
+ *
+ * @author syam
+ *
+ */
+public class DirectLoadTarget implements LoadTarget {
+
+	private final StatisticsService statisticsService;
+
+	private final ObjectMapper objectMapper;
+
+	public DirectLoadTarget(StatisticsService statisticsService, ObjectMapper objectMapper) {
+		super();
+		this.statisticsService = statisticsService;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public int postTransaction(long amountUnits, long timestamp) {
+		try {
+			statisticsService.registerTransaction(
+					new TransactionRequest(CommonUtils.fromUnits(amountUnits), timestamp, Boolean.FALSE));
+			return 200;
+		} catch (GenericException e) {
+			return status(e);
+		}
+	}
+
+	@Override
+	public BatchResponse postTransactions(long[] amountUnits, long[] timestamps, int length) throws IOException {
+		// The batch is encoded and streamed like a request body
+		byte[] json = LoadTarget.toJson(objectMapper.getFactory(), amountUnits, timestamps, length);
+		try (TransactionStreamReader reader = new TransactionStreamReader(objectMapper.getFactory(),
+				new ByteArrayInputStream(json))) {
+			return statisticsService.registerTransactions(reader);
+		} catch (GenericException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public StatisticsRead getStatistics() {
+		StatisticsSnapshot snapshot = statisticsService.getStatisticsSnapshot();
+		return new StatisticsRead(snapshot.getResponse(),
+				Math.max(0, System.currentTimeMillis() - snapshot.getComputedAt()));
+	}
+
+	private static int status(GenericException exception) {
+		ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(exception.getClass(),
+				ResponseStatus.class);
+		return responseStatus.value().value();
+	}
+}
@@ -0,0 +1,324 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * Independent answer to the statistics expected after a load test, computed
+ * from the transactions sent rather than from the statistics engine.
+ *
+ * The service checks the age of a transaction at some time between the
+ * request and the response, and the statistics are computed at some time
+ * known within a few milliseconds, with the bucket granularity. So a
+ * transaction is either certainly counted, certainly not, or uncertain when it
+ * is that close to the end of the acceptance duration or of the window. The
+ * expected statistics are bounds : the certain transactions, plus any subset
+ * of the uncertain ones. They are exact when no transaction is near the edges,
+ * which is the case once the load has stopped for long enough.
+ *
+ * A status contradicting the model, like 204 for a transaction certainly
+ * recent enough, is counted as unexpected.
+ *
+ * The model is the processing-time one : a future dated transaction is
+ * counted somewhere between its request and its time stamp, whichever mode
+ * the service runs in. Duplicate filtering and cluster mode are not modeled.
+ *
+ * All the methods are thread-safe.
+ *
+ * @author syam
+ *
+ */
+public class ExpectedStatistics {
+
+	private static final byte NO = 0;
+	private static final byte MAYBE = 1;
+	private static final byte YES = 2;
+
+	// Transactions whose latest possible bucket is before the horizon can't be
+	// in the window once the test is over, they are not kept
+	private final long horizon;
+
+	// Transactions which may be counted, guarded by this
+	private long[] timestamps = new long[1024];
+	private long[] amounts = new long[1024];
+	private long[] sentAts = new long[1024];
+	private long[] answeredAts = new long[1024];
+	private byte[] applied = new byte[1024];
+	private int size;
+
+	private long unexpected;
+
+	// First unexpected statuses, for the report
+	private final List<String> unexpectedSamples = new ArrayList<>();
+
+	/**
+	 * @param horizon
+	 *            earliest time the statistics are checked, minus the window
+	 *            duration and one bucket, in milliseconds
+	 */
+	public ExpectedStatistics(long horizon) {
+		super();
+		this.horizon = horizon;
+	}
+
+	/**
+	 * Records a transaction sent to POST /transactions.
+	 *
+	 * @param amountUnits
+	 * @param timestamp
+	 * @param sentAt
+	 *            time the request was sent
+	 * @param answeredAt
+	 *            time the response was received
+	 * @param status
+	 *            HTTP status, negative when the outcome is unknown
+	 */
+	public synchronized void recordTransaction(long amountUnits, long timestamp, long sentAt, long answeredAt,
+			int status) {
+		byte acceptance = acceptance(timestamp, sentAt, answeredAt);
+		byte counted;
+		if (status < 0) {
+			counted = acceptance == NO ? NO : MAYBE;
+		} else if (status == 200) {
+			counted = acceptance == NO ? unexpected("200 for a transaction too old", timestamp, sentAt) : YES;
+		} else if (status == 204) {
+			counted = acceptance == YES ? unexpected("204 for a recent transaction", timestamp, sentAt) : NO;
+		} else if (status == 503) {
+			// Overloaded, the transaction was not counted
+			counted = NO;
+		} else {
+			counted = unexpected(status + " for a valid transaction", timestamp, sentAt);
+		}
+		add(amountUnits, timestamp, sentAt, answeredAt, counted);
+	}
+
+	/**
+	 * Records the transactions of a POST /transactions/batch request. The
+	 * accepted count tells how many of the uncertain ones were accepted : none
+	 * or all of them when it matches a bound.
+	 *
+	 * @param amountUnits
+	 * @param timestamps
+	 * @param length
+	 * @param sentAt
+	 * @param answeredAt
+	 * @param response
+	 *            null when the request failed
+	 * @param answered
+	 *            false when the outcome is unknown
+	 */
+	public synchronized void recordBatch(long[] amountUnits, long[] timestamps, int length, long sentAt,
+			long answeredAt, BatchResponse response, boolean answered) {
+		int certain = 0;
+		int uncertain = 0;
+		byte[] acceptances = new byte[length];
+		for (int i = 0; i < length; i++) {
+			acceptances[i] = acceptance(timestamps[i], sentAt, answeredAt);
+			certain += acceptances[i] == YES ? 1 : 0;
+			uncertain += acceptances[i] == MAYBE ? 1 : 0;
+		}
+		byte uncertainCounted = MAYBE;
+		if (answered && response == null) {
+			uncertainCounted = NO;
+		} else if (response != null) {
+			if (response.getAccepted() < certain || response.getAccepted() > certain + uncertain
+					|| response.getInvalid() > 0) {
+				unexpected("batch accepted " + response.getAccepted() + " of " + certain + " to "
+						+ (certain + uncertain) + ", invalid " + response.getInvalid(), timestamps[0], sentAt);
+			} else if (response.getAccepted() == certain) {
+				uncertainCounted = NO;
+			} else if (response.getAccepted() == certain + uncertain) {
+				uncertainCounted = YES;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			byte counted;
+			if (answered && response == null) {
+				counted = NO;
+			} else {
+				counted = acceptances[i] == MAYBE ? uncertainCounted : acceptances[i];
+			}
+			add(amountUnits[i], timestamps[i], sentAt, answeredAt, counted);
+		}
+	}
+
+	public synchronized long getUnexpectedCount() {
+		return unexpected;
+	}
+
+	public synchronized List<String> getUnexpectedSamples() {
+		return new ArrayList<>(unexpectedSamples);
+	}
+
+	/**
+	 * Expected statistics of the default window, computed at some time between
+	 * from and to.
+	 *
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public synchronized Bounds bounds(long from, long to) {
+		Bounds bounds = new Bounds();
+		for (int i = 0; i < size; i++) {
+			byte inWindow = inWindow(i, from, to);
+			if (inWindow == YES && applied[i] == YES) {
+				bounds.count++;
+				bounds.sum += amounts[i];
+				bounds.min = Math.min(bounds.min, amounts[i]);
+				bounds.max = Math.max(bounds.max, amounts[i]);
+			} else if (inWindow != NO && applied[i] != NO) {
+				bounds.uncertainCount++;
+				bounds.uncertainSum += amounts[i];
+				bounds.uncertainMin = Math.min(bounds.uncertainMin, amounts[i]);
+				bounds.uncertainMax = Math.max(bounds.uncertainMax, amounts[i]);
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * @param timestamp
+	 * @param sentAt
+	 * @param answeredAt
+	 * @return whether the service accepts the transaction, at some time between
+	 *         sentAt and answeredAt
+	 */
+	private static byte acceptance(long timestamp, long sentAt, long answeredAt) {
+		if (timestamp >= answeredAt - Constants.TRANSACTION_ACCEPTANCE_DURATION) {
+			return YES;
+		}
+		return timestamp < sentAt - Constants.TRANSACTION_ACCEPTANCE_DURATION ? NO : MAYBE;
+	}
+
+	/**
+	 * A transaction is in the window while its bucket is, up to one bucket after
+	 * the window duration.
+	 *
+	 * @param row
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	private byte inWindow(int row, long from, long to) {
+		long earliest = Math.min(timestamps[row], sentAts[row]);
+		long latest = latest(row);
+		if (earliest >= to - Constants.STATISTICS_TIME_WINDOW) {
+			return latest <= from ? YES : MAYBE;
+		}
+		return latest < from - Constants.STATISTICS_TIME_WINDOW - Constants.STATISTICS_BUCKET_DURATION ? NO : MAYBE;
+	}
+
+	/**
+	 * A future dated transaction is counted by the time of its response in
+	 * processing-time mode, by its time stamp in event-time mode.
+	 *
+	 * @param row
+	 * @return the latest time the transaction may be counted at
+	 */
+	private long latest(int row) {
+		return timestamps[row] > sentAts[row] ? Math.max(timestamps[row], answeredAts[row]) : timestamps[row];
+	}
+
+	private byte unexpected(String message, long timestamp, long sentAt) {
+		unexpected++;
+		if (unexpectedSamples.size() < 10) {
+			unexpectedSamples.add(message + " (timestamp " + timestamp + " sent at " + sentAt + ")");
+		}
+		// The model is kept as the expected answer
+		return NO;
+	}
+
+	private void add(long amountUnits, long timestamp, long sentAt, long answeredAt, byte counted) {
+		if (counted == NO || Math.max(timestamp, answeredAt) < horizon) {
+			return;
+		}
+		if (size == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			amounts = Arrays.copyOf(amounts, size * 2);
+			sentAts = Arrays.copyOf(sentAts, size * 2);
+			answeredAts = Arrays.copyOf(answeredAts, size * 2);
+			applied = Arrays.copyOf(applied, size * 2);
+		}
+		timestamps[size] = timestamp;
+		amounts[size] = amountUnits;
+		sentAts[size] = sentAt;
+		answeredAts[size] = answeredAt;
+		applied[size] = counted;
+		size++;
+	}
+
+	/**
+	 * The transactions certainly in the window, and those which may be. Amounts
+	 * are fixed-point values.
+	 */
+	public static final class Bounds {
+		private long count;
+		private long sum;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+		private long uncertainCount;
+		private long uncertainSum;
+		private long uncertainMin = Long.MAX_VALUE;
+		private long uncertainMax = Long.MIN_VALUE;
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getUncertainCount() {
+			return uncertainCount;
+		}
+
+		/**
+		 * Checks statistics against the bounds.
+		 *
+		 * @param actual
+		 * @return the differences, empty if the statistics are within the bounds
+		 */
+		public List<String> verify(StatisticsDataResponse actual) {
+			List<String> failures = new ArrayList<>();
+			if (actual.getCount() < count || actual.getCount() > count + uncertainCount) {
+				failures.add("count " + actual.getCount() + " not in [" + count + ", " + (count + uncertainCount)
+						+ "]");
+			}
+			long actualSum = CommonUtils.toUnits(actual.getSum());
+			if (actualSum < sum || actualSum > sum + uncertainSum) {
+				failures.add("sum " + actual.getSum() + " not in [" + CommonUtils.fromUnits(sum) + ", "
+						+ CommonUtils.fromUnits(sum + uncertainSum) + "]");
+			}
+			if (actual.getCount() > 0 && actual.getMax() != null && actual.getMin() != null) {
+				// Without certain transactions, any uncertain one may be the min or max
+				long lowerMax = count > 0 ? max : uncertainMin;
+				long upperMax = Math.max(max, uncertainMax);
+				long lowerMin = Math.min(min, uncertainMin);
+				long upperMin = count > 0 ? min : uncertainMax;
+				long actualMax = CommonUtils.toUnits(actual.getMax());
+				long actualMin = CommonUtils.toUnits(actual.getMin());
+				if (actualMax < lowerMax || actualMax > upperMax) {
+					failures.add("max " + actual.getMax() + " not in [" + CommonUtils.fromUnits(lowerMax) + ", "
+							+ CommonUtils.fromUnits(upperMax) + "]");
+				}
+				if (actualMin < lowerMin || actualMin > upperMin) {
+					failures.add("min " + actual.getMin() + " not in [" + CommonUtils.fromUnits(lowerMin) + ", "
+							+ CommonUtils.fromUnits(upperMin) + "]");
+				}
+			}
+			return failures;
+		}
+
+		@Override
+		public String toString() {
+			return "count " + count + " sum " + CommonUtils.fromUnits(sum) + " min "
+					+ (count > 0 ? CommonUtils.fromUnits(min) : "-") + " max "
+					+ (count > 0 ? CommonUtils.fromUnits(max) : "-") + ", uncertain count " + uncertainCount
+					+ " sum " + CommonUtils.fromUnits(uncertainSum);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * Sends the operations to a running instance, servlet or reactive, over
+ * HttpURLConnection. The connections are kept alive and reused by the JDK, one
+ * per thread of the generator.
+ *
+ * @author syam
+ *
+ */
+public class HttpLoadTarget implements LoadTarget {
+
+	private final String baseUrl;
+
+	private final int timeout;
+
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * @param baseUrl
+	 *            like http://127.0.0.1:8080
+	 * @param timeout
+	 *            connect and read timeout, in milliseconds
+	 * @param objectMapper
+	 */
+	public HttpLoadTarget(String baseUrl, int timeout, ObjectMapper objectMapper) {
+		super();
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.timeout = timeout;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public int postTransaction(long amountUnits, long timestamp) throws IOException {
+		byte[] body = ("{\"amount\":" + CommonUtils.fromUnits(amountUnits) + ",\"timestamp\":" + timestamp + "}")
+				.getBytes(StandardCharsets.UTF_8);
+		HttpURLConnection connection = post("/transactions", body);
+		int status = connection.getResponseCode();
+		drain(connection, status);
+		return status;
+	}
+
+	@Override
+	public BatchResponse postTransactions(long[] amountUnits, long[] timestamps, int length) throws IOException {
+		HttpURLConnection connection = post("/transactions/batch",
+				LoadTarget.toJson(objectMapper.getFactory(), amountUnits, timestamps, length));
+		int status = connection.getResponseCode();
+		if (status != 200) {
+			drain(connection, status);
+			return null;
+		}
+		try (InputStream in = connection.getInputStream()) {
+			return objectMapper.readValue(in, BatchResponse.class);
+		}
+	}
+
+	@Override
+	public StatisticsRead getStatistics() throws IOException {
+		HttpURLConnection connection = open("/statistics");
+		int status = connection.getResponseCode();
+		if (status != 200) {
+			drain(connection, status);
+			throw new IOException("GET /statistics answered " + status);
+		}
+		String age = connection.getHeaderField(Constants.STATISTICS_AGE_HEADER);
+		try (InputStream in = connection.getInputStream()) {
+			return new StatisticsRead(objectMapper.readValue(in, StatisticsDataResponse.class),
+					age == null ? 0 : Long.parseLong(age));
+		}
+	}
+
+	private HttpURLConnection post(String path, byte[] body) throws IOException {
+		HttpURLConnection connection = open(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		connection.setRequestProperty("Content-Type", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		return connection;
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		return connection;
+	}
+
+	/**
+	 * Reads the whole body, so that the connection can be reused by the next
+	 * request.
+	 *
+	 * @param connection
+	 * @param status
+	 * @throws IOException
+	 */
+	private static void drain(HttpURLConnection connection, int status) throws IOException {
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			if (in != null) {
+				byte[] buffer = new byte[1024];
+				while (in.read(buffer) >= 0) {
+					// Discarded
+				}
+			}
+		}
+	}
+}
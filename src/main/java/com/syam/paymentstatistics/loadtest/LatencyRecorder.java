@@ -0,0 +1,95 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies of the operations of one endpoint, in microseconds with 3
+ * significant digits.
+ *
+ * The response time is measured from the time the operation was scheduled,
+ * not from the time it was sent. When the service stalls, the operations
+ * scheduled meanwhile wait for a connection, and that wait is part of what a
+ * client would see : measuring from the send time would hide it (coordinated
+ * omission). The service time, from the send time, is kept as well to tell
+ * the two apart.
+ *
+ * All the methods are thread-safe.
+ *
+ * @author syam
+ *
+ */
+public class LatencyRecorder {
+
+	private final String endpoint;
+
+	// Guarded by this, both auto-resizing
+	private final Histogram responseTimes = new Histogram(3);
+	private final Histogram serviceTimes = new Histogram(3);
+
+	private long errors;
+
+	public LatencyRecorder(String endpoint) {
+		super();
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @param responseNanos
+	 *            from the scheduled time to the response
+	 * @param serviceNanos
+	 *            from the send time to the response
+	 * @param success
+	 */
+	public synchronized void record(long responseNanos, long serviceNanos, boolean success) {
+		responseTimes.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(responseNanos)));
+		serviceTimes.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(serviceNanos)));
+		if (!success) {
+			errors++;
+		}
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public synchronized long getCount() {
+		return responseTimes.getTotalCount();
+	}
+
+	public synchronized long getErrorCount() {
+		return errors;
+	}
+
+	/**
+	 * @param percentile
+	 *            like 99.9
+	 * @return the response time of the percentile, in microseconds
+	 */
+	public synchronized long getResponseTime(double percentile) {
+		return responseTimes.getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * One line of the report : throughput, errors, and the percentiles of the
+	 * response and service times in milliseconds.
+	 *
+	 * @param seconds
+	 *            duration of the recording
+	 * @return
+	 */
+	public synchronized String format(double seconds) {
+		return String.format(
+				"%-26s %9d ops %10.1f ops/s %6d errors | response p50 %8.3f p99 %8.3f p999 %8.3f max %8.3f"
+						+ " | service p50 %8.3f p99 %8.3f p999 %8.3f ms",
+				endpoint, responseTimes.getTotalCount(), responseTimes.getTotalCount() / seconds, errors,
+				millis(responseTimes, 50), millis(responseTimes, 99), millis(responseTimes, 99.9),
+				responseTimes.getMaxValue() / 1000d, millis(serviceTimes, 50), millis(serviceTimes, 99),
+				millis(serviceTimes, 99.9));
+	}
+
+	private static double millis(Histogram histogram, double percentile) {
+		return histogram.getValueAtPercentile(percentile) / 1000d;
+	}
+}
@@ -0,0 +1,226 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Open-loop load generator : the operations of a LoadProfile are scheduled at
+ * their rate by a single thread and run by a pool of profile.connections
+ * threads, so a slow response delays the operations behind it but never the
+ * schedule. Their latencies are recorded from their scheduled time by a
+ * LatencyRecorder per endpoint, and every transaction sent is recorded by
+ * ExpectedStatistics.
+ *
+ * Once the last operation is over, and the profile settle time elapsed, the
+ * statistics of the default window are read and checked against the expected
+ * ones.
+ *
+ * The amounts, time stamps and operation mix only depend on the profile seed.
+ *
+ * @author syam
+ *
+ */
+public class LoadGenerator {
+
+	// The amounts of the Pareto distribution are capped to this many times the
+	// amount scale, so that the sums can't overflow
+	private static final double MAX_AMOUNT_FACTOR = 1e6;
+
+	private static final double PARETO_ALPHA = 1.5;
+
+	// Longest wait for the operations in flight once the schedule is over
+	private static final long DRAIN_TIMEOUT = 60_000;
+
+	private final LoadProfile profile;
+
+	private final LoadTarget target;
+
+	public LoadGenerator(LoadProfile profile, LoadTarget target) {
+		super();
+		profile.validate();
+		this.profile = profile;
+		this.target = target;
+	}
+
+	/**
+	 * Runs the load test, for about warmup + duration + settle milliseconds.
+	 *
+	 * @return
+	 * @throws IOException
+	 *             when the final statistics can't be read
+	 * @throws InterruptedException
+	 */
+	public LoadReport run() throws IOException, InterruptedException {
+		Random random = new Random(profile.getSeed());
+		LatencyRecorder writes = new LatencyRecorder(
+				profile.getBatchSize() > 1 ? LoadTarget.BATCH : LoadTarget.TRANSACTIONS);
+		LatencyRecorder reads = new LatencyRecorder(LoadTarget.STATISTICS);
+
+		long start = System.nanoTime();
+		long recordFrom = start + TimeUnit.MILLISECONDS.toNanos(profile.getWarmup());
+		long end = recordFrom + TimeUnit.MILLISECONDS.toNanos(profile.getDuration());
+		long plannedEnd = System.currentTimeMillis() + profile.getWarmup() + profile.getDuration();
+		ExpectedStatistics expected = new ExpectedStatistics(
+				plannedEnd - Constants.STATISTICS_TIME_WINDOW - Constants.STATISTICS_BUCKET_DURATION);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(profile.getConnections(), profile.getConnections(), 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "statistics-loadtest-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		Logger.info("Load test starting : {}", profile);
+		double interval = TimeUnit.SECONDS.toNanos(1) / profile.getRate();
+		double offset = 0;
+		long scheduled = start;
+		while (scheduled < end) {
+			long wait;
+			while ((wait = scheduled - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			long scheduledAt = scheduled;
+			// The operations of the warmup are not recorded
+			boolean recorded = scheduledAt >= recordFrom;
+			if (random.nextDouble() < profile.getReadRatio()) {
+				executor.execute(() -> read(recorded ? reads : null, scheduledAt));
+			} else {
+				int length = profile.getBatchSize();
+				long[] amounts = new long[length];
+				long[] ages = new long[length];
+				for (int i = 0; i < length; i++) {
+					amounts[i] = nextAmount(random);
+					ages[i] = nextAge(random);
+				}
+				executor.execute(() -> write(recorded ? writes : null, scheduledAt, amounts, ages, expected));
+			}
+			offset += profile.getArrival() == LoadProfile.Arrival.POISSON
+					? -Math.log(1 - random.nextDouble()) * interval
+					: interval;
+			scheduled = start + (long) offset;
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+			executor.shutdownNow();
+			throw new IOException("Load test operations still in flight after " + DRAIN_TIMEOUT + " ms");
+		}
+		double seconds = Math.max(System.nanoTime(), end) - recordFrom;
+		seconds /= TimeUnit.SECONDS.toNanos(1);
+
+		Thread.sleep(profile.getSettle() + profile.getMaxFuture());
+		long from = System.currentTimeMillis();
+		LoadTarget.StatisticsRead read = target.getStatistics();
+		long to = System.currentTimeMillis();
+		// The statistics were computed age milliseconds before they were served,
+		// within the millisecond precision of both clocks
+		ExpectedStatistics.Bounds bounds = expected.bounds(from - read.getAge() - 1, to - read.getAge() + 1);
+
+		List<String> failures = new ArrayList<>(bounds.verify(read.getStatistics()));
+		if (expected.getUnexpectedCount() > 0) {
+			failures.add(expected.getUnexpectedCount() + " unexpected statuses, like "
+					+ expected.getUnexpectedSamples());
+		}
+		List<LatencyRecorder> recorders = new ArrayList<>();
+		recorders.add(writes);
+		recorders.add(reads);
+		return new LoadReport(profile, recorders, seconds, bounds, read.getStatistics(), failures);
+	}
+
+	private void read(LatencyRecorder recorder, long scheduledAt) {
+		long sentAt = System.nanoTime();
+		boolean success;
+		try {
+			target.getStatistics();
+			success = true;
+		} catch (IOException | RuntimeException e) {
+			success = false;
+		}
+		long answeredAt = System.nanoTime();
+		if (recorder != null) {
+			recorder.record(answeredAt - scheduledAt, answeredAt - sentAt, success);
+		}
+	}
+
+	private void write(LatencyRecorder recorder, long scheduledAt, long[] amounts, long[] ages,
+			ExpectedStatistics expected) {
+		long sentAt = System.nanoTime();
+		long sentAtMillis = System.currentTimeMillis();
+		long[] timestamps = new long[ages.length];
+		for (int i = 0; i < ages.length; i++) {
+			timestamps[i] = sentAtMillis - ages[i];
+		}
+		boolean success;
+		if (amounts.length == 1) {
+			int status;
+			try {
+				status = target.postTransaction(amounts[0], timestamps[0]);
+			} catch (IOException | RuntimeException e) {
+				status = -1;
+			}
+			expected.recordTransaction(amounts[0], timestamps[0], sentAtMillis, System.currentTimeMillis(), status);
+			success = status == 200 || status == 204;
+		} else {
+			BatchResponse response;
+			boolean answered;
+			try {
+				response = target.postTransactions(amounts, timestamps, amounts.length);
+				answered = true;
+			} catch (IOException | RuntimeException e) {
+				response = null;
+				answered = false;
+			}
+			expected.recordBatch(amounts, timestamps, amounts.length, sentAtMillis, System.currentTimeMillis(),
+					response, answered);
+			success = response != null;
+		}
+		long answeredAt = System.nanoTime();
+		if (recorder != null) {
+			recorder.record(answeredAt - scheduledAt, answeredAt - sentAt, success);
+		}
+	}
+
+	/**
+	 * @param random
+	 * @return fixed-point amount of the profile distribution
+	 */
+	private long nextAmount(Random random) {
+		double scale = profile.getAmountScale();
+		double amount;
+		switch (profile.getAmountDistribution()) {
+		case UNIFORM:
+			amount = random.nextDouble() * scale;
+			break;
+		case LOGNORMAL:
+			amount = scale * Math.exp(random.nextGaussian());
+			break;
+		default:
+			amount = scale / Math.pow(1 - random.nextDouble(), 1 / PARETO_ALPHA);
+			break;
+		}
+		return CommonUtils.toUnits(Math.min(amount, Math.min(scale * MAX_AMOUNT_FACTOR, Constants.MAX_AMOUNT)));
+	}
+
+	/**
+	 * @param random
+	 * @return age of the time stamp when the transaction is sent, negative for
+	 *         a future time stamp
+	 */
+	private long nextAge(Random random) {
+		if (random.nextDouble() < profile.getFutureRatio()) {
+			return -(long) (random.nextDouble() * profile.getMaxFuture());
+		}
+		return (long) (random.nextDouble() * profile.getMaxAge());
+	}
+}
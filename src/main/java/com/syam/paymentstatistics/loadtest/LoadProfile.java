@@ -0,0 +1,211 @@
+package com.syam.paymentstatistics.loadtest;
+
+/**
+ * What LoadGenerator sends : the arrival rate of the operations and how they
+ * are spread over time, the mix of reads and writes, and the amounts and time
+ * stamps of the transactions written.
+ *
+ * Operations are scheduled at a fixed rate whatever the response times, so the
+ * load doesn't back off when the service slows down.
+ *
+ * @author syam
+ *
+ */
+public class LoadProfile {
+
+	public enum Arrival {
+		// Operations evenly spaced at 1 / rate
+		UNIFORM,
+		// Exponential gaps of mean 1 / rate, like independent clients
+		POISSON
+	}
+
+	public enum AmountDistribution {
+		// Uniform between 0 and amountScale
+		UNIFORM,
+		// Median amountScale, most amounts within a factor 10 of it
+		LOGNORMAL,
+		// At least amountScale with a heavy tail, a few amounts are orders of
+		// magnitude above the others
+		PARETO
+	}
+
+	// Operations per second, reads and writes
+	private double rate = 1000;
+
+	// Operations of the warmup are sent but not recorded, in milliseconds
+	private long warmup = 5000;
+
+	// Operations recorded after the warmup, in milliseconds
+	private long duration = 30000;
+
+	// Operations in flight at most, the next ones wait for one of them
+	private int connections = 16;
+
+	private Arrival arrival = Arrival.UNIFORM;
+
+	// Part of the operations which are GET /statistics
+	private double readRatio = 0.1;
+
+	// Transactions per write, sent to POST /transactions/batch when above 1
+	private int batchSize = 1;
+
+	private AmountDistribution amountDistribution = AmountDistribution.LOGNORMAL;
+
+	private double amountScale = 100;
+
+	// Time stamps are up to maxAge milliseconds in the past, those older than
+	// the acceptance duration are rejected
+	private long maxAge = 70000;
+
+	// Part of the transactions time stamped up to maxFuture milliseconds ahead
+	private double futureRatio = 0;
+
+	private long maxFuture = 0;
+
+	// Wait after the last operation before the statistics are checked, for
+	// the snapshots and the asynchronous ingestion to catch up, in milliseconds
+	private long settle = 2000;
+
+	private long seed = 42;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             when a setting is out of range
+	 */
+	public void validate() {
+		if (!(rate > 0) || warmup < 0 || duration <= 0 || connections <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("Invalid load test rate " + rate + " warmup " + warmup + " duration "
+					+ duration + " connections " + connections + " batch size " + batchSize);
+		}
+		if (!(readRatio >= 0 && readRatio < 1) || !(futureRatio >= 0 && futureRatio <= 1)) {
+			throw new IllegalArgumentException(
+					"Invalid load test read ratio " + readRatio + " or future ratio " + futureRatio);
+		}
+		if (!(amountScale > 0) || maxAge < 0 || maxFuture < 0 || settle < 0) {
+			throw new IllegalArgumentException("Invalid load test amount scale " + amountScale + " max age " + maxAge
+					+ " max future " + maxFuture + " settle " + settle);
+		}
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public long getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(long warmup) {
+		this.warmup = warmup;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public void setConnections(int connections) {
+		this.connections = connections;
+	}
+
+	public Arrival getArrival() {
+		return arrival;
+	}
+
+	public void setArrival(Arrival arrival) {
+		this.arrival = arrival;
+	}
+
+	public double getReadRatio() {
+		return readRatio;
+	}
+
+	public void setReadRatio(double readRatio) {
+		this.readRatio = readRatio;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public AmountDistribution getAmountDistribution() {
+		return amountDistribution;
+	}
+
+	public void setAmountDistribution(AmountDistribution amountDistribution) {
+		this.amountDistribution = amountDistribution;
+	}
+
+	public double getAmountScale() {
+		return amountScale;
+	}
+
+	public void setAmountScale(double amountScale) {
+		this.amountScale = amountScale;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	public double getFutureRatio() {
+		return futureRatio;
+	}
+
+	public void setFutureRatio(double futureRatio) {
+		this.futureRatio = futureRatio;
+	}
+
+	public long getMaxFuture() {
+		return maxFuture;
+	}
+
+	public void setMaxFuture(long maxFuture) {
+		this.maxFuture = maxFuture;
+	}
+
+	public long getSettle() {
+		return settle;
+	}
+
+	public void setSettle(long settle) {
+		this.settle = settle;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadProfile [rate=" + rate + ", warmup=" + warmup + ", duration=" + duration + ", connections="
+				+ connections + ", arrival=" + arrival + ", readRatio=" + readRatio + ", batchSize=" + batchSize
+				+ ", amountDistribution=" + amountDistribution + ", amountScale=" + amountScale + ", maxAge=" + maxAge
+				+ ", futureRatio=" + futureRatio + ", maxFuture=" + maxFuture + ", settle=" + settle + ", seed="
+				+ seed + "]";
+	}
+}
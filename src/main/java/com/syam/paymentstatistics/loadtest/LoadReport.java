@@ -0,0 +1,85 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.util.List;
+
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+
+/**
+ * Outcome of a load test : the latencies and throughput of every endpoint, and
+ * the check of the final statistics against ExpectedStatistics.
+ *
+ * @author syam
+ *
+ */
+public class LoadReport {
+
+	private final LoadProfile profile;
+
+	private final List<LatencyRecorder> recorders;
+
+	// Duration of the recording, from the end of the warmup to the last response
+	private final double seconds;
+
+	private final ExpectedStatistics.Bounds expected;
+
+	private final StatisticsDataResponse actual;
+
+	private final List<String> failures;
+
+	public LoadReport(LoadProfile profile, List<LatencyRecorder> recorders, double seconds,
+			ExpectedStatistics.Bounds expected, StatisticsDataResponse actual, List<String> failures) {
+		super();
+		this.profile = profile;
+		this.recorders = recorders;
+		this.seconds = seconds;
+		this.expected = expected;
+		this.actual = actual;
+		this.failures = failures;
+	}
+
+	/**
+	 * @return true if the final statistics are the expected ones and every
+	 *         status was consistent with them
+	 */
+	public boolean isVerified() {
+		return failures.isEmpty();
+	}
+
+	public List<String> getFailures() {
+		return failures;
+	}
+
+	public List<LatencyRecorder> getRecorders() {
+		return recorders;
+	}
+
+	public ExpectedStatistics.Bounds getExpected() {
+		return expected;
+	}
+
+	public StatisticsDataResponse getActual() {
+		return actual;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append(profile).append('\n');
+		for (LatencyRecorder recorder : recorders) {
+			report.append(recorder.format(seconds)).append('\n');
+		}
+		report.append("Expected : ").append(expected).append('\n');
+		report.append("Actual   : count ").append(actual.getCount()).append(" sum ").append(actual.getSum())
+				.append(" min ").append(actual.getMin() != null ? actual.getMin() : "-").append(" max ")
+				.append(actual.getMax() != null ? actual.getMax() : "-").append('\n');
+		if (failures.isEmpty()) {
+			report.append("Verified");
+		} else {
+			report.append("NOT verified :");
+			for (String failure : failures) {
+				report.append("\n  ").append(failure);
+			}
+		}
+		return report.toString();
+	}
+}
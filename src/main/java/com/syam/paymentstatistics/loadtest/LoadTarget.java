@@ -0,0 +1,109 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.utils.CommonUtils;
+
+/**
+ * The service LoadGenerator sends its operations to : a running instance over
+ * HTTP (HttpLoadTarget), or the StatisticsService of this one
+ * (DirectLoadTarget). The methods are called by several threads at once.
+ *
+ * @author syam
+ *
+ */
+public interface LoadTarget {
+
+	String TRANSACTIONS = "POST /transactions";
+
+	String BATCH = "POST /transactions/batch";
+
+	String STATISTICS = "GET /statistics";
+
+	/**
+	 * @param amountUnits
+	 *            fixed-point amount, see CommonUtils.toUnits()
+	 * @param timestamp
+	 * @return the HTTP status of the response, 200 when the transaction is
+	 *         counted, 204 when it is too old
+	 * @throws IOException
+	 *             when the outcome is unknown
+	 */
+	int postTransaction(long amountUnits, long timestamp) throws IOException;
+
+	/**
+	 * @param amountUnits
+	 * @param timestamps
+	 * @param length
+	 * @return the counts of the batch, null if the status is not 200
+	 * @throws IOException
+	 *             when the outcome is unknown
+	 */
+	BatchResponse postTransactions(long[] amountUnits, long[] timestamps, int length) throws IOException;
+
+	/**
+	 * Statistics of the default window.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	StatisticsRead getStatistics() throws IOException;
+
+	/**
+	 * JSON array of the transactions, the body of POST /transactions/batch.
+	 *
+	 * @param jsonFactory
+	 * @param amountUnits
+	 * @param timestamps
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] toJson(JsonFactory jsonFactory, long[] amountUnits, long[] timestamps, int length)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length * 48);
+		try (JsonGenerator generator = jsonFactory.createGenerator(bytes)) {
+			generator.writeStartArray();
+			for (int i = 0; i < length; i++) {
+				generator.writeStartObject();
+				generator.writeNumberField("amount", CommonUtils.fromUnits(amountUnits[i]));
+				generator.writeNumberField("timestamp", timestamps[i]);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Statistics read, with the age of the snapshot they come from.
+	 */
+	final class StatisticsRead {
+		private final StatisticsDataResponse statistics;
+		private final long age;
+
+		public StatisticsRead(StatisticsDataResponse statistics, long age) {
+			this.statistics = statistics;
+			this.age = age;
+		}
+
+		public StatisticsDataResponse getStatistics() {
+			return statistics;
+		}
+
+		/**
+		 * Time between the computation of the statistics and the response, in
+		 * milliseconds.
+		 *
+		 * @return
+		 */
+		public long getAge() {
+			return age;
+		}
+	}
+}
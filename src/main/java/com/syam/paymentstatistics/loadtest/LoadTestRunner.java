@@ -0,0 +1,53 @@
+package com.syam.paymentstatistics.loadtest;
+
+import java.io.IOException;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Runs the load test once the application is ready, on its own thread, and
+ * logs the report. With exit, the application is then stopped with status 0
+ * if the statistics were verified, 1 otherwise, so that a release script can
+ * run it like a test.
+ *
+ * @author syam
+ *
+ */
+public class LoadTestRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+	private final LoadGenerator loadGenerator;
+
+	private final boolean exit;
+
+	public LoadTestRunner(LoadGenerator loadGenerator, boolean exit) {
+		super();
+		this.loadGenerator = loadGenerator;
+		this.exit = exit;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		Thread thread = new Thread(() -> {
+			int status = 1;
+			try {
+				LoadReport report = loadGenerator.run();
+				Logger.info("Load test report :\n{}", report);
+				status = report.isVerified() ? 0 : 1;
+			} catch (IOException e) {
+				Logger.error("Load test failed : {}", e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (exit) {
+				int exitCode = status;
+				System.exit(SpringApplication.exit(event.getApplicationContext(), () -> exitCode));
+			}
+		}, "statistics-loadtest");
+		thread.setDaemon(!exit);
+		thread.start();
+	}
+}
@@ -0,0 +1,274 @@
+package com.syam.paymentstatistics.metrics;
+
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import com.syam.paymentstatistics.persistence.TransactionPersister;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.syam.paymentstatistics.pojo.TransactionStatus;
+import com.syam.paymentstatistics.window.HeavyHittersWindow;
+import com.syam.paymentstatistics.window.KeyedWindowStore;
+import com.syam.paymentstatistics.window.LockTimings;
+import com.syam.paymentstatistics.window.StatisticsWindow;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the ingestion and statistics pipeline, published to the Micrometer
+ * registry and scraped from /actuator/prometheus on the management port.
+ *
+ * Counters are updated on every transaction, they are striped adders and cost
+ * a few nanoseconds. The timers publish a percentile histogram (exponential
+ * buckets, the quantiles are computed by Prometheus with histogram_quantile)
+ * and cost about a microsecond per record, so only one operation in sampleRate
+ * is timed, System.nanoTime() is not even called for the others. The sampled
+ * latencies follow the same distribution as the full population.
+ *
+ * The gauges (window occupancy, expiry lag, queue depths) are only computed when
+ * the registry is scraped.
+ *
+ * @author syam
+ *
+ */
+public class StatisticsMetrics implements LockTimings {
+
+	// Recording in a timer histogram costs about a microsecond, timing one
+	// operation in 1024 keeps it around a nanosecond per operation
+	public static final int DEFAULT_SAMPLE_RATE = 1024;
+
+	// Does nothing, used when statistics.metrics.enabled is false
+	public static final StatisticsMetrics DISABLED = new StatisticsMetrics();
+
+	private final MeterRegistry registry;
+
+	// Sample rate - 1, the sample rate is rounded up to a power of two
+	private final int sampleMask;
+
+	private final Counter acceptedCounter;
+	private final Counter tooOldCounter;
+	private final Counter invalidCounter;
+	private final Counter tooFutureCounter;
+	private final Counter rejectedCounter;
+
+	private final Timer ingestionTimer;
+	private final Timer readTimer;
+	private final Timer writeLockWaitTimer;
+	private final Timer writeLockHoldTimer;
+	private final Timer readLockWaitTimer;
+	private final Timer readLockHoldTimer;
+
+	private StatisticsMetrics() {
+		super();
+		this.registry = null;
+		this.sampleMask = 0;
+		this.acceptedCounter = null;
+		this.tooOldCounter = null;
+		this.invalidCounter = null;
+		this.tooFutureCounter = null;
+		this.rejectedCounter = null;
+		this.ingestionTimer = null;
+		this.readTimer = null;
+		this.writeLockWaitTimer = null;
+		this.writeLockHoldTimer = null;
+		this.readLockWaitTimer = null;
+		this.readLockHoldTimer = null;
+	}
+
+	/**
+	 * @param registry
+	 * @param sampleRate
+	 *            one operation in sampleRate (rounded up to a power of two) is
+	 *            timed
+	 */
+	public StatisticsMetrics(MeterRegistry registry, int sampleRate) {
+		super();
+		this.registry = registry;
+		int rate = 1;
+		while (rate < sampleRate) {
+			rate <<= 1;
+		}
+		this.sampleMask = rate - 1;
+		this.acceptedCounter = transactionCounter(TransactionStatus.ACCEPTED);
+		this.tooOldCounter = transactionCounter(TransactionStatus.TOO_OLD);
+		this.invalidCounter = transactionCounter(TransactionStatus.INVALID);
+		this.tooFutureCounter = transactionCounter(TransactionStatus.TOO_FUTURE);
+		this.rejectedCounter = transactionCounter(TransactionStatus.REJECTED);
+		this.ingestionTimer = timer("statistics.ingestion.latency", "Time to validate and register a transaction");
+		this.readTimer = timer("statistics.read.latency", "Time to compute the statistics of the window");
+		this.writeLockWaitTimer = timer("statistics.lock.wait", "Time waited for the window lock", "lock", "write");
+		this.writeLockHoldTimer = timer("statistics.lock.hold", "Time the window lock was held", "lock", "write");
+		this.readLockWaitTimer = timer("statistics.lock.wait", "Time waited for the window lock", "lock", "read");
+		this.readLockHoldTimer = timer("statistics.lock.hold", "Time the window lock was held", "lock", "read");
+	}
+
+	public boolean isEnabled() {
+		return registry != null;
+	}
+
+	/**
+	 * Registers the occupancy and expiry lag gauges of the window.
+	 * 
+	 * @param window
+	 * @param clock
+	 *            time source of the window
+	 */
+	public void bindWindow(StatisticsWindow window, Clock clock) {
+		gauge("statistics.window.transactions", "Transactions inside the statistics window", window, w -> {
+			StatisticsData statisticsData = new StatisticsData();
+			w.collect(clock.millis(), statisticsData);
+			return statisticsData.getCount();
+		});
+		gauge("statistics.window.minmax.entries", "Entries of the min/max deques of the statistics window", window,
+				StatisticsWindow::getMinMaxEntries);
+		gauge("statistics.window.expiry.lag", "Age of the expiry of the statistics read, in milliseconds", window,
+				w -> w.getExpiryLag(clock.millis()));
+	}
+
+	/**
+	 * Registers the size and memory gauges of the per dimension statistics.
+	 * 
+	 * @param dimension
+	 *            name of the dimension, used as tag
+	 * @param store
+	 * @param heavyHitters
+	 */
+	public void bindDimension(String dimension, KeyedWindowStore store, HeavyHittersWindow heavyHitters) {
+		if (isEnabled()) {
+			Gauge.builder("statistics.dimension.keys", store, KeyedWindowStore::size)
+					.description("Keys held by the per dimension statistics").tag("dimension", dimension)
+					.register(registry);
+			Gauge.builder("statistics.dimension.evictions", store, KeyedWindowStore::getEvictionCount)
+					.description("Live keys evicted because the maximum number of keys was reached")
+					.tag("dimension", dimension).register(registry);
+			Gauge.builder("statistics.dimension.memory", store, KeyedWindowStore::getMemoryBytes)
+					.description("Memory of the per dimension structures, in bytes").tag("dimension", dimension)
+					.tag("structure", "keyed").register(registry);
+			Gauge.builder("statistics.dimension.memory", heavyHitters, HeavyHittersWindow::getMemoryBytes)
+					.description("Memory of the per dimension structures, in bytes").tag("dimension", dimension)
+					.tag("structure", "heavy-hitters").register(registry);
+		}
+	}
+
+	/**
+	 * Registers the buffer depth and the row counts of the persistence.
+	 * 
+	 * @param persister
+	 */
+	public void bindPersistence(TransactionPersister persister) {
+		bindQueue("persistence", persister, TransactionPersister::getBuffered);
+		if (isEnabled()) {
+			Gauge.builder("statistics.persistence.rows", persister, TransactionPersister::getWritten)
+					.description("Transactions handled by the persistence").tag("outcome", "written")
+					.register(registry);
+			Gauge.builder("statistics.persistence.rows", persister, TransactionPersister::getDropped)
+					.description("Transactions handled by the persistence").tag("outcome", "dropped")
+					.register(registry);
+			Gauge.builder("statistics.persistence.rows", persister, TransactionPersister::getFailed)
+					.description("Transactions handled by the persistence").tag("outcome", "failed")
+					.register(registry);
+		}
+	}
+
+	/**
+	 * Registers a gauge of the number of transactions waiting in a queue.
+	 * 
+	 * @param queue
+	 *            name of the queue, used as tag
+	 * @param source
+	 * @param depth
+	 */
+	public <T> void bindQueue(String queue, T source, ToDoubleFunction<T> depth) {
+		if (isEnabled()) {
+			Gauge.builder("statistics.queue.depth", source, depth)
+					.description("Transactions waiting to be applied to the statistics window").tag("queue", queue)
+					.register(registry);
+		}
+	}
+
+	/**
+	 * Registers a gauge of a value computed by the source object.
+	 * 
+	 * @param name
+	 * @param description
+	 * @param source
+	 * @param value
+	 */
+	public <T> void gauge(String name, String description, T source, ToDoubleFunction<T> value) {
+		if (isEnabled()) {
+			Gauge.builder(name, source, value).description(description).register(registry);
+		}
+	}
+
+	@Override
+	public boolean sample() {
+		return registry != null && (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+	}
+
+	/**
+	 * @return System.nanoTime() when the operation is sampled, 0 otherwise
+	 */
+	public long startTimer() {
+		return sample() ? System.nanoTime() : 0;
+	}
+
+	public void recordIngestion(long start) {
+		if (start != 0) {
+			ingestionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public void recordRead(long start) {
+		if (start != 0) {
+			readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	@Override
+	public void recordWriteLock(long waitNanos, long holdNanos) {
+		writeLockWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+		writeLockHoldTimer.record(holdNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordReadLock(long waitNanos, long holdNanos) {
+		readLockWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+		readLockHoldTimer.record(holdNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void countTransactions(TransactionStatus status, long count) {
+		if (registry == null || count == 0) {
+			return;
+		}
+		switch (status) {
+		case ACCEPTED:
+			acceptedCounter.increment(count);
+			break;
+		case TOO_OLD:
+			tooOldCounter.increment(count);
+			break;
+		case TOO_FUTURE:
+			tooFutureCounter.increment(count);
+			break;
+		case REJECTED:
+			rejectedCounter.increment(count);
+			break;
+		default:
+			invalidCounter.increment(count);
+		}
+	}
+
+	private Counter transactionCounter(TransactionStatus status) {
+		return Counter.builder("statistics.transactions").description("Transactions received, by outcome")
+				.tag("outcome", status.name().toLowerCase()).register(registry);
+	}
+
+	private Timer timer(String name, String description, String... tags) {
+		return Timer.builder(name).description(description).tags(tags)
+				.publishPercentileHistogram().register(registry);
+	}
+}
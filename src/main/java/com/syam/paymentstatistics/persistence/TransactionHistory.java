@@ -0,0 +1,121 @@
+package com.syam.paymentstatistics.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.syam.paymentstatistics.exceptions.GenericException;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * Statistics of any past time range, from the transactions written by
+ * TransactionPersister.
+ *
+ * The range is split into the coarsest whole buckets of the rollup table: the
+ * whole hours inside the range, then the whole minutes and seconds of its two
+ * edges, and the raw rows of the sub-second rests at both ends. A day long
+ * range reads at most 23 + 2 * 59 + 2 * 59 rollup rows plus under a second of
+ * raw rows at each end, whatever the number of transactions. Every part is
+ * aggregated by the database in one small indexed query, at most seven on the
+ * same connection, and the parts are merged as StatisticsData.
+ *
+ * Transactions show up once written by the persister, up to its flush interval
+ * after they were accepted.
+ *
+ * @author syam
+ *
+ */
+public class TransactionHistory {
+
+	private static final String ROLLUP_RANGE = "SELECT SUM(amount_sum), SUM(amount_count), MIN(amount_min),"
+			+ " MAX(amount_max) FROM transactionamount_rollup WHERE resolution = ? AND bucket_start >= ?"
+			+ " AND bucket_start < ?";
+
+	// The persisted amounts are the fixed-point ones converted back to decimals,
+	// rounding them again gives back the exact fixed-point values
+	private static final String RAW_RANGE = "SELECT SUM(CAST(ROUND(amount * " + Constants.AMOUNT_SCALE
+			+ ") AS BIGINT)), COUNT(*), MIN(amount), MAX(amount) FROM transactionamount"
+			+ " WHERE time_stamp >= ? AND time_stamp < ?";
+
+	private final DataSource dataSource;
+
+	public TransactionHistory(DataSource dataSource) {
+		super();
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Statistics of the transactions with a time stamp in [from, to).
+	 *
+	 * @param from
+	 *            in milliseconds
+	 * @param to
+	 *            in milliseconds
+	 * @return
+	 */
+	public StatisticsData getStatistics(long from, long to) {
+		// Resolution (0 for the raw rows), start and end of every part of the range
+		List<long[]> parts = new ArrayList<>();
+		split(from, to, 0, parts);
+
+		StatisticsData statisticsData = new StatisticsData();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement rollupRange = connection.prepareStatement(ROLLUP_RANGE);
+				PreparedStatement rawRange = connection.prepareStatement(RAW_RANGE)) {
+			for (long[] part : parts) {
+				if (part[0] == 0) {
+					rawRange.setLong(1, part[1]);
+					rawRange.setLong(2, part[2]);
+					try (ResultSet resultSet = rawRange.executeQuery()) {
+						resultSet.next();
+						statisticsData.merge(resultSet.getLong(1), resultSet.getLong(2),
+								CommonUtils.toUnits(resultSet.getDouble(3)), CommonUtils.toUnits(resultSet.getDouble(4)));
+					}
+				} else {
+					rollupRange.setLong(1, part[0]);
+					rollupRange.setLong(2, part[1]);
+					rollupRange.setLong(3, part[2]);
+					try (ResultSet resultSet = rollupRange.executeQuery()) {
+						resultSet.next();
+						statisticsData.merge(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3),
+								resultSet.getLong(4));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new GenericException("Range statistics query failed : " + e.getMessage());
+		}
+		return statisticsData;
+	}
+
+	/**
+	 * Adds the whole buckets of the resolution level inside [from, to) and splits
+	 * the rests at both ends with the next finer level, down to the raw rows.
+	 */
+	static void split(long from, long to, int level, List<long[]> parts) {
+		if (from >= to) {
+			return;
+		}
+		if (level == TransactionRollups.RESOLUTIONS.length) {
+			parts.add(new long[] { 0, from, to });
+			return;
+		}
+		long resolution = TransactionRollups.RESOLUTIONS[level];
+		long start = -Math.floorDiv(-from, resolution) * resolution;
+		long end = Math.floorDiv(to, resolution) * resolution;
+		if (start >= end) {
+			split(from, to, level + 1, parts);
+			return;
+		}
+		split(from, start, level + 1, parts);
+		parts.add(new long[] { resolution, start, end });
+		split(end, to, level + 1, parts);
+	}
+}
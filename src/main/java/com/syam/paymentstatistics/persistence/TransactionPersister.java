@@ -0,0 +1,275 @@
+package com.syam.paymentstatistics.persistence;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import com.syam.paymentstatistics.utils.CommonUtils;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Writes the accepted transactions to the transactionamount table
+ * (schema/transactionamount.sql) off the ingestion path.
+ *
+ * Ingestion threads only copy the amount and time stamp into a bounded buffer
+ * of primitive arrays, under a lock held for a few nanoseconds. A single writer
+ * thread swaps the buffer with a spare one every flushInterval milliseconds,
+ * or as soon as batchSize rows are buffered, and inserts the swapped rows with
+ * JDBC batches of batchSize rows in one database transaction, which also adds
+ * them to the per second, minute and hour TransactionRollups. The database is
+ * never called by an ingestion thread, so its latency only shows up as buffered
+ * rows.
+ *
+ * Overflow policy : when the buffer holds capacity rows, because the database
+ * is slower than the ingestion or unavailable, the new rows are dropped and
+ * counted, the ingestion never waits. A batch which fails is dropped as well,
+ * and counted as failed. Rows are persisted at most once.
+ *
+ * @author syam
+ *
+ */
+public class TransactionPersister implements Closeable {
+
+	private static final String INSERT = "INSERT INTO transactionamount (created, amount, time_stamp) VALUES (?, ?, ?)";
+
+	private final DataSource dataSource;
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private final long flushInterval;
+
+	// Used by the writer thread only
+	private final TransactionRollups rollups = new TransactionRollups();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Signaled when batchSize rows are buffered
+	private final Condition batchReady = lock.newCondition();
+
+	// Buffer filled by the ingestion threads, guarded by lock
+	private long[] amounts;
+	private long[] timestamps;
+	private int size;
+	private long dropped;
+
+	// Buffer being written by the writer thread
+	private long[] spareAmounts;
+	private long[] spareTimestamps;
+
+	private volatile long written;
+	private volatile long failed;
+
+	private volatile boolean running = true;
+
+	private final Thread writerThread;
+
+	/**
+	 * @param dataSource
+	 * @param capacity
+	 *            most rows buffered, the writer thread holds as many more while
+	 *            it writes them
+	 * @param batchSize
+	 *            rows per JDBC batch
+	 * @param flushInterval
+	 *            most time a row waits in the buffer while the database keeps up,
+	 *            in milliseconds
+	 */
+	public TransactionPersister(DataSource dataSource, int capacity, int batchSize, long flushInterval) {
+		super();
+		if (batchSize <= 0 || capacity < batchSize) {
+			throw new IllegalArgumentException(
+					"Invalid persistence buffer capacity " + capacity + " for batch size " + batchSize);
+		}
+		this.dataSource = dataSource;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.amounts = new long[capacity];
+		this.timestamps = new long[capacity];
+		this.spareAmounts = new long[capacity];
+		this.spareTimestamps = new long[capacity];
+		this.writerThread = new Thread(this::run, "statistics-persistence-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Buffers a transaction for persistence.
+	 *
+	 * @param amount
+	 *            fixed-point amount, scaled by Constants.AMOUNT_SCALE
+	 * @param timestamp
+	 * @return false if the buffer is full and the transaction was dropped
+	 */
+	public boolean offer(long amount, long timestamp) {
+		lock.lock();
+		try {
+			return put(amount, timestamp);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Buffers transactions for persistence, under a single lock acquisition.
+	 *
+	 * @param amounts
+	 * @param timestamps
+	 * @param length
+	 * @return number of transactions buffered, the others were dropped
+	 */
+	public int offerAll(long[] amounts, long[] timestamps, int length) {
+		int buffered = 0;
+		lock.lock();
+		try {
+			for (int i = 0; i < length; i++) {
+				if (put(amounts[i], timestamps[i])) {
+					buffered++;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return buffered;
+	}
+
+	/**
+	 * Stops the writer thread once the buffered rows are written.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		lock.lock();
+		try {
+			batchReady.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getBuffered() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Rows inserted in the database.
+	 *
+	 * @return
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Rows dropped because the buffer was full.
+	 *
+	 * @return
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Rows dropped because their batch failed.
+	 *
+	 * @return
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	private boolean put(long amount, long timestamp) {
+		if (size == capacity) {
+			dropped++;
+			return false;
+		}
+		amounts[size] = amount;
+		timestamps[size] = timestamp;
+		if (++size == batchSize) {
+			batchReady.signal();
+		}
+		return true;
+	}
+
+	private void run() {
+		boolean last = false;
+		while (!last) {
+			last = !running;
+			int length;
+			lock.lock();
+			try {
+				if (!last && size < batchSize) {
+					batchReady.await(flushInterval, TimeUnit.MILLISECONDS);
+				}
+				length = size;
+				long[] swapped = amounts;
+				amounts = spareAmounts;
+				spareAmounts = swapped;
+				swapped = timestamps;
+				timestamps = spareTimestamps;
+				spareTimestamps = swapped;
+				size = 0;
+			} catch (InterruptedException e) {
+				continue;
+			} finally {
+				lock.unlock();
+			}
+			if (length > 0) {
+				write(spareAmounts, spareTimestamps, length);
+			}
+		}
+	}
+
+	private void write(long[] amounts, long[] timestamps, int length) {
+		long created = System.currentTimeMillis();
+		rollups.clear();
+		try (Connection connection = dataSource.getConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+				for (int i = 0; i < length; i++) {
+					statement.setLong(1, created);
+					statement.setDouble(2, CommonUtils.fromUnits(amounts[i]));
+					statement.setLong(3, timestamps[i]);
+					statement.addBatch();
+					rollups.add(amounts[i], timestamps[i]);
+					if ((i + 1) % batchSize == 0 || i == length - 1) {
+						statement.executeBatch();
+					}
+				}
+				rollups.write(connection);
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+			written += length;
+		} catch (SQLException | RuntimeException e) {
+			// The writer thread must survive the database being unavailable
+			failed += length;
+			Logger.error("Failed to persist {} transactions : {}", length, e.getMessage());
+		}
+	}
+}
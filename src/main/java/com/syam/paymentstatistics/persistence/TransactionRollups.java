@@ -0,0 +1,119 @@
+package com.syam.paymentstatistics.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Per second, per minute and per hour aggregates of the persisted transactions,
+ * kept in the transactionamount_rollup table
+ * (schema/transactionamount_rollup.sql) by the TransactionPersister writer
+ * thread.
+ *
+ * The transactions of a batch are first aggregated in memory into one
+ * StatisticsData per bucket and resolution, by the transaction time stamp. The
+ * buckets are then added to their rows, in the same database transaction as
+ * the raw rows: existing rows are updated in one JDBC batch and the missing
+ * ones inserted in another, which works on PostgreSQL as well as on H2. A batch
+ * covering the 60 second acceptance window touches about 60 second rows and a
+ * couple of minute and hour rows.
+ *
+ * The rows are only updated by this writer, so a table is meant to be written
+ * by a single instance.
+ *
+ * This class is not thread-safe, it is only used by the writer thread.
+ *
+ * @author syam
+ *
+ */
+class TransactionRollups {
+
+	// Bucket durations in milliseconds, coarsest first
+	static final long[] RESOLUTIONS = { 3_600_000L, 60_000L, 1000L };
+
+	private static final String UPDATE = "UPDATE transactionamount_rollup SET amount_sum = amount_sum + ?,"
+			+ " amount_count = amount_count + ?, amount_min = LEAST(amount_min, ?), amount_max = GREATEST(amount_max, ?)"
+			+ " WHERE resolution = ? AND bucket_start = ?";
+
+	private static final String INSERT = "INSERT INTO transactionamount_rollup"
+			+ " (resolution, bucket_start, amount_sum, amount_count, amount_min, amount_max) VALUES (?, ?, ?, ?, ?, ?)";
+
+	// Aggregates of the batch per resolution (same order as RESOLUTIONS), by
+	// bucket start
+	private final List<Map<Long, StatisticsData>> buckets = new ArrayList<>();
+
+	TransactionRollups() {
+		super();
+		for (int level = 0; level < RESOLUTIONS.length; level++) {
+			buckets.add(new HashMap<>());
+		}
+	}
+
+	void add(long amount, long timestamp) {
+		for (int level = 0; level < RESOLUTIONS.length; level++) {
+			long bucketStart = Math.floorDiv(timestamp, RESOLUTIONS[level]) * RESOLUTIONS[level];
+			buckets.get(level).computeIfAbsent(bucketStart, start -> new StatisticsData()).merge(amount, 1, amount,
+					amount);
+		}
+	}
+
+	void clear() {
+		for (Map<Long, StatisticsData> levelBuckets : buckets) {
+			levelBuckets.clear();
+		}
+	}
+
+	/**
+	 * Adds the aggregates of the batch to the rollup table, without committing.
+	 *
+	 * @param connection
+	 * @throws SQLException
+	 */
+	void write(Connection connection) throws SQLException {
+		List<long[]> missing = new ArrayList<>();
+		try (PreparedStatement update = connection.prepareStatement(UPDATE)) {
+			List<long[]> updated = new ArrayList<>();
+			for (int level = 0; level < RESOLUTIONS.length; level++) {
+				for (Map.Entry<Long, StatisticsData> bucket : buckets.get(level).entrySet()) {
+					StatisticsData statisticsData = bucket.getValue();
+					update.setLong(1, statisticsData.getSum());
+					update.setLong(2, statisticsData.getCount());
+					update.setLong(3, statisticsData.getMin());
+					update.setLong(4, statisticsData.getMax());
+					update.setLong(5, RESOLUTIONS[level]);
+					update.setLong(6, bucket.getKey());
+					update.addBatch();
+					updated.add(new long[] { level, bucket.getKey() });
+				}
+			}
+			int[] counts = update.executeBatch();
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] == 0) {
+					missing.add(updated.get(i));
+				}
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+				for (long[] bucket : missing) {
+					StatisticsData statisticsData = buckets.get((int) bucket[0]).get(bucket[1]);
+					insert.setLong(1, RESOLUTIONS[(int) bucket[0]]);
+					insert.setLong(2, bucket[1]);
+					insert.setLong(3, statisticsData.getSum());
+					insert.setLong(4, statisticsData.getCount());
+					insert.setLong(5, statisticsData.getMin());
+					insert.setLong(6, statisticsData.getMax());
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.syam.paymentstatistics.pojo;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of fixed-point amounts (see Constants.AMOUNT_SCALE), in
+ * the spirit of HdrHistogram. Every power of two is split in SUB_BUCKET_COUNT
+ * linear sub-buckets, and the amounts below SUB_BUCKET_COUNT units are counted
+ * exactly. A percentile is reported as the middle of its sub-bucket, so its
+ * relative error is at most RELATIVE_ERROR (1/64, about 1.6%) whatever the
+ * distribution of the amounts is.
+ *
+ * The memory is fixed (BUCKET_COUNT counters covering all the positive long
+ * values) and histograms are merged, and subtracted, by adding the counters.
+ *
+ * This class is not thread-safe.
+ *
+ * @author syam
+ *
+ */
+public class AmountHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	// SUB_BUCKET_COUNT exact values, then SUB_BUCKET_COUNT sub-buckets for every
+	// power of two up to 2^62
+	public static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	public static final double RELATIVE_ERROR = 1d / (2 * SUB_BUCKET_COUNT);
+
+	private final long[] counts = new long[BUCKET_COUNT];
+
+	private long totalCount;
+
+	public AmountHistogram() {
+		super();
+	}
+
+	public AmountHistogram(AmountHistogram h) {
+		super();
+		System.arraycopy(h.counts, 0, counts, 0, BUCKET_COUNT);
+		this.totalCount = h.totalCount;
+	}
+
+	/**
+	 * Index of the sub-bucket of a non negative amount.
+	 * 
+	 * @param amount
+	 * @return
+	 */
+	public static int indexOf(long amount) {
+		if (amount < SUB_BUCKET_COUNT) {
+			return (int) Math.max(0, amount);
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(amount) - SUB_BUCKET_BITS;
+		return SUB_BUCKET_COUNT + (shift << SUB_BUCKET_BITS) + (int) ((amount >>> shift) - SUB_BUCKET_COUNT);
+	}
+
+	/**
+	 * Middle of the sub-bucket, the value reported for all the amounts counted in
+	 * it.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public static long valueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKET_COUNT) >>> SUB_BUCKET_BITS;
+		long lowest = (long) (SUB_BUCKET_COUNT + ((index - SUB_BUCKET_COUNT) & (SUB_BUCKET_COUNT - 1))) << shift;
+		return lowest + ((1L << shift) >>> 1);
+	}
+
+	public void record(long amount) {
+		counts[indexOf(amount)]++;
+		totalCount++;
+	}
+
+	public void add(AmountHistogram h) {
+		add(h.counts);
+	}
+
+	/**
+	 * Adds counters indexed like this histogram.
+	 * 
+	 * @param bucketCounts
+	 */
+	public void add(long[] bucketCounts) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += bucketCounts[i];
+			totalCount += bucketCounts[i];
+		}
+	}
+
+	public void add(int[] bucketCounts) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += bucketCounts[i];
+			totalCount += bucketCounts[i];
+		}
+	}
+
+	public void subtract(int[] bucketCounts) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] -= bucketCounts[i];
+			totalCount -= bucketCounts[i];
+		}
+	}
+
+	/**
+	 * Amount at the given quantile (0.5 for the median), with the nearest-rank
+	 * definition: the smallest amount such that at least quantile * count amounts
+	 * are lower or equal.
+	 * 
+	 * @param quantile
+	 * @return
+	 */
+	public long valueAtQuantile(double quantile) {
+		long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+		long cumulated = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulated += counts[i];
+			if (cumulated >= rank) {
+				return valueOf(i);
+			}
+		}
+		return valueOf(BUCKET_COUNT - 1);
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+	}
+}
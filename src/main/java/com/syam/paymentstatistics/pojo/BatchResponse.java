@@ -0,0 +1,95 @@
+package com.syam.paymentstatistics.pojo;
+
+public class BatchResponse extends BasicResponse {
+
+	private int accepted;
+	private int tooOld;
+	private int invalid;
+	private int tooFuture;
+	// Valid transactions refused because the event-time buffer was full
+	private int rejected;
+	// Accepted transactions whose id was already counted, included in accepted
+	private int duplicates;
+
+	public BatchResponse() {
+		super();
+	}
+
+	public void count(TransactionStatus status) {
+		switch (status) {
+		case ACCEPTED:
+			accepted++;
+			break;
+		case TOO_OLD:
+			tooOld++;
+			break;
+		case TOO_FUTURE:
+			tooFuture++;
+			break;
+		case REJECTED:
+			rejected++;
+			break;
+		default:
+			invalid++;
+			break;
+		}
+	}
+
+	public void countDuplicate() {
+		duplicates++;
+	}
+
+	public int getAccepted() {
+		return accepted;
+	}
+
+	public void setAccepted(int accepted) {
+		this.accepted = accepted;
+	}
+
+	public int getTooOld() {
+		return tooOld;
+	}
+
+	public void setTooOld(int tooOld) {
+		this.tooOld = tooOld;
+	}
+
+	public int getInvalid() {
+		return invalid;
+	}
+
+	public void setInvalid(int invalid) {
+		this.invalid = invalid;
+	}
+
+	public int getTooFuture() {
+		return tooFuture;
+	}
+
+	public void setTooFuture(int tooFuture) {
+		this.tooFuture = tooFuture;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public void setRejected(int rejected) {
+		this.rejected = rejected;
+	}
+
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	public void setDuplicates(int duplicates) {
+		this.duplicates = duplicates;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResponse [accepted=" + accepted + ", tooOld=" + tooOld + ", invalid=" + invalid + ", tooFuture="
+				+ tooFuture + ", rejected=" + rejected + ", duplicates=" + duplicates + ", toString()=" + super.toString() + "]";
+	}
+}
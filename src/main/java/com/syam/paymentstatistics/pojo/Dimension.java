@@ -0,0 +1,70 @@
+package com.syam.paymentstatistics.pojo;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Optional fields of a transaction the statistics can be broken down by, served
+ * by GET /statistics/{dimension}/{key}.
+ *
+ * @author syam
+ *
+ */
+public enum Dimension {
+
+	MERCHANT("merchant", TransactionRequest::getMerchant, TransactionRequest::setMerchant),
+
+	CURRENCY("currency", TransactionRequest::getCurrency, TransactionRequest::setCurrency),
+
+	CHANNEL("channel", TransactionRequest::getChannel, TransactionRequest::setChannel);
+
+	private final String name;
+
+	private final Function<TransactionRequest, String> accessor;
+
+	private final BiConsumer<TransactionRequest, String> mutator;
+
+	private Dimension(String name, Function<TransactionRequest, String> accessor,
+			BiConsumer<TransactionRequest, String> mutator) {
+		this.name = name;
+		this.accessor = accessor;
+		this.mutator = mutator;
+	}
+
+	/**
+	 * JSON field of the transaction and path segment of the statistics API.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param transactionRequest
+	 * @return the key of the transaction for this dimension, null when it has
+	 *         none
+	 */
+	public String getKey(TransactionRequest transactionRequest) {
+		return accessor.apply(transactionRequest);
+	}
+
+	public void setKey(TransactionRequest transactionRequest, String key) {
+		mutator.accept(transactionRequest, key);
+	}
+
+	/**
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             when the value is not a dimension name
+	 */
+	public static Dimension parse(String value) {
+		for (Dimension dimension : values()) {
+			if (dimension.name.equalsIgnoreCase(value.trim())) {
+				return dimension;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported dimension " + value);
+	}
+}
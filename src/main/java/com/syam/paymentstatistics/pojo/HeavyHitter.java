@@ -0,0 +1,52 @@
+package com.syam.paymentstatistics.pojo;
+
+/**
+ * Approximate volume of a heavy hitter key. The exact volume is between volume
+ * - error and volume.
+ */
+public class HeavyHitter {
+
+	private String key;
+	private double volume;
+	private double error;
+
+	public HeavyHitter() {
+		super();
+	}
+
+	public HeavyHitter(String key, double volume, double error) {
+		super();
+		this.key = key;
+		this.volume = volume;
+		this.error = error;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	public double getVolume() {
+		return volume;
+	}
+
+	public void setVolume(double volume) {
+		this.volume = volume;
+	}
+
+	public double getError() {
+		return error;
+	}
+
+	public void setError(double error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return "HeavyHitter [key=" + key + ", volume=" + volume + ", error=" + error + "]";
+	}
+}
@@ -0,0 +1,95 @@
+package com.syam.paymentstatistics.pojo;
+
+import java.util.List;
+
+/**
+ * Top keys of a dimension by volume over the last 60 seconds. Every volume is
+ * at most errorBound (relativeError * the volume of the window) above the
+ * exact one, memoryBytes is the fixed size of the sketch.
+ */
+public class HeavyHittersResponse {
+
+	private String dimension;
+	private int k;
+	private int capacity;
+	private double relativeError;
+	private double errorBound;
+	private double windowVolume;
+	private long memoryBytes;
+	private List<HeavyHitter> heavyHitters;
+
+	public HeavyHittersResponse() {
+		super();
+	}
+
+	public String getDimension() {
+		return dimension;
+	}
+
+	public void setDimension(String dimension) {
+		this.dimension = dimension;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public void setK(int k) {
+		this.k = k;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public double getRelativeError() {
+		return relativeError;
+	}
+
+	public void setRelativeError(double relativeError) {
+		this.relativeError = relativeError;
+	}
+
+	public double getErrorBound() {
+		return errorBound;
+	}
+
+	public void setErrorBound(double errorBound) {
+		this.errorBound = errorBound;
+	}
+
+	public double getWindowVolume() {
+		return windowVolume;
+	}
+
+	public void setWindowVolume(double windowVolume) {
+		this.windowVolume = windowVolume;
+	}
+
+	public long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	public void setMemoryBytes(long memoryBytes) {
+		this.memoryBytes = memoryBytes;
+	}
+
+	public List<HeavyHitter> getHeavyHitters() {
+		return heavyHitters;
+	}
+
+	public void setHeavyHitters(List<HeavyHitter> heavyHitters) {
+		this.heavyHitters = heavyHitters;
+	}
+
+	@Override
+	public String toString() {
+		return "HeavyHittersResponse [dimension=" + dimension + ", k=" + k + ", capacity=" + capacity
+				+ ", relativeError=" + relativeError + ", errorBound=" + errorBound + ", windowVolume="
+				+ windowVolume + ", memoryBytes=" + memoryBytes + ", heavyHitters=" + heavyHitters + "]";
+	}
+}
@@ -0,0 +1,31 @@
+package com.syam.paymentstatistics.pojo;
+
+/**
+ * Statistics of one key of a dimension, as listed by the top N query.
+ */
+public class KeyedStatisticsResponse extends StatisticsDataResponse {
+
+	private String key;
+
+	public KeyedStatisticsResponse() {
+		super();
+	}
+
+	public KeyedStatisticsResponse(String key, StatisticsData sd) {
+		super(sd);
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	@Override
+	public String toString() {
+		return "KeyedStatisticsResponse [key=" + key + ", toString()=" + super.toString() + "]";
+	}
+}
@@ -0,0 +1,86 @@
+package com.syam.paymentstatistics.pojo;
+
+import com.syam.paymentstatistics.utils.CommonUtils;
+
+/**
+ * Percentiles of the transaction amounts. Each value is within relativeError of
+ * the exact percentile (nearest-rank) of the window.
+ */
+public class PercentilesResponse {
+
+	private Double p50;
+	private Double p95;
+	private Double p99;
+	private double relativeError;
+
+	public PercentilesResponse() {
+		super();
+	}
+
+	/**
+	 * @param histogram
+	 * @param sd
+	 *            statistics of the same transactions, the percentiles are kept
+	 *            between their exact min and max
+	 */
+	public PercentilesResponse(AmountHistogram histogram, StatisticsData sd) {
+		super();
+		this.relativeError = AmountHistogram.RELATIVE_ERROR;
+		if (!sd.isEmpty() && histogram.getTotalCount() > 0) {
+			this.p50 = percentile(histogram, sd, 0.50);
+			this.p95 = percentile(histogram, sd, 0.95);
+			this.p99 = percentile(histogram, sd, 0.99);
+		}
+	}
+
+	public PercentilesResponse(PercentilesResponse pr) {
+		super();
+		this.p50 = pr.getP50();
+		this.p95 = pr.getP95();
+		this.p99 = pr.getP99();
+		this.relativeError = pr.getRelativeError();
+	}
+
+	private static double percentile(AmountHistogram histogram, StatisticsData sd, double quantile) {
+		long value = histogram.valueAtQuantile(quantile);
+		return CommonUtils.fromUnits(Math.max(sd.getMin(), Math.min(sd.getMax(), value)));
+	}
+
+	public Double getP50() {
+		return p50;
+	}
+
+	public void setP50(Double p50) {
+		this.p50 = p50;
+	}
+
+	public Double getP95() {
+		return p95;
+	}
+
+	public void setP95(Double p95) {
+		this.p95 = p95;
+	}
+
+	public Double getP99() {
+		return p99;
+	}
+
+	public void setP99(Double p99) {
+		this.p99 = p99;
+	}
+
+	public double getRelativeError() {
+		return relativeError;
+	}
+
+	public void setRelativeError(double relativeError) {
+		this.relativeError = relativeError;
+	}
+
+	@Override
+	public String toString() {
+		return "PercentilesResponse [p50=" + p50 + ", p95=" + p95 + ", p99=" + p99 + ", relativeError="
+				+ relativeError + "]";
+	}
+}
@@ -0,0 +1,42 @@
+package com.syam.paymentstatistics.pojo;
+
+/**
+ * Statistics of the persisted transactions with a time stamp in [from, to).
+ */
+public class RangeStatisticsResponse extends StatisticsDataResponse {
+
+	private long from;
+
+	private long to;
+
+	public RangeStatisticsResponse() {
+		super();
+	}
+
+	public RangeStatisticsResponse(long from, long to, StatisticsData sd) {
+		super(sd);
+		this.from = from;
+		this.to = to;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	public void setFrom(long from) {
+		this.from = from;
+	}
+
+	public long getTo() {
+		return to;
+	}
+
+	public void setTo(long to) {
+		this.to = to;
+	}
+
+	@Override
+	public String toString() {
+		return "RangeStatisticsResponse [from=" + from + ", to=" + to + ", toString()=" + super.toString() + "]";
+	}
+}
@@ -1,20 +1,20 @@
 package com.syam.paymentstatistics.pojo;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-import com.google.common.util.concurrent.AtomicDouble;
-import com.syam.paymentstatistics.utils.CommonUtils;
-
 public class StatisticsData {
 	/*
 	 * "sum": 1000, "avg": 100, "max": 200, "min": 50, "count": 10
 	 */
 
-	private AtomicDouble sum;
-	private AtomicDouble avg;
-	private AtomicDouble max = null;
-	private AtomicDouble min = null;
-	private AtomicInteger count;
+	// All the amounts are fixed-point values scaled by Constants.AMOUNT_SCALE.
+	// They are converted back to decimals only when StatisticsDataResponse is
+	// built.
+	private long sum;
+	private long max;
+	private long min;
+	private long count;
+
+	// Distribution of the amounts, only collected when percentiles are requested
+	private AmountHistogram histogram;
 
 	public StatisticsData() {
 		super();
@@ -23,83 +23,113 @@ public class StatisticsData {
 
 	public StatisticsData(StatisticsData s) {
 		super();
-		this.sum = new AtomicDouble(s.getSum().doubleValue());
-		this.avg = new AtomicDouble(s.getAvg().doubleValue());
-		this.max = s.getMax() == null ? null : new AtomicDouble(s.getMax().doubleValue());
-		this.min = s.getMin() == null ? null : new AtomicDouble(s.getMin().doubleValue());
-		this.count = new AtomicInteger(s.getCount().get());
-	}
-
-	public synchronized void addTranscation(double amount) {
-		this.sum.compareAndSet(this.sum.doubleValue(), CommonUtils.roundDoubleValue(this.sum.doubleValue() + amount));
-		this.count.incrementAndGet();
-		// count will never be zero after a transaction addition
-		this.avg = new AtomicDouble(CommonUtils.roundDoubleValue(this.sum.doubleValue() / this.count.intValue()));
+		this.sum = s.getSum();
+		this.max = s.getMax();
+		this.min = s.getMin();
+		this.count = s.getCount();
+		if (s.getHistogram() != null) {
+			this.histogram = new AmountHistogram(s.getHistogram());
+		}
 	}
 
-	public AtomicDouble getSum() {
-		return sum;
+	/**
+	 * Statistics data which also collects the distribution of the amounts.
+	 * 
+	 * @return
+	 */
+	public static StatisticsData withHistogram() {
+		StatisticsData statisticsData = new StatisticsData();
+		statisticsData.setHistogram(new AmountHistogram());
+		return statisticsData;
+	}
+
+	/**
+	 * Merges the aggregates of a bucket (or of another statistics data object)
+	 * into this object.
+	 * 
+	 * @param sum
+	 * @param count
+	 * @param min
+	 * @param max
+	 */
+	public void merge(long sum, long count, long min, long max) {
+		if (count == 0) {
+			return;
+		}
+		if (this.count == 0 || min < this.min) {
+			this.min = min;
+		}
+		if (this.count == 0 || max > this.max) {
+			this.max = max;
+		}
+		this.sum += sum;
+		this.count += count;
 	}
 
-	public void setSum(AtomicDouble sum) {
-		this.sum = sum;
+	public void merge(StatisticsData s) {
+		merge(s.getSum(), s.getCount(), s.getMin(), s.getMax());
+		if (histogram != null && s.getHistogram() != null) {
+			histogram.add(s.getHistogram());
+		}
 	}
 
-	public AtomicDouble getAvg() {
-		return avg;
+	public long getSum() {
+		return sum;
 	}
 
-	public void setAvg(AtomicDouble avg) {
-		this.avg = avg;
+	public void setSum(long sum) {
+		this.sum = sum;
 	}
 
-	public AtomicDouble getMax() {
+	public long getMax() {
 		return max;
 	}
 
-	public void setMax(AtomicDouble max) {
+	public void setMax(long max) {
 		this.max = max;
 	}
 
-	public AtomicDouble getMin() {
+	public long getMin() {
 		return min;
 	}
 
-	public void setMin(AtomicDouble min) {
+	public void setMin(long min) {
 		this.min = min;
 	}
 
-	public AtomicInteger getCount() {
+	public long getCount() {
 		return count;
 	}
 
-	public void setCount(AtomicInteger count) {
+	public void setCount(long count) {
 		this.count = count;
 	}
 
-	public synchronized void removeTranscation(TransactionRequest request) {
-		this.sum.compareAndSet(this.sum.doubleValue(),
-				CommonUtils.roundDoubleValue(this.sum.doubleValue() - request.getAmount()));
-		this.count.decrementAndGet();
-		if (this.count.intValue() > 0) {
-			this.avg = new AtomicDouble(CommonUtils.roundDoubleValue(this.sum.doubleValue() / this.count.intValue()));
-		} else {
-			this.avg = new AtomicDouble();
-		}
+	public AmountHistogram getHistogram() {
+		return histogram;
+	}
+
+	public void setHistogram(AmountHistogram histogram) {
+		this.histogram = histogram;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
 	}
 
 	public void resetValues() {
-		this.sum = new AtomicDouble();
-		this.avg = new AtomicDouble();
-		this.min = null;
-		this.max = null;
-		this.count = new AtomicInteger();
+		this.sum = 0;
+		this.min = 0;
+		this.max = 0;
+		this.count = 0;
+		if (histogram != null) {
+			histogram.reset();
+		}
 	}
 
 	@Override
 	public String toString() {
-		return "StatisticsData [sum=" + sum.doubleValue() + ", avg=" + avg.doubleValue() + ", max=" + max.doubleValue()
-				+ ", min=" + min.doubleValue() + ", count=" + count.intValue() + ", toString()=" + super.toString()
-				+ "]";
+		return "StatisticsData [sum=" + sum + ", max=" + max + ", min=" + min + ", count=" + count + ", toString()="
+				+ super.toString() + "]";
 	}
 }
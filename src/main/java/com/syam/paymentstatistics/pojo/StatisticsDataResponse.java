@@ -1,5 +1,9 @@
 package com.syam.paymentstatistics.pojo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.syam.paymentstatistics.utils.CommonUtils;
+
 public class StatisticsDataResponse {
 
 	private double sum;
@@ -8,17 +12,30 @@ public class StatisticsDataResponse {
 	private Double min;
 	private int count;
 
+	// Only present when the percentiles were requested
+	@JsonInclude(Include.NON_NULL)
+	private PercentilesResponse percentiles;
+
 	public StatisticsDataResponse() {
 		super();
 	}
 
+	/**
+	 * Rounding of the fixed-point aggregates happens only here, when the response
+	 * is built.
+	 * 
+	 * @param sd
+	 */
 	public StatisticsDataResponse(StatisticsData sd) {
 		super();
-		this.sum = sd.getSum().doubleValue();
-		this.avg = sd.getAvg().doubleValue();
-		this.max = sd.getMax() == null ? null : sd.getMax().doubleValue();
-		this.min = sd.getMin() == null ? null : sd.getMin().doubleValue();
-		this.count = sd.getCount().intValue();
+		this.sum = CommonUtils.fromUnits(sd.getSum());
+		this.avg = sd.isEmpty() ? 0d : CommonUtils.fromUnits(CommonUtils.divideUnits(sd.getSum(), sd.getCount()));
+		this.max = sd.isEmpty() ? null : CommonUtils.fromUnits(sd.getMax());
+		this.min = sd.isEmpty() ? null : CommonUtils.fromUnits(sd.getMin());
+		this.count = (int) sd.getCount();
+		if (sd.getHistogram() != null) {
+			this.percentiles = new PercentilesResponse(sd.getHistogram(), sd);
+		}
 	}
 
 	public StatisticsDataResponse(StatisticsDataResponse sds) {
@@ -28,6 +45,9 @@ public class StatisticsDataResponse {
 		this.max = sds.getMax();
 		this.min = sds.getMin();
 		this.count = sds.getCount();
+		if (sds.getPercentiles() != null) {
+			this.percentiles = new PercentilesResponse(sds.getPercentiles());
+		}
 	}
 
 	public double getSum() {
@@ -70,6 +90,14 @@ public class StatisticsDataResponse {
 		this.count = count;
 	}
 
+	public PercentilesResponse getPercentiles() {
+		return percentiles;
+	}
+
+	public void setPercentiles(PercentilesResponse percentiles) {
+		this.percentiles = percentiles;
+	}
+
 	@Override
 	public String toString() {
 		return "StatisticsDataResponse [sum=" + sum + ", avg=" + avg + ", max=" + max + ", min=" + min + ", count="
@@ -0,0 +1,64 @@
+package com.syam.paymentstatistics.pojo;
+
+/**
+ * Immutable statistics of the window at a point in time, along with its JSON
+ * serialization, so that it can be served many times without being recomputed
+ * or serialized again.
+ */
+public final class StatisticsSnapshot {
+
+	private final StatisticsData statisticsData;
+	private final StatisticsDataResponse response;
+	private final byte[] json;
+	private final long computedAt;
+
+	public StatisticsSnapshot(StatisticsData statisticsData, StatisticsDataResponse response, byte[] json,
+			long computedAt) {
+		super();
+		this.statisticsData = statisticsData;
+		this.response = response;
+		this.json = json;
+		this.computedAt = computedAt;
+	}
+
+	/**
+	 * Same statistics, computed again at a later time.
+	 * 
+	 * @param computedAt
+	 * @return
+	 */
+	public StatisticsSnapshot refreshedAt(long computedAt) {
+		return new StatisticsSnapshot(statisticsData, response, json, computedAt);
+	}
+
+	public StatisticsData getStatisticsData() {
+		return new StatisticsData(statisticsData);
+	}
+
+	public StatisticsDataResponse getResponse() {
+		return new StatisticsDataResponse(response);
+	}
+
+	public byte[] getJson() {
+		return json.clone();
+	}
+
+	public int getJsonLength() {
+		return json.length;
+	}
+
+	public long getComputedAt() {
+		return computedAt;
+	}
+
+	public boolean hasSameStatistics(StatisticsData other) {
+		return statisticsData.getSum() == other.getSum() && statisticsData.getCount() == other.getCount()
+				&& statisticsData.getMin() == other.getMin() && statisticsData.getMax() == other.getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "StatisticsSnapshot [response=" + response + ", computedAt=" + computedAt + ", toString()="
+				+ super.toString() + "]";
+	}
+}
@@ -1,21 +1,35 @@
 package com.syam.paymentstatistics.pojo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.syam.paymentstatistics.exceptions.BadRequestException;
 import com.syam.paymentstatistics.exceptions.NoContentResponse;
+import com.syam.paymentstatistics.utils.CommonUtils;
 import com.syam.paymentstatistics.utils.Constants;
 
 public class TransactionRequest {
 	private Double amount;
+	// Amount as a fixed-point value scaled by Constants.AMOUNT_SCALE. It is
+	// computed once when the amount is set and used for all the aggregations.
+	private long amountUnits;
 	private long timestamp;
 	private Boolean test;
 
+	// Optional id, the same id is only counted once over the statistics window
+	// when the duplicate filter is enabled
+	private String id;
+
+	// Optional keys of the per dimension statistics, see Dimension
+	private String merchant;
+	private String currency;
+	private String channel;
+
 	public TransactionRequest() {
 		super();
 	}
 
 	public TransactionRequest(Double amount, long timestamp, Boolean test) {
 		super();
-		this.amount = amount;
+		setAmount(amount);
 		this.timestamp = timestamp;
 		this.test = test;
 	}
@@ -26,6 +40,12 @@ public class TransactionRequest {
 
 	public void setAmount(Double amount) {
 		this.amount = amount;
+		this.amountUnits = amount == null ? 0 : CommonUtils.toUnits(amount);
+	}
+
+	@JsonIgnore
+	public long getAmountUnits() {
+		return amountUnits;
 	}
 
 	public long getTimestamp() {
@@ -44,29 +64,127 @@ public class TransactionRequest {
 		this.test = test;
 	}
 
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getMerchant() {
+		return merchant;
+	}
+
+	public void setMerchant(String merchant) {
+		this.merchant = merchant;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public void setCurrency(String currency) {
+		this.currency = currency;
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	public void setChannel(String channel) {
+		this.channel = channel;
+	}
+
 	public long getExpiryTime() {
 		return this.timestamp + Constants.STATISTICS_TIME_WINDOW;
 	}
 
 	public void addTransaction(TransactionRequest request) {
 		if (this.timestamp == request.getTimestamp()) {
-			this.amount += request.getAmount();
+			setAmount(this.amount + request.getAmount());
 		}
 	}
 
-	public void validate() {
-		if (this.amount == null || this.amount < 0d) {
+	/**
+	 * @param now
+	 *            current time of the service clock
+	 */
+	public void validate(long now) {
+		switch (validationStatus(this.amount, this.timestamp, now)) {
+		case INVALID:
 			throw new BadRequestException("Amount value is invalid.");
+		case TOO_OLD:
+			throw new NoContentResponse("Transaction is older than ");
+		default:
+			break;
+		}
+		if (!isValidId(id)) {
+			throw new BadRequestException(
+					"The id is empty or longer than " + Constants.TRANSACTION_ID_MAX_LENGTH + " characters.");
 		}
+		for (Dimension dimension : Dimension.values()) {
+			if (!isValidKey(dimension.getKey(this))) {
+				throw new BadRequestException("The " + dimension.getName() + " is empty or longer than "
+						+ Constants.DIMENSION_KEY_MAX_LENGTH + " characters.");
+			}
+		}
+	}
 
-		if (this.timestamp < System.currentTimeMillis() - Constants.TRANSACTION_ACCEPTANCE_DURATION) {
-			throw new NoContentResponse("Transaction is older than ");
+	/**
+	 * Dimension keys are optional, but when present they must be non empty and at
+	 * most Constants.DIMENSION_KEY_MAX_LENGTH long, which bounds the memory of the
+	 * per dimension statistics.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public static boolean isValidKey(String key) {
+		return key == null || (!key.isEmpty() && key.length() <= Constants.DIMENSION_KEY_MAX_LENGTH);
+	}
+
+	/**
+	 * Transaction ids are optional, but when present they must be non empty and at
+	 * most Constants.TRANSACTION_ID_MAX_LENGTH long.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public static boolean isValidId(String id) {
+		return id == null || (!id.isEmpty() && id.length() <= Constants.TRANSACTION_ID_MAX_LENGTH);
+	}
+
+	/**
+	 * Same rules as validate(), without throwing. Used by the batch ingestion where
+	 * a single bad transaction must not reject the whole batch.
+	 * 
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 * @return
+	 */
+	public static TransactionStatus validationStatus(Double amount, long timestamp, long now) {
+		if (amount == null) {
+			return TransactionStatus.INVALID;
+		}
+		return validationStatus(amount.doubleValue(), timestamp, now);
+	}
+
+	public static TransactionStatus validationStatus(double amount, long timestamp, long now) {
+		// NaN fails every comparison, and infinite amounts are above MAX_AMOUNT
+		if (!(amount >= 0d && amount <= Constants.MAX_AMOUNT)) {
+			return TransactionStatus.INVALID;
+		}
+
+		if (timestamp < now - Constants.TRANSACTION_ACCEPTANCE_DURATION) {
+			return TransactionStatus.TOO_OLD;
 		}
+		return TransactionStatus.ACCEPTED;
 	}
 
 	@Override
 	public String toString() {
-		return "TranscationRequest [amount=" + amount + ", timestamp=" + timestamp + ", toString()=" + super.toString()
-				+ "]";
+		return "TranscationRequest [amount=" + amount + ", timestamp=" + timestamp + ", id=" + id + ", merchant=" + merchant
+				+ ", currency=" + currency + ", channel=" + channel + ", toString()=" + super.toString() + "]";
 	}
 }
@@ -0,0 +1,13 @@
+package com.syam.paymentstatistics.pojo;
+
+/**
+ * Outcome of the validation of a transaction, see
+ * TransactionRequest.validationStatus(). TOO_FUTURE is only used in event-time
+ * mode, for the transactions too far ahead of the current time or which didn't
+ * fit in the EventTimeBuffer. REJECTED transactions were valid but refused for
+ * lack of room, in the EventTimeBuffer or the IngestionQueue, and answered with
+ * 503 (Service Unavailable).
+ */
+public enum TransactionStatus {
+	ACCEPTED, TOO_OLD, INVALID, TOO_FUTURE, REJECTED
+}
@@ -0,0 +1,62 @@
+package com.syam.paymentstatistics.push;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.syam.paymentstatistics.window.WindowSize;
+
+/**
+ * Subscriber of the servlet deployment. Servlet writes block until the client
+ * reads, so the events are written by a small pool of sender threads, never by
+ * the publisher thread, and the subscriber is busy until its write returned.
+ *
+ * @author syam
+ *
+ */
+public class EmitterSubscriber extends StatisticsSubscriber {
+
+	private final ResponseBodyEmitter emitter;
+
+	private final Executor sender;
+
+	private final AtomicBoolean busy = new AtomicBoolean();
+
+	public EmitterSubscriber(WindowSize windowSize, long interval, ResponseBodyEmitter emitter, Executor sender) {
+		super(windowSize, interval);
+		this.emitter = emitter;
+		this.sender = sender;
+		emitter.onCompletion(this::close);
+		emitter.onTimeout(this::close);
+	}
+
+	@Override
+	protected boolean send(byte[] event) {
+		if (!busy.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			sender.execute(() -> write(event));
+			return true;
+		} catch (RejectedExecutionException e) {
+			busy.set(false);
+			return false;
+		}
+	}
+
+	private void write(byte[] event) {
+		try {
+			// Already serialized as a text/event-stream event, written as is
+			emitter.send(event, MediaType.TEXT_EVENT_STREAM);
+		} catch (IOException | IllegalStateException e) {
+			// The client is gone, the emitter completed itself
+			close();
+		} finally {
+			busy.set(false);
+		}
+	}
+}
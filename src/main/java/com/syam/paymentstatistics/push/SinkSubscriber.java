@@ -0,0 +1,33 @@
+package com.syam.paymentstatistics.push;
+
+import com.syam.paymentstatistics.window.WindowSize;
+
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Subscriber of the reactive deployment. Netty writes never block, the
+ * subscriber is busy as long as the response didn't request the next event,
+ * that is while the previous ones are not flushed to the client.
+ *
+ * @author syam
+ *
+ */
+public class SinkSubscriber extends StatisticsSubscriber {
+
+	private final FluxSink<byte[]> sink;
+
+	public SinkSubscriber(WindowSize windowSize, long interval, FluxSink<byte[]> sink) {
+		super(windowSize, interval);
+		this.sink = sink;
+		sink.onDispose(this::close);
+	}
+
+	@Override
+	protected boolean send(byte[] event) {
+		if (sink.requestedFromDownstream() == 0) {
+			return false;
+		}
+		sink.next(event);
+		return true;
+	}
+}
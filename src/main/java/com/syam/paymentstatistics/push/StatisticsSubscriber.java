@@ -0,0 +1,84 @@
+package com.syam.paymentstatistics.push;
+
+import com.syam.paymentstatistics.window.WindowSize;
+
+/**
+ * Subscriber of the statistics pushed by the StatisticsPublisher, at its own
+ * interval. The publisher thread offers it the latest event once the interval
+ * elapsed. A subscriber still sending the previous event is busy : the event is
+ * dropped and the next tick offers the latest one instead, so a slow consumer
+ * never builds up a queue, it just gets fewer updates.
+ *
+ * @author syam
+ *
+ */
+public abstract class StatisticsSubscriber {
+
+	private final WindowSize windowSize;
+
+	private final long interval;
+
+	// Time of the next event, in milliseconds of System.nanoTime(). Only used by
+	// the publisher thread.
+	private long nextEventAt;
+
+	private volatile boolean closed;
+
+	protected StatisticsSubscriber(WindowSize windowSize, long interval) {
+		super();
+		this.windowSize = windowSize;
+		this.interval = interval;
+	}
+
+	public WindowSize getWindowSize() {
+		return windowSize;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public boolean isDue(long now) {
+		return now >= nextEventAt;
+	}
+
+	/**
+	 * Sends the event unless the previous one is still being sent, and schedules
+	 * the next one an interval later.
+	 * 
+	 * @param event
+	 *            shared by all the subscribers, never modified
+	 * @param now
+	 * @return false if the event was dropped
+	 */
+	public boolean offer(byte[] event, long now) {
+		if (closed || !send(event)) {
+			return false;
+		}
+		nextEventAt += interval;
+		if (nextEventAt <= now) {
+			// First event, or the subscriber was busy for a whole interval
+			nextEventAt = now + interval;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts sending the event, without waiting for the client.
+	 * 
+	 * @param event
+	 * @return false if the previous event is still being sent
+	 */
+	protected abstract boolean send(byte[] event);
+
+	/**
+	 * Called once the client is gone, the publisher then drops the subscriber.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
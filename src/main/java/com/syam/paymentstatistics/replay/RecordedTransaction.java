@@ -0,0 +1,24 @@
+package com.syam.paymentstatistics.replay;
+
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+
+/**
+ * Transaction of a recording : the request as it was posted, with the time it
+ * was received by the service. Without receivedAt, the transaction is replayed
+ * at its own time stamp.
+ *
+ * @author syam
+ *
+ */
+public class RecordedTransaction extends TransactionRequest {
+
+	private Long receivedAt;
+
+	public long getReceivedAt() {
+		return receivedAt != null ? receivedAt : getTimestamp();
+	}
+
+	public void setReceivedAt(Long receivedAt) {
+		this.receivedAt = receivedAt;
+	}
+}
@@ -0,0 +1,56 @@
+package com.syam.paymentstatistics.replay;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Replays the recording file once the application is ready, on its own
+ * thread, and logs the result. With exit, the application is then stopped with
+ * status 0, or 1 if the recording couldn't be read.
+ *
+ * @author syam
+ *
+ */
+public class ReplayRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+	private final TransactionReplayer transactionReplayer;
+
+	private final String file;
+
+	private final boolean exit;
+
+	public ReplayRunner(TransactionReplayer transactionReplayer, String file, boolean exit) {
+		super();
+		this.transactionReplayer = transactionReplayer;
+		this.file = file;
+		this.exit = exit;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		Thread thread = new Thread(() -> {
+			int status = 1;
+			try (InputStream recording = new BufferedInputStream(new FileInputStream(file))) {
+				Logger.info("Replaying {}", file);
+				Logger.info("{}", transactionReplayer.replay(recording));
+				status = 0;
+			} catch (IOException e) {
+				Logger.error("Replay of {} failed : {}", file, e.getMessage());
+			}
+			if (exit) {
+				int exitCode = status;
+				System.exit(SpringApplication.exit(event.getApplicationContext(), () -> exitCode));
+			}
+		}, "statistics-replay");
+		thread.setDaemon(!exit);
+		thread.start();
+	}
+}
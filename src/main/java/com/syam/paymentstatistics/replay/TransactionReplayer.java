@@ -0,0 +1,245 @@
+package com.syam.paymentstatistics.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.NoContentResponse;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Replays recorded traffic, one RecordedTransaction per line, through the
+ * StatisticsService as fast as it takes it. The VirtualClock of the service is
+ * moved to the receivedAt of every transaction before it is registered, so an
+ * hour of traffic is validated, bucketed and expired exactly as it was live,
+ * in the time it takes to apply it.
+ *
+ * Every reportInterval of virtual time the statistics are read and logged as a
+ * checkpoint, and the future dated transactions of the event-time mode are
+ * released every time the clock crosses a bucket. After the last transaction
+ * the clock keeps moving for tail milliseconds, to show the window expiring.
+ * The transactions are expected in receivedAt order, a late one is registered
+ * at the current virtual time. The service must be deterministic, the pipelined
+ * window mode and the snapshot refresher are refused : their threads would apply
+ * the transactions and compute the statistics at any virtual time.
+ *
+ * @author syam
+ *
+ */
+public class TransactionReplayer {
+
+	private final StatisticsService statisticsService;
+
+	private final VirtualClock clock;
+
+	private final ObjectMapper objectMapper;
+
+	private final long reportInterval;
+
+	private final long tail;
+
+	public TransactionReplayer(StatisticsService statisticsService, VirtualClock clock, ObjectMapper objectMapper,
+			long reportInterval, long tail) {
+		super();
+		if (reportInterval <= 0 || tail < 0) {
+			throw new IllegalArgumentException(
+					"Invalid replay report interval " + reportInterval + " or tail " + tail);
+		}
+		if (!statisticsService.isDeterministic()) {
+			throw new IllegalArgumentException(
+					"Replay needs the locked or striped window mode and no snapshot refresh interval");
+		}
+		this.statisticsService = statisticsService;
+		this.clock = clock;
+		this.objectMapper = objectMapper;
+		this.reportInterval = reportInterval;
+		this.tail = tail;
+	}
+
+	/**
+	 * Replays the recording until its end, then its tail.
+	 * 
+	 * @param recording
+	 *            newline delimited JSON
+	 * @return
+	 * @throws IOException
+	 *             when the recording is malformed or can't be read
+	 */
+	public Result replay(InputStream recording) throws IOException {
+		Result result = new Result();
+		long start = System.nanoTime();
+		long nextCheckpoint = 0;
+		try (MappingIterator<RecordedTransaction> transactions = objectMapper.readerFor(RecordedTransaction.class)
+				.readValues(recording)) {
+			while (transactions.hasNextValue()) {
+				RecordedTransaction transaction = transactions.nextValue();
+				if (result.count == 0) {
+					result.from = transaction.getReceivedAt();
+					moveTo(result.from);
+					nextCheckpoint = result.from + reportInterval;
+				}
+				nextCheckpoint = advance(transaction.getReceivedAt(), nextCheckpoint, result);
+				register(transaction, result);
+			}
+		}
+		if (result.count > 0) {
+			result.to = clock.millis();
+			advance(result.to + tail, nextCheckpoint, result);
+		}
+		result.wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return result;
+	}
+
+	private void register(RecordedTransaction transaction, Result result) {
+		result.count++;
+		try {
+			statisticsService.registerTransaction(transaction);
+			result.accepted++;
+		} catch (NoContentResponse e) {
+			result.tooOld++;
+		} catch (BadRequestException e) {
+			result.invalid++;
+		} catch (ServiceUnavailableException e) {
+			result.rejected++;
+		}
+	}
+
+	/**
+	 * Moves the clock to time, taking the checkpoints on the way.
+	 * 
+	 * @param time
+	 * @param nextCheckpoint
+	 * @param result
+	 * @return the next checkpoint
+	 */
+	private long advance(long time, long nextCheckpoint, Result result) {
+		while (nextCheckpoint <= time) {
+			moveTo(nextCheckpoint);
+			StatisticsDataResponse statistics = statisticsService.getStatistics();
+			result.checkpoints.add(new Checkpoint(nextCheckpoint, statistics));
+			Logger.info("Replay at {} : {}", nextCheckpoint, format(statistics));
+			nextCheckpoint += reportInterval;
+		}
+		moveTo(time);
+		return nextCheckpoint;
+	}
+
+	private void moveTo(long time) {
+		long previous = clock.millis();
+		if (clock.advanceTo(time) / Constants.STATISTICS_BUCKET_DURATION != previous
+				/ Constants.STATISTICS_BUCKET_DURATION) {
+			statisticsService.releaseDueTransactions();
+		}
+	}
+
+	private static String format(StatisticsDataResponse statistics) {
+		return "count " + statistics.getCount() + " sum " + statistics.getSum() + " avg " + statistics.getAvg()
+				+ " min " + (statistics.getMin() != null ? statistics.getMin() : "-") + " max "
+				+ (statistics.getMax() != null ? statistics.getMax() : "-");
+	}
+
+	/**
+	 * Statistics of the default window at a virtual time.
+	 */
+	public static class Checkpoint {
+
+		private final long time;
+
+		private final StatisticsDataResponse statistics;
+
+		public Checkpoint(long time, StatisticsDataResponse statistics) {
+			super();
+			this.time = time;
+			this.statistics = statistics;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public StatisticsDataResponse getStatistics() {
+			return statistics;
+		}
+	}
+
+	/**
+	 * Outcome of a replay : the transactions by status, the checkpoints, and how
+	 * much faster than the recording the replay ran.
+	 */
+	public static class Result {
+
+		private long count;
+
+		private long accepted;
+
+		private long tooOld;
+
+		private long invalid;
+
+		// Refused because the event-time buffer was full
+		private long rejected;
+
+		// receivedAt of the first and last transactions
+		private long from;
+
+		private long to;
+
+		private long wallMillis;
+
+		private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getAccepted() {
+			return accepted;
+		}
+
+		public long getTooOld() {
+			return tooOld;
+		}
+
+		public long getInvalid() {
+			return invalid;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getFrom() {
+			return from;
+		}
+
+		public long getTo() {
+			return to;
+		}
+
+		public long getWallMillis() {
+			return wallMillis;
+		}
+
+		public List<Checkpoint> getCheckpoints() {
+			return checkpoints;
+		}
+
+		@Override
+		public String toString() {
+			long wall = Math.max(1, wallMillis);
+			return "Replayed " + count + " transactions (accepted " + accepted + " tooOld " + tooOld + " invalid "
+					+ invalid + " rejected " + rejected + ") recorded over " + (to - from) + " ms in " + wallMillis
+					+ " ms, speedup " + String.format("%.1f", (double) (to - from) / wall) + "x, "
+					+ count * 1000 / wall + " transactions/s";
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.syam.paymentstatistics.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock which only moves when it is told to, so that recorded traffic can be
+ * replayed as fast as the service takes it, with the time stamps, expiry and
+ * event-time release of the recording. It never moves backwards.
+ *
+ * @author syam
+ *
+ */
+public class VirtualClock extends Clock {
+
+	private volatile long millis;
+
+	public VirtualClock(long millis) {
+		super();
+		this.millis = millis;
+	}
+
+	/**
+	 * Moves the clock to the given time, if it is ahead of the current one.
+	 * Only one thread, the replay, moves the clock.
+	 * 
+	 * @param time
+	 * @return the new time of the clock
+	 */
+	public long advanceTo(long time) {
+		if (time > millis) {
+			millis = time;
+		}
+		return millis;
+	}
+
+	@Override
+	public long millis() {
+		return millis;
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(millis);
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return ZoneOffset.UTC;
+	}
+
+	@Override
+	public Clock withZone(ZoneId zone) {
+		// The statistics only use the epoch milliseconds, which don't depend on the
+		// zone
+		return this;
+	}
+}
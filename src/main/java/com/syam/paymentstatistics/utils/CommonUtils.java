@@ -3,6 +3,39 @@ package com.syam.paymentstatistics.utils;
 public class CommonUtils {
 
 	public static double roundDoubleValue(double value) {
-		return Double.parseDouble(String.format("%." + Constants.DOUBLE_PRECISION + "f", value));
+		return fromUnits(toUnits(value));
+	}
+
+	/**
+	 * Converts a decimal amount to a fixed-point value with
+	 * Constants.DOUBLE_PRECISION decimals, rounding half up.
+	 * 
+	 * @param amount
+	 * @return
+	 */
+	public static long toUnits(double amount) {
+		return Math.round(amount * Constants.AMOUNT_SCALE);
+	}
+
+	/**
+	 * Converts a fixed-point value back to its decimal amount.
+	 * 
+	 * @param units
+	 * @return
+	 */
+	public static double fromUnits(long units) {
+		return (double) units / Constants.AMOUNT_SCALE;
+	}
+
+	/**
+	 * Divides two non-negative fixed-point values, rounding half up to the
+	 * precision of the fixed-point representation.
+	 * 
+	 * @param units
+	 * @param divisor
+	 * @return
+	 */
+	public static long divideUnits(long units, long divisor) {
+		return (units + divisor / 2) / divisor;
 	}
 }
@@ -8,5 +8,52 @@ public class Constants {
 	public static final int STATISTICS_TIME_WINDOW = 60 * 1000; // 60 seconds. Only the requests between Current time -
 																// STATISTICS_TIME_WINDOW, are considered in
 																// STATISTICS_DATA object
+	public static final int STATISTICS_BUCKET_DURATION = 100; // 100 ms. Transactions are aggregated in buckets of
+																// this duration. A transaction leaves the statistics
+																// once its bucket is older than STATISTICS_TIME_WINDOW,
+																// i.e. up to one bucket after its own expiry.
+	public static final int STATISTICS_ROLLUP_BUCKET_DURATION = 10 * 1000; // 10 seconds. Buckets leaving the
+																			// STATISTICS_TIME_WINDOW are rolled up in
+																			// buckets of this duration, for the longer
+																			// windows.
+	public static final int STATISTICS_MAX_TIME_WINDOW = 60 * 60 * 1000; // 1 hour. Longest window served, the rollup
+																			// buckets are kept this long.
+	public static final int STATISTICS_QUANTILE_BUCKET_DURATION = 1000; // 1 second. The distribution of the amounts
+																		// is kept in buckets of this duration over the
+																		// STATISTICS_TIME_WINDOW, a histogram being much
+																		// bigger than an aggregate.
+	public static final int STATISTICS_MIN_QUANTILE_WINDOW = 10 * 1000; // 10 seconds. Shortest window served with
+																		// percentiles. They are collected over whole
+																		// quantile buckets, so the window is rounded up
+																		// by less than a tenth.
+	public static final int DIMENSION_BUCKET_DURATION = 10 * 1000; // 10 seconds. Per dimension key statistics are
+																	// kept in buckets of this duration over the
+																	// STATISTICS_TIME_WINDOW.
+	public static final int DIMENSION_KEY_MAX_LENGTH = 64; // Longest merchant, currency or channel accepted.
+	public static final int TRANSACTION_ID_MAX_LENGTH = 64; // Longest transaction id accepted.
+	public static final int DUPLICATE_PARTITION_DURATION = 10 * 1000; // 10 seconds. The ids of the duplicate filter
+																		// are kept in partitions of this duration over
+																		// the STATISTICS_TIME_WINDOW.
+	public static final int DIMENSION_TOP_MAX = 1000; // Largest N of the top N keys by sum.
 	public static final int DOUBLE_PRECISION = 3; // Upto 3 decimals.
+	public static final long AMOUNT_SCALE = 1000; // 10 ^ DOUBLE_PRECISION. Amounts are aggregated as long values
+													// scaled by this factor.
+	public static final long MAX_WINDOW_TRANSACTIONS = 900_000_000L; // Transactions the longest window can sum
+																		// without overflow, 250000 per second over
+																		// STATISTICS_MAX_TIME_WINDOW.
+	public static final double MAX_AMOUNT = 10_000_000d; // Largest amount accepted. MAX_AMOUNT * AMOUNT_SCALE *
+															// MAX_WINDOW_TRANSACTIONS fits in a long, so the sums of
+															// the windows, rollups and keyed statistics can't
+															// overflow.
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson"; // Newline-delimited JSON, one
+																					// transaction per line.
+	public static final int BATCH_CHUNK_SIZE = 1024; // Accepted transactions of a batch are applied to the statistics
+														// window in chunks of this size.
+	public static final int PIPELINE_RING_BUFFER_CAPACITY = 1 << 16; // Transactions waiting for the aggregator thread
+																		// in the pipelined window mode.
+	public static final String STATISTICS_AGE_HEADER = "X-Statistics-Age"; // Age of the statistics served, in ms.
+	public static final String STATISTICS_MAX_STALENESS_HEADER = "X-Statistics-Max-Staleness"; // Upper bound of the
+																								// age, in ms.
+	public static final String STATISTICS_NODES_HEADER = "X-Statistics-Nodes"; // Nodes included in the cluster
+																				// statistics, out of the cluster size.
 }
@@ -1,8 +1,217 @@
 package com.syam.paymentstatistics.utils;
 
+import java.io.PrintStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled, asynchronous logger.
+ *
+ * Messages are parameterized ("Registering request : {}") and the level is
+ * checked before anything else, so a disabled message costs a volatile read and
+ * nothing is formatted or allocated. Debug messages are sampled, only one in
+ * debugSampleRate is kept, as they are written for every request.
+ *
+ * Enabled messages are not formatted on the calling thread either. The pattern
+ * and its arguments are published to a preallocated lock-free ring buffer and a
+ * single daemon thread formats and prints them. When the ring buffer is full the
+ * message is dropped (and counted) rather than blocking the request thread.
+ *
+ * @author syam
+ *
+ */
 public class Logger {
 
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	private static final int CAPACITY = 8192;
+	private static final int MASK = CAPACITY - 1;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static volatile Level level = Level.INFO;
+	private static volatile int debugSampleRate = 100;
+
+	// Preallocated entries of the ring buffer, one array per field
+	private static final long[] TIMES = new long[CAPACITY];
+	private static final Level[] LEVELS = new Level[CAPACITY];
+	private static final String[] PATTERNS = new String[CAPACITY];
+	private static final Object[] FIRST_ARGUMENTS = new Object[CAPACITY];
+	private static final Object[] SECOND_ARGUMENTS = new Object[CAPACITY];
+
+	// Sequence last published in each slot
+	private static final AtomicLongArray PUBLISHED = new AtomicLongArray(CAPACITY);
+	private static final AtomicLong CLAIM_SEQUENCE = new AtomicLong();
+	private static final AtomicLong CONSUMER_SEQUENCE = new AtomicLong();
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	private static final PrintStream OUT = System.out;
+
+	static {
+		for (int i = 0; i < CAPACITY; i++) {
+			PUBLISHED.set(i, -1);
+		}
+		Thread writer = new Thread(Logger::write, "statistics-logger");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Logger::drain, "statistics-logger-flush"));
+	}
+
+	/**
+	 * @param newLevel
+	 *            minimum level of the messages written
+	 * @param newDebugSampleRate
+	 *            one debug message in newDebugSampleRate is written
+	 */
+	public static void configure(Level newLevel, int newDebugSampleRate) {
+		level = newLevel;
+		debugSampleRate = Math.max(1, newDebugSampleRate);
+	}
+
+	public static boolean isDebugEnabled() {
+		return level == Level.DEBUG;
+	}
+
 	public static void log(String line) {
-		System.out.println("currentTime : " + System.currentTimeMillis() + " - " + line);
+		info("{}", line, null);
+	}
+
+	public static void debug(String pattern, Object argument) {
+		debug(pattern, argument, null);
+	}
+
+	public static void debug(String pattern, Object firstArgument, Object secondArgument) {
+		if (level != Level.DEBUG) {
+			return;
+		}
+		int sampleRate = debugSampleRate;
+		if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+			return;
+		}
+		publish(Level.DEBUG, pattern, firstArgument, secondArgument);
+	}
+
+	public static void info(String pattern, Object argument) {
+		info(pattern, argument, null);
+	}
+
+	public static void info(String pattern, Object firstArgument, Object secondArgument) {
+		if (level.compareTo(Level.INFO) <= 0) {
+			publish(Level.INFO, pattern, firstArgument, secondArgument);
+		}
+	}
+
+	public static void warn(String pattern, Object argument) {
+		warn(pattern, argument, null);
+	}
+
+	public static void warn(String pattern, Object firstArgument, Object secondArgument) {
+		if (level.compareTo(Level.WARN) <= 0) {
+			publish(Level.WARN, pattern, firstArgument, secondArgument);
+		}
+	}
+
+	public static void error(String pattern, Object argument) {
+		error(pattern, argument, null);
+	}
+
+	public static void error(String pattern, Object firstArgument, Object secondArgument) {
+		if (level.compareTo(Level.ERROR) <= 0) {
+			publish(Level.ERROR, pattern, firstArgument, secondArgument);
+		}
+	}
+
+	/**
+	 * Number of messages dropped because the ring buffer was full, and not
+	 * reported yet by the logger thread.
+	 *
+	 * @return
+	 */
+	public static long getDroppedCount() {
+		return DROPPED.get();
+	}
+
+	private static void publish(Level messageLevel, String pattern, Object firstArgument, Object secondArgument) {
+		long sequence;
+		do {
+			sequence = CLAIM_SEQUENCE.get();
+			if (sequence - CONSUMER_SEQUENCE.get() >= CAPACITY) {
+				DROPPED.incrementAndGet();
+				return;
+			}
+		} while (!CLAIM_SEQUENCE.compareAndSet(sequence, sequence + 1));
+
+		int index = (int) sequence & MASK;
+		TIMES[index] = System.currentTimeMillis();
+		LEVELS[index] = messageLevel;
+		PATTERNS[index] = pattern;
+		FIRST_ARGUMENTS[index] = firstArgument;
+		SECOND_ARGUMENTS[index] = secondArgument;
+		PUBLISHED.lazySet(index, sequence);
+	}
+
+	private static void write() {
+		while (true) {
+			if (drain() == 0) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Formats and prints all the published messages. Only called by the writer
+	 * thread, and by the shutdown hook once the application is stopping.
+	 *
+	 * @return number of messages written
+	 */
+	private static synchronized int drain() {
+		long sequence = CONSUMER_SEQUENCE.get();
+		int count = 0;
+		StringBuilder builder = new StringBuilder(256);
+		while (true) {
+			int index = (int) sequence & MASK;
+			if (PUBLISHED.get(index) != sequence) {
+				break;
+			}
+
+			builder.setLength(0);
+			builder.append("currentTime : ").append(TIMES[index]).append(" ").append(LEVELS[index]).append(" - ");
+			format(builder, PATTERNS[index], FIRST_ARGUMENTS[index], SECOND_ARGUMENTS[index]);
+			OUT.println(builder);
+
+			// Don't keep the arguments reachable until the slot is reused
+			FIRST_ARGUMENTS[index] = null;
+			SECOND_ARGUMENTS[index] = null;
+			sequence++;
+			count++;
+			CONSUMER_SEQUENCE.lazySet(sequence);
+		}
+
+		long dropped = DROPPED.getAndSet(0);
+		if (dropped > 0) {
+			OUT.println("currentTime : " + System.currentTimeMillis() + " WARN - " + dropped
+					+ " log messages dropped, the log buffer was full");
+		}
+		return count;
+	}
+
+	/**
+	 * Replaces the first two {} of the pattern with the arguments.
+	 */
+	private static void format(StringBuilder builder, String pattern, Object firstArgument, Object secondArgument) {
+		int start = 0;
+		int argument = 0;
+		int placeholder;
+		while (argument < 2 && (placeholder = pattern.indexOf("{}", start)) >= 0) {
+			builder.append(pattern, start, placeholder);
+			builder.append(argument == 0 ? firstArgument : secondArgument);
+			start = placeholder + 2;
+			argument++;
+		}
+		builder.append(pattern, start, pattern.length());
 	}
 }
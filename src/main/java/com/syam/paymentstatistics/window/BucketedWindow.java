@@ -0,0 +1,416 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.Arrays;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Fixed size ring of time buckets covering the statistics window. Every bucket
+ * keeps the sum, count, min and max of the transactions whose time stamp falls
+ * in it, so both adding a transaction and reading the statistics cost the same
+ * whatever the transaction volume is. Amounts are fixed-point values scaled by
+ * Constants.AMOUNT_SCALE, so all the aggregation is plain long arithmetic.
+ *
+ * A bucket is never explicitly expired. Each slot remembers the epoch (time
+ * stamp / bucket duration) it currently holds and is lazily reset when a newer
+ * epoch maps to the same slot. The running sum and count of the window are
+ * updated when the current epoch moves forward, and the min and max are tracked
+ * by monotonic deques over the bucket epochs, so reading the statistics doesn't
+ * need to visit the buckets.
+ *
+ * Windows longer than the window duration are served by an optional rollup
+ * window with coarser buckets. When a bucket leaves this window it is merged
+ * into the rollup bucket covering its time, so the rollup window holds the
+ * older transactions without ever seeing them one by one, and the memory of
+ * both stays fixed whatever the transaction rate is. A bucket is either still
+ * in this window or already rolled up, never in both.
+ *
+ * The distribution of the amounts is kept by an optional QuantileWindow, fed by
+ * add() alongside the buckets. It is only read when the statistics data object
+ * asks for a histogram, and only for durations up to its own window, the
+ * rollup windows keep the aggregates only.
+ *
+ * The current epoch and the running totals, which every add() writes, are
+ * inherited from PaddedBucketedWindowTotals, which keeps them on a cache line
+ * of their own.
+ *
+ * This class is not thread-safe, callers are expected to guard it with their
+ * own locks. collect() doesn't modify the window and can be called by
+ * concurrent readers.
+ *
+ * @author syam
+ *
+ */
+public class BucketedWindow extends PaddedBucketedWindowTotals {
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private final long bucketDuration;
+
+	private final long windowDuration;
+
+	// One extra slot is kept so that a bucket stays readable until its end time is
+	// older than the window. Without it, a transaction accepted just inside the
+	// window could land in a bucket which is already out of the window.
+	private final int slotCount;
+
+	private final long[] epochs;
+	private final long[] sums;
+	private final long[] counts;
+	private final long[] mins;
+	private final long[] maxs;
+
+	private final MonotonicDeque minDeque;
+	private final MonotonicDeque maxDeque;
+
+	// Coarser window receiving the buckets leaving this window, or null
+	private final BucketedWindow rollup;
+
+	// Distribution of the amounts added to this window, or null
+	private final QuantileWindow quantiles;
+
+	public BucketedWindow(long bucketDuration, long windowDuration) {
+		this(bucketDuration, windowDuration, null);
+	}
+
+	/**
+	 * @param bucketDuration
+	 * @param windowDuration
+	 * @param rollup
+	 *            coarser window receiving the buckets leaving this window, null to
+	 *            drop them
+	 */
+	public BucketedWindow(long bucketDuration, long windowDuration, BucketedWindow rollup) {
+		this(bucketDuration, windowDuration, rollup, null);
+	}
+
+	/**
+	 * @param bucketDuration
+	 * @param windowDuration
+	 * @param rollup
+	 *            coarser window receiving the buckets leaving this window, null to
+	 *            drop them
+	 * @param quantiles
+	 *            window keeping the distribution of the amounts, null to keep the
+	 *            aggregates only
+	 */
+	public BucketedWindow(long bucketDuration, long windowDuration, BucketedWindow rollup,
+			QuantileWindow quantiles) {
+		super();
+		if (bucketDuration <= 0 || windowDuration % bucketDuration != 0) {
+			throw new IllegalArgumentException(
+					"Window duration " + windowDuration + " is not a multiple of bucket duration " + bucketDuration);
+		}
+		if (quantiles != null && quantiles.getBucketDuration() % bucketDuration != 0) {
+			throw new IllegalArgumentException("Quantile bucket duration " + quantiles.getBucketDuration()
+					+ " is not a multiple of bucket duration " + bucketDuration);
+		}
+		this.bucketDuration = bucketDuration;
+		this.windowDuration = windowDuration;
+		this.slotCount = (int) (windowDuration / bucketDuration) + 1;
+		this.epochs = new long[slotCount];
+		this.sums = new long[slotCount];
+		this.counts = new long[slotCount];
+		this.mins = new long[slotCount];
+		this.maxs = new long[slotCount];
+		this.minDeque = new MonotonicDeque(slotCount, true);
+		this.maxDeque = new MonotonicDeque(slotCount, false);
+		this.rollup = rollup;
+		this.quantiles = quantiles;
+		this.currentEpoch = EMPTY_EPOCH;
+		Arrays.fill(this.epochs, EMPTY_EPOCH);
+	}
+
+	/**
+	 * Adds the transaction amount to the bucket of its time stamp. Time stamps in
+	 * the future are accounted in the current bucket, and time stamps which are
+	 * already out of the window are ignored.
+	 *
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	public void add(long amount, long timestamp, long now) {
+		merge(amount, 1, amount, amount, timestamp, now);
+		if (quantiles != null) {
+			quantiles.add(amount, timestamp, now);
+		}
+	}
+
+	/**
+	 * Merges the aggregates of several transactions, which all belong to the
+	 * bucket of the time stamp, into the window. This is how the buckets of a finer
+	 * window are rolled up.
+	 *
+	 * @param sum
+	 * @param count
+	 * @param min
+	 * @param max
+	 * @param timestamp
+	 * @param now
+	 */
+	public void merge(long sum, long count, long min, long max, long timestamp, long now) {
+		advance(now / bucketDuration, now);
+		long epoch = Math.min(timestamp / bucketDuration, currentEpoch);
+		if (epoch < oldestEpoch(currentEpoch)) {
+			return;
+		}
+
+		int slot = slotOf(epoch);
+		boolean newBucket = epochs[slot] != epoch;
+		if (newBucket) {
+			// The slot still holds an expired bucket, which was already deducted from
+			// the window totals. Reuse it for the new epoch.
+			epochs[slot] = epoch;
+			sums[slot] = 0;
+			counts[slot] = 0;
+		}
+
+		sums[slot] += sum;
+		counts[slot] += count;
+		windowSum += sum;
+		windowCount += count;
+
+		// The deques are only updated when the bucket min/max improves
+		if (newBucket || min < mins[slot]) {
+			mins[slot] = min;
+			minDeque.offer(epoch, min);
+		}
+		if (newBucket || max > maxs[slot]) {
+			maxs[slot] = max;
+			maxDeque.offer(epoch, max);
+		}
+	}
+
+	public void addAll(long[] amounts, long[] timestamps, int length, long now) {
+		for (int i = 0; i < length; i++) {
+			add(amounts[i], timestamps[i], now);
+		}
+	}
+
+	/**
+	 * Merges all the buckets which are still inside the window at the given time
+	 * into the statistics data object.
+	 *
+	 * @param now
+	 * @param statisticsData
+	 */
+	public void collect(long now, StatisticsData statisticsData) {
+		collect(now, windowDuration, statisticsData);
+	}
+
+	/**
+	 * Merges the transactions of the last duration milliseconds at the given time
+	 * into the statistics data object, with the precision of the bucket duration.
+	 * The buckets which expired since the last add() are deducted on the fly,
+	 * without modifying the window. A duration longer than the window is completed
+	 * by the rollup window, if any. The cost never depends on the number of
+	 * transactions, it is bound by the number of buckets.
+	 *
+	 * If the statistics data object has a histogram, the distribution of the
+	 * amounts is added to it as well, for durations up to the quantile window.
+	 * The quantile buckets are coarser, so the duration is then rounded up to
+	 * whole quantile buckets for the aggregates too, and the histogram holds
+	 * exactly the transactions of the count.
+	 *
+	 * @param now
+	 * @param duration
+	 * @param statisticsData
+	 */
+	public void collect(long now, long duration, StatisticsData statisticsData) {
+		if (quantiles != null && statisticsData.getHistogram() != null && duration <= quantiles.getWindowDuration()
+				&& duration <= windowDuration) {
+			long readEpoch = Math.max(now / bucketDuration, currentEpoch);
+			long fromTime = quantiles.collect(now, duration, oldestEpoch(readEpoch) * bucketDuration,
+					statisticsData.getHistogram());
+			if (currentEpoch != EMPTY_EPOCH) {
+				collectFrom(fromTime / bucketDuration, statisticsData);
+			}
+			return;
+		}
+		if (currentEpoch != EMPTY_EPOCH) {
+			long readEpoch = Math.max(now / bucketDuration, currentEpoch);
+			// Without rollup, the buckets older than the window are dropped. With a
+			// rollup, the buckets which expired but were not rolled up yet are still
+			// part of the longer durations.
+			long span = rollup != null ? duration : Math.min(duration, windowDuration);
+			long fromEpoch = Math.max(readEpoch - span / bucketDuration, oldestEpoch(currentEpoch));
+			collectFrom(fromEpoch, statisticsData);
+		}
+		if (rollup != null && duration > windowDuration) {
+			rollup.collect(now, duration, statisticsData);
+		}
+		if (quantiles != null && statisticsData.getHistogram() != null && duration <= quantiles.getWindowDuration()) {
+			quantiles.collect(now, duration, Long.MIN_VALUE, statisticsData.getHistogram());
+		}
+	}
+
+	/**
+	 * Merges the buckets from the given epoch to the current epoch. The sum and
+	 * count are either deducted from the running totals or added up, whichever
+	 * visits fewer buckets.
+	 *
+	 * @param fromEpoch
+	 * @param statisticsData
+	 */
+	private void collectFrom(long fromEpoch, StatisticsData statisticsData) {
+		if (fromEpoch > currentEpoch) {
+			return;
+		}
+
+		long sum;
+		long count;
+		if (fromEpoch - oldestEpoch(currentEpoch) <= currentEpoch - fromEpoch) {
+			sum = windowSum;
+			count = windowCount;
+			for (long epoch = oldestEpoch(currentEpoch); epoch < fromEpoch; epoch++) {
+				int slot = slotOf(epoch);
+				if (epochs[slot] == epoch) {
+					sum -= sums[slot];
+					count -= counts[slot];
+				}
+			}
+		} else {
+			sum = 0;
+			count = 0;
+			for (long epoch = fromEpoch; epoch <= currentEpoch; epoch++) {
+				int slot = slotOf(epoch);
+				if (epochs[slot] == epoch) {
+					sum += sums[slot];
+					count += counts[slot];
+				}
+			}
+		}
+
+		if (count > 0 && minDeque.hasFrom(fromEpoch) && maxDeque.hasFrom(fromEpoch)) {
+			statisticsData.merge(sum, count, minDeque.peekFrom(fromEpoch), maxDeque.peekFrom(fromEpoch));
+		}
+	}
+
+	/**
+	 * Copies the buckets of this window, and of the rollup windows in the next
+	 * tiers, into the window buckets. The buckets which are out of the window at
+	 * the given time but were not rolled up yet are merged into the rollup tier,
+	 * as the next add() would do, or dropped without rollup. The window is not
+	 * modified.
+	 *
+	 * @param now
+	 * @param buckets
+	 */
+	public void collectBuckets(long now, WindowBuckets buckets) {
+		collectBuckets(now, buckets, 0);
+	}
+
+	private void collectBuckets(long now, WindowBuckets buckets, int tier) {
+		buckets.addTier(tier, bucketDuration, windowDuration);
+		if (rollup != null) {
+			buckets.addTier(tier + 1, rollup.bucketDuration, rollup.windowDuration);
+		}
+		if (currentEpoch != EMPTY_EPOCH) {
+			long oldestEpoch = oldestEpoch(Math.max(now / bucketDuration, currentEpoch));
+			for (long epoch = oldestEpoch(currentEpoch); epoch <= currentEpoch; epoch++) {
+				int slot = slotOf(epoch);
+				if (epochs[slot] != epoch || counts[slot] == 0) {
+					continue;
+				}
+				if (epoch >= oldestEpoch) {
+					buckets.merge(tier, bucketDuration, windowDuration, epoch, sums[slot], counts[slot], mins[slot],
+							maxs[slot]);
+				} else if (rollup != null) {
+					buckets.merge(tier + 1, rollup.bucketDuration, rollup.windowDuration,
+							epoch * bucketDuration / rollup.bucketDuration, sums[slot], counts[slot], mins[slot],
+							maxs[slot]);
+				}
+			}
+		}
+		if (rollup != null) {
+			rollup.collectBuckets(now, buckets, tier + 1);
+		}
+	}
+
+	public int getMinMaxEntries() {
+		return minDeque.size() + maxDeque.size() + (rollup != null ? rollup.getMinMaxEntries() : 0);
+	}
+
+	/**
+	 * Longest duration collect() can serve, including the rollup windows.
+	 * 
+	 * @return
+	 */
+	public long getMaxWindowDuration() {
+		return rollup != null ? rollup.getMaxWindowDuration() : windowDuration;
+	}
+
+	/**
+	 * Longest duration for which collect() can return the distribution of the
+	 * amounts, 0 without quantile window.
+	 * 
+	 * @return
+	 */
+	public long getMaxQuantileDuration() {
+		return quantiles != null ? quantiles.getWindowDuration() : 0;
+	}
+
+	public long getBucketDuration() {
+		return bucketDuration;
+	}
+
+	public long getWindowDuration() {
+		return windowDuration;
+	}
+
+	/**
+	 * Moves the current epoch forward and deducts the buckets leaving the window
+	 * from the window totals, rolling them up if there is a rollup window. Each
+	 * epoch is deducted once, and a jump longer than the window simply clears the
+	 * totals, so this is amortized O(1).
+	 *
+	 * @param epoch
+	 * @param now
+	 */
+	private void advance(long epoch, long now) {
+		if (epoch <= currentEpoch) {
+			return;
+		}
+
+		if (currentEpoch == EMPTY_EPOCH || epoch - currentEpoch >= slotCount) {
+			if (rollup != null && currentEpoch != EMPTY_EPOCH) {
+				for (long expired = oldestEpoch(currentEpoch); expired <= currentEpoch; expired++) {
+					rollUp(expired, now);
+				}
+			}
+			windowSum = 0;
+			windowCount = 0;
+			minDeque.clear();
+			maxDeque.clear();
+		} else {
+			long oldestEpoch = oldestEpoch(epoch);
+			for (long expired = oldestEpoch(currentEpoch); expired < oldestEpoch; expired++) {
+				int slot = slotOf(expired);
+				if (epochs[slot] == expired) {
+					windowSum -= sums[slot];
+					windowCount -= counts[slot];
+					rollUp(expired, now);
+				}
+			}
+			minDeque.expire(oldestEpoch);
+			maxDeque.expire(oldestEpoch);
+		}
+		currentEpoch = epoch;
+	}
+
+	private void rollUp(long epoch, long now) {
+		int slot = slotOf(epoch);
+		if (rollup != null && epochs[slot] == epoch && counts[slot] > 0) {
+			rollup.merge(sums[slot], counts[slot], mins[slot], maxs[slot], epoch * bucketDuration, now);
+		}
+	}
+
+	private long oldestEpoch(long epoch) {
+		return epoch - slotCount + 1;
+	}
+
+	private int slotOf(long epoch) {
+		return (int) Math.floorMod(epoch, (long) slotCount);
+	}
+}
@@ -0,0 +1,22 @@
+package com.syam.paymentstatistics.window;
+
+/**
+ * Fields of BucketedWindow written by every add(), between two cache lines of
+ * padding. In striped mode each window is written by the threads of its own
+ * stripe, and its running totals must not share a cache line with the state of
+ * the other stripes.
+ *
+ * @author syam
+ *
+ */
+abstract class BucketedWindowTotals extends CacheLinePadding {
+
+	// Latest epoch seen by add(). It never moves backwards, even if a writer comes
+	// with a slightly older current time than a previous one.
+	long currentEpoch;
+
+	// Sum and count of all the buckets between currentEpoch - slotCount + 1 and
+	// currentEpoch.
+	long windowSum;
+	long windowCount;
+}
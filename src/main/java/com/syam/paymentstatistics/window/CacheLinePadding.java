@@ -0,0 +1,18 @@
+package com.syam.paymentstatistics.window;
+
+/**
+ * Seven longs which, with the object header, fill a 64 byte cache line. The JVM
+ * lays out the fields of a class in the order of its choosing, but always after
+ * the fields of its superclasses. Fields written by their own threads are
+ * therefore declared in a subclass of this one, which is in turn extended by a
+ * class of padding, so that they never share a cache line with the objects
+ * allocated before and after them.
+ *
+ * @author syam
+ *
+ */
+@SuppressWarnings("unused")
+abstract class CacheLinePadding {
+
+	private long p01, p02, p03, p04, p05, p06, p07;
+}
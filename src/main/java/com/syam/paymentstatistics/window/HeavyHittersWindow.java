@@ -0,0 +1,336 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate top keys by volume (sum of the amounts) over the sliding window,
+ * with a memory and a cost which don't depend on the number of distinct keys.
+ *
+ * Every bucket holds a weighted Space-Saving summary of capacity counters. A
+ * key already counted has its counter incremented by the amount. A new key
+ * takes over the smallest counter when the summary is full, and inherits its
+ * value as overestimation error. Counters are kept in a min-heap, so an update
+ * is O(log(capacity)). The summary of a bucket overestimates any key by at
+ * most the volume of the bucket / capacity, so the volumes returned by top()
+ * are upper bounds within window volume / capacity of the exact ones.
+ *
+ * Buckets are reset lazily like the BucketedWindow ones, an expired bucket
+ * drops its summary. Summaries are only merged by top().
+ *
+ * All the methods are thread-safe, writers are serialized by a write lock and
+ * readers share a read lock.
+ *
+ * @author syam
+ *
+ */
+public class HeavyHittersWindow {
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private final long bucketDuration;
+
+	// One extra slot, as in BucketedWindow
+	private final int slotCount;
+
+	private final int capacity;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final long[] epochs;
+	private final Summary[] summaries;
+
+	public HeavyHittersWindow(long bucketDuration, long windowDuration, int capacity) {
+		super();
+		if (bucketDuration <= 0 || windowDuration % bucketDuration != 0) {
+			throw new IllegalArgumentException(
+					"Window duration " + windowDuration + " is not a multiple of bucket duration " + bucketDuration);
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		}
+		this.bucketDuration = bucketDuration;
+		this.slotCount = (int) (windowDuration / bucketDuration) + 1;
+		this.capacity = capacity;
+		this.epochs = new long[slotCount];
+		this.summaries = new Summary[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			epochs[i] = EMPTY_EPOCH;
+			summaries[i] = new Summary(capacity);
+		}
+	}
+
+	/**
+	 * Adds the amount to the volume of the key in the bucket of the time stamp,
+	 * with the same rules as BucketedWindow.add().
+	 *
+	 * @param key
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	public void add(String key, long amount, long timestamp, long now) {
+		long currentEpoch = now / bucketDuration;
+		long epoch = Math.min(timestamp / bucketDuration, currentEpoch);
+		if (amount <= 0 || epoch < oldestEpoch(currentEpoch)) {
+			return;
+		}
+
+		long hash = LongIntTable.hash(key);
+		lock.writeLock().lock();
+		try {
+			int slot = slotOf(epoch);
+			if (epochs[slot] > epoch) {
+				// A writer with a later current time already reused the slot
+				return;
+			}
+			if (epochs[slot] != epoch) {
+				epochs[slot] = epoch;
+				summaries[slot].clear();
+			}
+			summaries[slot].add(key, hash, amount);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the summaries of the buckets in the window at the given time and
+	 * returns the k keys with the highest volume upper bound. A key missing from
+	 * a full summary may still have up to the smallest counter of that summary,
+	 * which is added to both its volume and its error.
+	 *
+	 * @param k
+	 * @param now
+	 * @return
+	 */
+	public List<Estimate> top(int k, long now) {
+		long readEpoch = now / bucketDuration;
+		lock.readLock().lock();
+		try {
+			List<Summary> live = new ArrayList<>(slotCount);
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (epochs[slot] >= oldestEpoch(readEpoch) && epochs[slot] <= readEpoch) {
+					live.add(summaries[slot]);
+				}
+			}
+
+			Map<Long, Estimate> estimates = new HashMap<>();
+			long missingBound = 0;
+			for (Summary summary : live) {
+				missingBound += summary.getMissingBound();
+				for (int counter = 0; counter < summary.size; counter++) {
+					Estimate estimate = estimates.get(summary.hashes[counter]);
+					if (estimate == null) {
+						estimate = new Estimate(summary.keys[counter]);
+						estimates.put(summary.hashes[counter], estimate);
+					}
+					estimate.volume += summary.counts[counter];
+					estimate.error += summary.errors[counter];
+					estimate.missingBound -= summary.getMissingBound();
+				}
+			}
+
+			List<Estimate> top = new ArrayList<>(estimates.values());
+			for (Estimate estimate : top) {
+				// The summaries the key is missing from
+				estimate.missingBound += missingBound;
+				estimate.volume += estimate.missingBound;
+				estimate.error += estimate.missingBound;
+			}
+			top.sort((a, b) -> Long.compare(b.volume, a.volume));
+			return new ArrayList<>(top.subList(0, Math.min(k, top.size())));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Total volume of the window at the given time. The error of every volume
+	 * returned by top() is at most this volume / capacity.
+	 *
+	 * @param now
+	 * @return
+	 */
+	public long getVolume(long now) {
+		long readEpoch = now / bucketDuration;
+		lock.readLock().lock();
+		try {
+			long volume = 0;
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (epochs[slot] >= oldestEpoch(readEpoch) && epochs[slot] <= readEpoch) {
+					volume += summaries[slot].volume;
+				}
+			}
+			return volume;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Size of the arrays of all the summaries, in bytes. The key strings, at most
+	 * Constants.DIMENSION_KEY_MAX_LENGTH characters each, are not included.
+	 *
+	 * @return
+	 */
+	public long getMemoryBytes() {
+		long bytes = 0;
+		for (Summary summary : summaries) {
+			bytes += summary.getMemoryBytes();
+		}
+		return bytes + slotCount * (long) Long.BYTES;
+	}
+
+	private long oldestEpoch(long epoch) {
+		return epoch - slotCount + 1;
+	}
+
+	private int slotOf(long epoch) {
+		return (int) Math.floorMod(epoch, (long) slotCount);
+	}
+
+	/**
+	 * Volume upper bound of a key, and by how much it may exceed the exact volume.
+	 */
+	public static final class Estimate {
+		private final String key;
+		private long volume;
+		private long error;
+		private long missingBound;
+
+		private Estimate(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getVolume() {
+			return volume;
+		}
+
+		public long getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Weighted Space-Saving summary of one bucket.
+	 */
+	private static final class Summary {
+		private final int capacity;
+		private final LongIntTable table;
+		private final long[] hashes;
+		private final String[] keys;
+		private final long[] counts;
+		private final long[] errors;
+		// Min-heap of the counters by count, and position of every counter in it
+		private final int[] heap;
+		private final int[] positions;
+		private int size;
+		private long volume;
+
+		private Summary(int capacity) {
+			this.capacity = capacity;
+			this.table = new LongIntTable(capacity);
+			this.hashes = new long[capacity];
+			this.keys = new String[capacity];
+			this.counts = new long[capacity];
+			this.errors = new long[capacity];
+			this.heap = new int[capacity];
+			this.positions = new int[capacity];
+		}
+
+		private void add(String key, long hash, long amount) {
+			volume += amount;
+			int counter = table.get(hash);
+			if (counter == LongIntTable.NO_VALUE) {
+				if (size < capacity) {
+					counter = size++;
+					set(counter, key, hash, amount, 0);
+					heap[counter] = counter;
+					siftUp(counter);
+					return;
+				}
+				// The smallest counter is taken over by the new key
+				counter = heap[0];
+				table.remove(hashes[counter]);
+				set(counter, key, hash, counts[counter], counts[counter]);
+			}
+			counts[counter] += amount;
+			siftDown(positions[counter]);
+		}
+
+		private void set(int counter, String key, long hash, long count, long error) {
+			hashes[counter] = hash;
+			keys[counter] = key;
+			counts[counter] = count;
+			errors[counter] = error;
+			table.put(hash, counter);
+		}
+
+		/**
+		 * Most a key missing from the summary may have in this bucket.
+		 */
+		private long getMissingBound() {
+			return size < capacity ? 0 : counts[heap[0]];
+		}
+
+		private void siftUp(int position) {
+			int counter = heap[position];
+			while (position > 0) {
+				int parent = (position - 1) / 2;
+				if (counts[heap[parent]] <= counts[counter]) {
+					break;
+				}
+				heap[position] = heap[parent];
+				positions[heap[position]] = position;
+				position = parent;
+			}
+			heap[position] = counter;
+			positions[counter] = position;
+		}
+
+		private void siftDown(int position) {
+			int counter = heap[position];
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+					child++;
+				}
+				if (counts[heap[child]] >= counts[counter]) {
+					break;
+				}
+				heap[position] = heap[child];
+				positions[heap[position]] = position;
+				position = child;
+			}
+			heap[position] = counter;
+			positions[counter] = position;
+		}
+
+		private void clear() {
+			table.clear();
+			Arrays.fill(keys, 0, size, null);
+			size = 0;
+			volume = 0;
+		}
+
+		private long getMemoryBytes() {
+			return table.getMemoryBytes() + capacity * (long) (3 * Long.BYTES + 3 * Integer.BYTES);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Sliding window statistics per key (merchant, currency, ...) with a fixed
+ * memory bound whatever the number of distinct keys is.
+ *
+ * Keys are looked up by their 64 bit hash in a LongIntTable, which maps the hash
+ * to an entry. Every entry owns slotCount buckets of sum, count, min and max in flat
+ * long arrays, reset lazily like the BucketedWindow ones, so adding a
+ * transaction and reading the statistics of a key are O(1). Two keys with the
+ * same 64 bit hash would share their statistics, which for a million keys has a
+ * probability in the order of 1e-8.
+ *
+ * There are at most maxKeys entries. They are kept in a least recently updated
+ * list: a key whose newest bucket has left the window is idle, it has no
+ * statistics left and is dropped when a new key needs room. When all the keys
+ * are live, the least recently updated one is evicted.
+ *
+ * All the methods are thread-safe, writers are serialized by a write lock and
+ * readers share a read lock.
+ *
+ * @author syam
+ *
+ */
+public class KeyedWindowStore {
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private static final int NO_ENTRY = LongIntTable.NO_VALUE;
+
+	private final long bucketDuration;
+
+	// One extra slot, as in BucketedWindow
+	private final int slotCount;
+
+	private final int maxKeys;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Key hash to entry
+	private final LongIntTable table;
+
+	// Entries, linked from the most (head) to the least (tail) recently updated
+	private final String[] keys;
+	private final long[] keyHashes;
+	private final long[] newestEpochs;
+	private final int[] previous;
+	private final int[] next;
+	private int head = NO_ENTRY;
+	private int tail = NO_ENTRY;
+	private int size;
+
+	// Entries not in use
+	private final int[] freeEntries;
+	private int freeCount;
+
+	// Buckets of entry e in [e * slotCount, (e + 1) * slotCount)
+	private final long[] epochs;
+	private final long[] sums;
+	private final long[] counts;
+	private final long[] mins;
+	private final long[] maxs;
+
+	private long evictions;
+
+	public KeyedWindowStore(long bucketDuration, long windowDuration, int maxKeys) {
+		super();
+		if (bucketDuration <= 0 || windowDuration % bucketDuration != 0) {
+			throw new IllegalArgumentException(
+					"Window duration " + windowDuration + " is not a multiple of bucket duration " + bucketDuration);
+		}
+		if (maxKeys <= 0) {
+			throw new IllegalArgumentException("Invalid maximum number of keys " + maxKeys);
+		}
+		this.bucketDuration = bucketDuration;
+		this.slotCount = (int) (windowDuration / bucketDuration) + 1;
+		this.maxKeys = maxKeys;
+
+		this.table = new LongIntTable(maxKeys);
+		this.keys = new String[maxKeys];
+		this.keyHashes = new long[maxKeys];
+		this.newestEpochs = new long[maxKeys];
+		this.previous = new int[maxKeys];
+		this.next = new int[maxKeys];
+		this.freeEntries = new int[maxKeys];
+		for (int i = 0; i < maxKeys; i++) {
+			freeEntries[i] = maxKeys - 1 - i;
+		}
+		this.freeCount = maxKeys;
+
+		this.epochs = new long[maxKeys * slotCount];
+		this.sums = new long[maxKeys * slotCount];
+		this.counts = new long[maxKeys * slotCount];
+		this.mins = new long[maxKeys * slotCount];
+		this.maxs = new long[maxKeys * slotCount];
+	}
+
+	/**
+	 * Adds the transaction amount to the bucket of its time stamp in the window of
+	 * the key, with the same rules as BucketedWindow.add().
+	 *
+	 * @param key
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	public void add(String key, long amount, long timestamp, long now) {
+		long hash = LongIntTable.hash(key);
+		long currentEpoch = now / bucketDuration;
+		long epoch = Math.min(timestamp / bucketDuration, currentEpoch);
+		if (epoch < oldestEpoch(currentEpoch)) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			int entry = table.get(hash);
+			if (entry == NO_ENTRY) {
+				entry = insert(key, hash, currentEpoch);
+			} else {
+				unlink(entry);
+				linkFirst(entry);
+			}
+
+			int bucket = entry * slotCount + slotOf(epoch);
+			if (epochs[bucket] > epoch) {
+				// A writer with a later current time already reused the slot
+				return;
+			}
+			if (epochs[bucket] != epoch) {
+				epochs[bucket] = epoch;
+				sums[bucket] = 0;
+				counts[bucket] = 0;
+				mins[bucket] = amount;
+				maxs[bucket] = amount;
+			}
+			sums[bucket] += amount;
+			counts[bucket]++;
+			mins[bucket] = Math.min(mins[bucket], amount);
+			maxs[bucket] = Math.max(maxs[bucket], amount);
+			newestEpochs[entry] = Math.max(newestEpochs[entry], epoch);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the statistics of the key at the given time into the statistics data
+	 * object, nothing if the key is unknown.
+	 *
+	 * @param key
+	 * @param now
+	 * @param statisticsData
+	 */
+	public void collect(String key, long now, StatisticsData statisticsData) {
+		lock.readLock().lock();
+		try {
+			int entry = table.get(LongIntTable.hash(key));
+			if (entry != NO_ENTRY) {
+				collectEntry(entry, now / bucketDuration, statisticsData);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The n keys with the highest sum at the given time, by decreasing sum. This
+	 * visits all the keys and costs O(keys * log(n)).
+	 *
+	 * @param n
+	 * @param now
+	 * @return
+	 */
+	public Map<String, StatisticsData> top(int n, long now) {
+		long readEpoch = now / bucketDuration;
+		PriorityQueue<long[]> lowest = new PriorityQueue<>(n + 1, (a, b) -> Long.compare(a[0], b[0]));
+		lock.readLock().lock();
+		try {
+			for (int entry = head; entry != NO_ENTRY; entry = next[entry]) {
+				if (newestEpochs[entry] < oldestEpoch(readEpoch)) {
+					continue;
+				}
+				long sum = 0;
+				long count = 0;
+				for (int bucket = entry * slotCount; bucket < (entry + 1) * slotCount; bucket++) {
+					if (isLive(bucket, readEpoch)) {
+						sum += sums[bucket];
+						count += counts[bucket];
+					}
+				}
+				if (count > 0 && (lowest.size() < n || sum > lowest.peek()[0])) {
+					lowest.offer(new long[] { sum, entry });
+					if (lowest.size() > n) {
+						lowest.poll();
+					}
+				}
+			}
+
+			List<long[]> highest = new ArrayList<>(lowest);
+			highest.sort((a, b) -> Long.compare(b[0], a[0]));
+			Map<String, StatisticsData> top = new LinkedHashMap<>();
+			for (long[] ranked : highest) {
+				StatisticsData statisticsData = new StatisticsData();
+				collectEntry((int) ranked[1], readEpoch, statisticsData);
+				top.put(keys[(int) ranked[1]], statisticsData);
+			}
+			return top;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of keys currently held, idle ones included.
+	 *
+	 * @return
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of live keys evicted because maxKeys was reached.
+	 *
+	 * @return
+	 */
+	public long getEvictionCount() {
+		lock.readLock().lock();
+		try {
+			return evictions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * Size of the arrays of the store, in bytes. They are allocated up front for
+	 * maxKeys keys, the key strings are not included.
+	 *
+	 * @return
+	 */
+	public long getMemoryBytes() {
+		return table.getMemoryBytes() + 5L * epochs.length * Long.BYTES
+				+ maxKeys * (long) (2 * Long.BYTES + 3 * Integer.BYTES + Long.BYTES);
+	}
+
+	private void collectEntry(int entry, long readEpoch, StatisticsData statisticsData) {
+		for (int bucket = entry * slotCount; bucket < (entry + 1) * slotCount; bucket++) {
+			if (isLive(bucket, readEpoch)) {
+				statisticsData.merge(sums[bucket], counts[bucket], mins[bucket], maxs[bucket]);
+			}
+		}
+	}
+
+	private boolean isLive(int bucket, long readEpoch) {
+		return epochs[bucket] >= oldestEpoch(readEpoch) && epochs[bucket] <= readEpoch;
+	}
+
+	/**
+	 * Makes room if needed and adds a new entry for the key, at the head of the
+	 * list.
+	 */
+	private int insert(String key, long hash, long currentEpoch) {
+		// Idle keys are dropped first, they have no statistics left
+		while (tail != NO_ENTRY && newestEpochs[tail] < oldestEpoch(currentEpoch)) {
+			remove(tail);
+		}
+		if (size == maxKeys) {
+			remove(tail);
+			evictions++;
+		}
+
+		int entry = freeEntries[--freeCount];
+		keys[entry] = key;
+		keyHashes[entry] = hash;
+		newestEpochs[entry] = EMPTY_EPOCH;
+		Arrays.fill(epochs, entry * slotCount, (entry + 1) * slotCount, EMPTY_EPOCH);
+
+		table.put(hash, entry);
+		linkFirst(entry);
+		size++;
+		return entry;
+	}
+
+	private void remove(int entry) {
+		unlink(entry);
+		table.remove(keyHashes[entry]);
+		keys[entry] = null;
+		freeEntries[freeCount++] = entry;
+		size--;
+	}
+
+	private void linkFirst(int entry) {
+		previous[entry] = NO_ENTRY;
+		next[entry] = head;
+		if (head != NO_ENTRY) {
+			previous[head] = entry;
+		}
+		head = entry;
+		if (tail == NO_ENTRY) {
+			tail = entry;
+		}
+	}
+
+	private void unlink(int entry) {
+		if (previous[entry] != NO_ENTRY) {
+			next[previous[entry]] = next[entry];
+		} else {
+			head = next[entry];
+		}
+		if (next[entry] != NO_ENTRY) {
+			previous[next[entry]] = previous[entry];
+		} else {
+			tail = previous[entry];
+		}
+	}
+
+	private long oldestEpoch(long epoch) {
+		return epoch - slotCount + 1;
+	}
+
+	private int slotOf(long epoch) {
+		return (int) Math.floorMod(epoch, (long) slotCount);
+	}
+}
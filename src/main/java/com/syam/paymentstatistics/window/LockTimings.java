@@ -0,0 +1,36 @@
+package com.syam.paymentstatistics.window;
+
+/**
+ * Receives the time spent waiting for and holding the window locks. Only the
+ * lock acquisitions for which sample() returns true are timed, so that the
+ * System.nanoTime() calls are skipped on most of the operations.
+ *
+ * @author syam
+ *
+ */
+public interface LockTimings {
+
+	LockTimings NONE = new LockTimings() {
+		@Override
+		public boolean sample() {
+			return false;
+		}
+
+		@Override
+		public void recordWriteLock(long waitNanos, long holdNanos) {
+		}
+
+		@Override
+		public void recordReadLock(long waitNanos, long holdNanos) {
+		}
+	};
+
+	/**
+	 * @return true when the next lock acquisition has to be timed
+	 */
+	boolean sample();
+
+	void recordWriteLock(long waitNanos, long holdNanos);
+
+	void recordReadLock(long waitNanos, long holdNanos);
+}
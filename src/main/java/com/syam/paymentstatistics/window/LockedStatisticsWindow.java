@@ -0,0 +1,143 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Single BucketedWindow guarded by one ReentrantReadWriteLock.
+ *
+ * 1. If we read the buckets when a write operation is going on, a bucket may be
+ * read with only the sum field updated but not the subsequent fields. So it is
+ * important not to read when there is a write operation.
+ * 2. Having multiple writes simultaneously can result in data loss as the
+ * latest write can override the values instead of adding to it. So it is
+ * important to maintain mutual exclusive lock on writes.
+ * 3. Multiple reads can happen simultaneously as they don't modify the buckets.
+ * Hence ReentrantReadWriteLock is the right lock for this use case.
+ *
+ * @author syam
+ *
+ */
+public class LockedStatisticsWindow implements StatisticsWindow {
+
+	private final BucketedWindow window;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final LockTimings lockTimings;
+
+	public LockedStatisticsWindow(long bucketDuration, long windowDuration) {
+		this(bucketDuration, windowDuration, LockTimings.NONE);
+	}
+
+	public LockedStatisticsWindow(long bucketDuration, long windowDuration, LockTimings lockTimings) {
+		this(new BucketedWindow(bucketDuration, windowDuration), lockTimings);
+	}
+
+	public LockedStatisticsWindow(BucketedWindow window, LockTimings lockTimings) {
+		super();
+		this.window = window;
+		this.lockTimings = lockTimings;
+	}
+
+	@Override
+	public void add(long amount, long timestamp, long now) {
+		Lock writeLock = lock.writeLock();
+		long start = lockTimings.sample() ? System.nanoTime() : 0;
+		writeLock.lock();
+		long acquired = start != 0 ? System.nanoTime() : 0;
+		try {
+			window.add(amount, timestamp, now);
+		} finally {
+			writeLock.unlock();
+			if (start != 0) {
+				lockTimings.recordWriteLock(acquired - start, System.nanoTime() - acquired);
+			}
+		}
+	}
+
+	@Override
+	public void addAll(long[] amounts, long[] timestamps, int length, long now) {
+		Lock writeLock = lock.writeLock();
+		long start = lockTimings.sample() ? System.nanoTime() : 0;
+		writeLock.lock();
+		long acquired = start != 0 ? System.nanoTime() : 0;
+		try {
+			window.addAll(amounts, timestamps, length, now);
+		} finally {
+			writeLock.unlock();
+			if (start != 0) {
+				lockTimings.recordWriteLock(acquired - start, System.nanoTime() - acquired);
+			}
+		}
+	}
+
+	/**
+	 * The timed reads take a separate method, so that the timing code doesn't
+	 * weigh on the inlining of the untimed ones.
+	 */
+	@Override
+	public void collect(long now, long windowDuration, StatisticsData statisticsData) {
+		statisticsData.resetValues();
+		if (lockTimings.sample()) {
+			collectTimed(now, windowDuration, statisticsData);
+			return;
+		}
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			window.collect(now, windowDuration, statisticsData);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private void collectTimed(long now, long windowDuration, StatisticsData statisticsData) {
+		Lock readLock = lock.readLock();
+		long start = System.nanoTime();
+		readLock.lock();
+		long acquired = System.nanoTime();
+		try {
+			window.collect(now, windowDuration, statisticsData);
+		} finally {
+			readLock.unlock();
+			lockTimings.recordReadLock(acquired - start, System.nanoTime() - acquired);
+		}
+	}
+
+	@Override
+	public void collectBuckets(long now, WindowBuckets buckets) {
+		lock.readLock().lock();
+		try {
+			window.collectBuckets(now, buckets);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getMaxQuantileDuration() {
+		return window.getMaxQuantileDuration();
+	}
+
+	@Override
+	public int getMinMaxEntries() {
+		lock.readLock().lock();
+		try {
+			return window.getMinMaxEntries();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Always 0, collect() deducts the expired buckets at the time of the read.
+	 */
+	@Override
+	public long getExpiryLag(long now) {
+		return 0;
+	}
+}
@@ -0,0 +1,134 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from non zero long keys to int values, in two
+ * primitive arrays. Cells are probed linearly and the table is never more than
+ * half full, and removed keys are filled by shifting the following cells back,
+ * so lookups never need tombstones and nothing is allocated after construction.
+ *
+ * String keys are looked up by their hash(), two keys with the same 64 bit hash
+ * being the same key for the table.
+ *
+ * This class is not thread-safe, callers are expected to guard it with their
+ * own locks.
+ *
+ * @author syam
+ *
+ */
+public class LongIntTable {
+
+	public static final int NO_VALUE = -1;
+
+	private final long[] keys;
+	private final int[] values;
+	private final int mask;
+
+	/**
+	 * @param maxSize
+	 *            most keys the table will hold at the same time
+	 */
+	public LongIntTable(int maxSize) {
+		super();
+		int size = Integer.highestOneBit(Math.max(1, maxSize * 2 - 1)) << 1;
+		this.keys = new long[size];
+		this.values = new int[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the string, mixed with the MurmurHash3 finalizer so
+	 * that the low bits index the table well. Never 0, which marks the empty
+	 * cells.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * @param key
+	 * @return the value of the key, NO_VALUE if it is not in the table
+	 */
+	public int get(long key) {
+		int cell = (int) key & mask;
+		while (keys[cell] != 0) {
+			if (keys[cell] == key) {
+				return values[cell];
+			}
+			cell = (cell + 1) & mask;
+		}
+		return NO_VALUE;
+	}
+
+	/**
+	 * Adds a key which is not in the table yet.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value) {
+		int cell = (int) key & mask;
+		while (keys[cell] != 0) {
+			cell = (cell + 1) & mask;
+		}
+		keys[cell] = key;
+		values[cell] = value;
+	}
+
+	/**
+	 * Removes a key which is in the table.
+	 *
+	 * @param key
+	 */
+	public void remove(long key) {
+		int cell = (int) key & mask;
+		while (keys[cell] != key) {
+			cell = (cell + 1) & mask;
+		}
+		keys[cell] = 0;
+
+		int moved = cell;
+		while (true) {
+			moved = (moved + 1) & mask;
+			if (keys[moved] == 0) {
+				break;
+			}
+			// A cell may only move back if its home cell is not between the hole
+			// and itself
+			int home = (int) keys[moved] & mask;
+			if (((moved - home) & mask) >= ((moved - cell) & mask)) {
+				keys[cell] = keys[moved];
+				values[cell] = values[moved];
+				keys[moved] = 0;
+				cell = moved;
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+	}
+
+	/**
+	 * Size of the arrays of the table, in bytes.
+	 *
+	 * @return
+	 */
+	public long getMemoryBytes() {
+		return keys.length * (long) (Long.BYTES + Integer.BYTES);
+	}
+}
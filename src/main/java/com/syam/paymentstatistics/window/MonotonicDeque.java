@@ -0,0 +1,172 @@
+package com.syam.paymentstatistics.window;
+
+/**
+ * Sliding window minimum (or maximum) over bucket epochs, backed by two
+ * primitive ring arrays.
+ *
+ * The deque keeps (epoch, value) entries ordered by epoch where every entry is
+ * strictly better (lower for a minimum deque, higher for a maximum deque) than
+ * all the entries after it. The front entry is therefore the minimum (or
+ * maximum) of the window and expiring a bucket only ever pops from the front.
+ *
+ * Offers for the newest epoch, which is the common case, pop dominated entries
+ * from the back and are amortized O(1). A late transaction may improve an older
+ * bucket, in which case the entry is inserted in the middle of the deque. The
+ * cost of that is bound by the number of buckets, never by the number of
+ * transactions.
+ *
+ * This class is not thread-safe, callers are expected to guard it with their
+ * own locks.
+ *
+ * @author syam
+ *
+ */
+public class MonotonicDeque {
+
+	private final boolean minimum;
+
+	private final long[] epochs;
+	private final long[] values;
+
+	private int head;
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            number of distinct epochs which can be inside the window at the
+	 *            same time
+	 * @param minimum
+	 *            true to track the minimum, false to track the maximum
+	 */
+	public MonotonicDeque(int capacity, boolean minimum) {
+		super();
+		this.minimum = minimum;
+		this.epochs = new long[capacity];
+		this.values = new long[capacity];
+	}
+
+	/**
+	 * Records that the bucket of the given epoch now holds the given value. The
+	 * epochs older than the window have to be expired before offering, so that the
+	 * deque never holds more epochs than its capacity.
+	 *
+	 * @param epoch
+	 * @param value
+	 */
+	public void offer(long epoch, long value) {
+		// Position of the first entry newer than the epoch. Scanning from the back as
+		// most of the offers are for the newest epoch.
+		int after = size;
+		while (after > 0 && epochAt(after - 1) > epoch) {
+			after--;
+		}
+
+		// A newer entry (or the entry of the same bucket) which is at least as good
+		// makes the value useless, it can never be the minimum/maximum of the window.
+		if (after < size && isAtLeastAsGood(valueAt(after), value)) {
+			return;
+		}
+		if (after > 0 && epochAt(after - 1) == epoch && isAtLeastAsGood(valueAt(after - 1), value)) {
+			return;
+		}
+
+		// Entries which are not newer than the epoch and not better than the value
+		// can never be the minimum/maximum of the window anymore.
+		int from = after;
+		while (from > 0 && isAtLeastAsGood(value, valueAt(from - 1))) {
+			from--;
+		}
+
+		int removed = after - from;
+		if (removed == 0) {
+			// Make room for the entry by shifting the newer entries to the right
+			for (int i = size; i > after; i--) {
+				set(i, epochAt(i - 1), valueAt(i - 1));
+			}
+			size++;
+		} else if (removed > 1) {
+			// Close the gap left by the removed entries
+			for (int i = after; i < size; i++) {
+				set(i - removed + 1, epochAt(i), valueAt(i));
+			}
+			size -= removed - 1;
+		}
+		set(from, epoch, value);
+	}
+
+	/**
+	 * Removes all the entries older than the given epoch.
+	 *
+	 * @param oldestEpoch
+	 */
+	public void expire(long oldestEpoch) {
+		while (size > 0 && epochs[head] < oldestEpoch) {
+			head = (head + 1) % epochs.length;
+			size--;
+		}
+	}
+
+	/**
+	 * Returns true when there is an entry not older than the given epoch. This
+	 * doesn't modify the deque and can be used by concurrent readers.
+	 *
+	 * @param oldestEpoch
+	 * @return
+	 */
+	public boolean hasFrom(long oldestEpoch) {
+		return size > 0 && epochAt(size - 1) >= oldestEpoch;
+	}
+
+	/**
+	 * Returns the minimum (or maximum) value of the entries not older than the
+	 * given epoch. This doesn't modify the deque and can be used by concurrent
+	 * readers. hasFrom() must be checked first.
+	 *
+	 * The epochs of the entries are strictly increasing, the first entry not older
+	 * than the epoch is found with a binary search, as short windows may start
+	 * deep inside the deque.
+	 *
+	 * @param oldestEpoch
+	 * @return
+	 */
+	public long peekFrom(long oldestEpoch) {
+		int low = 0;
+		int high = size - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (epochAt(middle) < oldestEpoch) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return valueAt(low);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	private boolean isAtLeastAsGood(long candidate, long value) {
+		return minimum ? candidate <= value : candidate >= value;
+	}
+
+	private long epochAt(int index) {
+		return epochs[(head + index) % epochs.length];
+	}
+
+	private long valueAt(int index) {
+		return values[(head + index) % values.length];
+	}
+
+	private void set(int index, long epoch, long value) {
+		int position = (head + index) % epochs.length;
+		epochs[position] = epoch;
+		values[position] = value;
+	}
+}
@@ -0,0 +1,13 @@
+package com.syam.paymentstatistics.window;
+
+/**
+ * Padding after the BucketedWindowTotals fields, see CacheLinePadding.
+ *
+ * @author syam
+ *
+ */
+@SuppressWarnings("unused")
+abstract class PaddedBucketedWindowTotals extends BucketedWindowTotals {
+
+	private long p11, p12, p13, p14, p15, p16, p17;
+}
@@ -0,0 +1,261 @@
+package com.syam.paymentstatistics.window;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+import com.syam.paymentstatistics.utils.Constants;
+import com.syam.paymentstatistics.utils.Logger;
+
+/**
+ * Single-writer statistics window. Request threads publish (amount, time stamp)
+ * pairs into a preallocated TransactionRingBuffer and one dedicated aggregator
+ * thread applies them to a BucketedWindow which no other thread touches, so
+ * there is no lock at all around the window.
+ *
+ * After every drained batch, and whenever a bucket expires, the aggregator
+ * publishes an immutable StatisticsData snapshot of every WindowSize. Readers
+ * only do a volatile load of the latest snapshots, which are at most one
+ * aggregator cycle old. Only the WindowSize durations can be read.
+ *
+ * The histograms of the amounts are much bigger than the aggregates, so they
+ * are only collected again when the current bucket changes, each with the
+ * aggregates of the same transactions, in separate snapshots. In between,
+ * reads with a histogram get the previous ones, which are at most one bucket
+ * duration old.
+ *
+ * @author syam
+ *
+ */
+public class PipelinedStatisticsWindow implements StatisticsWindow {
+
+	// How long the aggregator parks when there is nothing to drain
+	private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	// Longest wait of collectBuckets() for the aggregator
+	private static final long COLLECT_BUCKETS_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final BucketedWindow window;
+
+	private final TransactionRingBuffer ringBuffer;
+
+	private final Thread aggregatorThread;
+
+	private final Clock clock;
+
+	// Cleared by close(), the aggregator then exits
+	private volatile boolean running = true;
+
+	// Snapshot of every WindowSize, indexed by ordinal. Never modified once
+	// published.
+	private volatile StatisticsData[] snapshots = emptySnapshots();
+
+	// Same with the histogram, for the window sizes which have one
+	private volatile StatisticsData[] histogramSnapshots = emptySnapshots();
+
+	// Time at which the snapshot was published, and the size of the min/max deques
+	// at that time
+	private volatile long snapshotTime;
+	private volatile int minMaxEntries;
+
+	// Window buckets waiting to be filled by the aggregator, the only thread
+	// which may read the window. Set by collectBuckets(), reset once filled, or
+	// by collectBuckets() itself when the aggregator didn't fill them in time.
+	private final AtomicReference<WindowBuckets> pendingBuckets = new AtomicReference<>();
+
+	public PipelinedStatisticsWindow(long bucketDuration, long windowDuration, int ringBufferCapacity) {
+		this(new BucketedWindow(bucketDuration, windowDuration), ringBufferCapacity, Clock.systemUTC());
+	}
+
+	public PipelinedStatisticsWindow(BucketedWindow window, int ringBufferCapacity, Clock clock) {
+		super();
+		this.window = window;
+		this.clock = clock;
+		this.snapshotTime = clock.millis();
+		this.ringBuffer = new TransactionRingBuffer(ringBufferCapacity);
+		this.aggregatorThread = new Thread(this::aggregate, "statistics-aggregator");
+		this.aggregatorThread.setDaemon(true);
+		this.aggregatorThread.start();
+	}
+
+	/**
+	 * Publishes the transaction to the ring buffer. When the ring buffer is full
+	 * the caller waits for the aggregator to catch up.
+	 * 
+	 * @throws ServiceUnavailableException
+	 *             once the window is closed
+	 */
+	@Override
+	public void add(long amount, long timestamp, long now) {
+		while (!ringBuffer.offer(amount, timestamp)) {
+			checkRunning();
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+		}
+	}
+
+	@Override
+	public void addAll(long[] amounts, long[] timestamps, int length, long now) {
+		for (int i = 0; i < length; i++) {
+			add(amounts[i], timestamps[i], now);
+		}
+	}
+
+	/**
+	 * Copies the latest published snapshot of the window size, the one with the
+	 * histogram when the statistics data object has one. The given time is not
+	 * used, the snapshot reflects the window at the time it was published.
+	 */
+	@Override
+	public void collect(long now, long windowDuration, StatisticsData statisticsData) {
+		int i = WindowSize.fromDuration(windowDuration).ordinal();
+		StatisticsData latest = statisticsData.getHistogram() != null ? histogramSnapshots[i] : snapshots[i];
+		statisticsData.resetValues();
+		statisticsData.merge(latest);
+	}
+
+	/**
+	 * Hands the window buckets to the aggregator and waits for its next cycle to
+	 * fill them, at the time of the aggregator rather than the given time. Calls
+	 * are serialized, they are meant for an occasional copy of the window, not for
+	 * every read.
+	 * 
+	 * @throws ServiceUnavailableException
+	 *             when the aggregator doesn't fill them within
+	 *             COLLECT_BUCKETS_TIMEOUT_NANOS, or the window is closed
+	 */
+	@Override
+	public synchronized void collectBuckets(long now, WindowBuckets buckets) {
+		checkRunning();
+		pendingBuckets.set(buckets);
+		long deadline = System.nanoTime() + COLLECT_BUCKETS_TIMEOUT_NANOS;
+		while (pendingBuckets.get() == buckets) {
+			if (System.nanoTime() - deadline > 0 && pendingBuckets.compareAndSet(buckets, null)) {
+				throw new ServiceUnavailableException("Statistics aggregator did not answer in time.");
+			}
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Stops the aggregator. The transactions still in the ring buffer are not
+	 * applied.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		aggregatorThread.interrupt();
+	}
+
+	private void checkRunning() {
+		if (!running) {
+			throw new ServiceUnavailableException("Statistics window is closed.");
+		}
+	}
+
+	/**
+	 * Number of published transactions the aggregator hasn't applied yet.
+	 * 
+	 * @return
+	 */
+	public int getQueueDepth() {
+		return ringBuffer.size();
+	}
+
+	@Override
+	public long getMaxQuantileDuration() {
+		return window.getMaxQuantileDuration();
+	}
+
+	@Override
+	public int getMinMaxEntries() {
+		return minMaxEntries;
+	}
+
+	/**
+	 * Age of the snapshot returned by collect(). Buckets which expired since the
+	 * snapshot was published are still part of it.
+	 */
+	@Override
+	public long getExpiryLag(long now) {
+		return Math.max(0, now - snapshotTime);
+	}
+
+	private void aggregate() {
+		long[] amounts = new long[Constants.BATCH_CHUNK_SIZE];
+		long[] timestamps = new long[Constants.BATCH_CHUNK_SIZE];
+		long publishedEpoch = Long.MIN_VALUE;
+		while (running) {
+			int drained = 0;
+			try {
+				drained = ringBuffer.drainTo(amounts, timestamps, amounts.length);
+				long now = clock.millis();
+				window.addAll(amounts, timestamps, drained, now);
+
+				long epoch = now / window.getBucketDuration();
+				if (drained > 0 || epoch != publishedEpoch) {
+					publish(now, epoch != publishedEpoch);
+					publishedEpoch = epoch;
+				}
+
+				WindowBuckets buckets = pendingBuckets.get();
+				if (buckets != null) {
+					window.collectBuckets(now, buckets);
+					pendingBuckets.compareAndSet(buckets, null);
+				}
+			} catch (RuntimeException e) {
+				// The aggregator must survive a failed cycle, the writers and
+				// collectBuckets() wait for it. The drained transactions are lost.
+				Logger.error("Statistics aggregation failed : {}", e.getMessage());
+			}
+
+			if (drained == 0) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the snapshot of every WindowSize.
+	 * 
+	 * @param now
+	 * @param newHistograms
+	 *            true to collect the histograms again, false to keep the previous
+	 *            ones
+	 */
+	private void publish(long now, boolean newHistograms) {
+		StatisticsData[] statisticsData = new StatisticsData[WindowSize.values().length];
+		StatisticsData[] histogramData = newHistograms ? new StatisticsData[statisticsData.length] : null;
+		for (WindowSize windowSize : WindowSize.values()) {
+			int i = windowSize.ordinal();
+			statisticsData[i] = new StatisticsData();
+			window.collect(now, windowSize.getDuration(), statisticsData[i]);
+			if (histogramData == null) {
+				continue;
+			}
+			if (windowSize.getDuration() >= Constants.STATISTICS_MIN_QUANTILE_WINDOW
+					&& windowSize.getDuration() <= window.getMaxQuantileDuration()) {
+				histogramData[i] = StatisticsData.withHistogram();
+				window.collect(now, windowSize.getDuration(), histogramData[i]);
+			} else {
+				histogramData[i] = statisticsData[i];
+			}
+		}
+		minMaxEntries = window.getMinMaxEntries();
+		snapshotTime = now;
+		snapshots = statisticsData;
+		if (histogramData != null) {
+			histogramSnapshots = histogramData;
+		}
+	}
+
+	private static StatisticsData[] emptySnapshots() {
+		StatisticsData[] statisticsData = new StatisticsData[WindowSize.values().length];
+		for (int i = 0; i < statisticsData.length; i++) {
+			statisticsData[i] = new StatisticsData();
+		}
+		return statisticsData;
+	}
+}
@@ -0,0 +1,172 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.Arrays;
+
+import com.syam.paymentstatistics.pojo.AmountHistogram;
+
+/**
+ * Fixed size ring of time buckets, each one keeping the AmountHistogram counters
+ * of the transactions whose time stamp falls in it. It is the distribution
+ * counterpart of BucketedWindow and expires the buckets the same way: a slot is
+ * lazily reset when a newer epoch maps to it, so an expired bucket takes its
+ * histogram with it.
+ *
+ * The histogram of the whole window is kept as running counters. Adding a
+ * transaction increments two counters, and a bucket leaving the window is
+ * subtracted from the running counters once, so reading the window histogram
+ * doesn't need to merge the buckets.
+ *
+ * The buckets are coarser than the BucketedWindow ones, as a histogram is much
+ * bigger than an aggregate: the memory is slotCount * AmountHistogram.BUCKET_COUNT
+ * int counters, about 460 KB for one second buckets over 60 seconds.
+ *
+ * This class is not thread-safe, callers are expected to guard it with their
+ * own locks. collect() doesn't modify the window and can be called by
+ * concurrent readers.
+ *
+ * @author syam
+ *
+ */
+public class QuantileWindow {
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private final long bucketDuration;
+
+	private final long windowDuration;
+
+	// One extra slot, as in BucketedWindow
+	private final int slotCount;
+
+	private final long[] epochs;
+	private final int[][] bucketCounts;
+
+	// Counters of all the buckets between currentEpoch - slotCount + 1 and
+	// currentEpoch
+	private final long[] windowCounts = new long[AmountHistogram.BUCKET_COUNT];
+
+	private long currentEpoch = EMPTY_EPOCH;
+
+	public QuantileWindow(long bucketDuration, long windowDuration) {
+		super();
+		if (bucketDuration <= 0 || windowDuration % bucketDuration != 0) {
+			throw new IllegalArgumentException(
+					"Window duration " + windowDuration + " is not a multiple of bucket duration " + bucketDuration);
+		}
+		this.bucketDuration = bucketDuration;
+		this.windowDuration = windowDuration;
+		this.slotCount = (int) (windowDuration / bucketDuration) + 1;
+		this.epochs = new long[slotCount];
+		this.bucketCounts = new int[slotCount][AmountHistogram.BUCKET_COUNT];
+		Arrays.fill(this.epochs, EMPTY_EPOCH);
+	}
+
+	/**
+	 * Counts the transaction amount in the bucket of its time stamp, with the same
+	 * rules as BucketedWindow.add().
+	 *
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	public void add(long amount, long timestamp, long now) {
+		advance(now / bucketDuration);
+		long epoch = Math.min(timestamp / bucketDuration, currentEpoch);
+		if (epoch < oldestEpoch(currentEpoch)) {
+			return;
+		}
+
+		int slot = slotOf(epoch);
+		if (epochs[slot] != epoch) {
+			epochs[slot] = epoch;
+			Arrays.fill(bucketCounts[slot], 0);
+		}
+		int index = AmountHistogram.indexOf(amount);
+		bucketCounts[slot][index]++;
+		windowCounts[index]++;
+	}
+
+	/**
+	 * Adds the transactions of the last duration milliseconds (at most the window
+	 * duration) at the given time to the histogram, with the precision of the
+	 * bucket duration. As in BucketedWindow, the buckets are either subtracted from
+	 * the running counters or added up, whichever visits fewer buckets.
+	 *
+	 * The buckets starting before notBefore are left out, so that a finer window
+	 * which no longer holds them can cover the same transactions. The returned
+	 * start time tells that window where to start from.
+	 *
+	 * @param now
+	 * @param duration
+	 * @param notBefore
+	 * @param histogram
+	 * @return the start time of the first bucket which may be in the histogram
+	 */
+	public long collect(long now, long duration, long notBefore, AmountHistogram histogram) {
+		long readEpoch = Math.max(now / bucketDuration, currentEpoch);
+		// Ceiling division, the bucket starting at notBefore is the first one kept
+		long fromEpoch = Math.max(readEpoch - Math.min(duration, windowDuration) / bucketDuration,
+				Math.floorDiv(notBefore, bucketDuration) + (Math.floorMod(notBefore, bucketDuration) == 0 ? 0 : 1));
+		if (currentEpoch == EMPTY_EPOCH || fromEpoch > currentEpoch) {
+			return fromEpoch * bucketDuration;
+		}
+		long oldestEpoch = oldestEpoch(currentEpoch);
+		fromEpoch = Math.max(fromEpoch, oldestEpoch);
+
+		if (fromEpoch - oldestEpoch <= currentEpoch - fromEpoch) {
+			histogram.add(windowCounts);
+			for (long epoch = oldestEpoch; epoch < fromEpoch; epoch++) {
+				int slot = slotOf(epoch);
+				if (epochs[slot] == epoch) {
+					histogram.subtract(bucketCounts[slot]);
+				}
+			}
+		} else {
+			for (long epoch = fromEpoch; epoch <= currentEpoch; epoch++) {
+				int slot = slotOf(epoch);
+				if (epochs[slot] == epoch) {
+					histogram.add(bucketCounts[slot]);
+				}
+			}
+		}
+		return fromEpoch * bucketDuration;
+	}
+
+	public long getBucketDuration() {
+		return bucketDuration;
+	}
+
+	public long getWindowDuration() {
+		return windowDuration;
+	}
+
+	private void advance(long epoch) {
+		if (epoch <= currentEpoch) {
+			return;
+		}
+
+		if (currentEpoch == EMPTY_EPOCH || epoch - currentEpoch >= slotCount) {
+			Arrays.fill(windowCounts, 0);
+		} else {
+			long oldestEpoch = oldestEpoch(epoch);
+			for (long expired = oldestEpoch(currentEpoch); expired < oldestEpoch; expired++) {
+				int slot = slotOf(expired);
+				if (epochs[slot] == expired) {
+					int[] expiredCounts = bucketCounts[slot];
+					for (int i = 0; i < AmountHistogram.BUCKET_COUNT; i++) {
+						windowCounts[i] -= expiredCounts[i];
+					}
+				}
+			}
+		}
+		currentEpoch = epoch;
+	}
+
+	private long oldestEpoch(long epoch) {
+		return epoch - slotCount + 1;
+	}
+
+	private int slotOf(long epoch) {
+		return (int) Math.floorMod(epoch, (long) slotCount);
+	}
+}
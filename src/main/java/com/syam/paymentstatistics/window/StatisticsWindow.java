@@ -0,0 +1,101 @@
+package com.syam.paymentstatistics.window;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Thread-safe sliding window of transaction aggregates. Implementations differ
+ * only in how concurrent writers are synchronized, the statistics they report
+ * are the same.
+ *
+ * @author syam
+ *
+ */
+public interface StatisticsWindow {
+
+	/**
+	 * Adds the transaction amount, a fixed-point value scaled by
+	 * Constants.AMOUNT_SCALE, to the window.
+	 *
+	 * @param amount
+	 * @param timestamp
+	 * @param now
+	 */
+	void add(long amount, long timestamp, long now);
+
+	/**
+	 * Adds the first length transactions of the arrays to the window in a single
+	 * step, synchronizing once for the whole batch.
+	 *
+	 * @param amounts
+	 * @param timestamps
+	 * @param length
+	 * @param now
+	 */
+	void addAll(long[] amounts, long[] timestamps, int length, long now);
+
+	/**
+	 * Resets the statistics data object and merges all the transactions of the
+	 * default window (WindowSize.DEFAULT) at the given time into it.
+	 *
+	 * @param now
+	 * @param statisticsData
+	 */
+	default void collect(long now, StatisticsData statisticsData) {
+		collect(now, WindowSize.DEFAULT.getDuration(), statisticsData);
+	}
+
+	/**
+	 * Resets the statistics data object and merges all the transactions of the
+	 * last windowDuration milliseconds at the given time into it. If the
+	 * statistics data object has a histogram, it receives the distribution of the
+	 * amounts for durations up to getMaxQuantileDuration().
+	 *
+	 * @param now
+	 * @param windowDuration
+	 *            one of the WindowSize durations
+	 * @param statisticsData
+	 */
+	void collect(long now, long windowDuration, StatisticsData statisticsData);
+
+	/**
+	 * Merges the per bucket aggregates of the window at the given time into the
+	 * window buckets, which other nodes can merge with their own window. The
+	 * distribution of the amounts is not copied.
+	 *
+	 * @param now
+	 * @param buckets
+	 */
+	void collectBuckets(long now, WindowBuckets buckets);
+
+	/**
+	 * Longest duration for which collect() returns the distribution of the
+	 * amounts, 0 if it is not kept.
+	 *
+	 * @return
+	 */
+	long getMaxQuantileDuration();
+
+	/**
+	 * Number of entries in the min/max deques, which grows with the number of
+	 * buckets the min and max may still come from.
+	 *
+	 * @return
+	 */
+	int getMinMaxEntries();
+
+	/**
+	 * How far behind the given time the expiry of the statistics returned by
+	 * collect() is, in milliseconds.
+	 *
+	 * @param now
+	 * @return
+	 */
+	long getExpiryLag(long now);
+
+	/**
+	 * Stops the threads of the window, if any. The window can't be written
+	 * afterwards.
+	 */
+	default void close() {
+	}
+}
@@ -0,0 +1,269 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Keeps one BucketedWindow per stripe, in the spirit of the LongAdder cells.
+ * Every writer thread sticks to its own stripe, so writers on different threads
+ * don't contend on the same lock. Readers merge all the stripes.
+ *
+ * The state written under the lock of a stripe is kept off the cache lines of
+ * the other stripes. The lock word is a field of the stripe between two cache
+ * lines of padding, and so are the current epoch and running totals of the
+ * window, see BucketedWindowTotals. The bucket arrays and deques of a window are
+ * allocated right after its padded fields, so they are surrounded by padded
+ * objects of their own stripe, until the garbage collector moves them apart.
+ *
+ * A thread whose stripe is busy (two threads hashed to the same stripe) moves to
+ * another stripe, the same way LongAdder rehashes its probe on a CAS failure.
+ *
+ * @author syam
+ *
+ */
+public class StripedStatisticsWindow implements StatisticsWindow {
+
+	// Per thread index of the stripe to write to. It changes only on contention.
+	private static final ThreadLocal<int[]> PROBE = ThreadLocal
+			.withInitial(() -> new int[] { mix((int) Thread.currentThread().getId()) });
+
+	private final Stripe[] stripes;
+
+	private final int mask;
+
+	private final LockTimings lockTimings;
+
+	public StripedStatisticsWindow(long bucketDuration, long windowDuration, int stripeCount) {
+		this(bucketDuration, windowDuration, stripeCount, LockTimings.NONE);
+	}
+
+	public StripedStatisticsWindow(long bucketDuration, long windowDuration, int stripeCount,
+			LockTimings lockTimings) {
+		this(() -> new BucketedWindow(bucketDuration, windowDuration), stripeCount, lockTimings);
+	}
+
+	/**
+	 * @param windowFactory
+	 *            creates the window of each stripe
+	 * @param stripeCount
+	 * @param lockTimings
+	 */
+	public StripedStatisticsWindow(Supplier<BucketedWindow> windowFactory, int stripeCount,
+			LockTimings lockTimings) {
+		super();
+		this.lockTimings = lockTimings;
+		int size = 1;
+		while (size < stripeCount) {
+			size <<= 1;
+		}
+		this.stripes = new Stripe[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			BucketedWindow window = windowFactory.get();
+			stripes[i] = new Stripe(window);
+		}
+	}
+
+	@Override
+	public void add(long amount, long timestamp, long now) {
+		long start = lockTimings.sample() ? System.nanoTime() : 0;
+		Stripe stripe = lockStripe();
+		long acquired = start != 0 ? System.nanoTime() : 0;
+		try {
+			stripe.window.add(amount, timestamp, now);
+		} finally {
+			stripe.unlock();
+			if (start != 0) {
+				lockTimings.recordWriteLock(acquired - start, System.nanoTime() - acquired);
+			}
+		}
+	}
+
+	@Override
+	public void addAll(long[] amounts, long[] timestamps, int length, long now) {
+		long start = lockTimings.sample() ? System.nanoTime() : 0;
+		Stripe stripe = lockStripe();
+		long acquired = start != 0 ? System.nanoTime() : 0;
+		try {
+			stripe.window.addAll(amounts, timestamps, length, now);
+		} finally {
+			stripe.unlock();
+			if (start != 0) {
+				lockTimings.recordWriteLock(acquired - start, System.nanoTime() - acquired);
+			}
+		}
+	}
+
+	/**
+	 * Locks and returns the stripe of the current thread, moving the thread to
+	 * another stripe if its stripe is busy.
+	 * 
+	 * @return
+	 */
+	private Stripe lockStripe() {
+		int[] probe = PROBE.get();
+		Stripe stripe = stripes[probe[0] & mask];
+		int attempts = stripes.length;
+		while (!stripe.tryLock()) {
+			if (--attempts == 0) {
+				// Every stripe is busy, wait on the current one
+				stripe.lock();
+				break;
+			}
+			probe[0] = mix(probe[0] + 1);
+			stripe = stripes[probe[0] & mask];
+		}
+		return stripe;
+	}
+
+	/**
+	 * A read is sampled as a whole, all its stripe locks are timed or none. The
+	 * timed reads take a separate method, so that the timing code doesn't weigh
+	 * on the inlining of the untimed ones.
+	 */
+	@Override
+	public void collect(long now, long windowDuration, StatisticsData statisticsData) {
+		statisticsData.resetValues();
+		if (lockTimings.sample()) {
+			collectTimed(now, windowDuration, statisticsData);
+			return;
+		}
+		for (Stripe stripe : stripes) {
+			stripe.lock();
+			try {
+				stripe.window.collect(now, windowDuration, statisticsData);
+			} finally {
+				stripe.unlock();
+			}
+		}
+	}
+
+	private void collectTimed(long now, long windowDuration, StatisticsData statisticsData) {
+		for (Stripe stripe : stripes) {
+			long start = System.nanoTime();
+			stripe.lock();
+			long acquired = System.nanoTime();
+			try {
+				stripe.window.collect(now, windowDuration, statisticsData);
+			} finally {
+				stripe.unlock();
+				lockTimings.recordReadLock(acquired - start, System.nanoTime() - acquired);
+			}
+		}
+	}
+
+	/**
+	 * The stripes are built alike, so their buckets are merged slot by slot.
+	 */
+	@Override
+	public void collectBuckets(long now, WindowBuckets buckets) {
+		for (Stripe stripe : stripes) {
+			stripe.lock();
+			try {
+				stripe.window.collectBuckets(now, buckets);
+			} finally {
+				stripe.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The stripes are built alike, and their histograms are merged by collect().
+	 */
+	@Override
+	public long getMaxQuantileDuration() {
+		return stripes[0].window.getMaxQuantileDuration();
+	}
+
+	@Override
+	public int getMinMaxEntries() {
+		int entries = 0;
+		for (Stripe stripe : stripes) {
+			stripe.lock();
+			try {
+				entries += stripe.window.getMinMaxEntries();
+			} finally {
+				stripe.unlock();
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Always 0, collect() deducts the expired buckets at the time of the read.
+	 */
+	@Override
+	public long getExpiryLag(long now) {
+		return 0;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	private static int mix(int h) {
+		// Murmur3 finalizer, spreads thread ids and probes over the stripes
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Lock word of a stripe, after a cache line of padding.
+	 */
+	private static class StripeLockWord extends CacheLinePadding {
+
+		// 1 while the stripe is locked
+		volatile int locked;
+	}
+
+	/**
+	 * Non reentrant lock of a stripe, and its window. A blocked thread yields a few
+	 * times before parking, the stripes are held for the time of an add() or of the
+	 * collect() of one window.
+	 */
+	@SuppressWarnings("unused")
+	private static final class Stripe extends StripeLockWord {
+
+		private static final AtomicIntegerFieldUpdater<StripeLockWord> LOCKED = AtomicIntegerFieldUpdater
+				.newUpdater(StripeLockWord.class, "locked");
+
+		private static final int YIELDS = 16;
+
+		private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+		private long p11, p12, p13, p14, p15, p16, p17;
+
+		private final BucketedWindow window;
+
+		private Stripe(BucketedWindow window) {
+			this.window = window;
+		}
+
+		private boolean tryLock() {
+			return locked == 0 && LOCKED.compareAndSet(this, 0, 1);
+		}
+
+		private void lock() {
+			for (int attempt = 0; !tryLock(); attempt++) {
+				if (attempt < YIELDS) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(PARK_NANOS);
+				}
+			}
+		}
+
+		private void unlock() {
+			// A release store, as in the unlock of a lock
+			LOCKED.lazySet(this, 0);
+		}
+	}
+}
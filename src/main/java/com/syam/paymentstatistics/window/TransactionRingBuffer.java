@@ -0,0 +1,112 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated multi-producer / single-consumer ring buffer of (amount, time
+ * stamp) pairs, in the spirit of the LMAX disruptor.
+ *
+ * A producer claims a sequence with a CAS on the claim counter, writes the
+ * transaction in the slot of the sequence and publishes it by storing the
+ * sequence in the published array (ordered store). The consumer reads the
+ * slots in sequence order as long as they are published, and releases them by
+ * moving its own sequence forward. Nothing is allocated per transaction.
+ *
+ * @author syam
+ *
+ */
+public class TransactionRingBuffer {
+
+	private final int capacity;
+	private final int mask;
+
+	private final long[] amounts;
+	private final long[] timestamps;
+
+	// Sequence last published in each slot
+	private final AtomicLongArray published;
+
+	// Next sequence to be claimed by a producer
+	private final AtomicLong claimSequence = new AtomicLong();
+
+	// Next sequence to be read by the consumer. Only written by the consumer.
+	private final AtomicLong consumerSequence = new AtomicLong();
+
+	public TransactionRingBuffer(int capacity) {
+		super();
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Ring buffer capacity " + capacity + " is not a power of two");
+		}
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.amounts = new long[capacity];
+		this.timestamps = new long[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+	}
+
+	/**
+	 * Publishes a transaction. Can be called by any number of threads.
+	 * 
+	 * @param amount
+	 * @param timestamp
+	 * @return false if the ring buffer is full
+	 */
+	public boolean offer(long amount, long timestamp) {
+		long sequence;
+		do {
+			sequence = claimSequence.get();
+			if (sequence - consumerSequence.get() >= capacity) {
+				return false;
+			}
+		} while (!claimSequence.compareAndSet(sequence, sequence + 1));
+
+		int index = (int) sequence & mask;
+		amounts[index] = amount;
+		timestamps[index] = timestamp;
+		published.lazySet(index, sequence);
+		return true;
+	}
+
+	/**
+	 * Moves up to max published transactions to the given arrays. Must only be
+	 * called by the single consumer thread.
+	 * 
+	 * @param amountsOut
+	 * @param timestampsOut
+	 * @param max
+	 * @return number of transactions moved
+	 */
+	public int drainTo(long[] amountsOut, long[] timestampsOut, int max) {
+		long sequence = consumerSequence.get();
+		int count = 0;
+		while (count < max) {
+			int index = (int) sequence & mask;
+			if (published.get(index) != sequence) {
+				break;
+			}
+			amountsOut[count] = amounts[index];
+			timestampsOut[count] = timestamps[index];
+			count++;
+			sequence++;
+		}
+		consumerSequence.lazySet(sequence);
+		return count;
+	}
+
+	/**
+	 * Number of claimed transactions not yet consumed.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return (int) Math.max(0, claimSequence.get() - consumerSequence.get());
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,241 @@
+package com.syam.paymentstatistics.window;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Mergeable copy of the buckets of a statistics window : the sum, count, min
+ * and max of every bucket, in one tier per bucket duration (the window buckets
+ * first, then the rollup ones). Unlike the statistics of a WindowSize, buckets
+ * can still be read at a later time : collect() leaves out the buckets which
+ * expired since the copy was taken, so a copy received from another node is
+ * merged with the same expiry as the local window.
+ *
+ * Copies of windows with the same layout are merged bucket by bucket, which is
+ * how the stripes of StripedStatisticsWindow are copied. writeTo() and
+ * readFrom() encode the non empty buckets only, 40 bytes each, so a copy of the
+ * default window is at most about 40 KB.
+ *
+ * This class is not thread-safe.
+ *
+ * @author syam
+ *
+ */
+public class WindowBuckets {
+
+	// Format version, written first so that nodes of different versions don't
+	// merge buckets they don't understand
+	private static final int VERSION = 1;
+
+	private static final long EMPTY_EPOCH = Long.MIN_VALUE;
+
+	private final List<Tier> tiers = new ArrayList<>();
+
+	/**
+	 * Declares the tier of the given index, if it doesn't exist yet, so that an
+	 * empty tier is part of the layout as well. Tiers are declared from the
+	 * finest one.
+	 *
+	 * @param tier
+	 * @param bucketDuration
+	 * @param windowDuration
+	 */
+	public void addTier(int tier, long bucketDuration, long windowDuration) {
+		tier(tier, bucketDuration, windowDuration);
+	}
+
+	/**
+	 * Merges the aggregates of a bucket into the tier, declared by addTier() if
+	 * needed.
+	 *
+	 * @param tier
+	 * @param bucketDuration
+	 * @param windowDuration
+	 * @param epoch
+	 * @param sum
+	 * @param count
+	 * @param min
+	 * @param max
+	 */
+	public void merge(int tier, long bucketDuration, long windowDuration, long epoch, long sum, long count, long min,
+			long max) {
+		tier(tier, bucketDuration, windowDuration).merge(epoch, sum, count, min, max);
+	}
+
+	/**
+	 * Merges the buckets of the last duration milliseconds at the given time into
+	 * the statistics data object, with the same rules as BucketedWindow.collect().
+	 *
+	 * @param now
+	 * @param duration
+	 * @param statisticsData
+	 */
+	public void collect(long now, long duration, StatisticsData statisticsData) {
+		for (int i = 0; i < tiers.size(); i++) {
+			Tier tier = tiers.get(i);
+			// Only the last tier drops its buckets at the end of its window, the
+			// others roll them up into the next tier
+			boolean last = i == tiers.size() - 1;
+			tier.collect(now, last ? Math.min(duration, tier.windowDuration) : duration, statisticsData);
+			if (duration <= tier.windowDuration) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Number of non empty buckets, which is what writeTo() encodes.
+	 *
+	 * @return
+	 */
+	public int getBucketCount() {
+		int buckets = 0;
+		for (Tier tier : tiers) {
+			buckets += tier.getBucketCount();
+		}
+		return buckets;
+	}
+
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeInt(tiers.size());
+		for (Tier tier : tiers) {
+			out.writeLong(tier.bucketDuration);
+			out.writeLong(tier.windowDuration);
+			out.writeInt(tier.getBucketCount());
+			for (int slot = 0; slot < tier.slotCount; slot++) {
+				if (tier.epochs[slot] != EMPTY_EPOCH) {
+					out.writeLong(tier.epochs[slot]);
+					out.writeLong(tier.sums[slot]);
+					out.writeLong(tier.counts[slot]);
+					out.writeLong(tier.mins[slot]);
+					out.writeLong(tier.maxs[slot]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes buckets encoded by writeTo().
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 *             when the input is truncated or of another version
+	 */
+	public static WindowBuckets readFrom(DataInputStream in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported window buckets version " + version);
+		}
+		WindowBuckets buckets = new WindowBuckets();
+		int tierCount = in.readInt();
+		for (int i = 0; i < tierCount; i++) {
+			long bucketDuration = in.readLong();
+			long windowDuration = in.readLong();
+			if (bucketDuration <= 0 || windowDuration % bucketDuration != 0
+					|| windowDuration / bucketDuration >= Integer.MAX_VALUE) {
+				throw new IOException("Invalid window buckets tier " + bucketDuration + " / " + windowDuration);
+			}
+			Tier tier = buckets.tier(i, bucketDuration, windowDuration);
+			int bucketCount = in.readInt();
+			for (int bucket = 0; bucket < bucketCount; bucket++) {
+				tier.merge(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+			}
+		}
+		return buckets;
+	}
+
+	private Tier tier(int index, long bucketDuration, long windowDuration) {
+		if (index < tiers.size()) {
+			Tier tier = tiers.get(index);
+			if (tier.bucketDuration != bucketDuration || tier.windowDuration != windowDuration) {
+				throw new IllegalArgumentException("Tier " + index + " is " + tier.bucketDuration + " / "
+						+ tier.windowDuration + ", not " + bucketDuration + " / " + windowDuration);
+			}
+			return tier;
+		}
+		if (index != tiers.size()) {
+			throw new IllegalArgumentException("Tier " + index + " comes before tier " + tiers.size());
+		}
+		Tier tier = new Tier(bucketDuration, windowDuration);
+		tiers.add(tier);
+		return tier;
+	}
+
+	/**
+	 * Buckets of one duration, in slots reused like the BucketedWindow ones.
+	 */
+	private static final class Tier {
+		private final long bucketDuration;
+		private final long windowDuration;
+		private final int slotCount;
+		private final long[] epochs;
+		private final long[] sums;
+		private final long[] counts;
+		private final long[] mins;
+		private final long[] maxs;
+		private long latestEpoch = EMPTY_EPOCH;
+
+		private Tier(long bucketDuration, long windowDuration) {
+			this.bucketDuration = bucketDuration;
+			this.windowDuration = windowDuration;
+			this.slotCount = (int) (windowDuration / bucketDuration) + 1;
+			this.epochs = new long[slotCount];
+			this.sums = new long[slotCount];
+			this.counts = new long[slotCount];
+			this.mins = new long[slotCount];
+			this.maxs = new long[slotCount];
+			Arrays.fill(epochs, EMPTY_EPOCH);
+		}
+
+		private void merge(long epoch, long sum, long count, long min, long max) {
+			if (count <= 0) {
+				return;
+			}
+			int slot = (int) Math.floorMod(epoch, (long) slotCount);
+			if (epochs[slot] > epoch) {
+				// The slot already holds a newer bucket, this one is out of the window
+				return;
+			}
+			if (epochs[slot] != epoch) {
+				epochs[slot] = epoch;
+				sums[slot] = 0;
+				counts[slot] = 0;
+				mins[slot] = min;
+				maxs[slot] = max;
+			}
+			sums[slot] += sum;
+			counts[slot] += count;
+			mins[slot] = Math.min(mins[slot], min);
+			maxs[slot] = Math.max(maxs[slot], max);
+			latestEpoch = Math.max(latestEpoch, epoch);
+		}
+
+		private void collect(long now, long span, StatisticsData statisticsData) {
+			long readEpoch = Math.max(now / bucketDuration, latestEpoch);
+			long fromEpoch = readEpoch - span / bucketDuration;
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (epochs[slot] >= fromEpoch && epochs[slot] <= readEpoch) {
+					statisticsData.merge(sums[slot], counts[slot], mins[slot], maxs[slot]);
+				}
+			}
+		}
+
+		private int getBucketCount() {
+			int buckets = 0;
+			for (long epoch : epochs) {
+				if (epoch != EMPTY_EPOCH) {
+					buckets++;
+				}
+			}
+			return buckets;
+		}
+	}
+}
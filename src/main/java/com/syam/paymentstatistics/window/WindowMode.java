@@ -0,0 +1,74 @@
+package com.syam.paymentstatistics.window;
+
+import java.time.Clock;
+
+import com.syam.paymentstatistics.utils.Constants;
+
+/**
+ * Synchronization strategies for the statistics window, selected with the
+ * statistics.window.mode property.
+ *
+ * @author syam
+ *
+ */
+public enum WindowMode {
+
+	// One window guarded by a read/write lock
+	LOCKED {
+		@Override
+		public StatisticsWindow create(LockTimings lockTimings, Clock clock) {
+			return new LockedStatisticsWindow(newWindow(), lockTimings);
+		}
+	},
+
+	// One window per stripe, writers spread over the stripes
+	STRIPED {
+		@Override
+		public StatisticsWindow create(LockTimings lockTimings, Clock clock) {
+			return new StripedStatisticsWindow(WindowMode::newWindow, Runtime.getRuntime().availableProcessors(),
+					lockTimings);
+		}
+	},
+
+	// Writers publish to a ring buffer, a single aggregator thread owns the window.
+	// There is no lock to time. The aggregator reads the clock itself, when it
+	// applies the transactions.
+	PIPELINED {
+		@Override
+		public StatisticsWindow create(LockTimings lockTimings, Clock clock) {
+			return new PipelinedStatisticsWindow(newWindow(), Constants.PIPELINE_RING_BUFFER_CAPACITY, clock);
+		}
+	};
+
+	/**
+	 * @param lockTimings
+	 *            receives the lock wait and hold times, LockTimings.NONE to not
+	 *            time the locks
+	 * @param clock
+	 *            time source of the windows which don't get the time from the
+	 *            caller
+	 * @return
+	 */
+	public abstract StatisticsWindow create(LockTimings lockTimings, Clock clock);
+
+	/**
+	 * Window of Constants.STATISTICS_TIME_WINDOW in buckets of
+	 * Constants.STATISTICS_BUCKET_DURATION, rolled up into buckets of
+	 * Constants.STATISTICS_ROLLUP_BUCKET_DURATION up to
+	 * Constants.STATISTICS_MAX_TIME_WINDOW, which covers all the WindowSize
+	 * durations. The distribution of the amounts is kept over
+	 * Constants.STATISTICS_TIME_WINDOW in buckets of
+	 * Constants.STATISTICS_QUANTILE_BUCKET_DURATION.
+	 * 
+	 * @return
+	 */
+	static BucketedWindow newWindow() {
+		return new BucketedWindow(Constants.STATISTICS_BUCKET_DURATION, Constants.STATISTICS_TIME_WINDOW,
+				new BucketedWindow(Constants.STATISTICS_ROLLUP_BUCKET_DURATION, Constants.STATISTICS_MAX_TIME_WINDOW),
+				new QuantileWindow(Constants.STATISTICS_QUANTILE_BUCKET_DURATION, Constants.STATISTICS_TIME_WINDOW));
+	}
+
+	public static WindowMode fromProperty(String value) {
+		return WindowMode.valueOf(value.trim().toUpperCase());
+	}
+}
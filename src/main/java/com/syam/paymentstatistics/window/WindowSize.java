@@ -0,0 +1,93 @@
+package com.syam.paymentstatistics.window;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Window durations served by GET /statistics?window=..., all maintained from
+ * the same ingestion.
+ *
+ * @author syam
+ *
+ */
+public enum WindowSize {
+
+	ONE_SECOND("1s", TimeUnit.SECONDS.toMillis(1)),
+
+	TEN_SECONDS("10s", TimeUnit.SECONDS.toMillis(10)),
+
+	// Constants.STATISTICS_TIME_WINDOW, served when no window is requested
+	ONE_MINUTE("60s", TimeUnit.MINUTES.toMillis(1)),
+
+	FIVE_MINUTES("5m", TimeUnit.MINUTES.toMillis(5)),
+
+	ONE_HOUR("1h", TimeUnit.HOURS.toMillis(1));
+
+	public static final WindowSize DEFAULT = ONE_MINUTE;
+
+	private final String label;
+
+	private final long duration;
+
+	private WindowSize(String label, long duration) {
+		this.label = label;
+		this.duration = duration;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the window size of a duration such as "10s", "5m" or "1h". Any
+	 * spelling of a supported duration is accepted, "60s" and "1m" are the same
+	 * window.
+	 * 
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             when the value is not a supported duration
+	 */
+	public static WindowSize parse(String value) {
+		String trimmed = value.trim().toLowerCase();
+		int unitIndex = 0;
+		while (unitIndex < trimmed.length() && Character.isDigit(trimmed.charAt(unitIndex))) {
+			unitIndex++;
+		}
+		if (unitIndex == 0 || unitIndex > 9) {
+			throw new IllegalArgumentException("Invalid window : " + value);
+		}
+
+		long amount = Long.parseLong(trimmed.substring(0, unitIndex));
+		long duration;
+		switch (trimmed.substring(unitIndex)) {
+		case "ms":
+			duration = amount;
+			break;
+		case "s":
+			duration = TimeUnit.SECONDS.toMillis(amount);
+			break;
+		case "m":
+			duration = TimeUnit.MINUTES.toMillis(amount);
+			break;
+		case "h":
+			duration = TimeUnit.HOURS.toMillis(amount);
+			break;
+		default:
+			throw new IllegalArgumentException("Invalid window : " + value);
+		}
+		return fromDuration(duration);
+	}
+
+	public static WindowSize fromDuration(long duration) {
+		for (WindowSize windowSize : values()) {
+			if (windowSize.duration == duration) {
+				return windowSize;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported window : " + duration + " ms");
+	}
+}
@@ -13,3 +13,6 @@ CREATE TABLE transactionamount
   "time_stamp" bigint,
   CONSTRAINT transactionamount_pkey PRIMARY KEY ("id")
 );
+
+-- Range statistics read the rows of the sub-second edges of a range
+CREATE INDEX transactionamount_time_stamp_idx ON transactionamount ("time_stamp");
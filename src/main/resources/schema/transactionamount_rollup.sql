@@ -0,0 +1,13 @@
+-- Per second, minute and hour aggregates of transactionamount, by time_stamp.
+-- resolution and bucket_start are in milliseconds, the amounts are fixed-point
+-- values (amount * 1000).
+CREATE TABLE transactionamount_rollup
+(
+  resolution bigint NOT NULL,
+  bucket_start bigint NOT NULL,
+  amount_sum bigint NOT NULL,
+  amount_count bigint NOT NULL,
+  amount_min bigint NOT NULL,
+  amount_max bigint NOT NULL,
+  CONSTRAINT transactionamount_rollup_pkey PRIMARY KEY (resolution, bucket_start)
+);
@@ -0,0 +1,137 @@
+package com.syam.paymentstatistics.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.push.StatisticsSubscriber;
+import com.syam.paymentstatistics.window.WindowSize;
+
+public class StatisticsPublisherTest {
+
+	private StatisticsService statisticsService;
+
+	private StatisticsPublisher statisticsPublisher;
+
+	@Before
+	public void setUp() {
+		statisticsService = new StatisticsService("locked", 0, new ObjectMapper(), StatisticsMetrics.DISABLED);
+		// Not started, the test runs the ticks
+		statisticsPublisher = new StatisticsPublisher(100, 1000, 3, 1, statisticsService,
+				new ClusterStatisticsService(), StatisticsMetrics.DISABLED);
+	}
+
+	@After
+	public void tearDown() {
+		statisticsPublisher.shutdown();
+		statisticsService.shutdown();
+	}
+
+	/**
+	 * The subscribers of a window share the same event, serialized again only
+	 * once the statistics changed, each at its own interval.
+	 */
+	@Test
+	public void eventsAreSerializedOnceAndSentAtTheSubscriberInterval() {
+		RecordingSubscriber fast = new RecordingSubscriber(100);
+		RecordingSubscriber slow = new RecordingSubscriber(300);
+		statisticsPublisher.subscribe(fast);
+		statisticsPublisher.subscribe(slow);
+		statisticsPublisher.publish(1000);
+		assertSame(fast.events.get(0), slow.events.get(0));
+		String event = new String(fast.events.get(0), StandardCharsets.UTF_8);
+		assertTrue(event, event.startsWith("event: statistics\ndata: {") && event.endsWith("}\n\n"));
+
+		statisticsService.registerTransaction(new TransactionRequest(12.5, System.currentTimeMillis(), Boolean.FALSE));
+		for (long now = 1100; now <= 1600; now += 100) {
+			statisticsPublisher.publish(now);
+		}
+		assertEquals(7, fast.events.size());
+		assertEquals(3, slow.events.size());
+		// Serialized again once, for the new transaction
+		assertNotSame(fast.events.get(0), fast.events.get(1));
+		assertSame(fast.events.get(1), fast.events.get(6));
+		assertSame(fast.events.get(6), slow.events.get(2));
+		assertTrue(new String(slow.events.get(2), StandardCharsets.UTF_8).contains("12.5"));
+	}
+
+	/**
+	 * A busy subscriber skips the ticks until it is done, then gets the latest
+	 * event. A closed one is dropped.
+	 */
+	@Test
+	public void busySubscribersOnlyGetTheLatestEvent() {
+		RecordingSubscriber subscriber = new RecordingSubscriber(100);
+		statisticsPublisher.subscribe(subscriber);
+		subscriber.busy = true;
+		for (long now = 0; now < 500; now += 100) {
+			statisticsPublisher.publish(now);
+		}
+		assertEquals(0, subscriber.events.size());
+		statisticsService.registerTransaction(new TransactionRequest(7.0, System.currentTimeMillis(), Boolean.FALSE));
+		subscriber.busy = false;
+		statisticsPublisher.publish(500);
+		assertEquals(1, subscriber.events.size());
+		assertTrue(new String(subscriber.events.get(0), StandardCharsets.UTF_8).contains("\"count\":1"));
+
+		subscriber.close();
+		statisticsPublisher.publish(600);
+		assertEquals(1, subscriber.events.size());
+		assertEquals(0, statisticsPublisher.getSubscriberCount());
+	}
+
+	@Test
+	public void subscriptionsAreBounded() {
+		try {
+			statisticsPublisher.subscribeFlux(WindowSize.DEFAULT, 50L);
+			fail("Interval shorter than the tick");
+		} catch (BadRequestException e) {
+			// expected
+		}
+		for (int i = 0; i < 3; i++) {
+			statisticsPublisher.subscribe(new RecordingSubscriber(1000));
+		}
+		try {
+			statisticsPublisher.subscribe(new RecordingSubscriber(1000));
+			fail("More than the max subscribers");
+		} catch (ServiceUnavailableException e) {
+			// expected
+		}
+		assertEquals(3, statisticsPublisher.getSubscriberCount());
+	}
+
+	private static class RecordingSubscriber extends StatisticsSubscriber {
+
+		private final List<byte[]> events = new ArrayList<>();
+
+		private boolean busy;
+
+		RecordingSubscriber(long interval) {
+			super(WindowSize.DEFAULT, interval);
+		}
+
+		@Override
+		protected boolean send(byte[] event) {
+			if (busy) {
+				return false;
+			}
+			events.add(event);
+			return true;
+		}
+	}
+}
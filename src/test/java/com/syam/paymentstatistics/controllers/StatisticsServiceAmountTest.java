@@ -0,0 +1,84 @@
+package com.syam.paymentstatistics.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.ingest.TransactionStreamReader;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.replay.VirtualClock;
+import com.syam.paymentstatistics.utils.Constants;
+
+public class StatisticsServiceAmountTest {
+
+	private static final long START = 1_500_000_000_000L;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private StatisticsService statisticsService;
+
+	@Before
+	public void setUp() {
+		statisticsService = new StatisticsService("locked", 0, objectMapper, StatisticsMetrics.DISABLED,
+				new VirtualClock(START));
+	}
+
+	@After
+	public void tearDown() {
+		statisticsService.shutdown();
+	}
+
+	/**
+	 * The window can hold MAX_WINDOW_TRANSACTIONS of MAX_AMOUNT without its
+	 * sum overflowing.
+	 */
+	@Test
+	public void maxAmountSumsFitInALong() {
+		Math.multiplyExact(Math.multiplyExact((long) Constants.MAX_AMOUNT, Constants.AMOUNT_SCALE),
+				Constants.MAX_WINDOW_TRANSACTIONS);
+	}
+
+	/**
+	 * MAX_AMOUNT is accepted, anything above is invalid : refused alone, counted
+	 * as invalid in a batch.
+	 */
+	@Test
+	public void amountsAboveMaxAmountAreInvalid() throws IOException {
+		double aboveMax = Constants.MAX_AMOUNT + 0.001;
+		statisticsService.registerTransaction(new TransactionRequest(Constants.MAX_AMOUNT, START, Boolean.FALSE));
+		try {
+			statisticsService.registerTransaction(new TransactionRequest(aboveMax, START, Boolean.FALSE));
+			fail("The amount is above the maximum");
+		} catch (BadRequestException e) {
+			assertEquals(1, statisticsService.getStatistics().getCount());
+		}
+
+		BatchResponse response = statisticsService.registerTransactions(batch("{\"amount\":" + Constants.MAX_AMOUNT
+				+ ",\"timestamp\":" + START + "}\n{\"amount\":" + aboveMax + ",\"timestamp\":" + START
+				+ "}\n{\"amount\":1e300,\"timestamp\":" + START + "}\n"));
+		assertEquals(1, response.getAccepted());
+		assertEquals(2, response.getInvalid());
+
+		StatisticsDataResponse statistics = statisticsService.getStatistics();
+		assertEquals(2, statistics.getCount());
+		assertEquals(2 * Constants.MAX_AMOUNT, statistics.getSum(), 0);
+		assertEquals(Constants.MAX_AMOUNT, statistics.getAvg(), 0);
+	}
+
+	private TransactionStreamReader batch(String ndjson) throws IOException {
+		return new TransactionStreamReader(objectMapper.getFactory(),
+				new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+	}
+}
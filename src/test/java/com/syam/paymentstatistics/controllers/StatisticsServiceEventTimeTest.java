@@ -0,0 +1,112 @@
+package com.syam.paymentstatistics.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.exceptions.BadRequestException;
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.ingest.EventTimeBuffer;
+import com.syam.paymentstatistics.ingest.TransactionStreamReader;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.replay.VirtualClock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class StatisticsServiceEventTimeTest {
+
+	private static final long START = 1_500_000_000_000L;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private VirtualClock clock;
+
+	private MeterRegistry registry;
+
+	private StatisticsService statisticsService;
+
+	private EventTimeBuffer eventTimeBuffer;
+
+	@Before
+	public void setUp() {
+		clock = new VirtualClock(START);
+		registry = new SimpleMeterRegistry();
+		statisticsService = new StatisticsService("locked", 0, objectMapper, new StatisticsMetrics(registry, 1),
+				clock);
+		eventTimeBuffer = new EventTimeBuffer(5000, 2);
+		statisticsService.setEventTimeBuffer(eventTimeBuffer);
+	}
+
+	@After
+	public void tearDown() {
+		statisticsService.shutdown();
+	}
+
+	/**
+	 * A future dated transaction is only counted once the current time reaches
+	 * its time stamp, while an in-order one is counted right away. Time stamps
+	 * beyond the skew are refused, and transactions beyond the capacity are
+	 * rejected, with the same outcome alone or in a batch.
+	 */
+	@Test
+	public void futureTransactionsWaitForTheirTimestamp() throws IOException {
+		statisticsService.registerTransaction(new TransactionRequest(1d, START - 1000, Boolean.FALSE));
+		long due = START + 700;
+		statisticsService.registerTransaction(new TransactionRequest(10d, due, Boolean.FALSE));
+		statisticsService.registerTransaction(new TransactionRequest(100d, START + 4000, Boolean.FALSE));
+		assertEquals(1, statisticsService.getStatistics().getCount());
+		assertEquals(2, eventTimeBuffer.size());
+
+		try {
+			statisticsService.registerTransaction(new TransactionRequest(1000d, START + 3000, Boolean.FALSE));
+			fail("The buffer is full");
+		} catch (ServiceUnavailableException e) {
+			assertEquals(1, eventTimeBuffer.getOverflowCount());
+		}
+		try {
+			statisticsService.registerTransaction(new TransactionRequest(1000d, START + 6000, Boolean.FALSE));
+			fail("The time stamp is beyond the skew");
+		} catch (BadRequestException e) {
+			assertEquals(2, eventTimeBuffer.size());
+		}
+		BatchResponse response = statisticsService.registerTransactions(batch(
+				"{\"amount\":1000,\"timestamp\":" + (START + 3000) + "}\n{\"amount\":1000,\"timestamp\":"
+						+ (START + 6000) + "}\n"));
+		assertEquals(0, response.getAccepted());
+		assertEquals(1, response.getRejected());
+		assertEquals(1, response.getTooFuture());
+
+		assertEquals(3, transactions("accepted"), 0);
+		assertEquals(2, transactions("rejected"), 0);
+		assertEquals(2, transactions("too_future"), 0);
+
+		clock.advanceTo(due - 1);
+		statisticsService.releaseDueTransactions();
+		assertEquals(1, statisticsService.getStatistics().getCount());
+		clock.advanceTo(due);
+		statisticsService.releaseDueTransactions();
+		assertEquals(2, statisticsService.getStatistics().getCount());
+		assertEquals(11d, statisticsService.getStatistics().getSum(), 0);
+		assertEquals(1, eventTimeBuffer.size());
+	}
+
+	private TransactionStreamReader batch(String ndjson) throws IOException {
+		return new TransactionStreamReader(objectMapper.getFactory(),
+				new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private double transactions(String outcome) {
+		return registry.get("statistics.transactions").tag("outcome", outcome).counter().count();
+	}
+}
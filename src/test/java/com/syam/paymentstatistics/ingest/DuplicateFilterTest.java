@@ -0,0 +1,86 @@
+package com.syam.paymentstatistics.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DuplicateFilterTest {
+
+	private static final long PARTITION = 10_000;
+
+	private static final long WINDOW = 60_000;
+
+	/**
+	 * An id is a duplicate for the whole window, whatever partition it was
+	 * recorded in, and is forgotten once its partition is reused.
+	 */
+	@Test
+	public void exactFilterRemembersIdsForTheWindow() {
+		ExactDuplicateFilter filter = new ExactDuplicateFilter(PARTITION, WINDOW, 600);
+		long now = 1_500_000_000_000L;
+		assertTrue(filter.add("a", now));
+		assertTrue(filter.add("b", now + 25_000));
+		assertFalse(filter.add("a", now + 25_000));
+		assertFalse(filter.add("b", now + 59_999));
+		assertFalse(filter.add("a", now + 59_999));
+		assertEquals(3, filter.getDuplicateCount());
+		assertEquals(2, filter.size(now + 59_999));
+
+		// a was recorded in the partition of now, reused 70 seconds later
+		assertTrue(filter.add("a", now + 70_000));
+		assertFalse(filter.add("b", now + 70_000));
+		assertEquals(0, filter.getFalsePositiveRate(), 1e-12);
+	}
+
+	/**
+	 * Beyond the capacity of a partition the new ids are still accepted, but not
+	 * recorded, so their retries are accepted as well.
+	 */
+	@Test
+	public void exactFilterOverflowsWithoutDroppingNewIds() {
+		ExactDuplicateFilter filter = new ExactDuplicateFilter(PARTITION, WINDOW, 12);
+		long now = 1_500_000_000_000L;
+		for (int i = 0; i < 3; i++) {
+			assertTrue(filter.add("id" + i, now));
+		}
+		assertEquals(1, filter.getOverflowCount());
+		assertFalse(filter.add("id0", now));
+		assertTrue(filter.add("id2", now));
+		assertEquals(2, filter.getOverflowCount());
+
+		// The next partition has room again
+		assertTrue(filter.add("id2", now + PARTITION));
+		assertFalse(filter.add("id2", now + PARTITION));
+	}
+
+	/**
+	 * Filled to capacity, the Bloom filter takes about the target rate of new ids
+	 * for duplicates, as estimated by getFalsePositiveRate(), and never misses a
+	 * real duplicate.
+	 */
+	@Test
+	public void bloomFilterFalsePositiveRateIsNearTheTarget() {
+		BloomDuplicateFilter filter = new BloomDuplicateFilter(PARTITION, WINDOW, 60_000, 0.01);
+		long now = 1_500_000_000_000L;
+		for (int i = 0; i < 60_000; i++) {
+			filter.add("recorded-" + i, now + i);
+		}
+		long falsePositives = filter.getDuplicateCount();
+		for (int i = 0; i < 60_000; i += 97) {
+			assertFalse(filter.add("recorded-" + i, now + 60_000));
+		}
+
+		int probes = 10_000;
+		long before = filter.getDuplicateCount();
+		double estimate = filter.getFalsePositiveRate();
+		for (int i = 0; i < probes; i++) {
+			filter.add("probe-" + i, now + 60_000);
+		}
+		double measured = (double) (filter.getDuplicateCount() - before) / probes;
+		assertTrue("measured " + measured, measured > 0.002 && measured < 0.02);
+		assertTrue("estimate " + estimate, estimate > 0.002 && estimate <= 0.011);
+		assertTrue("false positives while filling " + falsePositives, falsePositives < 600);
+	}
+}
@@ -0,0 +1,46 @@
+package com.syam.paymentstatistics.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.StatisticsDataResponse;
+import com.syam.paymentstatistics.pojo.TransactionRequest;
+import com.syam.paymentstatistics.replay.VirtualClock;
+
+public class IngestionQueueTest {
+
+	private static final long START = 1_500_000_000_000L;
+
+	/**
+	 * The transactions still queued when the queue is stopped were already
+	 * answered, they are applied before stop() returns, even when the writer is
+	 * stopped before it drained any. Offers made afterwards fail.
+	 */
+	@Test
+	public void stopAppliesTheQueuedTransactions() throws InterruptedException {
+		StatisticsService statisticsService = new StatisticsService("locked", 0, new ObjectMapper(),
+				StatisticsMetrics.DISABLED, new VirtualClock(START));
+		IngestionQueue ingestionQueue = new IngestionQueue(100_000, StatisticsMetrics.DISABLED);
+		ReflectionTestUtils.setField(ingestionQueue, "statisticsService", statisticsService);
+
+		int count = 50_000;
+		for (int i = 0; i < count; i++) {
+			assertTrue(ingestionQueue.offer(new TransactionRequest(1d, START, Boolean.FALSE)));
+		}
+		ingestionQueue.start();
+		ingestionQueue.stop();
+		assertEquals(0, ingestionQueue.size());
+		assertFalse(ingestionQueue.offer(new TransactionRequest(1d, START, Boolean.FALSE)));
+
+		StatisticsDataResponse statistics = statisticsService.getStatistics();
+		assertEquals(count, statistics.getCount());
+		statisticsService.shutdown();
+	}
+}
@@ -0,0 +1,62 @@
+package com.syam.paymentstatistics.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+public class TransactionStreamReaderTest {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Test
+	public void readsJsonArray() throws IOException {
+		try (TransactionStreamReader reader = reader(
+				"[{\"amount\":12.5,\"timestamp\":1000,\"test\":true},{\"timestamp\":2000,\"extra\":{\"a\":[1]},\"amount\":\"3\"}]")) {
+			assertTrue(reader.next());
+			assertTrue(reader.hasAmount());
+			assertEquals(12.5, reader.getAmount(), 0d);
+			assertEquals(1000, reader.getTimestamp());
+
+			assertTrue(reader.next());
+			assertEquals(3d, reader.getAmount(), 0d);
+			assertEquals(2000, reader.getTimestamp());
+
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	public void readsNewlineDelimitedJson() throws IOException {
+		try (TransactionStreamReader reader = reader("{\"amount\":1,\"timestamp\":10}\n{\"amount\":null}\n")) {
+			assertTrue(reader.next());
+			assertEquals(1d, reader.getAmount(), 0d);
+			assertEquals(10, reader.getTimestamp());
+
+			assertTrue(reader.next());
+			assertFalse(reader.hasAmount());
+			assertEquals(0, reader.getTimestamp());
+
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsNonObjectElements() throws IOException {
+		try (TransactionStreamReader reader = reader("[1, 2]")) {
+			reader.next();
+		}
+	}
+
+	private static TransactionStreamReader reader(String body) throws IOException {
+		return new TransactionStreamReader(JSON_FACTORY,
+				new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,71 @@
+package com.syam.paymentstatistics.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransactionJournalTest {
+
+	private static final long RETENTION = 60_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Transactions spread over several segments and two minutes are journaled by
+	 * one run and replayed by the next one: only the ones still in the retention
+	 * come back, in order, and the unwritten records of the last segment are
+	 * skipped. The segments with nothing left in the retention are then deleted.
+	 */
+	@Test
+	public void restartReplaysTheTailInsideTheRetention() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		long now = System.currentTimeMillis();
+		List<long[]> expected = new ArrayList<>();
+		// 100 records per segment
+		TransactionJournal journal = new TransactionJournal(directory, 1600, 60_000, RETENTION, Clock.systemUTC());
+		for (int i = 0; i < 1234; i++) {
+			long timestamp = now - 120_000 + i * 100;
+			journal.append(i, timestamp);
+			if (timestamp >= now - RETENTION) {
+				expected.add(new long[] { i, timestamp });
+			}
+		}
+		journal.close();
+		assertEquals(13, countSegments(directory));
+
+		TransactionJournal restarted = new TransactionJournal(directory, 1600, 60_000, RETENTION, Clock.systemUTC());
+		List<long[]> replayed = new ArrayList<>();
+		assertEquals(13, restarted.replay(now, (amounts, timestamps, length) -> {
+			for (int i = 0; i < length; i++) {
+				replayed.add(new long[] { amounts[i], timestamps[i] });
+			}
+		}));
+		restarted.close();
+
+		assertEquals(expected.size(), replayed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], replayed.get(i)[0]);
+			assertEquals(expected.get(i)[1], replayed.get(i)[1]);
+		}
+		// The 6 oldest segments are deleted by the final flush, the segment of the
+		// restarted run is added
+		assertEquals(13 - 6 + 1, countSegments(directory));
+	}
+
+	private static long countSegments(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.syam.paymentstatistics.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+import com.syam.paymentstatistics.pojo.BatchResponse;
+
+public class LoadGeneratorTest {
+
+	private StatisticsService statisticsService;
+
+	private DirectLoadTarget target;
+
+	@Before
+	public void setUp() {
+		statisticsService = new StatisticsService("striped", 0, new ObjectMapper(), StatisticsMetrics.DISABLED);
+		target = new DirectLoadTarget(statisticsService, new ObjectMapper());
+	}
+
+	@After
+	public void tearDown() {
+		statisticsService.shutdown();
+	}
+
+	/**
+	 * Single transactions and batches, some of them too old, some future dated,
+	 * give the statistics computed independently from what was sent.
+	 */
+	@Test
+	public void statisticsMatchTheTransactionsSent() throws IOException, InterruptedException {
+		LoadProfile profile = profile();
+		LoadReport report = new LoadGenerator(profile, target).run();
+		assertTrue(report.toString(), report.isVerified());
+		assertTrue(report.getExpected().getCount() > 500);
+		// Only the transactions sent within a few milliseconds of the end of the
+		// acceptance duration are uncertain
+		assertTrue(report.toString(), report.getExpected().getUncertainCount() < 20);
+		for (LatencyRecorder recorder : report.getRecorders()) {
+			assertTrue(recorder.getCount() > 0);
+			assertEquals(0, recorder.getErrorCount());
+		}
+
+		// A new service, the window still holds the transactions of the first run
+		tearDown();
+		setUp();
+		profile.setBatchSize(10);
+		profile.setArrival(LoadProfile.Arrival.POISSON);
+		profile.setAmountDistribution(LoadProfile.AmountDistribution.PARETO);
+		report = new LoadGenerator(profile, target).run();
+		assertTrue(report.toString(), report.isVerified());
+		assertEquals(LoadTarget.BATCH, report.getRecorders().get(0).getEndpoint());
+	}
+
+	/**
+	 * A service which acknowledges transactions it doesn't count is caught.
+	 */
+	@Test
+	public void lostTransactionsAreReported() throws IOException, InterruptedException {
+		AtomicInteger writes = new AtomicInteger();
+		LoadTarget lossy = new LoadTarget() {
+			@Override
+			public int postTransaction(long amountUnits, long timestamp) {
+				return writes.incrementAndGet() % 100 == 0 ? 200 : target.postTransaction(amountUnits, timestamp);
+			}
+
+			@Override
+			public BatchResponse postTransactions(long[] amountUnits, long[] timestamps, int length)
+					throws IOException {
+				return target.postTransactions(amountUnits, timestamps, length);
+			}
+
+			@Override
+			public StatisticsRead getStatistics() {
+				return target.getStatistics();
+			}
+		};
+		LoadReport report = new LoadGenerator(profile(), lossy).run();
+		assertFalse(report.toString(), report.isVerified());
+		assertTrue(report.getActual().getCount() < report.getExpected().getCount());
+	}
+
+	private static LoadProfile profile() {
+		LoadProfile profile = new LoadProfile();
+		profile.setRate(2000);
+		profile.setWarmup(200);
+		profile.setDuration(800);
+		profile.setConnections(4);
+		profile.setReadRatio(0.2);
+		profile.setFutureRatio(0.05);
+		profile.setMaxFuture(100);
+		profile.setSettle(0);
+		return profile;
+	}
+}
@@ -0,0 +1,102 @@
+package com.syam.paymentstatistics.persistence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+public class TransactionHistoryTest {
+
+	private static final long START = 1_530_000_000_000L;
+
+	/**
+	 * Transactions over three hours, persisted in batches which update the
+	 * rollups, are queried over random ranges (aligned or not, from a millisecond
+	 * to the whole span) and compared with a brute force computation.
+	 */
+	@Test
+	public void rangesMatchBruteForce() throws Exception {
+		JdbcDataSource database = new JdbcDataSource();
+		database.setURL("jdbc:h2:mem:history;DB_CLOSE_DELAY=-1");
+		try (Connection connection = database.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE transactionamount (id INTEGER AUTO_INCREMENT PRIMARY KEY, created BIGINT,"
+					+ " amount DOUBLE PRECISION, time_stamp BIGINT)");
+			statement.execute("CREATE INDEX transactionamount_time_stamp_idx ON transactionamount (time_stamp)");
+			statement.execute(readSchema("schema/transactionamount_rollup.sql"));
+		}
+
+		Random random = new Random(5);
+		List<long[]> transactions = new ArrayList<>();
+		TransactionPersister persister = new TransactionPersister(database, 100_000, 997, 10);
+		for (int i = 0; i < 50_000; i++) {
+			long[] transaction = { random.nextInt(10_000_000), START + random.nextInt(3 * 3_600_000) };
+			transactions.add(transaction);
+			persister.offer(transaction[0], transaction[1]);
+		}
+		persister.close();
+		assertEquals(transactions.size(), persister.getWritten());
+
+		TransactionHistory history = new TransactionHistory(database);
+		for (int i = 0; i < 300; i++) {
+			long from = START - 1000 + random.nextInt(3 * 3_600_000 + 2000);
+			long to = from + 1 + random.nextInt(3 * 3_600_000);
+			if (i % 3 == 0) {
+				// Aligned on the minute, the edges have no raw rows
+				from -= Math.floorMod(from, 60_000);
+				to -= Math.floorMod(to, 60_000) - 60_000;
+			}
+			StatisticsData expected = new StatisticsData();
+			for (long[] transaction : transactions) {
+				if (transaction[1] >= from && transaction[1] < to) {
+					expected.merge(transaction[0], 1, transaction[0], transaction[0]);
+				}
+			}
+			StatisticsData actual = history.getStatistics(from, to);
+			assertEquals(expected.getCount(), actual.getCount());
+			assertEquals(expected.getSum(), actual.getSum());
+			assertEquals(expected.getMin(), actual.getMin());
+			assertEquals(expected.getMax(), actual.getMax());
+		}
+	}
+
+	/**
+	 * A day long range less a few milliseconds is read as 22 whole hours, 59 minutes
+	 * and 59 seconds at each end, and the raw rows of the last milliseconds.
+	 */
+	@Test
+	public void rangeIsSplitIntoTheCoarsestBuckets() {
+		List<long[]> parts = new ArrayList<>();
+		TransactionHistory.split(START + 5, START + 24 * 3_600_000 - 7, 0, parts);
+
+		long[] resolutions = { 0, 1000, 60_000, 3_600_000, 60_000, 1000, 0 };
+		assertEquals(resolutions.length, parts.size());
+		long rows = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			assertEquals(resolutions[i], parts.get(i)[0]);
+			rows += parts.get(i)[0] == 0 ? 0 : (parts.get(i)[2] - parts.get(i)[1]) / parts.get(i)[0];
+			// The parts cover the range without gaps
+			if (i > 0) {
+				assertEquals(parts.get(i - 1)[2], parts.get(i)[1]);
+			}
+		}
+		assertEquals(22 + 2 * 59 + 2 * 59, rows);
+	}
+
+	static String readSchema(String resource) throws IOException {
+		try (InputStream input = TransactionHistoryTest.class.getClassLoader().getResourceAsStream(resource)) {
+			return new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.syam.paymentstatistics.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionPersisterTest {
+
+	private JdbcDataSource database;
+
+	@Before
+	public void createTable() throws SQLException, IOException {
+		database = new JdbcDataSource();
+		database.setURL("jdbc:h2:mem:" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+		try (Connection connection = database.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE transactionamount (id INTEGER AUTO_INCREMENT PRIMARY KEY, created BIGINT,"
+					+ " amount DOUBLE PRECISION, time_stamp BIGINT)");
+			statement.execute(TransactionHistoryTest.readSchema("schema/transactionamount_rollup.sql"));
+		}
+	}
+
+	/**
+	 * Transactions offered one by one and in chunks are all written by the time
+	 * the persister is closed, in many batches as the buffer is large enough to
+	 * never overflow.
+	 */
+	@Test
+	public void offeredTransactionsAreWritten() throws SQLException {
+		TransactionPersister persister = new TransactionPersister(database, 16_384, 100, 10);
+		long[] amounts = new long[1000];
+		long[] timestamps = new long[1000];
+		for (int i = 0; i < 1000; i++) {
+			amounts[i] = 2500;
+			timestamps[i] = 1_500_000_000_000L + i;
+		}
+		for (int chunk = 0; chunk < 10; chunk++) {
+			assertEquals(1000, persister.offerAll(amounts, timestamps, 1000));
+		}
+		for (int i = 0; i < 234; i++) {
+			assertTrue(persister.offer(1000, 1_500_000_000_000L));
+		}
+		persister.close();
+
+		assertEquals(10_234, persister.getWritten());
+		assertEquals(0, persister.getDropped());
+		assertEquals(10_234, count("COUNT(*)"), 0);
+		assertEquals(10_000 * 2.5 + 234, count("SUM(amount)"), 1e-6);
+	}
+
+	/**
+	 * While the database doesn't answer, the ingestion doesn't wait : the buffer
+	 * fills up and the overflow is dropped. The buffered rows are written once
+	 * the database is back.
+	 */
+	@Test
+	public void stalledDatabaseDropsTheOverflow() throws Exception {
+		CountDownLatch stalled = new CountDownLatch(1);
+		CountDownLatch resumed = new CountDownLatch(1);
+		DataSource stallingDatabase = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { DataSource.class }, (proxy, method, arguments) -> {
+					if (method.getName().equals("getConnection")) {
+						stalled.countDown();
+						resumed.await();
+					}
+					try {
+						return method.invoke(database, arguments);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+		TransactionPersister persister = new TransactionPersister(stallingDatabase, 1000, 100, 10);
+
+		// The writer takes the first batch and waits for a connection
+		for (int i = 0; i < 100; i++) {
+			assertTrue(persister.offer(1000, 1_500_000_000_000L));
+		}
+		assertTrue(stalled.await(10, TimeUnit.SECONDS));
+		int buffered = 0;
+		for (int i = 0; i < 1500; i++) {
+			if (persister.offer(1000, 1_500_000_000_000L)) {
+				buffered++;
+			}
+		}
+		assertEquals(1000, buffered);
+		assertFalse(persister.offer(1000, 1_500_000_000_000L));
+		assertEquals(501, persister.getDropped());
+
+		resumed.countDown();
+		persister.close();
+		assertEquals(1100, persister.getWritten());
+		assertEquals(1100, count("COUNT(*)"), 0);
+	}
+
+	private double count(String aggregate) throws SQLException {
+		try (Connection connection = database.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT " + aggregate + " FROM transactionamount")) {
+			resultSet.next();
+			return resultSet.getDouble(1);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.syam.paymentstatistics.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syam.paymentstatistics.controllers.StatisticsService;
+import com.syam.paymentstatistics.metrics.StatisticsMetrics;
+
+public class TransactionReplayerTest {
+
+	private static final long START = 1_500_000_000_000L;
+
+	private VirtualClock clock;
+
+	private StatisticsService statisticsService;
+
+	private TransactionReplayer replayer;
+
+	@Before
+	public void setUp() {
+		clock = new VirtualClock(0);
+		statisticsService = new StatisticsService("striped", 0, new ObjectMapper(), StatisticsMetrics.DISABLED,
+				clock);
+		replayer = new TransactionReplayer(statisticsService, clock, new ObjectMapper(), 10_000, 70_000);
+	}
+
+	@After
+	public void tearDown() {
+		statisticsService.shutdown();
+	}
+
+	/**
+	 * A recording spanning minutes is replayed at once, with the statistics, too
+	 * old transactions and expiry it had live.
+	 */
+	@Test
+	public void recordingIsReplayedOnTheVirtualClock() throws IOException {
+		StringBuilder recording = new StringBuilder();
+		// Received 5 seconds apart for 2 minutes, all fresh
+		for (int i = 0; i < 24; i++) {
+			recording.append(transaction(START + i * 5_000L, START + i * 5_000L - 1_000, i + 1));
+		}
+		// Received after 2 minutes, with a time stamp older than the window
+		recording.append(transaction(START + 120_000, START + 50_000, 100));
+		// Without receivedAt, replayed at its time stamp
+		recording.append("{\"amount\":50,\"timestamp\":" + (START + 125_000) + "}\n");
+
+		TransactionReplayer.Result result = replayer
+				.replay(new ByteArrayInputStream(recording.toString().getBytes(StandardCharsets.UTF_8)));
+		assertEquals(26, result.getCount());
+		assertEquals(25, result.getAccepted());
+		assertEquals(1, result.getTooOld());
+		assertEquals(START, result.getFrom());
+		assertEquals(START + 125_000, result.getTo());
+		assertEquals(START + 195_000, clock.millis());
+
+		// Every 10 seconds from START + 10s to START + 190s
+		assertEquals(19, result.getCheckpoints().size());
+		TransactionReplayer.Checkpoint checkpoint = result.getCheckpoints().get(0);
+		assertEquals(START + 10_000, checkpoint.getTime());
+		// Transactions 1 and 2, the third one is received at START + 10s after the
+		// checkpoint
+		assertEquals(2, checkpoint.getStatistics().getCount());
+		assertEquals(3, checkpoint.getStatistics().getSum(), 1e-9);
+		// At START + 90s, the transactions received so far and time stamped after
+		// START + 30s, of amounts 8 to 18
+		checkpoint = result.getCheckpoints().get(8);
+		assertEquals(START + 90_000, checkpoint.getTime());
+		assertEquals(11, checkpoint.getStatistics().getCount());
+		assertEquals(8, checkpoint.getStatistics().getMin(), 1e-9);
+		assertEquals(18, checkpoint.getStatistics().getMax(), 1e-9);
+		// The window is empty 60 seconds after the last transaction
+		assertEquals(0, result.getCheckpoints().get(18).getStatistics().getCount());
+	}
+
+	/**
+	 * The aggregator of the pipelined mode applies the transactions at the time it
+	 * reads from the clock, not the time of the replay, so it is refused.
+	 */
+	@Test
+	public void pipelinedModeIsRefused() {
+		StatisticsService pipelined = new StatisticsService("pipelined", 0, new ObjectMapper(),
+				StatisticsMetrics.DISABLED, clock);
+		try {
+			new TransactionReplayer(pipelined, clock, new ObjectMapper(), 10_000, 70_000);
+			fail("The pipelined mode is not deterministic");
+		} catch (IllegalArgumentException e) {
+			assertFalse(pipelined.isDeterministic());
+		} finally {
+			pipelined.shutdown();
+		}
+	}
+
+	private static String transaction(long receivedAt, long timestamp, double amount) {
+		return "{\"receivedAt\":" + receivedAt + ",\"amount\":" + amount + ",\"timestamp\":" + timestamp + "}\n";
+	}
+}
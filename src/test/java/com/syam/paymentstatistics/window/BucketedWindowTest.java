@@ -0,0 +1,328 @@
+package com.syam.paymentstatistics.window;
+
+import static com.syam.paymentstatistics.window.WindowTestSupport.assertStatistics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.syam.paymentstatistics.exceptions.ServiceUnavailableException;
+import com.syam.paymentstatistics.pojo.AmountHistogram;
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+public class BucketedWindowTest {
+
+	private static final long BUCKET_DURATION = 1000;
+	private static final long WINDOW_DURATION = 60 * 1000;
+	private static final long SLOT_COUNT = WINDOW_DURATION / BUCKET_DURATION + 1;
+
+	/**
+	 * Transactions are added with random time stamps inside the window, so they
+	 * expire in a different order than they were added. Amounts are skewed so that
+	 * the min and max change often. After every step the window is compared with a
+	 * brute force computation over all the transactions.
+	 */
+	@Test
+	public void minMaxStayCorrectWhenTransactionsExpireOutOfOrder() {
+		Random random = new Random(42);
+		BucketedWindow window = new BucketedWindow(BUCKET_DURATION, WINDOW_DURATION);
+		List<long[]> transactions = new ArrayList<>();
+		long now = 1_500_000_000_000L;
+
+		for (int step = 0; step < 200_000; step++) {
+			// Mostly small steps, sometimes a long pause
+			now += random.nextInt(100) == 0 ? random.nextInt(90_000) : random.nextInt(50);
+
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION) + (random.nextInt(20) == 0 ? 5000 : 0);
+			long amount = random.nextInt(10) == 0 ? random.nextInt(1_000_000_000) : random.nextInt(1000);
+			window.add(amount, timestamp, now);
+			transactions.add(new long[] { Math.min(timestamp, now) / BUCKET_DURATION, amount });
+
+			long readTime = now + (random.nextInt(10) == 0 ? random.nextInt(70_000) : 0);
+			assertWindow(window, transactions, readTime);
+
+			// Keep the brute force list bounded to the transactions still in the window
+			if (transactions.size() > 10_000) {
+				long oldestEpoch = now / BUCKET_DURATION - SLOT_COUNT;
+				transactions.removeIf(t -> t[0] <= oldestEpoch);
+			}
+		}
+	}
+
+	@Test
+	public void emptyWindowAfterAllBucketsExpire() {
+		BucketedWindow window = new BucketedWindow(BUCKET_DURATION, WINDOW_DURATION);
+		long now = 1_500_000_000_000L;
+		window.add(10, now - 30_000, now);
+		window.add(20, now, now);
+
+		StatisticsData statisticsData = new StatisticsData();
+		window.collect(now + 31_000, statisticsData);
+		assertEquals(1, statisticsData.getCount());
+		assertEquals(20, statisticsData.getMin());
+
+		statisticsData.resetValues();
+		window.collect(now + WINDOW_DURATION + BUCKET_DURATION, statisticsData);
+		assertEquals(0, statisticsData.getCount());
+	}
+
+	/**
+	 * Windows up to the fine window are exact at the fine bucket precision. The
+	 * longer ones are completed by the rollup window, so they start at the rollup
+	 * bucket boundary before the start of the window.
+	 */
+	@Test
+	public void rolledUpWindowsMatchBruteForce() {
+		long fineBucket = 100;
+		long rollupBucket = 10_000;
+		BucketedWindow window = new BucketedWindow(fineBucket, WINDOW_DURATION,
+				new BucketedWindow(rollupBucket, 60 * 60 * 1000));
+		Random random = new Random(7);
+		List<long[]> transactions = new ArrayList<>();
+		long now = 1_500_000_000_000L;
+
+		for (int step = 0; step < 40_000; step++) {
+			// Mostly small steps, sometimes a pause longer than the fine window
+			now += random.nextInt(1000) == 0 ? random.nextInt(300_000) : random.nextInt(300);
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION);
+			long amount = random.nextInt(10) == 0 ? random.nextInt(1_000_000_000) : random.nextInt(1000);
+			window.add(amount, timestamp, now);
+			transactions.add(new long[] { timestamp, amount });
+			if (step % 50 != 0) {
+				continue;
+			}
+
+			for (WindowSize windowSize : WindowSize.values()) {
+				long duration = windowSize.getDuration();
+				long bucket = duration <= WINDOW_DURATION ? fineBucket : rollupBucket;
+				StatisticsData actual = new StatisticsData();
+				window.collect(now, duration, actual);
+				assertStatistics(bruteForce(transactions, (now / bucket - duration / bucket) * bucket), actual);
+			}
+
+			long oldest = now - 2 * 60 * 60 * 1000;
+			transactions.removeIf(t -> t[0] < oldest);
+		}
+	}
+
+	/**
+	 * Amounts spread over several orders of magnitude, with buckets expiring all
+	 * along. The percentiles of every window up to the quantile window stay within
+	 * the relative error of the exact nearest-rank percentiles of the transactions
+	 * still in the window.
+	 */
+	@Test
+	public void percentilesStayWithinRelativeErrorOfBruteForce() {
+		BucketedWindow window = new BucketedWindow(BUCKET_DURATION, WINDOW_DURATION, null,
+				new QuantileWindow(BUCKET_DURATION, WINDOW_DURATION));
+		Random random = new Random(11);
+		List<long[]> transactions = new ArrayList<>();
+		long now = 1_500_000_000_000L;
+		double[] quantiles = { 0.5, 0.95, 0.99 };
+
+		for (int step = 0; step < 20_000; step++) {
+			now += random.nextInt(200) == 0 ? random.nextInt(90_000) : random.nextInt(20);
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION);
+			long amount = (long) Math.pow(10, random.nextDouble() * 9);
+			window.add(amount, timestamp, now);
+			transactions.add(new long[] { timestamp / BUCKET_DURATION, amount });
+			if (step % 100 != 0) {
+				continue;
+			}
+
+			for (long duration : new long[] { 1000, 10_000, WINDOW_DURATION }) {
+				long fromEpoch = now / BUCKET_DURATION - duration / BUCKET_DURATION;
+				long[] amounts = transactions.stream().filter(t -> t[0] >= fromEpoch).mapToLong(t -> t[1]).toArray();
+				Arrays.sort(amounts);
+
+				StatisticsData actual = StatisticsData.withHistogram();
+				window.collect(now, duration, actual);
+				assertEquals(amounts.length, actual.getHistogram().getTotalCount());
+				for (double quantile : quantiles) {
+					if (amounts.length == 0) {
+						continue;
+					}
+					long expected = amounts[(int) Math.ceil(quantile * amounts.length) - 1];
+					long value = actual.getHistogram().valueAtQuantile(quantile);
+					assertTrue(expected + " " + value,
+							Math.abs(value - expected) <= expected * AmountHistogram.RELATIVE_ERROR);
+				}
+			}
+
+			long oldestEpoch = now / BUCKET_DURATION - SLOT_COUNT;
+			transactions.removeIf(t -> t[0] <= oldestEpoch);
+		}
+	}
+
+	/**
+	 * The quantile buckets are coarser than the aggregate buckets, as in
+	 * WindowMode. With a histogram, every window is rounded up to whole quantile
+	 * buckets, aggregates included, so the histogram holds exactly the
+	 * transactions of the count, including at the oldest end of the window.
+	 */
+	@Test
+	public void percentilePopulationEqualsCount() {
+		long fineBucket = 100;
+		BucketedWindow window = new BucketedWindow(fineBucket, WINDOW_DURATION,
+				new BucketedWindow(10_000, 60 * 60 * 1000), new QuantileWindow(BUCKET_DURATION, WINDOW_DURATION));
+		Random random = new Random(13);
+		List<long[]> transactions = new ArrayList<>();
+		long now = 1_500_000_000_000L;
+
+		for (int step = 0; step < 20_000; step++) {
+			now += random.nextInt(500) == 0 ? random.nextInt(90_000) : random.nextInt(30);
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION + 2000);
+			long amount = random.nextInt(10) == 0 ? random.nextInt(1_000_000_000) : random.nextInt(1000);
+			window.add(amount, timestamp, now);
+			transactions.add(new long[] { timestamp, amount });
+			if (step % 50 != 0) {
+				continue;
+			}
+
+			long readTime = now + (random.nextInt(10) == 0 ? random.nextInt(5000) : 0);
+			for (long duration : new long[] { 10_000, WINDOW_DURATION }) {
+				StatisticsData actual = StatisticsData.withHistogram();
+				window.collect(readTime, duration, actual);
+				assertEquals(actual.getCount(), actual.getHistogram().getTotalCount());
+			}
+
+			StatisticsData actual = StatisticsData.withHistogram();
+			window.collect(readTime, 10_000, actual);
+			long fromTime = (readTime / BUCKET_DURATION - 10) * BUCKET_DURATION;
+			assertStatistics(bruteForce(transactions, fromTime), actual);
+
+			long oldest = now - 2 * WINDOW_DURATION;
+			transactions.removeIf(t -> t[0] < oldest);
+		}
+	}
+
+	@Test
+	public void stripedWindowMergesAllWriters() throws InterruptedException {
+		StripedStatisticsWindow window = new StripedStatisticsWindow(BUCKET_DURATION, WINDOW_DURATION, 4);
+		long now = 1_500_000_000_000L;
+		int threads = 8;
+		int perThread = 50_000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				for (int i = 1; i <= perThread; i++) {
+					window.add(thread * perThread + i, now - i % WINDOW_DURATION, now);
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		long total = (long) threads * perThread;
+		StatisticsData statisticsData = new StatisticsData();
+		window.collect(now, statisticsData);
+		assertEquals(total, statisticsData.getCount());
+		assertEquals(total * (total + 1) / 2, statisticsData.getSum());
+		assertEquals(1, statisticsData.getMin());
+		assertEquals(total, statisticsData.getMax());
+	}
+
+	@Test
+	public void pipelinedWindowAppliesAllPublishedTransactions() throws InterruptedException {
+		PipelinedStatisticsWindow window = new PipelinedStatisticsWindow(BUCKET_DURATION, WINDOW_DURATION, 1024);
+		long now = System.currentTimeMillis();
+		int threads = 4;
+		int perThread = 20_000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (int i = 1; i <= perThread; i++) {
+					window.add(i, now, now);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		long total = (long) threads * perThread;
+		StatisticsData statisticsData = new StatisticsData();
+		long deadline = System.currentTimeMillis() + 5000;
+		do {
+			Thread.sleep(10);
+			window.collect(System.currentTimeMillis(), statisticsData);
+		} while (statisticsData.getCount() < total && System.currentTimeMillis() < deadline);
+
+		assertEquals(total, statisticsData.getCount());
+		assertEquals(threads * ((long) perThread * (perThread + 1) / 2), statisticsData.getSum());
+		assertEquals(1, statisticsData.getMin());
+		assertEquals(perThread, statisticsData.getMax());
+		assertEquals(0, window.getQueueDepth());
+		window.close();
+	}
+
+	/**
+	 * Once closed, the aggregator stops and the writers and bucket copies fail
+	 * instead of waiting for it forever.
+	 */
+	@Test
+	public void closedPipelinedWindowFailsInsteadOfWaiting() {
+		PipelinedStatisticsWindow window = new PipelinedStatisticsWindow(BUCKET_DURATION, WINDOW_DURATION, 4);
+		long now = System.currentTimeMillis();
+		window.collectBuckets(now, new WindowBuckets());
+		window.close();
+		try {
+			window.collectBuckets(now, new WindowBuckets());
+			fail("Buckets copied after close");
+		} catch (ServiceUnavailableException e) {
+			// expected
+		}
+		try {
+			for (int i = 0; i < 100; i++) {
+				window.add(i, now, now);
+			}
+			fail("Ring buffer never full");
+		} catch (ServiceUnavailableException e) {
+			// expected
+		}
+	}
+
+	private static StatisticsData bruteForce(List<long[]> transactions, long from) {
+		StatisticsData statisticsData = new StatisticsData();
+		for (long[] transaction : transactions) {
+			if (transaction[0] >= from) {
+				statisticsData.merge(transaction[1], 1, transaction[1], transaction[1]);
+			}
+		}
+		return statisticsData;
+	}
+
+	private static void assertWindow(BucketedWindow window, List<long[]> transactions, long readTime) {
+		long readEpoch = readTime / BUCKET_DURATION;
+		StatisticsData expected = new StatisticsData();
+		for (long[] transaction : transactions) {
+			if (transaction[0] > readEpoch - SLOT_COUNT && transaction[0] <= readEpoch) {
+				expected.merge(transaction[1], 1, transaction[1], transaction[1]);
+			}
+		}
+
+		StatisticsData actual = new StatisticsData();
+		window.collect(readTime, actual);
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getSum(), actual.getSum());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+	}
+}
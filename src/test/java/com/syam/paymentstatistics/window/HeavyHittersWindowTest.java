@@ -0,0 +1,89 @@
+package com.syam.paymentstatistics.window;
+
+import static com.syam.paymentstatistics.window.WindowTestSupport.BUCKET_DURATION;
+import static com.syam.paymentstatistics.window.WindowTestSupport.SLOT_COUNT;
+import static com.syam.paymentstatistics.window.WindowTestSupport.WINDOW_DURATION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class HeavyHittersWindowTest {
+
+	/**
+	 * Skewed volumes over far more keys than counters, with buckets expiring all
+	 * along. The volumes returned are upper bounds within their error of the exact
+	 * ones, the errors are within window volume / capacity, and no key above the
+	 * returned ones is missed.
+	 */
+	@Test
+	public void topKeysStayWithinErrorBoundsOfBruteForce() {
+		int capacity = 50;
+		int k = 10;
+		HeavyHittersWindow window = new HeavyHittersWindow(BUCKET_DURATION, WINDOW_DURATION, capacity);
+		Random random = new Random(5);
+		List<Object[]> transactions = new ArrayList<>();
+		long now = 1_500_000_000_000L;
+
+		for (int step = 0; step < 100_000; step++) {
+			now += random.nextInt(5);
+			// Zipf like, a few keys get most of the volume
+			String key = "merchant-" + (int) Math.pow(random.nextInt(1000) + 1, 1.5) % 5000;
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION);
+			long amount = 1 + random.nextInt(1000);
+			window.add(key, amount, timestamp, now);
+			transactions.add(new Object[] { timestamp / BUCKET_DURATION, key, amount });
+			if (step % 5000 != 0) {
+				continue;
+			}
+
+			long fromEpoch = now / BUCKET_DURATION - SLOT_COUNT + 1;
+			transactions.removeIf(t -> (long) t[0] < fromEpoch);
+			Map<String, Long> exact = new HashMap<>();
+			long volume = 0;
+			for (Object[] transaction : transactions) {
+				exact.merge((String) transaction[1], (Long) transaction[2], Long::sum);
+				volume += (Long) transaction[2];
+			}
+			assertEquals(volume, window.getVolume(now));
+
+			List<HeavyHittersWindow.Estimate> top = window.top(k, now);
+			assertEquals(Math.min(k, exact.size()), top.size());
+			Set<String> topKeys = new HashSet<>();
+			for (HeavyHittersWindow.Estimate estimate : top) {
+				long exactVolume = exact.getOrDefault(estimate.getKey(), 0L);
+				assertTrue(estimate.getVolume() >= exactVolume);
+				assertTrue(estimate.getVolume() - estimate.getError() <= exactVolume);
+				assertTrue(estimate.getError() <= volume / capacity + SLOT_COUNT);
+				topKeys.add(estimate.getKey());
+			}
+			long lowest = Math.max(top.get(top.size() - 1).getVolume(), volume / capacity + SLOT_COUNT);
+			for (Map.Entry<String, Long> entry : exact.entrySet()) {
+				assertTrue(topKeys.contains(entry.getKey()) || entry.getValue() <= lowest);
+			}
+		}
+	}
+
+	@Test
+	public void expiredBucketsDropTheirSummary() {
+		HeavyHittersWindow window = new HeavyHittersWindow(BUCKET_DURATION, WINDOW_DURATION, 4);
+		long now = 1_500_000_000_000L;
+		window.add("a", 10, now, now);
+		window.add("b", 5, now + WINDOW_DURATION, now + WINDOW_DURATION);
+
+		assertEquals(2, window.top(5, now + WINDOW_DURATION).size());
+		List<HeavyHittersWindow.Estimate> top = window.top(5, now + WINDOW_DURATION + 2 * BUCKET_DURATION);
+		assertEquals(1, top.size());
+		assertEquals("b", top.get(0).getKey());
+		assertEquals(5, top.get(0).getVolume());
+		assertEquals(0, top.get(0).getError());
+	}
+}
@@ -0,0 +1,102 @@
+package com.syam.paymentstatistics.window;
+
+import static com.syam.paymentstatistics.window.WindowTestSupport.BUCKET_DURATION;
+import static com.syam.paymentstatistics.window.WindowTestSupport.SLOT_COUNT;
+import static com.syam.paymentstatistics.window.WindowTestSupport.WINDOW_DURATION;
+import static com.syam.paymentstatistics.window.WindowTestSupport.assertStatistics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+public class KeyedWindowStoreTest {
+
+	/**
+	 * Keys come and go with pauses longer than the window, so idle keys are
+	 * dropped and the table cells shifted back all along. Every key and the top
+	 * keys are compared with a brute force computation.
+	 */
+	@Test
+	public void keysMatchBruteForceWhileIdleKeysAreDropped() {
+		KeyedWindowStore store = new KeyedWindowStore(BUCKET_DURATION, WINDOW_DURATION, 512);
+		Random random = new Random(3);
+		Map<String, List<long[]>> transactions = new HashMap<>();
+		long now = 1_500_000_000_000L;
+
+		for (int step = 0; step < 50_000; step++) {
+			now += random.nextInt(2000) == 0 ? random.nextInt(200_000) : random.nextInt(20);
+			String key = "merchant-" + random.nextInt(step % 10_000 < 5000 ? 300 : 50);
+			long timestamp = now - random.nextInt((int) WINDOW_DURATION);
+			long amount = random.nextInt(1_000_000);
+			store.add(key, amount, timestamp, now);
+			transactions.computeIfAbsent(key, k -> new ArrayList<>())
+					.add(new long[] { timestamp / BUCKET_DURATION, amount });
+			if (step % 500 != 0) {
+				continue;
+			}
+
+			long fromEpoch = now / BUCKET_DURATION - SLOT_COUNT + 1;
+			Map<String, StatisticsData> expected = new HashMap<>();
+			for (Map.Entry<String, List<long[]>> entry : transactions.entrySet()) {
+				StatisticsData statisticsData = new StatisticsData();
+				for (long[] transaction : entry.getValue()) {
+					if (transaction[0] >= fromEpoch) {
+						statisticsData.merge(transaction[1], 1, transaction[1], transaction[1]);
+					}
+				}
+				StatisticsData actual = new StatisticsData();
+				store.collect(entry.getKey(), now, actual);
+				assertStatistics(statisticsData, actual);
+				if (!statisticsData.isEmpty()) {
+					expected.put(entry.getKey(), statisticsData);
+				}
+			}
+
+			// Every top key has no more higher sums before it than its rank, and the
+			// other keys are not higher than the last one
+			Map<String, StatisticsData> top = store.top(5, now);
+			assertEquals(Math.min(5, expected.size()), top.size());
+			int rank = 0;
+			long lowestSum = Long.MAX_VALUE;
+			for (Map.Entry<String, StatisticsData> entry : top.entrySet()) {
+				assertStatistics(expected.get(entry.getKey()), entry.getValue());
+				long sum = entry.getValue().getSum();
+				assertTrue(sum <= lowestSum);
+				assertTrue(expected.values().stream().filter(s -> s.getSum() > sum).count() <= rank);
+				lowestSum = sum;
+				rank++;
+			}
+			for (Map.Entry<String, StatisticsData> entry : expected.entrySet()) {
+				assertTrue(top.containsKey(entry.getKey()) || entry.getValue().getSum() <= lowestSum);
+			}
+		}
+		assertEquals(0, store.getEvictionCount());
+	}
+
+	@Test
+	public void leastRecentlyUpdatedKeyIsEvictedWhenFull() {
+		KeyedWindowStore store = new KeyedWindowStore(BUCKET_DURATION, WINDOW_DURATION, 2);
+		long now = 1_500_000_000_000L;
+		store.add("a", 1, now, now);
+		store.add("b", 2, now, now);
+		store.add("a", 3, now, now);
+		store.add("c", 4, now, now);
+
+		assertEquals(2, store.size());
+		assertEquals(1, store.getEvictionCount());
+		StatisticsData statisticsData = new StatisticsData();
+		store.collect("b", now, statisticsData);
+		assertEquals(0, statisticsData.getCount());
+		store.collect("a", now, statisticsData);
+		assertEquals(2, statisticsData.getCount());
+		assertEquals(4, statisticsData.getSum());
+	}
+}
@@ -0,0 +1,95 @@
+package com.syam.paymentstatistics.window;
+
+import static com.syam.paymentstatistics.window.WindowTestSupport.assertStatistics;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+public class WindowBucketsTest {
+
+	/**
+	 * The transactions are spread over two nodes, and also added to a single
+	 * window. The buckets of the two nodes, encoded and decoded, are read later
+	 * on, without new transactions, and must give the same statistics as the
+	 * single window for every window size.
+	 */
+	@Test
+	public void mergedNodesMatchSingleWindowWhenReadLater() throws IOException {
+		Random random = new Random(7);
+		BucketedWindow all = WindowMode.newWindow();
+		BucketedWindow[] nodes = { WindowMode.newWindow(), WindowMode.newWindow() };
+		long now = 1_500_000_000_000L;
+		for (int step = 0; step < 100_000; step++) {
+			now += random.nextInt(100);
+			long timestamp = now - random.nextInt(70_000);
+			long amount = random.nextInt(10) == 0 ? random.nextInt(1_000_000_000) : random.nextInt(1000);
+			all.add(amount, timestamp, now);
+			nodes[random.nextInt(nodes.length)].add(amount, timestamp, now);
+		}
+
+		WindowBuckets[] copies = new WindowBuckets[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			WindowBuckets buckets = new WindowBuckets();
+			nodes[i].collectBuckets(now, buckets);
+			copies[i] = encodeAndDecode(buckets);
+		}
+
+		for (long readTime : new long[] { now, now + 150, now + 5000, now + 59_000, now + 70_000 }) {
+			for (WindowSize windowSize : WindowSize.values()) {
+				StatisticsData expected = new StatisticsData();
+				all.collect(readTime, windowSize.getDuration(), expected);
+				StatisticsData merged = new StatisticsData();
+				for (WindowBuckets copy : copies) {
+					copy.collect(readTime, windowSize.getDuration(), merged);
+				}
+				assertStatistics(expected, merged);
+			}
+		}
+	}
+
+	/**
+	 * A node which received nothing for longer than the window still has the
+	 * expired buckets in its window, they are only rolled up by the next
+	 * transaction. The copy rolls them up, so they count in the longer windows
+	 * only.
+	 */
+	@Test
+	public void expiredBucketsAreRolledUpInTheCopy() {
+		BucketedWindow window = WindowMode.newWindow();
+		long now = 1_500_000_000_000L;
+		window.add(5000, now - 1000, now);
+		window.add(7000, now, now);
+
+		WindowBuckets buckets = new WindowBuckets();
+		window.collectBuckets(now + 70_000, buckets);
+		for (WindowSize windowSize : WindowSize.values()) {
+			StatisticsData expected = new StatisticsData();
+			window.collect(now + 70_000, windowSize.getDuration(), expected);
+			StatisticsData copied = new StatisticsData();
+			buckets.collect(now + 70_000, windowSize.getDuration(), copied);
+			assertStatistics(expected, copied);
+		}
+		StatisticsData fiveMinutes = new StatisticsData();
+		buckets.collect(now + 70_000, WindowSize.FIVE_MINUTES.getDuration(), fiveMinutes);
+		assertEquals(2, fiveMinutes.getCount());
+		assertEquals(5000, fiveMinutes.getMin());
+	}
+
+	private static WindowBuckets encodeAndDecode(WindowBuckets buckets) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			buckets.writeTo(out);
+		}
+		assertEquals(8 + buckets.getBucketCount() * 40 + 20 * 2, bytes.size());
+		return WindowBuckets.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
@@ -0,0 +1,26 @@
+package com.syam.paymentstatistics.window;
+
+import static org.junit.Assert.assertEquals;
+
+import com.syam.paymentstatistics.pojo.StatisticsData;
+
+/**
+ * Window geometry and assertions shared by the window tests.
+ */
+final class WindowTestSupport {
+
+	// Geometry of the per key windows, as in the per dimension statistics
+	static final long BUCKET_DURATION = 10_000;
+	static final long WINDOW_DURATION = 60_000;
+	static final long SLOT_COUNT = WINDOW_DURATION / BUCKET_DURATION + 1;
+
+	private WindowTestSupport() {
+	}
+
+	static void assertStatistics(StatisticsData expected, StatisticsData actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getSum(), actual.getSum());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+	}
+}